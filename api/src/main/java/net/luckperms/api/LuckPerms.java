@@ -42,6 +42,7 @@ import net.luckperms.api.model.user.UserManager;
 import net.luckperms.api.node.NodeBuilderRegistry;
 import net.luckperms.api.node.matcher.NodeMatcherFactory;
 import net.luckperms.api.platform.Health;
+import net.luckperms.api.platform.MemoryUsage;
 import net.luckperms.api.platform.Platform;
 import net.luckperms.api.platform.PlayerAdapter;
 import net.luckperms.api.platform.PluginMetadata;
@@ -232,6 +233,16 @@ public interface LuckPerms {
      */
     @NonNull Health runHealthCheck();
 
+    /**
+     * Estimates the heap memory used by LuckPerms, in total and for the
+     * loaded users and groups using the most.
+     *
+     * @param holders the maximum number of holders to include in the result
+     * @return the memory usage estimate
+     * @since 5.5
+     */
+    @NonNull MemoryUsage estimateMemoryUsage(int holders);
+
     /**
      * Registers a {@link MessengerProvider} for use by the platform.
      *
@@ -68,6 +68,26 @@ public interface CachedPermissionData extends CachedData {
         return queryPermission(permission).result();
     }
 
+    /**
+     * Performs a permission check for each of the given {@code permissions}.
+     *
+     * <p>This is equivalent to calling {@link #checkPermission(String)} for each
+     * permission, but is more efficient when many permissions need to be checked
+     * at once.</p>
+     *
+     * @param permissions the permission nodes
+     * @return the tristate results, in the same order as the given permissions
+     * @throws NullPointerException if permissions, or any of its elements, is null
+     * @since 5.5
+     */
+    default @NonNull Tristate[] checkPermissions(@NonNull String... permissions) {
+        Tristate[] results = new Tristate[permissions.length];
+        for (int i = 0; i < permissions.length; i++) {
+            results[i] = checkPermission(permissions[i]);
+        }
+        return results;
+    }
+
     /**
      * Invalidates the underlying permission calculator cache.
      *
@@ -0,0 +1,46 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package net.luckperms.api.context;
+
+/**
+ * Extension of {@link ContextCalculator} which promises to call
+ * {@link ContextManager#signalContextUpdate(Object)} whenever the contexts it
+ * provides for a subject may have changed.
+ *
+ * <p>Calculators which don't depend on the subject, and only change when the
+ * implementing plugin is reloaded, can also implement this interface - as long as
+ * they signal an update for each subject when that happens.</p>
+ *
+ * <p>When LuckPerms is configured to use event-driven contexts, the results of
+ * these calculators are cached until the subject is next signalled, instead of
+ * being calculated again after a short time.</p>
+ *
+ * @param <T> the subject type
+ * @since 5.5
+ */
+public interface SignallingContextCalculator<T> extends ContextCalculator<T> {
+
+}
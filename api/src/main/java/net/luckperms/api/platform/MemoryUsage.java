@@ -0,0 +1,103 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package net.luckperms.api.platform;
+
+import net.luckperms.api.model.PermissionHolder;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.jetbrains.annotations.Unmodifiable;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An estimate of the heap memory used by LuckPerms.
+ *
+ * <p>Sizes are estimated from the number and type of objects held, rather than
+ * measured, so should be treated as approximate.</p>
+ *
+ * <p>The types of data reported are:</p>
+ * <ul>
+ *     <li>{@code nodes} - the nodes held by users and groups</li>
+ *     <li>{@code permission-caches} - cached permission data</li>
+ *     <li>{@code lookup-caches} - the results of previous permission lookups</li>
+ *     <li>{@code meta-caches} - cached meta data</li>
+ *     <li>{@code permission-registry} - the tree of known permissions (not attributed to any holder)</li>
+ * </ul>
+ *
+ * @since 5.5
+ */
+public interface MemoryUsage {
+
+    /**
+     * Gets the estimated total size, in bytes.
+     *
+     * @return the total size
+     */
+    long getTotalBytes();
+
+    /**
+     * Gets the estimated size of each type of data, in bytes.
+     *
+     * @return the size of each type of data
+     */
+    @NonNull @Unmodifiable Map<String, Long> getBytesByType();
+
+    /**
+     * Gets the holders which are using the most memory, heaviest first.
+     *
+     * @return the heaviest holders
+     */
+    @NonNull @Unmodifiable List<Holder> getHeaviestHolders();
+
+    /**
+     * An estimate of the memory used by a single {@link PermissionHolder}.
+     */
+    interface Holder {
+
+        /**
+         * Gets the identifier of the holder.
+         *
+         * @return the identifier
+         */
+        PermissionHolder.@NonNull Identifier getIdentifier();
+
+        /**
+         * Gets the estimated total size, in bytes.
+         *
+         * @return the total size
+         */
+        long getTotalBytes();
+
+        /**
+         * Gets the estimated size of each type of data, in bytes.
+         *
+         * @return the size of each type of data
+         */
+        @NonNull @Unmodifiable Map<String, Long> getBytesByType();
+
+    }
+
+}
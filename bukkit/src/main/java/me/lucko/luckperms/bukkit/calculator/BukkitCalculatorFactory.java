@@ -64,7 +64,7 @@ public class BukkitCalculatorFactory implements CalculatorFactory {
         }
 
         if (this.plugin.getConfiguration().get(ConfigKeys.APPLYING_WILDCARDS)) {
-            processors.add(new WildcardProcessor());
+            processors.add(new WildcardProcessor(this.plugin.getConfiguration().get(ConfigKeys.COMPILE_WILDCARDS)));
         }
 
         if (this.plugin.getConfiguration().get(ConfigKeys.APPLYING_WILDCARDS_SPONGE)) {
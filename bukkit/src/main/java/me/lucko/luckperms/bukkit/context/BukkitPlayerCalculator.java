@@ -31,11 +31,11 @@ import me.lucko.luckperms.common.config.ConfigKeys;
 import me.lucko.luckperms.common.context.ImmutableContextSetImpl;
 import me.lucko.luckperms.common.util.EnumNamer;
 import net.luckperms.api.context.Context;
-import net.luckperms.api.context.ContextCalculator;
 import net.luckperms.api.context.ContextConsumer;
 import net.luckperms.api.context.ContextSet;
 import net.luckperms.api.context.DefaultContextKeys;
 import net.luckperms.api.context.ImmutableContextSet;
+import net.luckperms.api.context.SignallingContextCalculator;
 import org.bukkit.GameMode;
 import org.bukkit.World;
 import org.bukkit.World.Environment;
@@ -50,7 +50,7 @@ import org.checkerframework.checker.nullness.qual.NonNull;
 
 import java.util.Set;
 
-public class BukkitPlayerCalculator implements ContextCalculator<Player>, Listener {
+public class BukkitPlayerCalculator implements SignallingContextCalculator<Player>, Listener {
     private static final EnumNamer<GameMode> GAMEMODE_NAMER = new EnumNamer<>(
             GameMode.class,
             EnumNamer.LOWER_CASE_NAME
@@ -175,6 +175,33 @@ public class LuckPermsVaultPermission extends AbstractVaultPermission {
         return permissionData.checkPermission(permission, CheckOrigin.THIRD_PARTY_API).result().asBoolean();
     }
 
+    /**
+     * Checks a number of permissions for a user at once.
+     *
+     * <p>This isn't part of the Vault API, but is equivalent to calling
+     * {@link #userHasPermission(String, UUID, String)} for each permission.</p>
+     *
+     * @param world the world
+     * @param uuid the uuid of the user
+     * @param permissions the permissions to check
+     * @return the results, in the same order as the permissions
+     */
+    public boolean[] userHasPermissions(String world, UUID uuid, String... permissions) {
+        Objects.requireNonNull(uuid, "uuid");
+        Objects.requireNonNull(permissions, "permissions");
+
+        PermissionHolder user = lookupUser(uuid);
+        QueryOptions queryOptions = getQueryOptions(uuid, world);
+        PermissionCache permissionData = user.getCachedData().getPermissionData(queryOptions);
+
+        TristateResult[] results = permissionData.checkPermissions(permissions, CheckOrigin.THIRD_PARTY_API);
+        boolean[] booleans = new boolean[results.length];
+        for (int i = 0; i < results.length; i++) {
+            booleans[i] = results[i].result().asBoolean();
+        }
+        return booleans;
+    }
+
     @Override
     public boolean userAddPermission(String world, UUID uuid, String permission) {
         Objects.requireNonNull(uuid, "uuid");
@@ -28,11 +28,11 @@ package me.lucko.luckperms.bungee.context;
 import me.lucko.luckperms.bungee.LPBungeePlugin;
 import me.lucko.luckperms.common.config.ConfigKeys;
 import me.lucko.luckperms.common.context.ImmutableContextSetImpl;
-import net.luckperms.api.context.ContextCalculator;
 import net.luckperms.api.context.ContextConsumer;
 import net.luckperms.api.context.ContextSet;
 import net.luckperms.api.context.DefaultContextKeys;
 import net.luckperms.api.context.ImmutableContextSet;
+import net.luckperms.api.context.SignallingContextCalculator;
 import net.md_5.bungee.api.config.ServerInfo;
 import net.md_5.bungee.api.connection.ProxiedPlayer;
 import net.md_5.bungee.api.connection.Server;
@@ -42,7 +42,7 @@ import net.md_5.bungee.event.EventHandler;
 import net.md_5.bungee.event.EventPriority;
 import org.checkerframework.checker.nullness.qual.NonNull;
 
-public class BungeePlayerCalculator implements ContextCalculator<ProxiedPlayer>, Listener {
+public class BungeePlayerCalculator implements SignallingContextCalculator<ProxiedPlayer>, Listener {
     private final LPBungeePlugin plugin;
 
     public BungeePlayerCalculator(LPBungeePlugin plugin) {
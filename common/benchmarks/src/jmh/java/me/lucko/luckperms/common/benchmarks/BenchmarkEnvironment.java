@@ -0,0 +1,280 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.benchmarks;
+
+import com.google.common.collect.ImmutableList;
+import me.lucko.luckperms.common.cacheddata.CacheMetadata;
+import me.lucko.luckperms.common.calculator.CalculatorFactory;
+import me.lucko.luckperms.common.calculator.LookupCacheBudget;
+import me.lucko.luckperms.common.calculator.PermissionCalculator;
+import me.lucko.luckperms.common.calculator.processor.DirectProcessor;
+import me.lucko.luckperms.common.calculator.processor.RegexProcessor;
+import me.lucko.luckperms.common.calculator.processor.WildcardProcessor;
+import me.lucko.luckperms.common.config.ConfigKeys;
+import me.lucko.luckperms.common.config.LuckPermsConfiguration;
+import me.lucko.luckperms.common.context.ImmutableContextSetImpl;
+import me.lucko.luckperms.common.event.EventDispatcher;
+import me.lucko.luckperms.common.graph.TraversalAlgorithm;
+import me.lucko.luckperms.common.inheritance.InheritanceGraphFactory;
+import me.lucko.luckperms.common.model.Group;
+import me.lucko.luckperms.common.model.HolderType;
+import me.lucko.luckperms.common.model.PrimaryGroupHolder;
+import me.lucko.luckperms.common.model.User;
+import me.lucko.luckperms.common.model.manager.group.GroupManager;
+import me.lucko.luckperms.common.model.manager.group.StandardGroupManager;
+import me.lucko.luckperms.common.node.factory.NodeBuilders;
+import me.lucko.luckperms.common.node.types.Inheritance;
+import me.lucko.luckperms.common.plugin.LuckPermsPlugin;
+import me.lucko.luckperms.common.plugin.scheduler.SchedulerAdapter;
+import me.lucko.luckperms.common.query.QueryOptionsBuilderImpl;
+import me.lucko.luckperms.common.treeview.PermissionRegistry;
+import me.lucko.luckperms.common.verbose.VerboseCheckTarget;
+import me.lucko.luckperms.common.verbose.VerboseHandler;
+import net.luckperms.api.context.ContextSatisfyMode;
+import net.luckperms.api.context.DefaultContextKeys;
+import net.luckperms.api.context.ImmutableContextSet;
+import net.luckperms.api.model.data.DataType;
+import net.luckperms.api.node.Node;
+import net.luckperms.api.query.QueryMode;
+import net.luckperms.api.query.QueryOptions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * A minimal plugin environment, populated with synthetic users and groups, for use by the benchmarks.
+ *
+ * <p>The plugin and configuration are "stub only" mocks, so the per-call overhead they add to the
+ * measured paths is small and constant between versions.</p>
+ */
+public final class BenchmarkEnvironment {
+
+    /** The server context applied to all contextual synthetic nodes */
+    public static final String SERVER = "survival";
+
+    private final LuckPermsPlugin plugin;
+    private final StandardGroupManager groupManager;
+    private final Random random = new Random(0x4C75636BL);
+
+    public BenchmarkEnvironment() {
+        this(false);
+    }
+
+    /**
+     * Creates a new environment.
+     *
+     * @param shareCalculators if permission calculators should be shared between holders
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public BenchmarkEnvironment(boolean shareCalculators) {
+        this.plugin = mock(LuckPermsPlugin.class, withSettings().stubOnly());
+        this.groupManager = new StandardGroupManager(this.plugin);
+
+        LuckPermsConfiguration configuration = mock(LuckPermsConfiguration.class, withSettings().stubOnly());
+        when(configuration.get(ConfigKeys.CONTEXT_SATISFY_MODE)).thenReturn(ContextSatisfyMode.AT_LEAST_ONE_VALUE_PER_KEY);
+        when(configuration.get(ConfigKeys.GROUP_WEIGHTS)).thenReturn(Collections.emptyMap());
+        when(configuration.get(ConfigKeys.INHERITANCE_TRAVERSAL_ALGORITHM)).thenReturn(TraversalAlgorithm.DEPTH_FIRST_PRE_ORDER);
+        when(configuration.get(ConfigKeys.POST_TRAVERSAL_INHERITANCE_SORT)).thenReturn(false);
+        when(configuration.get(ConfigKeys.APPLYING_SHORTHAND)).thenReturn(true);
+        when(configuration.get(ConfigKeys.PRIMARY_GROUP_CALCULATION)).thenReturn(PrimaryGroupHolder.Stored::new);
+        when(configuration.get(ConfigKeys.PERMISSION_LOOKUP_CACHE_SIZE)).thenReturn(Integer.getInteger("luckperms.benchmark.lookupCacheSize", 0));
+        when(configuration.get(ConfigKeys.PERMISSION_LOOKUP_CACHE_GLOBAL_SIZE)).thenReturn(0);
+        when(configuration.get(ConfigKeys.SHARE_PERMISSION_CALCULATORS)).thenReturn(shareCalculators);
+        when(configuration.get(ConfigKeys.COPY_ON_WRITE_NODE_MAPS)).thenReturn(Boolean.getBoolean("luckperms.benchmark.copyOnWriteNodeMaps"));
+
+        CalculatorFactory calculatorFactory = this::createStandardCalculatorFor;
+
+        when(this.plugin.getConfiguration()).thenReturn(configuration);
+        when(this.plugin.getEventDispatcher()).thenReturn(mock(EventDispatcher.class, withSettings().stubOnly()));
+        when(this.plugin.getVerboseHandler()).thenReturn(new VerboseHandler(mock(SchedulerAdapter.class, withSettings().stubOnly())));
+        when(this.plugin.getPermissionRegistry()).thenReturn(new PermissionRegistry());
+        when(this.plugin.getGroupManager()).thenReturn((GroupManager) this.groupManager);
+        when(this.plugin.getInheritanceGraphFactory()).thenReturn(new InheritanceGraphFactory(this.plugin));
+        when(this.plugin.getCalculatorFactory()).thenReturn(calculatorFactory);
+        when(this.plugin.getLookupCacheBudget()).thenReturn(LookupCacheBudget.fromConfig(configuration));
+    }
+
+    public LuckPermsPlugin getPlugin() {
+        return this.plugin;
+    }
+
+    public Random getRandom() {
+        return this.random;
+    }
+
+    /**
+     * Creates a calculator with the processors used by default on most platforms
+     * (direct, regex and wildcard).
+     *
+     * @param queryOptions the query options
+     * @param metadata the metadata
+     * @return a calculator
+     */
+    private PermissionCalculator createStandardCalculatorFor(QueryOptions queryOptions, CacheMetadata metadata) {
+        return new PermissionCalculator(this.plugin, metadata, ImmutableList.of(
+                new DirectProcessor(),
+                new RegexProcessor(),
+                new WildcardProcessor()
+        ));
+    }
+
+    /**
+     * Creates a standalone calculator (not attached to any holder) with the default processors.
+     *
+     * @return a calculator
+     */
+    public PermissionCalculator createStandardCalculator() {
+        CacheMetadata metadata = new CacheMetadata(
+                HolderType.GROUP,
+                VerboseCheckTarget.of(VerboseCheckTarget.GROUP_TYPE, "benchmark"),
+                queryOptions(0)
+        );
+        return createStandardCalculatorFor(metadata.getQueryOptions(), metadata);
+    }
+
+    /**
+     * Gets the query options for the given world index.
+     *
+     * @param world the world index
+     * @return the query options
+     */
+    public static QueryOptions queryOptions(int world) {
+        ImmutableContextSet contexts = new ImmutableContextSetImpl.BuilderImpl()
+                .add(DefaultContextKeys.SERVER_KEY, SERVER)
+                .add(DefaultContextKeys.WORLD_KEY, "world" + world)
+                .build();
+        return new QueryOptionsBuilderImpl(QueryMode.CONTEXTUAL).context(contexts).build();
+    }
+
+    /**
+     * Generates a permission string of the form {@code plugin<n>.feature<n>.action<n>}.
+     *
+     * @param index the index of the permission
+     * @return the permission
+     */
+    public static String permission(int index) {
+        return "plugin" + (index % 40) + ".feature" + (index % 97) + ".action" + index;
+    }
+
+    /**
+     * Generates a source permission map of the given size, in the format accepted by
+     * {@link PermissionCalculator#setSourcePermissions(Map)}.
+     *
+     * <p>Roughly 2% of the generated nodes are wildcards, and {@code regexCount} regex nodes are added.</p>
+     *
+     * @param size the number of plain permission nodes
+     * @param regexCount the number of regex nodes
+     * @return the source map
+     */
+    public Map<String, Node> sourcePermissions(int size, int regexCount) {
+        Map<String, Node> map = new HashMap<>(size + size / 50 + regexCount);
+        for (int i = 0; i < size; i++) {
+            String permission = permission(i);
+            map.put(permission, NodeBuilders.determineMostApplicable(permission).value(this.random.nextInt(10) != 0).build());
+
+            if (i % 50 == 0) {
+                String wildcard = "plugin" + (i % 40) + ".feature" + (i % 97) + ".*";
+                map.put(wildcard, NodeBuilders.determineMostApplicable(wildcard).value(this.random.nextBoolean()).build());
+            }
+        }
+        for (int i = 0; i < regexCount; i++) {
+            String regex = "r=regex" + i + "\\.(foo|bar)\\.[a-z]+\\d*";
+            map.put(regex, NodeBuilders.determineMostApplicable(regex).value(true).build());
+        }
+        return map;
+    }
+
+    /**
+     * Generates a list of nodes of the given size, spread evenly across the given number of
+     * world contexts. (all in the {@link #SERVER} context)
+     *
+     * @param offset the index of the first node
+     * @param size the number of nodes
+     * @param worlds the number of distinct world contexts
+     * @return the nodes
+     */
+    public List<Node> contextualNodes(int offset, int size, int worlds) {
+        List<Node> nodes = new ArrayList<>(size);
+        for (int i = offset; i < offset + size; i++) {
+            nodes.add(NodeBuilders.determineMostApplicable(permission(i))
+                    .value(this.random.nextInt(10) != 0)
+                    .withContext(DefaultContextKeys.SERVER_KEY, SERVER)
+                    .withContext(DefaultContextKeys.WORLD_KEY, "world" + (i % worlds))
+                    .build());
+        }
+        return nodes;
+    }
+
+    /**
+     * Creates a linear inheritance chain of groups, {@code chain-0 -> chain-1 -> ... -> chain-(length - 1)},
+     * with the given number of nodes spread evenly between the groups.
+     *
+     * @param length the number of groups in the chain
+     * @param totalNodes the total number of nodes to give to the groups
+     * @param worlds the number of distinct world contexts
+     * @return the group at the start of the chain
+     */
+    public Group createGroupChain(int length, int totalNodes, int worlds) {
+        int nodesPerGroup = totalNodes / length;
+
+        Group previous = null;
+        for (int i = length - 1; i >= 0; i--) {
+            Group group = this.groupManager.getOrMake("chain-" + i);
+            group.setNodes(DataType.NORMAL, contextualNodes(i * nodesPerGroup, nodesPerGroup, worlds), false);
+            if (previous != null) {
+                group.normalData().add(Inheritance.builder().group(previous.getName()).build());
+            }
+            previous = group;
+        }
+        return previous;
+    }
+
+    /**
+     * Creates a user which inherits the given group, and has the given number of nodes of its own.
+     *
+     * @param parent the parent group
+     * @param ownNodes the number of nodes to give to the user
+     * @param worlds the number of distinct world contexts
+     * @return the user
+     */
+    public User createUser(Group parent, int ownNodes, int worlds) {
+        User user = new User(new UUID(this.random.nextLong(), this.random.nextLong()), this.plugin);
+        List<Node> nodes = contextualNodes(1_000_000, ownNodes, worlds);
+        nodes.add(Inheritance.builder().group(parent.getName()).build());
+        user.setNodes(DataType.NORMAL, nodes, false);
+        return user;
+    }
+
+}
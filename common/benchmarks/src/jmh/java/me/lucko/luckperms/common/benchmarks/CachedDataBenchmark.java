@@ -0,0 +1,100 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.benchmarks;
+
+import me.lucko.luckperms.common.cacheddata.AbstractCachedDataManager;
+import me.lucko.luckperms.common.model.Group;
+import me.lucko.luckperms.common.model.User;
+import net.luckperms.api.cacheddata.CachedMetaData;
+import net.luckperms.api.cacheddata.CachedPermissionData;
+import net.luckperms.api.query.QueryOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks a full rebuild of a users permission and meta caches
+ * (the work done by {@link AbstractCachedDataManager} after an invalidation).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CachedDataBenchmark {
+
+    @Param({"1000", "10000"})
+    public int nodes;
+
+    @Param({"1", "50"})
+    public int groups;
+
+    @Param({"200"})
+    public int contexts;
+
+    @Param({"false", "true"})
+    public boolean shareCalculators;
+
+    private User user;
+    private User defaultUser;
+    private User loadedDefaultUser;
+    private QueryOptions queryOptions;
+
+    @Setup
+    public void setup() {
+        BenchmarkEnvironment environment = new BenchmarkEnvironment(this.shareCalculators);
+        Group parent = environment.createGroupChain(this.groups, this.nodes, this.contexts);
+        this.user = environment.createUser(parent, 100, this.contexts);
+        this.queryOptions = BenchmarkEnvironment.queryOptions(this.contexts / 2);
+
+        // a user with no nodes of their own, whose permissions are identical to another
+        // (already loaded) user - the common case for most players
+        this.defaultUser = environment.createUser(parent, 0, this.contexts);
+        this.loadedDefaultUser = environment.createUser(parent, 0, this.contexts);
+        this.loadedDefaultUser.getCachedData().getPermissionData(this.queryOptions);
+    }
+
+    @Benchmark
+    public CachedPermissionData calculatePermissions() {
+        return this.user.getCachedData().permissionData().calculate(this.queryOptions);
+    }
+
+    @Benchmark
+    public CachedPermissionData calculatePermissionsDefaultUser() {
+        return this.defaultUser.getCachedData().permissionData().calculate(this.queryOptions);
+    }
+
+    @Benchmark
+    public CachedMetaData calculateMeta() {
+        return this.user.getCachedData().metaData().calculate(this.queryOptions);
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.benchmarks;
+
+import me.lucko.luckperms.common.model.Group;
+import me.lucko.luckperms.common.model.nodemap.NodeMap;
+import net.luckperms.api.node.Node;
+import net.luckperms.api.query.QueryOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the context filtered query methods of {@link NodeMap}, for holders
+ * with many context buckets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NodeMapBenchmark {
+
+    @Param({"10000"})
+    public int nodes;
+
+    @Param({"10", "1000"})
+    public int buckets;
+
+    private NodeMap map;
+    private QueryOptions queryOptions;
+
+    @Setup
+    public void setup() {
+        BenchmarkEnvironment environment = new BenchmarkEnvironment();
+        Group group = environment.createGroupChain(1, this.nodes, this.buckets);
+        this.map = group.normalData();
+        this.queryOptions = BenchmarkEnvironment.queryOptions(0);
+    }
+
+    @Benchmark
+    public List<Node> copyTo() {
+        List<Node> list = new ArrayList<>();
+        this.map.copyTo(list, this.queryOptions);
+        return list;
+    }
+
+    @Benchmark
+    public List<Node> forEach() {
+        List<Node> list = new ArrayList<>();
+        this.map.forEach(this.queryOptions, list::add);
+        return list;
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.benchmarks;
+
+import me.lucko.luckperms.common.model.Group;
+import me.lucko.luckperms.common.model.nodemap.NodeMap;
+import me.lucko.luckperms.common.model.nodemap.NodeMapCopyOnWrite;
+import me.lucko.luckperms.common.model.nodemap.NodeMapMutable;
+import net.luckperms.api.model.data.DataType;
+import net.luckperms.api.node.Node;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link NodeMap} implementations when loading a user's nodes.
+ *
+ * <p>The benchmark measures the time (and, with the gc profiler, the allocation) taken to
+ * load the nodes into a new map. At the end of each trial, the heap retained by a loaded
+ * map is estimated by loading {@value #RETAINED_SAMPLE_SIZE} of them, and printed.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NodeMapMemoryBenchmark {
+
+    private static final int RETAINED_SAMPLE_SIZE = 10000;
+
+    @Param({"mutable", "copy-on-write"})
+    public String implementation;
+
+    @Param({"20", "200"})
+    public int nodes;
+
+    private Group holder;
+    private List<Node> content;
+
+    /** Keeps the sampled maps reachable whilst the heap is measured */
+    private NodeMap[] retained;
+
+    @Setup
+    public void setup() {
+        BenchmarkEnvironment environment = new BenchmarkEnvironment();
+        this.holder = new Group("memory", environment.getPlugin());
+        this.content = environment.contextualNodes(0, this.nodes, 3);
+    }
+
+    private NodeMap createMap() {
+        if (this.implementation.equals("copy-on-write")) {
+            return new NodeMapCopyOnWrite(this.holder, DataType.NORMAL);
+        }
+        return new NodeMapMutable(this.holder, DataType.NORMAL);
+    }
+
+    @Benchmark
+    public NodeMap load() {
+        NodeMap map = createMap();
+        map.setContent(this.content);
+        return map;
+    }
+
+    @TearDown
+    public void printRetainedSize() {
+        long before = usedMemory();
+        this.retained = new NodeMap[RETAINED_SAMPLE_SIZE];
+        for (int i = 0; i < this.retained.length; i++) {
+            this.retained[i] = load();
+        }
+        long after = usedMemory();
+        this.retained = null;
+
+        System.out.printf("%n%s map with %d nodes: ~%d bytes retained per user (%d maps sampled)%n",
+                this.implementation, this.nodes, (after - before) / RETAINED_SAMPLE_SIZE, RETAINED_SAMPLE_SIZE);
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+}
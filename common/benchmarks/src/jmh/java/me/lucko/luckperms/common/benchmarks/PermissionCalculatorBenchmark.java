@@ -0,0 +1,92 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.benchmarks;
+
+import me.lucko.luckperms.common.cacheddata.result.TristateResult;
+import me.lucko.luckperms.common.calculator.PermissionCalculator;
+import me.lucko.luckperms.common.verbose.event.CheckOrigin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link PermissionCalculator#checkPermission(String, CheckOrigin)}, for both
+ * lookups served by the calculators cache and lookups which have to be calculated.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PermissionCalculatorBenchmark {
+
+    @Param({"1000", "10000"})
+    public int nodes;
+
+    private PermissionCalculator calculator;
+    private String[] checks;
+    private int index;
+
+    @Setup
+    public void setup() {
+        BenchmarkEnvironment environment = new BenchmarkEnvironment();
+        this.calculator = environment.createStandardCalculator();
+        this.calculator.setSourcePermissions(environment.sourcePermissions(this.nodes, 10));
+
+        // a mix of direct hits, wildcard hits and complete misses
+        this.checks = new String[1024];
+        for (int i = 0; i < this.checks.length; i++) {
+            int n = environment.getRandom().nextInt(this.nodes * 2);
+            this.checks[i] = n < this.nodes ? BenchmarkEnvironment.permission(n) : "plugin" + (n % 40) + ".feature" + (n % 97) + ".unknown" + n;
+        }
+
+        // warm the lookup cache
+        for (String check : this.checks) {
+            this.calculator.checkPermission(check, CheckOrigin.INTERNAL);
+        }
+    }
+
+    private String nextCheck() {
+        return this.checks[this.index++ & (this.checks.length - 1)];
+    }
+
+    @Benchmark
+    public TristateResult checkPermissionCached() {
+        return this.calculator.checkPermission(nextCheck(), CheckOrigin.INTERNAL);
+    }
+
+    @Benchmark
+    public TristateResult checkPermissionUncached() {
+        // bypass the lookup cache and calculate the result from the processors
+        return this.calculator.apply(nextCheck());
+    }
+
+}
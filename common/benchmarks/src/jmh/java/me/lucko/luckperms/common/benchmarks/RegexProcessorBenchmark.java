@@ -0,0 +1,84 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.benchmarks;
+
+import me.lucko.luckperms.common.cacheddata.result.TristateResult;
+import me.lucko.luckperms.common.calculator.processor.RegexAutomaton;
+import me.lucko.luckperms.common.calculator.processor.RegexProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link RegexProcessor} lookups against holders with an increasing number of regex nodes.
+ *
+ * <p>Each lookup is performed with the patterns evaluated one at a time, and with them compiled into
+ * a single {@link RegexAutomaton} - the crossover point between the two determines
+ * {@link RegexProcessor#DEFAULT_AUTOMATON_THRESHOLD}.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RegexProcessorBenchmark {
+
+    @Param({"1", "2", "4", "8", "16", "100", "1000"})
+    public int regexNodes;
+
+    @Param({"false", "true"})
+    public boolean automaton;
+
+    private RegexProcessor processor;
+    private String[] checks;
+    private int index;
+
+    @Setup
+    public void setup() {
+        BenchmarkEnvironment environment = new BenchmarkEnvironment();
+        this.processor = new RegexProcessor(this.automaton ? 0 : Integer.MAX_VALUE);
+        this.processor.setSource(environment.sourcePermissions(100, this.regexNodes));
+        this.processor.refresh();
+
+        // half of the checks match one of the regex nodes, the other half match none of them
+        this.checks = new String[1024];
+        for (int i = 0; i < this.checks.length; i++) {
+            int n = environment.getRandom().nextInt(this.regexNodes * 2);
+            this.checks[i] = n < this.regexNodes ? "regex" + n + ".foo.test" + i : BenchmarkEnvironment.permission(n);
+        }
+    }
+
+    @Benchmark
+    public TristateResult hasPermission() {
+        return this.processor.hasPermission(TristateResult.UNDEFINED, this.checks[this.index++ & (this.checks.length - 1)]);
+    }
+
+}
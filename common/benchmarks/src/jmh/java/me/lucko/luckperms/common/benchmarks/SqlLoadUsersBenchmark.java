@@ -0,0 +1,188 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.benchmarks;
+
+import me.lucko.luckperms.common.config.ConfigKeys;
+import me.lucko.luckperms.common.config.LuckPermsConfiguration;
+import me.lucko.luckperms.common.model.User;
+import me.lucko.luckperms.common.model.manager.user.StandardUserManager;
+import me.lucko.luckperms.common.model.manager.user.UserManager;
+import me.lucko.luckperms.common.node.types.Permission;
+import me.lucko.luckperms.common.plugin.LuckPermsPlugin;
+import me.lucko.luckperms.common.plugin.bootstrap.LuckPermsBootstrap;
+import me.lucko.luckperms.common.storage.StorageMetadata;
+import me.lucko.luckperms.common.storage.implementation.sql.SqlStorage;
+import me.lucko.luckperms.common.storage.implementation.sql.StatementProcessor;
+import me.lucko.luckperms.common.storage.implementation.sql.connection.ConnectionFactory;
+import me.lucko.luckperms.common.storage.implementation.sql.connection.file.H2ConnectionFactory;
+import me.lucko.luckperms.common.storage.implementation.sql.connection.file.NonClosableConnection;
+import net.luckperms.api.model.data.DataType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Benchmarks {@link SqlStorage#loadUsers(Set)} (as used when reloading all users during a sync)
+ * against in-memory H2 and SQLite databases.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SqlLoadUsersBenchmark {
+
+    @Param({"H2", "SQLite"})
+    public String database;
+
+    @Param({"10000"})
+    public int users;
+
+    @Param({"5"})
+    public int nodesPerUser;
+
+    private SqlStorage storage;
+    private StandardUserManager userManager;
+    private Set<UUID> uniqueIds;
+
+    @Setup
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void setup() throws Exception {
+        BenchmarkEnvironment environment = new BenchmarkEnvironment();
+        LuckPermsPlugin plugin = environment.getPlugin();
+
+        LuckPermsConfiguration configuration = plugin.getConfiguration();
+        when(configuration.get(ConfigKeys.PRIMARY_GROUP_CALCULATION_METHOD)).thenReturn("parents-by-weight");
+        when(configuration.get(ConfigKeys.USER_CACHE_MAX_SIZE)).thenReturn(0);
+        when(configuration.get(ConfigKeys.USER_CACHE_SNAPSHOT_MEMORY)).thenReturn(0);
+        when(configuration.get(ConfigKeys.SQL_CHANGE_LOG)).thenReturn(false);
+
+        LuckPermsBootstrap bootstrap = mock(LuckPermsBootstrap.class, withSettings().stubOnly());
+        when(bootstrap.getResourceStream(anyString())).then(invocation -> SqlLoadUsersBenchmark.class.getClassLoader().getResourceAsStream(invocation.getArgument(0)));
+        when(plugin.getBootstrap()).thenReturn(bootstrap);
+
+        this.userManager = new StandardUserManager(plugin);
+        when(plugin.getUserManager()).thenReturn((UserManager) this.userManager);
+
+        this.storage = new SqlStorage(plugin, new InMemoryConnectionFactory(this.database), "luckperms_");
+        this.storage.init();
+
+        this.uniqueIds = new HashSet<>();
+        for (int i = 0; i < this.users; i++) {
+            UUID uniqueId = new UUID(environment.getRandom().nextLong(), environment.getRandom().nextLong());
+            User user = this.userManager.getOrMake(uniqueId);
+            for (int j = 0; j < this.nodesPerUser; j++) {
+                user.setNode(DataType.NORMAL, Permission.builder().permission(BenchmarkEnvironment.permission(i * this.nodesPerUser + j)).build(), false);
+            }
+            this.storage.saveUser(user);
+            this.uniqueIds.add(uniqueId);
+        }
+        unloadUsers();
+    }
+
+    // unload the users again after each invocation, so every load starts from an empty user manager
+    @TearDown(Level.Invocation)
+    public void unloadUsers() {
+        for (UUID uniqueId : this.uniqueIds) {
+            this.userManager.unload(uniqueId);
+        }
+    }
+
+    @TearDown
+    public void shutdown() {
+        this.storage.shutdown();
+    }
+
+    @Benchmark
+    public Map<UUID, User> loadUsers() throws Exception {
+        return this.storage.loadUsers(this.uniqueIds);
+    }
+
+    private static final class InMemoryConnectionFactory implements ConnectionFactory {
+        private final String implementationName;
+        private final NonClosableConnection connection;
+
+        InMemoryConnectionFactory(String implementationName) throws SQLException {
+            this.implementationName = implementationName;
+            this.connection = new NonClosableConnection(DriverManager.getConnection(implementationName.equals("H2")
+                    ? "jdbc:h2:mem:benchmark"
+                    : "jdbc:sqlite::memory:"
+            ));
+        }
+
+        @Override
+        public String getImplementationName() {
+            return this.implementationName;
+        }
+
+        @Override
+        public StorageMetadata getMeta() {
+            return new StorageMetadata();
+        }
+
+        @Override
+        public void init(LuckPermsPlugin plugin) {
+
+        }
+
+        @Override
+        public void shutdown() throws Exception {
+            this.connection.shutdown();
+        }
+
+        @Override
+        public StatementProcessor getStatementProcessor() {
+            return this.implementationName.equals("H2")
+                    ? H2ConnectionFactory.STATEMENT_PROCESSOR
+                    : StatementProcessor.USE_BACKTICKS;
+        }
+
+        @Override
+        public Connection getConnection() {
+            return this.connection;
+        }
+    }
+
+}
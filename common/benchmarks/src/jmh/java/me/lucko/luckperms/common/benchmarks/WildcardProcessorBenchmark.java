@@ -0,0 +1,85 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.benchmarks;
+
+import me.lucko.luckperms.common.cacheddata.result.TristateResult;
+import me.lucko.luckperms.common.calculator.processor.WildcardProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link WildcardProcessor} lookups for permissions of varying depth.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WildcardProcessorBenchmark {
+
+    @Param({"1000", "10000"})
+    public int nodes;
+
+    @Param({"3", "8"})
+    public int depth;
+
+    @Param({"false", "true"})
+    public boolean compiled;
+
+    private WildcardProcessor processor;
+    private String[] checks;
+    private int index;
+
+    @Setup
+    public void setup() {
+        BenchmarkEnvironment environment = new BenchmarkEnvironment();
+        this.processor = new WildcardProcessor(this.compiled);
+        this.processor.setSource(environment.sourcePermissions(this.nodes, 0));
+        this.processor.refresh();
+
+        this.checks = new String[1024];
+        for (int i = 0; i < this.checks.length; i++) {
+            int n = environment.getRandom().nextInt(this.nodes);
+            StringBuilder sb = new StringBuilder("plugin").append(n % 40).append(".feature").append(n % 97);
+            for (int d = 2; d < this.depth; d++) {
+                sb.append(".segment").append(d);
+            }
+            this.checks[i] = sb.toString();
+        }
+    }
+
+    @Benchmark
+    public TristateResult hasPermission() {
+        return this.processor.hasPermission(TristateResult.UNDEFINED, this.checks[this.index++ & (this.checks.length - 1)]);
+    }
+
+}
@@ -40,6 +40,7 @@ import me.lucko.luckperms.common.api.implementation.ApiTrackManager;
 import me.lucko.luckperms.common.api.implementation.ApiUserManager;
 import me.lucko.luckperms.common.config.ConfigKeys;
 import me.lucko.luckperms.common.event.AbstractEventBus;
+import me.lucko.luckperms.common.memory.MemoryEstimator;
 import me.lucko.luckperms.common.messaging.LuckPermsMessagingService;
 import me.lucko.luckperms.common.plugin.LuckPermsPlugin;
 import me.lucko.luckperms.common.plugin.bootstrap.BootstrappedWithLoader;
@@ -58,6 +59,7 @@ import net.luckperms.api.model.user.UserManager;
 import net.luckperms.api.node.NodeBuilderRegistry;
 import net.luckperms.api.node.matcher.NodeMatcherFactory;
 import net.luckperms.api.platform.Health;
+import net.luckperms.api.platform.MemoryUsage;
 import net.luckperms.api.platform.Platform;
 import net.luckperms.api.platform.PlayerAdapter;
 import net.luckperms.api.platform.PluginMetadata;
@@ -180,6 +182,11 @@ public class LuckPermsApiProvider implements LuckPerms {
         return this.plugin.runHealthCheck();
     }
 
+    @Override
+    public @NonNull MemoryUsage estimateMemoryUsage(int holders) {
+        return MemoryEstimator.estimate(this.plugin, holders);
+    }
+
     @Override
     public @NonNull AbstractEventBus<?> getEventBus() {
         return this.plugin.getEventDispatcher().getEventBus();
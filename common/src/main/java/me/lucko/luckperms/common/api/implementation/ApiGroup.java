@@ -79,14 +79,6 @@ public class ApiGroup extends ApiPermissionHolder implements net.luckperms.api.m
         return this.handle.getCachedData();
     }
 
-    @Override
-    protected void onNodeChange() {
-        // invalidate caches - they have potentially been affected by
-        // this change.
-        this.handle.getPlugin().getGroupManager().invalidateAllGroupCaches();
-        this.handle.getPlugin().getUserManager().invalidateAllUserCaches();
-    }
-
     @Override
     public boolean equals(Object o) {
         if (o == this) return true;
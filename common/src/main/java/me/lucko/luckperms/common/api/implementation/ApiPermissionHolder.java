@@ -68,9 +68,8 @@ public class ApiPermissionHolder implements net.luckperms.api.model.PermissionHo
     }
 
     protected void onNodeChange() {
-        // overridden by groups
         // when a node is changed on a group, it could potentially affect other groups/users,
-        // so their caches need to be invalidated too. we handle this automatically for API users.
+        // but the caches which depend on the group are invalidated by Group#invalidateCache.
     }
 
     @Override
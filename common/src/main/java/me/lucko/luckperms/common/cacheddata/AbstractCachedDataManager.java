@@ -27,10 +27,12 @@ package me.lucko.luckperms.common.cacheddata;
 
 import me.lucko.luckperms.common.cache.LoadingMap;
 import me.lucko.luckperms.common.cacheddata.type.MetaAccumulator;
+import me.lucko.luckperms.common.cacheddata.type.MetaCache;
 import me.lucko.luckperms.common.cacheddata.type.MonitoredMetaCache;
 import me.lucko.luckperms.common.cacheddata.type.PermissionCache;
 import me.lucko.luckperms.common.calculator.CalculatorFactory;
 import me.lucko.luckperms.common.calculator.PermissionCalculator;
+import me.lucko.luckperms.common.config.ConfigKeys;
 import me.lucko.luckperms.common.plugin.LuckPermsPlugin;
 import me.lucko.luckperms.common.util.CaffeineFactory;
 import me.lucko.luckperms.common.util.CompletableFutures;
@@ -43,7 +45,11 @@ import net.luckperms.api.node.ChatMetaType;
 import net.luckperms.api.node.Node;
 import net.luckperms.api.query.QueryOptions;
 import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
@@ -141,6 +147,22 @@ public abstract class AbstractCachedDataManager implements CachedDataManager {
      */
     protected abstract <M extends Map<String, Node>> M resolvePermissions(IntFunction<M> mapFactory, QueryOptions queryOptions);
 
+    /**
+     * Resolves the owners permissions data for only the given keys.
+     *
+     * <p>Implementations should override this if they can do better than
+     * resolving and then filtering the full map.</p>
+     *
+     * @param keys the (lowercase) keys to resolve
+     * @param queryOptions the query options
+     * @return the resolved permissions, containing only the given keys
+     */
+    protected Map<String, Node> resolvePermissions(Set<String> keys, QueryOptions queryOptions) {
+        Map<String, Node> permissions = resolvePermissions(HashMap::new, queryOptions);
+        permissions.keySet().retainAll(keys);
+        return permissions;
+    }
+
     /**
      * Resolves the owners meta data for the given {@link QueryOptions}.
      *
@@ -154,6 +176,10 @@ public abstract class AbstractCachedDataManager implements CachedDataManager {
         CacheMetadata metadata = getMetadataForQueryOptions(queryOptions);
 
         ConcurrentHashMap<String, Node> sourcePermissions = resolvePermissions(ConcurrentHashMap::new, queryOptions);
+        if (this.plugin.getConfiguration().get(ConfigKeys.SHARE_PERMISSION_CALCULATORS)) {
+            PermissionCalculator calculator = PermissionCalculatorPool.get(getCalculatorFactory(), metadata, sourcePermissions);
+            return new PermissionCache(queryOptions, metadata, sourcePermissions, calculator);
+        }
         return new PermissionCache(queryOptions, metadata, getCalculatorFactory(), sourcePermissions);
     }
     
@@ -167,17 +193,102 @@ public abstract class AbstractCachedDataManager implements CachedDataManager {
         return new MonitoredMetaCache(this.plugin, queryOptions, metadata, accumulator);
     }
 
+    /**
+     * Calculates the permission and meta data for the given {@link QueryOptions}
+     * ahead of time, if it isn't already cached.
+     *
+     * <p>Preloaded data isn't counted as used until it is next requested, so it is
+     * cleaned up as normal if it turns out not to be needed.</p>
+     *
+     * @param queryOptions the query options
+     * @return the newly calculated permission data, or null if it was already cached
+     */
+    public final @Nullable PermissionCache preload(QueryOptions queryOptions) {
+        if (this.permission.cache.getIfPresent(queryOptions) != null) {
+            return null;
+        }
+
+        PermissionCache cache = this.permission.cache.get(queryOptions);
+        this.meta.cache.get(queryOptions);
+        return cache;
+    }
+
     @Override
     public final void invalidate() {
         this.permission.invalidate();
         this.meta.invalidate();
     }
 
+    /**
+     * Invalidates the permission and meta data cached for the given {@link QueryOptions}.
+     *
+     * @param queryOptions the query options
+     */
+    public final void invalidate(QueryOptions queryOptions) {
+        this.permission.invalidate(queryOptions);
+        this.meta.invalidate(queryOptions);
+    }
+
+    /**
+     * Updates the permission data cached in all query options following a change
+     * in the given permission keys, without recalculating it from scratch.
+     *
+     * <p>The change must not affect anything other than the resolved values of
+     * the keys - i.e. inheritance, meta and weights must be unchanged.</p>
+     *
+     * @param changedKeys the (lowercase) permission keys which have changed
+     */
+    public final void applyPermissionChanges(Set<String> changedKeys) {
+        for (QueryOptions queryOptions : this.permission.cache.keySet()) {
+            applyPermissionChanges(changedKeys, queryOptions);
+        }
+    }
+
+    /**
+     * Updates the permission data cached for the given {@link QueryOptions} following
+     * a change in the given permission keys, without recalculating it from scratch.
+     *
+     * @param changedKeys the (lowercase) permission keys which have changed
+     * @param queryOptions the query options
+     * @see #applyPermissionChanges(Set)
+     */
+    public final void applyPermissionChanges(Set<String> changedKeys, QueryOptions queryOptions) {
+        PermissionCache cache = this.permission.cache.getIfPresent(queryOptions);
+        if (cache == null) {
+            // the cache may be being calculated from the data before the change - removing it
+            // waits for the calculation to finish, and otherwise does nothing
+            this.permission.invalidate(queryOptions);
+            return;
+        }
+
+        if (!cache.applyChanges(changedKeys, keys -> resolvePermissions(keys, queryOptions))) {
+            invalidate(queryOptions);
+        }
+    }
+
     @Override
     public final void invalidatePermissionCalculators() {
         this.permission.cache.values().forEach(PermissionCache::invalidateCache);
     }
 
+    /**
+     * Gets the permission data currently held in the cache.
+     *
+     * @return the loaded permission data
+     */
+    public final Collection<PermissionCache> getLoadedPermissionData() {
+        return Collections.unmodifiableCollection(this.permission.cache.values());
+    }
+
+    /**
+     * Gets the meta data currently held in the cache.
+     *
+     * @return the loaded meta data
+     */
+    public final Collection<? extends MetaCache> getLoadedMetaData() {
+        return Collections.unmodifiableCollection(this.meta.cache.values());
+    }
+
     public final void performCacheCleanup() {
         this.permission.cleanup();
         this.meta.cleanup();
@@ -0,0 +1,262 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.cacheddata;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import me.lucko.luckperms.common.cacheddata.type.PermissionCache;
+import me.lucko.luckperms.common.config.ConfigKeys;
+import me.lucko.luckperms.common.model.User;
+import me.lucko.luckperms.common.plugin.LuckPermsPlugin;
+import me.lucko.luckperms.common.query.QueryOptionsImpl;
+import me.lucko.luckperms.common.util.CaffeineFactory;
+import net.luckperms.api.context.Context;
+import net.luckperms.api.context.ImmutableContextSet;
+import net.luckperms.api.query.QueryMode;
+import net.luckperms.api.query.QueryOptions;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Calculates permission and meta data ahead of time for the contexts a player
+ * is likely to move into next.
+ *
+ * <p>Each time a player's contexts change (e.g. they change world), the transition
+ * is recorded. The most frequently observed transitions out of the player's new
+ * contexts are then used to predict where they will go next, and the caches for
+ * those contexts are calculated on the async pool - so the first check after the
+ * next change does not have to calculate them on the calling thread.</p>
+ *
+ * <p>Predictions involving contexts which are no longer possible (according to
+ * the {@link me.lucko.luckperms.common.context.manager.ContextManager#getPotentialContexts()
+ * potential contexts}) are ignored. Warmed caches are cleaned up like any other
+ * cache if they aren't used, and the number which may be waiting to be used at
+ * once is limited by a budget.</p>
+ */
+public class CacheWarmer {
+
+    /** The maximum number of distinct context sets to record transitions from */
+    private static final int MAXIMUM_SOURCES = 1024;
+
+    /** The maximum number of distinct transitions to record from a single context set */
+    private static final int MAXIMUM_TRANSITIONS = 16;
+
+    /**
+     * How long a warmed cache counts against the budget for - the longest an unused
+     * cache can stay loaded (unused for two minutes, then up to two minutes until the
+     * next housekeeping run)
+     */
+    private static final long BUDGET_RELEASE_NANOS = TimeUnit.MINUTES.toNanos(4);
+
+    public static CacheWarmer fromConfig(LuckPermsPlugin plugin) {
+        return new CacheWarmer(
+                plugin,
+                plugin.getConfiguration().get(ConfigKeys.CACHE_WARMUP),
+                plugin.getConfiguration().get(ConfigKeys.CACHE_WARMUP_PREDICTIONS),
+                plugin.getConfiguration().get(ConfigKeys.CACHE_WARMUP_BUDGET)
+        );
+    }
+
+    private final LuckPermsPlugin plugin;
+    private final boolean enabled;
+    private final int predictions;
+    private final int budget;
+
+    /** The observed transitions between context sets, and how often each occurred */
+    private final Cache<ImmutableContextSet, Map<ImmutableContextSet, LongAdder>> transitions = CaffeineFactory.newBuilder()
+            .maximumSize(MAXIMUM_SOURCES)
+            .build();
+
+    /** The times at which the warmed caches counted against the budget were warmed, oldest first */
+    private final Queue<Long> warmedTimes = new ConcurrentLinkedQueue<>();
+    /** The number of warmed caches counted against the budget */
+    private final AtomicInteger warmedCount = new AtomicInteger(0);
+
+    public CacheWarmer(LuckPermsPlugin plugin, boolean enabled, int predictions, int budget) {
+        this.plugin = plugin;
+        this.enabled = enabled;
+        this.predictions = predictions;
+        this.budget = budget;
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Records that the query options for a player have changed, and warms up the
+     * caches for the contexts they are likely to move into next.
+     *
+     * @param uniqueId the unique id of the player
+     * @param previous the previous query options, or null if they have only just been calculated
+     * @param current the new query options
+     */
+    public void onTransition(UUID uniqueId, @Nullable QueryOptions previous, QueryOptions current) {
+        if (!this.enabled || current.mode() != QueryMode.CONTEXTUAL) {
+            return;
+        }
+
+        if (previous != null && previous.mode() == QueryMode.CONTEXTUAL && !previous.context().equals(current.context())) {
+            record(previous.context(), current.context());
+        }
+
+        List<ImmutableContextSet> predicted = predict(current.context());
+        if (!predicted.isEmpty()) {
+            this.plugin.getBootstrap().getScheduler().executeAsync(() -> warm(uniqueId, current, predicted));
+        }
+    }
+
+    private void record(ImmutableContextSet from, ImmutableContextSet to) {
+        Map<ImmutableContextSet, LongAdder> counts = this.transitions.get(from, x -> new ConcurrentHashMap<>());
+        LongAdder count = counts.get(to);
+        if (count == null) {
+            if (counts.size() >= MAXIMUM_TRANSITIONS) {
+                return;
+            }
+            count = counts.computeIfAbsent(to, x -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    /**
+     * Gets the most likely next context sets, given the current one.
+     *
+     * @param current the current context set
+     * @return the predicted context sets, most likely first
+     */
+    List<ImmutableContextSet> predict(ImmutableContextSet current) {
+        Map<ImmutableContextSet, LongAdder> counts = this.transitions.getIfPresent(current);
+        if (counts == null || counts.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<Map.Entry<ImmutableContextSet, LongAdder>> entries = new ArrayList<>(counts.entrySet());
+        entries.sort(Comparator.comparingLong((Map.Entry<ImmutableContextSet, LongAdder> e) -> e.getValue().sum()).reversed());
+
+        List<ImmutableContextSet> predicted = new ArrayList<>(Math.min(entries.size(), this.predictions));
+        for (int i = 0; i < entries.size() && predicted.size() < this.predictions; i++) {
+            predicted.add(entries.get(i).getKey());
+        }
+        return predicted;
+    }
+
+    private void warm(UUID uniqueId, QueryOptions current, List<ImmutableContextSet> predicted) {
+        User user = this.plugin.getUserManager().getIfLoaded(uniqueId);
+        if (user == null) {
+            return;
+        }
+
+        ImmutableContextSet potentialContexts = this.plugin.getContextManager().getPotentialContexts();
+        for (ImmutableContextSet contexts : predicted) {
+            if (!isPossible(contexts, potentialContexts)) {
+                continue;
+            }
+
+            if (!tryAcquireBudget()) {
+                return;
+            }
+
+            warm(user, QueryOptionsImpl.intern(current.toBuilder().context(contexts).build()));
+        }
+    }
+
+    /**
+     * Warms the cache for the given query options, once space in the budget has
+     * been reserved for it.
+     *
+     * <p>The reserved space is released again unless a cache was actually warmed.</p>
+     *
+     * @param user the user
+     * @param queryOptions the query options to warm the cache for
+     */
+    void warm(User user, QueryOptions queryOptions) {
+        PermissionCache cache = null;
+        try {
+            cache = user.getCachedData().preload(queryOptions);
+        } finally {
+            if (cache == null) {
+                // already cached or failed to calculate, so nothing was warmed
+                this.warmedCount.decrementAndGet();
+            } else {
+                this.warmedTimes.add(System.nanoTime());
+            }
+        }
+    }
+
+    /**
+     * Releases the budget held by caches which were warmed long enough ago to have
+     * been either used or cleaned up, and then tries to reserve space for another.
+     *
+     * @return true if space was reserved
+     */
+    boolean tryAcquireBudget() {
+        long now = System.nanoTime();
+        Long time;
+        while ((time = this.warmedTimes.peek()) != null && now - time >= BUDGET_RELEASE_NANOS) {
+            if (this.warmedTimes.remove(time)) {
+                this.warmedCount.decrementAndGet();
+            }
+        }
+
+        while (true) {
+            int count = this.warmedCount.get();
+            if (count >= this.budget) {
+                return false;
+            }
+            if (this.warmedCount.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Gets if a context set is still possible - i.e. it does not contain any values
+     * which are missing from the potential contexts for the same key.
+     *
+     * @param contexts the context set
+     * @param potentialContexts the potential contexts
+     * @return if the context set is possible
+     */
+    static boolean isPossible(ImmutableContextSet contexts, ImmutableContextSet potentialContexts) {
+        for (Context context : contexts) {
+            if (potentialContexts.containsKey(context.getKey()) && !potentialContexts.contains(context)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
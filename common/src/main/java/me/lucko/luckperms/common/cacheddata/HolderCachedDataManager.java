@@ -35,6 +35,7 @@ import net.luckperms.api.node.Node;
 import net.luckperms.api.query.QueryOptions;
 
 import java.util.Map;
+import java.util.Set;
 import java.util.function.IntFunction;
 
 /**
@@ -76,11 +77,16 @@ public abstract class HolderCachedDataManager<T extends PermissionHolder> extend
 
     @Override
     protected <M extends Map<String, Node>> M resolvePermissions(IntFunction<M> mapFactory, QueryOptions queryOptions) {
-        return this.holder.exportPermissions(mapFactory, queryOptions, true, getPlugin().getConfiguration().get(ConfigKeys.APPLYING_SHORTHAND));
+        return this.holder.exportPermissions(mapFactory, queryOptions, true, getPlugin().getConfiguration().get(ConfigKeys.APPLYING_SHORTHAND), group -> group.registerDependent(this, queryOptions));
+    }
+
+    @Override
+    protected Map<String, Node> resolvePermissions(Set<String> keys, QueryOptions queryOptions) {
+        return this.holder.exportPermissions(keys, queryOptions, getPlugin().getConfiguration().get(ConfigKeys.APPLYING_SHORTHAND));
     }
 
     @Override
     protected void resolveMeta(MetaAccumulator accumulator, QueryOptions queryOptions) {
-        this.holder.accumulateMeta(accumulator, queryOptions);
+        this.holder.accumulateMeta(accumulator, queryOptions, group -> group.registerDependent(this, queryOptions));
     }
 }
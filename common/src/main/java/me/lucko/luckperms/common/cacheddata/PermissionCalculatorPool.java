@@ -0,0 +1,162 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.cacheddata;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import me.lucko.luckperms.common.calculator.CalculatorFactory;
+import me.lucko.luckperms.common.calculator.PermissionCalculator;
+import me.lucko.luckperms.common.model.HolderType;
+import me.lucko.luckperms.common.util.CaffeineFactory;
+import me.lucko.luckperms.common.verbose.event.CheckOrigin;
+import net.luckperms.api.model.PermissionHolder.Identifier;
+import net.luckperms.api.node.Node;
+import net.luckperms.api.node.metadata.types.InheritanceOriginMetadata;
+import net.luckperms.api.query.QueryOptions;
+
+import java.util.Map;
+
+/**
+ * A pool of {@link PermissionCalculator}s, shared between holders which resolve
+ * equivalent permissions for the same {@link QueryOptions}.
+ *
+ * <p>Most users on a server typically only inherit from the default group, so will
+ * resolve to an equivalent set of {@link Node}s. By sharing the calculator (and therefore
+ * its processors and lookup cache) between them, the cost of building and warming up a
+ * calculator is only paid once.</p>
+ *
+ * <p>Nodes inherited from groups are the same instances for every holder, however nodes
+ * owned by a user are not, and carry metadata which refers to that user. Results which
+ * refer to these nodes are mapped back to the holder's own node when the check is made,
+ * see {@link PermissionCalculator#checkPermission(String, CheckOrigin, CacheMetadata, Map)}.</p>
+ */
+final class PermissionCalculatorPool {
+    private PermissionCalculatorPool() {}
+
+    /** The shared calculators - values are weakly referenced, so entries are removed once no holder is using them */
+    private static final Cache<Key, PermissionCalculator> CALCULATORS = CaffeineFactory.newBuilder()
+            .weakValues()
+            .build();
+
+    /**
+     * Gets a calculator for the given source permissions, building a new one using the
+     * factory if an equivalent calculator is not already in use.
+     *
+     * @param calculatorFactory the calculator factory
+     * @param metadata the metadata of the cache requesting the calculator
+     * @param sourcePermissions the resolved permissions
+     * @return a calculator
+     */
+    static PermissionCalculator get(CalculatorFactory calculatorFactory, CacheMetadata metadata, Map<String, Node> sourcePermissions) {
+        Key key = new Key(calculatorFactory, metadata.getHolderType(), metadata.getQueryOptions(), sourcePermissions);
+        return CALCULATORS.get(key, k -> {
+            PermissionCalculator calculator = calculatorFactory.build(k.queryOptions, metadata);
+            calculator.setSourcePermissions(k.permissions);
+            return calculator;
+        });
+    }
+
+    /**
+     * Gets if two nodes are interchangeable as far as a calculator is concerned.
+     *
+     * @param a the first node
+     * @param b the second node
+     * @return if the nodes are equivalent
+     */
+    private static boolean equivalent(Node a, Node b) {
+        if (a == b) {
+            return true;
+        }
+
+        // Node#equals ignores metadata
+        if (b == null || !a.equals(b)) {
+            return false;
+        }
+
+        InheritanceOriginMetadata originA = a.getMetadata(InheritanceOriginMetadata.KEY).orElse(null);
+        InheritanceOriginMetadata originB = b.getMetadata(InheritanceOriginMetadata.KEY).orElse(null);
+        if (originA == null || originB == null) {
+            return originA == originB;
+        }
+        if (originA.equals(originB)) {
+            return true;
+        }
+
+        // nodes owned by (different) users - only the user themselves can be the origin of
+        // a user node in their resolved permissions
+        return originA.getDataType() == originB.getDataType() &&
+                originA.getOrigin().getType().equals(Identifier.USER_TYPE) &&
+                originB.getOrigin().getType().equals(Identifier.USER_TYPE);
+    }
+
+    private static final class Key {
+        private final CalculatorFactory calculatorFactory;
+        private final HolderType holderType;
+        private final QueryOptions queryOptions;
+        private final Map<String, Node> permissions;
+        private final int hashCode;
+
+        Key(CalculatorFactory calculatorFactory, HolderType holderType, QueryOptions queryOptions, Map<String, Node> permissions) {
+            this.calculatorFactory = calculatorFactory;
+            this.holderType = holderType;
+            this.queryOptions = queryOptions;
+            this.permissions = permissions;
+
+            int hash = System.identityHashCode(calculatorFactory);
+            hash = 31 * hash + holderType.hashCode();
+            hash = 31 * hash + queryOptions.hashCode();
+            hash = 31 * hash + permissions.hashCode();
+            this.hashCode = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+
+            if (this.hashCode != other.hashCode ||
+                    this.calculatorFactory != other.calculatorFactory ||
+                    this.holderType != other.holderType ||
+                    !this.queryOptions.equals(other.queryOptions) ||
+                    this.permissions.size() != other.permissions.size()) {
+                return false;
+            }
+
+            for (Map.Entry<String, Node> e : this.permissions.entrySet()) {
+                if (!equivalent(e.getValue(), other.permissions.get(e.getKey()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+    }
+
+}
@@ -57,6 +57,18 @@ public final class TristateResult extends AbstractResult<Tristate, Node, Tristat
         return this.processorClass;
     }
 
+    /**
+     * Returns a copy of this result, attributed to a different (but equivalent) node.
+     *
+     * @param node the node
+     * @return the new result
+     */
+    public TristateResult withNode(Node node) {
+        TristateResult result = new TristateResult(this.result, node, this.processorClass);
+        result.setOverriddenResult(this.overriddenResult);
+        return result;
+    }
+
     public @Nullable String processorClassFriendly() {
         if (this.processorClass == null) {
             return null;
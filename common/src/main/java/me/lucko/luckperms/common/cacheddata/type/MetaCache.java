@@ -209,6 +209,19 @@ public class MetaCache extends UsageTracked implements CachedMetaData {
         return this.queryOptions;
     }
 
+    /**
+     * Gets the number of meta values held by this cache, including prefixes and suffixes.
+     *
+     * @return the number of entries
+     */
+    public int getEntryCount() {
+        int count = this.prefixes.size() + this.suffixes.size();
+        for (List<StringResult<MetaNode>> values : this.meta.values()) {
+            count += values.size();
+        }
+        return count;
+    }
+
     private static final class LowerCaseMetaMap extends ForwardingMap<String, List<StringResult<MetaNode>>> {
         private final Map<String, List<StringResult<MetaNode>>> delegate;
 
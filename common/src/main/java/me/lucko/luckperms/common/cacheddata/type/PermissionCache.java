@@ -41,7 +41,9 @@ import org.checkerframework.checker.nullness.qual.NonNull;
 
 import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 /**
  * Holds cached permissions data for a given context
@@ -54,14 +56,17 @@ public class PermissionCache extends UsageTracked implements CachedPermissionDat
     private final QueryOptions queryOptions;
 
     /**
-     * The raw set of permission strings.
+     * Info about the nature of this cache
      */
-    private final Map<String, Node> permissions;
+    private final CacheMetadata metadata;
 
     /**
-     * A string->boolean view of {@link #permissions}
+     * The raw set of permission strings.
+     *
+     * <p>This map is never modified once it has been published - changes are
+     * applied by replacing it, see {@link #applyChanges(Set, Function)}.</p>
      */
-    private final Map<String, Boolean> permissionsView;
+    private volatile Map<String, Node> permissions;
 
     /**
      * The calculator instance responsible for resolving the raw permission strings in the permission map.
@@ -70,13 +75,35 @@ public class PermissionCache extends UsageTracked implements CachedPermissionDat
      */
     private final PermissionCalculator calculator;
 
+    /**
+     * If the calculator is shared with other caches, see the pooled constructor.
+     */
+    private final boolean sharedCalculator;
+
     public PermissionCache(QueryOptions queryOptions, CacheMetadata metadata, CalculatorFactory calculatorFactory, ConcurrentHashMap<String, Node> sourcePermissions) {
         this.queryOptions = queryOptions;
+        this.metadata = metadata;
         this.permissions = sourcePermissions;
-        this.permissionsView = Collections.unmodifiableMap(Maps.transformValues(this.permissions, Node::getValue));
 
         this.calculator = calculatorFactory.build(queryOptions, metadata);
         this.calculator.setSourcePermissions(this.permissions);
+        this.sharedCalculator = false;
+    }
+
+    /**
+     * Creates a new cache backed by an existing (possibly shared) calculator.
+     *
+     * @param queryOptions the query options
+     * @param metadata the metadata
+     * @param sourcePermissions the resolved permissions
+     * @param calculator the calculator, with equivalent source permissions already set
+     */
+    public PermissionCache(QueryOptions queryOptions, CacheMetadata metadata, ConcurrentHashMap<String, Node> sourcePermissions, PermissionCalculator calculator) {
+        this.queryOptions = queryOptions;
+        this.metadata = metadata;
+        this.permissions = sourcePermissions;
+        this.calculator = calculator;
+        this.sharedCalculator = true;
     }
 
     @Override
@@ -84,20 +111,63 @@ public class PermissionCache extends UsageTracked implements CachedPermissionDat
         this.calculator.invalidateCache();
     }
 
+    /**
+     * Applies a change in the resolved values of the given keys to this cache,
+     * without recalculating it from scratch.
+     *
+     * <p>Caches backed by a shared calculator cannot be changed in place, as
+     * other caches depend on their source permissions.</p>
+     *
+     * @param changedKeys the (lowercase) keys which have changed
+     * @param resolver resolves the new values of the changed keys, absent if a key is no longer set
+     * @return true if the change was applied, false if the cache must be recalculated instead
+     */
+    public synchronized boolean applyChanges(Set<String> changedKeys, Function<Set<String>, Map<String, Node>> resolver) {
+        if (this.sharedCalculator) {
+            return false;
+        }
+
+        // resolve under the lock, so that concurrent changes are applied in order
+        Map<String, Node> resolved = resolver.apply(changedKeys);
+
+        // apply the changes to a copy, so lookups never see a partially changed map
+        ConcurrentHashMap<String, Node> permissions = new ConcurrentHashMap<>(this.permissions);
+        for (String key : changedKeys) {
+            Node node = resolved.get(key);
+            if (node == null) {
+                permissions.remove(key);
+            } else {
+                permissions.put(key, node);
+            }
+        }
+        this.calculator.applySourceChanges(permissions, changedKeys);
+        this.permissions = permissions;
+        return true;
+    }
+
     public PermissionCalculator getCalculator() {
         return this.calculator;
     }
 
     @Override
     public @NonNull Map<String, Boolean> getPermissionMap() {
-        return this.permissionsView;
+        return Collections.unmodifiableMap(Maps.transformValues(this.permissions, Node::getValue));
     }
 
     public TristateResult checkPermission(String permission, CheckOrigin origin) {
         if (permission == null) {
             throw new NullPointerException("permission");
         }
-        return this.calculator.checkPermission(permission, origin);
+        return this.calculator.checkPermission(permission, origin, this.metadata, this.permissions);
+    }
+
+    public TristateResult[] checkPermissions(String[] permissions, CheckOrigin origin) {
+        for (String permission : permissions) {
+            if (permission == null) {
+                throw new NullPointerException("permission");
+            }
+        }
+        return this.calculator.checkPermissions(permissions, origin, this.metadata, this.permissions);
     }
 
     @Override
@@ -110,6 +180,16 @@ public class PermissionCache extends UsageTracked implements CachedPermissionDat
         return checkPermission(permission, CheckOrigin.LUCKPERMS_API).result();
     }
 
+    @Override
+    public @NonNull Tristate[] checkPermissions(@NonNull String... permissions) {
+        TristateResult[] results = checkPermissions(permissions, CheckOrigin.LUCKPERMS_API);
+        Tristate[] tristates = new Tristate[results.length];
+        for (int i = 0; i < results.length; i++) {
+            tristates[i] = results[i].result();
+        }
+        return tristates;
+    }
+
     @Override
     public @NonNull QueryOptions getQueryOptions() {
         return this.queryOptions;
@@ -0,0 +1,90 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.calculator;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.collect.ForwardingMap;
+import me.lucko.luckperms.common.cacheddata.result.TristateResult;
+
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A size-bounded alternative to {@link me.lucko.luckperms.common.cache.LoadingMap}
+ * for permission lookup results.
+ *
+ * @see LookupCacheBudget
+ */
+final class BoundedLookupCache extends ForwardingMap<String, TristateResult> {
+    private final LookupCacheBudget budget;
+    private final Function<String, TristateResult> loader;
+    private final Cache<String, TristateResult> cache;
+
+    BoundedLookupCache(LookupCacheBudget budget, Function<String, TristateResult> loader, int maximumSize) {
+        this.budget = budget;
+        this.loader = loader;
+        // maintenance (and so eviction) is cheap for caches of this size - run it on the calling
+        // thread, rather than scheduling a task on the loader pool for every few lookups
+        this.cache = Caffeine.newBuilder()
+                .executor(Runnable::run)
+                .maximumSize(maximumSize)
+                .<String, TristateResult>removalListener((key, value, cause) -> {
+                    if (cause.wasEvicted()) {
+                        budget.recordEviction();
+                    }
+                })
+                .build();
+    }
+
+    @Override
+    protected Map<String, TristateResult> delegate() {
+        return this.cache.asMap();
+    }
+
+    @Override
+    public TristateResult get(Object key) {
+        String permission = (String) key;
+
+        TristateResult value = this.cache.getIfPresent(permission);
+        if (value != null) {
+            this.budget.recordHit();
+            return value;
+        }
+
+        this.budget.recordMiss();
+        return this.cache.get(permission, this.loader);
+    }
+
+    void setMaximumSize(int maximumSize) {
+        this.cache.policy().eviction().ifPresent(eviction -> eviction.setMaximum(maximumSize));
+    }
+
+    void cleanUp() {
+        this.cache.cleanUp();
+    }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.calculator;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import me.lucko.luckperms.common.cache.LoadingMap;
+import me.lucko.luckperms.common.cacheddata.result.TristateResult;
+import me.lucko.luckperms.common.config.ConfigKeys;
+import me.lucko.luckperms.common.config.LuckPermsConfiguration;
+import me.lucko.luckperms.common.util.CaffeineFactory;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Controls the size of the lookup caches used by {@link PermissionCalculator}s,
+ * and records statistics about their usage.
+ *
+ * <p>By default, lookup caches are unbounded. If a per-calculator and/or global limit
+ * is configured, lookup caches are instead backed by a size-bounded Caffeine cache
+ * (which uses W-TinyLFU eviction). The global limit is divided evenly between all live
+ * calculators each time {@link #rebalance()} is called.</p>
+ */
+public class LookupCacheBudget {
+
+    /** The smallest size a lookup cache will be given when the global limit is divided up */
+    private static final int MINIMUM_SIZE = 64;
+
+    public static LookupCacheBudget fromConfig(LuckPermsConfiguration configuration) {
+        return new LookupCacheBudget(
+                configuration.get(ConfigKeys.PERMISSION_LOOKUP_CACHE_SIZE),
+                configuration.get(ConfigKeys.PERMISSION_LOOKUP_CACHE_GLOBAL_SIZE)
+        );
+    }
+
+    /** The maximum size of a single lookup cache, or 0 for no limit */
+    private final int maximumSize;
+
+    /** The maximum combined size of all lookup caches, or 0 for no limit */
+    private final int globalMaximumSize;
+
+    /** The bounded lookup caches currently in use (weakly referenced) */
+    private final Cache<BoundedLookupCache, Boolean> caches = CaffeineFactory.newBuilder().weakKeys().build();
+
+    /** The size given to new lookup caches */
+    private volatile int currentSize;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public LookupCacheBudget(int maximumSize, int globalMaximumSize) {
+        this.maximumSize = maximumSize;
+        this.globalMaximumSize = globalMaximumSize;
+        this.currentSize = maximumSize != 0 ? maximumSize : globalMaximumSize;
+    }
+
+    /**
+     * Gets if lookup caches are bounded in size.
+     *
+     * <p>Statistics are only recorded for bounded caches.</p>
+     *
+     * @return if caches are bounded
+     */
+    public boolean isBounded() {
+        return this.maximumSize != 0 || this.globalMaximumSize != 0;
+    }
+
+    /**
+     * Creates a new lookup cache.
+     *
+     * @param loader the function used to compute values missing from the cache
+     * @return the cache
+     */
+    public Map<String, TristateResult> createCache(Function<String, TristateResult> loader) {
+        if (!isBounded()) {
+            return LoadingMap.of(loader);
+        }
+
+        int size = this.currentSize;
+        if (this.globalMaximumSize != 0) {
+            // give the new cache its share of the global limit straight away, instead
+            // of letting it use the whole limit until the next rebalance
+            size = Math.min(size, shareOfGlobalMaximum(this.caches.estimatedSize() + 1));
+        }
+
+        BoundedLookupCache cache = new BoundedLookupCache(this, loader, size);
+        this.caches.put(cache, Boolean.TRUE);
+        return cache;
+    }
+
+    /**
+     * Divides the global limit between the lookup caches which are currently in use.
+     */
+    public void rebalance() {
+        if (this.globalMaximumSize == 0) {
+            return;
+        }
+
+        this.caches.cleanUp();
+        int size = shareOfGlobalMaximum(this.caches.estimatedSize());
+
+        this.currentSize = size;
+        for (BoundedLookupCache cache : this.caches.asMap().keySet()) {
+            cache.setMaximumSize(size);
+        }
+    }
+
+    private int shareOfGlobalMaximum(long count) {
+        int size = (int) Math.max(MINIMUM_SIZE, this.globalMaximumSize / Math.max(1, count));
+        if (this.maximumSize != 0) {
+            size = Math.min(size, this.maximumSize);
+        }
+        return size;
+    }
+
+    void recordHit() {
+        this.hits.increment();
+    }
+
+    void recordMiss() {
+        this.misses.increment();
+    }
+
+    void recordEviction() {
+        this.evictions.increment();
+    }
+
+    public int getCurrentSize() {
+        return this.currentSize;
+    }
+
+    public long getHitCount() {
+        return this.hits.sum();
+    }
+
+    public long getMissCount() {
+        return this.misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return this.evictions.sum();
+    }
+
+}
@@ -25,7 +25,6 @@
 
 package me.lucko.luckperms.common.calculator;
 
-import me.lucko.luckperms.common.cache.LoadingMap;
 import me.lucko.luckperms.common.cacheddata.CacheMetadata;
 import me.lucko.luckperms.common.cacheddata.result.TristateResult;
 import me.lucko.luckperms.common.calculator.processor.PermissionProcessor;
@@ -35,8 +34,10 @@ import net.luckperms.api.node.Node;
 import org.checkerframework.checker.nullness.qual.NonNull;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Function;
 
 /**
@@ -53,13 +54,17 @@ public class PermissionCalculator implements Function<String, TristateResult> {
     /** The processors which back this calculator */
     private final PermissionProcessor[] processors;
 
+    /** The current source permissions */
+    private volatile Map<String, Node> sourcePermissions = Collections.emptyMap();
+
     /** Loading cache for permission checks */
-    private final LoadingMap<String, TristateResult> lookupCache = LoadingMap.of(this);
+    private volatile Map<String, TristateResult> lookupCache;
 
     public PermissionCalculator(LuckPermsPlugin plugin, CacheMetadata metadata, Collection<PermissionProcessor> processors) {
         this.plugin = plugin;
         this.metadata = metadata;
         this.processors = processors.toArray(new PermissionProcessor[0]);
+        this.lookupCache = plugin.getLookupCacheBudget().createCache(this);
     }
 
     /**
@@ -72,16 +77,81 @@ public class PermissionCalculator implements Function<String, TristateResult> {
      * @return the result
      */
     public TristateResult checkPermission(String permission, CheckOrigin origin) {
+        return checkPermission(permission, origin, this.metadata, this.sourcePermissions);
+    }
+
+    /**
+     * Performs a permission check against this calculator, on behalf of a cache
+     * which is sharing it.
+     *
+     * <p>The given metadata is used (instead of this calculator's own) to attribute the
+     * check to the right holder, and results which refer to an equivalent node in the
+     * cache's source map are mapped back to that node.</p>
+     *
+     * @param permission the permission to check
+     * @param origin marks where this check originated from
+     * @param metadata the metadata of the cache performing the check
+     * @param sourcePermissions the source map of the cache performing the check
+     * @return the result
+     */
+    public TristateResult checkPermission(String permission, CheckOrigin origin, CacheMetadata metadata, Map<String, Node> sourcePermissions) {
         // get the result
         TristateResult result = this.lookupCache.get(permission);
+        if (sourcePermissions != this.sourcePermissions) {
+            result = localiseResult(result, sourcePermissions);
+        }
 
         // log this permission lookup to the verbose handler
-        this.plugin.getVerboseHandler().offerPermissionCheckEvent(origin, this.metadata.getVerboseCheckInfo(), this.metadata.getQueryOptions(), permission, result);
+        this.plugin.getVerboseHandler().offerPermissionCheckEvent(origin, metadata.getVerboseCheckInfo(), metadata.getQueryOptions(), permission, result);
 
         // return the result
         return result;
     }
 
+    /**
+     * Performs a batch of permission checks against this calculator, on behalf of
+     * the given cache.
+     *
+     * <p>The checks are recorded with the verbose handler as a single batch.</p>
+     *
+     * @param permissions the permissions to check
+     * @param origin marks where the checks originated from
+     * @param metadata the metadata of the cache performing the checks
+     * @param sourcePermissions the source map of the cache performing the checks
+     * @return the results, in the same order as the permissions
+     * @see #checkPermission(String, CheckOrigin, CacheMetadata, Map)
+     */
+    public TristateResult[] checkPermissions(String[] permissions, CheckOrigin origin, CacheMetadata metadata, Map<String, Node> sourcePermissions) {
+        boolean shared = sourcePermissions != this.sourcePermissions;
+
+        TristateResult[] results = new TristateResult[permissions.length];
+        for (int i = 0; i < permissions.length; i++) {
+            TristateResult result = this.lookupCache.get(permissions[i]);
+            if (shared) {
+                result = localiseResult(result, sourcePermissions);
+            }
+            results[i] = result;
+        }
+
+        // log the permission lookups to the verbose handler
+        this.plugin.getVerboseHandler().offerPermissionCheckEvents(origin, metadata.getVerboseCheckInfo(), metadata.getQueryOptions(), permissions, results);
+
+        return results;
+    }
+
+    private static TristateResult localiseResult(TristateResult result, Map<String, Node> sourcePermissions) {
+        Node node = result.node();
+        if (node == null) {
+            return result;
+        }
+
+        Node localNode = sourcePermissions.get(node.getKey().toLowerCase(Locale.ROOT));
+        if (localNode == null || localNode == node || !localNode.equals(node)) {
+            return result;
+        }
+        return result.withNode(localNode);
+    }
+
     @Override
     public TristateResult apply(@NonNull String permission) {
         // convert the permission to lowercase, as all values in the backing map are also lowercase.
@@ -107,12 +177,62 @@ public class PermissionCalculator implements Function<String, TristateResult> {
      * @param sourceMap the source map
      */
     public synchronized void setSourcePermissions(Map<String, Node> sourceMap) {
+        this.sourcePermissions = sourceMap;
         for (PermissionProcessor processor : this.processors) {
             processor.setSource(sourceMap);
             processor.refresh();
         }
     }
 
+    /**
+     * Replaces the source permissions map with one which only differs in the
+     * values of the given keys.
+     *
+     * <p>Only the processors whose input has changed are refreshed, and only
+     * the lookups which the change can affect are recalculated.</p>
+     *
+     * <p>Lookups keep running while the change is applied, so the unaffected
+     * results are copied into a new lookup cache, which is published once the
+     * processors have been refreshed. Any lookups made against the old state
+     * can only be stored in the old cache, which is then discarded.</p>
+     *
+     * @param sourceMap the new source map
+     * @param changedKeys the (lowercase) keys which have changed
+     */
+    public synchronized void applySourceChanges(Map<String, Node> sourceMap, Set<String> changedKeys) {
+        boolean affectsOtherKeys = false;
+        for (PermissionProcessor processor : this.processors) {
+            processor.setSource(sourceMap);
+            affectsOtherKeys |= processor.refresh(changedKeys);
+        }
+
+        Map<String, TristateResult> lookupCache = this.plugin.getLookupCacheBudget().createCache(this);
+        if (affectsOtherKeys) {
+            for (PermissionProcessor processor : this.processors) {
+                processor.invalidate();
+            }
+        } else {
+            for (Map.Entry<String, TristateResult> entry : this.lookupCache.entrySet()) {
+                // lookups are cached against the permission as it was checked, not its lowercase form
+                if (!changedKeys.contains(entry.getKey().toLowerCase(Locale.ROOT))) {
+                    lookupCache.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        this.sourcePermissions = sourceMap;
+        this.lookupCache = lookupCache;
+    }
+
+    /**
+     * Gets the number of lookup results currently cached by this calculator.
+     *
+     * @return the lookup cache size
+     */
+    public int getLookupCacheSize() {
+        return this.lookupCache.size();
+    }
+
     public void invalidateCache() {
         for (PermissionProcessor processor : this.processors) {
             processor.invalidate();
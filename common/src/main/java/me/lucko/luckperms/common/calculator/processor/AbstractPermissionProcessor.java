@@ -27,6 +27,8 @@ package me.lucko.luckperms.common.calculator.processor;
 
 import me.lucko.luckperms.common.cacheddata.result.TristateResult;
 
+import java.util.Set;
+
 /**
  * Abstract implementation of {@link PermissionProcessor} that splits behaviour for normal
  * permission checks and override checks into two separate methods.
@@ -49,4 +51,10 @@ public abstract class AbstractPermissionProcessor implements PermissionProcessor
         return prev;
     }
 
+    // Processors are not backed by the source map unless they say otherwise
+    @Override
+    public boolean refresh(Set<String> changedKeys) {
+        return false;
+    }
+
 }
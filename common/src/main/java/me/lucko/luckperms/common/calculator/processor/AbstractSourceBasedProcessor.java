@@ -29,6 +29,7 @@ import net.luckperms.api.node.Node;
 
 import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
 
 public abstract class AbstractSourceBasedProcessor extends AbstractPermissionProcessor implements PermissionProcessor {
     protected Map<String, Node> sourceMap = Collections.emptyMap();
@@ -38,4 +39,10 @@ public abstract class AbstractSourceBasedProcessor extends AbstractPermissionPro
         this.sourceMap = sourceMap;
     }
 
+    @Override
+    public boolean refresh(Set<String> changedKeys) {
+        refresh();
+        return true;
+    }
+
 }
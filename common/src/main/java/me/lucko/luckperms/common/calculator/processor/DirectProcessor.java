@@ -27,6 +27,8 @@ package me.lucko.luckperms.common.calculator.processor;
 
 import me.lucko.luckperms.common.cacheddata.result.TristateResult;
 
+import java.util.Set;
+
 public class DirectProcessor extends AbstractSourceBasedProcessor implements PermissionProcessor {
     private static final TristateResult.Factory RESULT_FACTORY = new TristateResult.Factory(DirectProcessor.class);
 
@@ -35,4 +37,10 @@ public class DirectProcessor extends AbstractSourceBasedProcessor implements Per
         return RESULT_FACTORY.result(this.sourceMap.get(permission));
     }
 
+    @Override
+    public boolean refresh(Set<String> changedKeys) {
+        // lookups only ever read the exact key
+        return false;
+    }
+
 }
@@ -30,6 +30,7 @@ import me.lucko.luckperms.common.calculator.PermissionCalculator;
 import net.luckperms.api.node.Node;
 
 import java.util.Map;
+import java.util.Set;
 
 /**
  * A processor within a {@link PermissionCalculator}.
@@ -64,6 +65,21 @@ public interface PermissionProcessor {
 
     }
 
+    /**
+     * Called after the values of the given keys in the source map have changed.
+     *
+     * <p>Returns if the results for permissions other than the changed keys may
+     * also have been affected, for example by a changed wildcard. The default
+     * implementation performs a full {@link #refresh()} and assumes they have.</p>
+     *
+     * @param changedKeys the (lowercase) keys which have changed
+     * @return if permissions other than the changed keys may be affected
+     */
+    default boolean refresh(Set<String> changedKeys) {
+        refresh();
+        return true;
+    }
+
     /**
      * Called after the parent calculator has been invalidated
      */
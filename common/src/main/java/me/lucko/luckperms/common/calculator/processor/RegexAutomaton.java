@@ -0,0 +1,807 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.calculator.processor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An automaton which matches a string against a list of regular expressions
+ * in a single pass.
+ *
+ * <p>The patterns are compiled into a single (Thompson) NFA, which is converted lazily
+ * into a DFA as inputs are matched. The result of a match is the index of the first
+ * pattern in the list which {@link java.util.regex.Matcher#matches() matches} the
+ * entire input.</p>
+ *
+ * <p>Only a subset of the {@link java.util.regex.Pattern} syntax is supported - literals,
+ * {@code .}, character classes (including {@code \d}, {@code \w} and {@code \s}), groups,
+ * alternation and greedy/lazy quantifiers. Patterns which use anything else (anchors,
+ * lookaround, back references, flags, etc) are not compiled into the automaton, and must
+ * be checked separately by the caller - see {@link #isSupported(int)}.</p>
+ */
+public final class RegexAutomaton {
+
+    /** Returned by {@link #match(String)} if none of the supported patterns matched */
+    public static final int NO_MATCH = -1;
+
+    /**
+     * Returned by {@link #match(String)} if the input could not be matched by the automaton,
+     * either because it contains surrogates or because the DFA state limit was reached
+     */
+    public static final int UNSUPPORTED_INPUT = -2;
+
+    /** The maximum number of NFA states a single pattern can compile to */
+    private static final int MAX_STATES_PER_PATTERN = 10_000;
+
+    /** The maximum bound of a counted repetition, e.g. {@code x{1,64}} */
+    private static final int MAX_REPETITION = 64;
+
+    /** The maximum number of DFA states to build, after which inputs are left to the caller */
+    private static final int MAX_DFA_STATES = 1_000;
+
+    /** The maximum number of non-ASCII transitions to cache for each DFA state */
+    private static final int MAX_OTHER_TRANSITIONS = 64;
+
+    /** Scratch space for computing transitions, reused between calls on the same thread */
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    /**
+     * Compiles an automaton for the given patterns.
+     *
+     * @param patterns the patterns, in priority order
+     * @return the automaton
+     */
+    public static RegexAutomaton compile(List<String> patterns) {
+        return new RegexAutomaton(patterns);
+    }
+
+    // nfa states
+    private static final byte CHAR = 0;
+    private static final byte SPLIT = 1;
+    private static final byte MATCH = 2;
+
+    private byte[] stateTypes = new byte[64];
+    private CharMatcher[] stateMatchers = new CharMatcher[64];
+    private int[] stateOut1 = new int[64];
+    private int[] stateOut2 = new int[64];
+    private int stateCount = 0;
+
+    /** The first state of the pattern currently being compiled */
+    private int patternStartState = 0;
+
+    private final boolean[] supported;
+
+    // dfa states
+    private final Map<StateSet, DfaState> dfaStates = new ConcurrentHashMap<>();
+    private final DfaState start;
+
+    private RegexAutomaton(List<String> patterns) {
+        this.supported = new boolean[patterns.size()];
+
+        List<Integer> starts = new ArrayList<>(patterns.size());
+        for (int i = 0; i < patterns.size(); i++) {
+            int mark = this.stateCount;
+            this.patternStartState = mark;
+            try {
+                Expr expr = new Parser(patterns.get(i)).parse();
+                int match = addState(MATCH, null, i, -1);
+                starts.add(build(expr, match));
+                this.supported[i] = true;
+            } catch (UnsupportedPatternException e) {
+                // roll back any states created for the pattern
+                this.stateCount = mark;
+            }
+        }
+
+        int[] startStates = new int[starts.size()];
+        for (int i = 0; i < startStates.length; i++) {
+            startStates[i] = starts.get(i);
+        }
+        this.start = closure(startStates, startStates.length, SCRATCH.get());
+    }
+
+    /**
+     * Gets if the pattern at the given index was compiled into the automaton.
+     *
+     * @param index the index of the pattern
+     * @return if the pattern is supported
+     */
+    public boolean isSupported(int index) {
+        return this.supported[index];
+    }
+
+    /**
+     * Matches the input against the (supported) patterns.
+     *
+     * @param input the input
+     * @return the index of the first matching pattern, {@link #NO_MATCH} or {@link #UNSUPPORTED_INPUT}
+     */
+    public int match(String input) {
+        DfaState state = this.start;
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+
+            // java.util.regex matches by code point
+            if (Character.isSurrogate(c)) {
+                return UNSUPPORTED_INPUT;
+            }
+
+            state = step(state, c);
+            if (state == null) {
+                // too many DFA states - leave the input to the caller
+                return UNSUPPORTED_INPUT;
+            }
+            if (state.states.length == 0) {
+                // no further characters can be consumed
+                return i == input.length() - 1 ? state.match : NO_MATCH;
+            }
+        }
+        return state.match;
+    }
+
+    private DfaState step(DfaState state, char c) {
+        DfaState next = state.getTransition(c);
+        if (next != null) {
+            return next;
+        }
+
+        Scratch scratch = SCRATCH.get();
+        scratch.ensureCapacity(this.stateCount);
+
+        int[] targets = scratch.targets;
+        int count = 0;
+        for (int s : state.states) {
+            if (this.stateMatchers[s].matches(c)) {
+                targets[count++] = this.stateOut1[s];
+            }
+        }
+
+        next = closure(targets, count, scratch);
+        if (next != null) {
+            state.setTransition(c, next);
+        }
+        return next;
+    }
+
+    /**
+     * Gets the DFA state for the epsilon closure of the given NFA states.
+     *
+     * @param initial the initial NFA states
+     * @param count the number of initial states
+     * @param scratch the scratch space to use
+     * @return the DFA state, or null if it doesn't exist and the state limit has been reached
+     */
+    private DfaState closure(int[] initial, int count, Scratch scratch) {
+        scratch.ensureCapacity(this.stateCount);
+        int mark = scratch.nextMark();
+        int[] seen = scratch.seen;
+        int[] stack = scratch.stack;
+        int stackSize = 0;
+
+        int[] charStates = scratch.charStates;
+        int charStateCount = 0;
+        int match = NO_MATCH;
+
+        for (int i = 0; i < count; i++) {
+            int s = initial[i];
+            if (seen[s] != mark) {
+                seen[s] = mark;
+                stack[stackSize++] = s;
+            }
+        }
+
+        while (stackSize != 0) {
+            int s = stack[--stackSize];
+            switch (this.stateTypes[s]) {
+                case CHAR:
+                    charStates[charStateCount++] = s;
+                    break;
+                case SPLIT:
+                    int out1 = this.stateOut1[s];
+                    int out2 = this.stateOut2[s];
+                    if (seen[out2] != mark) {
+                        seen[out2] = mark;
+                        stack[stackSize++] = out2;
+                    }
+                    if (seen[out1] != mark) {
+                        seen[out1] = mark;
+                        stack[stackSize++] = out1;
+                    }
+                    break;
+                case MATCH:
+                    int index = this.stateOut1[s];
+                    if (match == NO_MATCH || index < match) {
+                        match = index;
+                    }
+                    break;
+                default:
+                    throw new AssertionError();
+            }
+        }
+
+        int[] states = Arrays.copyOf(charStates, charStateCount);
+        Arrays.sort(states);
+        StateSet key = new StateSet(states, match);
+
+        DfaState existing = this.dfaStates.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        if (this.dfaStates.size() >= MAX_DFA_STATES) {
+            return null;
+        }
+        return this.dfaStates.computeIfAbsent(key, k -> new DfaState(k.states, k.match));
+    }
+
+    private int addState(byte type, CharMatcher matcher, int out1, int out2) {
+        if (this.stateCount == this.stateTypes.length) {
+            int newLength = this.stateTypes.length * 2;
+            this.stateTypes = Arrays.copyOf(this.stateTypes, newLength);
+            this.stateMatchers = Arrays.copyOf(this.stateMatchers, newLength);
+            this.stateOut1 = Arrays.copyOf(this.stateOut1, newLength);
+            this.stateOut2 = Arrays.copyOf(this.stateOut2, newLength);
+        }
+
+        int state = this.stateCount++;
+        this.stateTypes[state] = type;
+        this.stateMatchers[state] = matcher;
+        this.stateOut1[state] = out1;
+        this.stateOut2[state] = out2;
+        return state;
+    }
+
+    /**
+     * Builds the NFA states for the given expression, followed by the {@code next} state.
+     *
+     * @param expr the expression
+     * @param next the state to transition to after the expression has been matched
+     * @return the start state of the expression
+     */
+    private int build(Expr expr, int next) throws UnsupportedPatternException {
+        if (this.stateCount - this.patternStartState > MAX_STATES_PER_PATTERN) {
+            throw new UnsupportedPatternException();
+        }
+
+        if (expr instanceof CharExpr) {
+            return addState(CHAR, ((CharExpr) expr).matcher, next, -1);
+        }
+
+        if (expr instanceof ConcatExpr) {
+            List<Expr> items = ((ConcatExpr) expr).items;
+            for (int i = items.size() - 1; i >= 0; i--) {
+                next = build(items.get(i), next);
+            }
+            return next;
+        }
+
+        if (expr instanceof AltExpr) {
+            List<Expr> alternatives = ((AltExpr) expr).alternatives;
+            int start = build(alternatives.get(alternatives.size() - 1), next);
+            for (int i = alternatives.size() - 2; i >= 0; i--) {
+                start = addState(SPLIT, null, build(alternatives.get(i), next), start);
+            }
+            return start;
+        }
+
+        if (expr instanceof RepeatExpr) {
+            RepeatExpr repeat = (RepeatExpr) expr;
+
+            int current;
+            if (repeat.max == -1) {
+                // x* - loop back to the split state after each match of x
+                int split = addState(SPLIT, null, -1, next);
+                this.stateOut1[split] = build(repeat.expr, split);
+                current = split;
+            } else {
+                // x{0,n} - nested optionals, (x(x)?)?
+                current = next;
+                for (int i = 0; i < repeat.max - repeat.min; i++) {
+                    current = addState(SPLIT, null, build(repeat.expr, current), next);
+                }
+            }
+
+            for (int i = 0; i < repeat.min; i++) {
+                current = build(repeat.expr, current);
+            }
+            return current;
+        }
+
+        throw new AssertionError(expr);
+    }
+
+    /**
+     * A set of NFA states, used as the key for a DFA state.
+     */
+    private static final class StateSet {
+        private final int[] states;
+        private final int match;
+        private final int hashCode;
+
+        StateSet(int[] states, int match) {
+            this.states = states;
+            this.match = match;
+            this.hashCode = 31 * Arrays.hashCode(states) + match;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof StateSet)) return false;
+            StateSet other = (StateSet) o;
+            return this.match == other.match && Arrays.equals(this.states, other.states);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+    }
+
+    private static final class DfaState {
+        /** The NFA (character) states */
+        private final int[] states;
+        /** The index of the first pattern which matches if the input ends in this state */
+        private final int match;
+        /** Transitions for ASCII characters - populated lazily */
+        private final DfaState[] asciiTransitions = new DfaState[128];
+        /** Transitions for other characters - created and populated lazily */
+        private volatile Map<Character, DfaState> otherTransitions;
+
+        DfaState(int[] states, int match) {
+            this.states = states;
+            this.match = match;
+        }
+
+        DfaState getTransition(char c) {
+            if (c < 128) {
+                return this.asciiTransitions[c];
+            }
+            Map<Character, DfaState> other = this.otherTransitions;
+            return other == null ? null : other.get(c);
+        }
+
+        void setTransition(char c, DfaState next) {
+            if (c < 128) {
+                this.asciiTransitions[c] = next;
+                return;
+            }
+
+            Map<Character, DfaState> other = this.otherTransitions;
+            if (other == null) {
+                synchronized (this) {
+                    other = this.otherTransitions;
+                    if (other == null) {
+                        other = new ConcurrentHashMap<>(4);
+                        this.otherTransitions = other;
+                    }
+                }
+            }
+            if (other.size() < MAX_OTHER_TRANSITIONS) {
+                other.put(c, next);
+            }
+        }
+    }
+
+    /**
+     * Buffers sized to the number of NFA states, used to compute transitions without
+     * allocating them each time.
+     */
+    private static final class Scratch {
+        private int[] targets = new int[0];
+        private int[] stack = new int[0];
+        private int[] charStates = new int[0];
+        /** Holds the mark of the closure computation which last visited each state */
+        private int[] seen = new int[0];
+        private int mark = 0;
+
+        void ensureCapacity(int stateCount) {
+            if (this.seen.length < stateCount) {
+                this.targets = new int[stateCount];
+                this.stack = new int[stateCount];
+                this.charStates = new int[stateCount];
+                this.seen = new int[stateCount];
+                this.mark = 0;
+            }
+        }
+
+        int nextMark() {
+            if (++this.mark == 0) {
+                // wrapped around - clear the old marks so they can't be mistaken for new ones
+                Arrays.fill(this.seen, 0);
+                this.mark = 1;
+            }
+            return this.mark;
+        }
+    }
+
+    /**
+     * Matches a single character against a set of ranges.
+     */
+    private static final class CharMatcher {
+        private static final CharMatcher LINE_TERMINATORS = new CharMatcher(new int[]{'\n', '\n', '\r', '\r', '\u0085', '\u0085', '\u2028', '\u2029'}, false);
+        private static final CharMatcher DIGIT = new CharMatcher(new int[]{'0', '9'}, false);
+        private static final CharMatcher WORD = new CharMatcher(new int[]{'0', '9', 'A', 'Z', '_', '_', 'a', 'z'}, false);
+        private static final CharMatcher SPACE = new CharMatcher(new int[]{'\t', '\r', ' ', ' '}, false);
+
+        /** Pairs of inclusive ranges, lower bound followed by upper bound */
+        private final int[] ranges;
+        private final boolean negated;
+
+        CharMatcher(int[] ranges, boolean negated) {
+            this.ranges = ranges;
+            this.negated = negated;
+        }
+
+        static CharMatcher single(char c) {
+            return new CharMatcher(new int[]{c, c}, false);
+        }
+
+        CharMatcher negate() {
+            return new CharMatcher(this.ranges, !this.negated);
+        }
+
+        boolean matches(char c) {
+            int[] ranges = this.ranges;
+            for (int i = 0; i < ranges.length; i += 2) {
+                if (c >= ranges[i] && c <= ranges[i + 1]) {
+                    return !this.negated;
+                }
+            }
+            return this.negated;
+        }
+
+        /**
+         * Gets the ranges matched by this matcher, with any negation applied.
+         *
+         * @return the ranges
+         */
+        int[] toRanges() {
+            if (!this.negated) {
+                return this.ranges;
+            }
+
+            int[] sorted = this.ranges.clone();
+            sortRanges(sorted);
+
+            List<Integer> result = new ArrayList<>();
+            int next = 0;
+            for (int i = 0; i < sorted.length; i += 2) {
+                if (sorted[i] > next) {
+                    result.add(next);
+                    result.add(sorted[i] - 1);
+                }
+                next = Math.max(next, sorted[i + 1] + 1);
+            }
+            if (next <= Character.MAX_VALUE) {
+                result.add(next);
+                result.add((int) Character.MAX_VALUE);
+            }
+            return result.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        private static void sortRanges(int[] ranges) {
+            // insertion sort by lower bound - there are only ever a handful of ranges
+            for (int i = 2; i < ranges.length; i += 2) {
+                int lo = ranges[i];
+                int hi = ranges[i + 1];
+                int j = i - 2;
+                while (j >= 0 && ranges[j] > lo) {
+                    ranges[j + 2] = ranges[j];
+                    ranges[j + 3] = ranges[j + 1];
+                    j -= 2;
+                }
+                ranges[j + 2] = lo;
+                ranges[j + 3] = hi;
+            }
+        }
+    }
+
+    private interface Expr { }
+
+    private static final class CharExpr implements Expr {
+        private final CharMatcher matcher;
+
+        CharExpr(CharMatcher matcher) {
+            this.matcher = matcher;
+        }
+    }
+
+    private static final class ConcatExpr implements Expr {
+        private final List<Expr> items;
+
+        ConcatExpr(List<Expr> items) {
+            this.items = items;
+        }
+    }
+
+    private static final class AltExpr implements Expr {
+        private final List<Expr> alternatives;
+
+        AltExpr(List<Expr> alternatives) {
+            this.alternatives = alternatives;
+        }
+    }
+
+    private static final class RepeatExpr implements Expr {
+        private final Expr expr;
+        private final int min;
+        private final int max; // -1 for unbounded
+
+        RepeatExpr(Expr expr, int min, int max) {
+            this.expr = expr;
+            this.min = min;
+            this.max = max;
+        }
+    }
+
+    /**
+     * Parses the supported subset of the {@link java.util.regex.Pattern} syntax.
+     *
+     * <p>Patterns are assumed to have already been successfully compiled by
+     * {@link java.util.regex.Pattern}, so the parser is only strict about rejecting
+     * constructs it does not support.</p>
+     */
+    private static final class Parser {
+        private final String pattern;
+        private int index = 0;
+
+        Parser(String pattern) {
+            this.pattern = pattern;
+        }
+
+        Expr parse() throws UnsupportedPatternException {
+            Expr expr = parseAlternation();
+            if (this.index != this.pattern.length()) {
+                throw new UnsupportedPatternException();
+            }
+            return expr;
+        }
+
+        private boolean hasNext() {
+            return this.index < this.pattern.length();
+        }
+
+        private char peek() {
+            return this.pattern.charAt(this.index);
+        }
+
+        private char next() throws UnsupportedPatternException {
+            if (!hasNext()) {
+                throw new UnsupportedPatternException();
+            }
+            char c = this.pattern.charAt(this.index++);
+            if (Character.isSurrogate(c)) {
+                throw new UnsupportedPatternException();
+            }
+            return c;
+        }
+
+        private Expr parseAlternation() throws UnsupportedPatternException {
+            List<Expr> alternatives = new ArrayList<>();
+            alternatives.add(parseSequence());
+            while (hasNext() && peek() == '|') {
+                this.index++;
+                alternatives.add(parseSequence());
+            }
+            return alternatives.size() == 1 ? alternatives.get(0) : new AltExpr(alternatives);
+        }
+
+        private Expr parseSequence() throws UnsupportedPatternException {
+            List<Expr> items = new ArrayList<>();
+            while (hasNext() && peek() != '|' && peek() != ')') {
+                Expr atom = parseAtom();
+                items.add(parseQuantifier(atom));
+            }
+            return items.size() == 1 ? items.get(0) : new ConcatExpr(items);
+        }
+
+        private Expr parseAtom() throws UnsupportedPatternException {
+            char c = next();
+            switch (c) {
+                case '(':
+                    if (hasNext() && peek() == '?') {
+                        // only non-capturing groups are supported
+                        this.index++;
+                        if (next() != ':') {
+                            throw new UnsupportedPatternException();
+                        }
+                    }
+                    Expr group = parseAlternation();
+                    if (next() != ')') {
+                        throw new UnsupportedPatternException();
+                    }
+                    return group;
+                case '[':
+                    return new CharExpr(parseClass());
+                case '.':
+                    return new CharExpr(CharMatcher.LINE_TERMINATORS.negate());
+                case '\\':
+                    return new CharExpr(parseEscape());
+                case '^':
+                case '$':
+                case ')':
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    throw new UnsupportedPatternException();
+                default:
+                    return new CharExpr(CharMatcher.single(c));
+            }
+        }
+
+        private Expr parseQuantifier(Expr atom) throws UnsupportedPatternException {
+            if (!hasNext()) {
+                return atom;
+            }
+
+            int min;
+            int max;
+            switch (peek()) {
+                case '*':
+                    this.index++;
+                    min = 0;
+                    max = -1;
+                    break;
+                case '+':
+                    this.index++;
+                    min = 1;
+                    max = -1;
+                    break;
+                case '?':
+                    this.index++;
+                    min = 0;
+                    max = 1;
+                    break;
+                case '{':
+                    this.index++;
+                    min = parseNumber();
+                    if (hasNext() && peek() == ',') {
+                        this.index++;
+                        max = hasNext() && peek() == '}' ? -1 : parseNumber();
+                    } else {
+                        max = min;
+                    }
+                    if (next() != '}' || min > MAX_REPETITION || max > MAX_REPETITION || (max != -1 && max < min)) {
+                        throw new UnsupportedPatternException();
+                    }
+                    break;
+                default:
+                    return atom;
+            }
+
+            if (hasNext()) {
+                char modifier = peek();
+                if (modifier == '?') {
+                    // lazy quantifiers accept the same inputs when matching the whole input
+                    this.index++;
+                } else if (modifier == '+') {
+                    // possessive quantifiers do not
+                    throw new UnsupportedPatternException();
+                }
+            }
+
+            if (hasNext() && (peek() == '*' || peek() == '+' || peek() == '?' || peek() == '{')) {
+                throw new UnsupportedPatternException();
+            }
+
+            return new RepeatExpr(atom, min, max);
+        }
+
+        private int parseNumber() throws UnsupportedPatternException {
+            int start = this.index;
+            while (hasNext() && peek() >= '0' && peek() <= '9' && this.index - start < 4) {
+                this.index++;
+            }
+            if (start == this.index) {
+                throw new UnsupportedPatternException();
+            }
+            return Integer.parseInt(this.pattern.substring(start, this.index));
+        }
+
+        private CharMatcher parseEscape() throws UnsupportedPatternException {
+            char c = next();
+            switch (c) {
+                case 'd': return CharMatcher.DIGIT;
+                case 'D': return CharMatcher.DIGIT.negate();
+                case 'w': return CharMatcher.WORD;
+                case 'W': return CharMatcher.WORD.negate();
+                case 's': return CharMatcher.SPACE;
+                case 'S': return CharMatcher.SPACE.negate();
+                case 't': return CharMatcher.single('\t');
+                case 'n': return CharMatcher.single('\n');
+                case 'r': return CharMatcher.single('\r');
+                case 'f': return CharMatcher.single('\f');
+                case 'a': return CharMatcher.single('\u0007');
+                case 'e': return CharMatcher.single('\u001B');
+                default:
+                    // other alphanumeric escapes are either special constructs (anchors,
+                    // back references, unicode classes, ...) or errors
+                    if (Character.isLetterOrDigit(c)) {
+                        throw new UnsupportedPatternException();
+                    }
+                    return CharMatcher.single(c);
+            }
+        }
+
+        private CharMatcher parseClass() throws UnsupportedPatternException {
+            boolean negated = false;
+            if (hasNext() && peek() == '^') {
+                this.index++;
+                negated = true;
+            }
+
+            List<Integer> ranges = new ArrayList<>();
+            boolean first = true;
+            while (true) {
+                char c = next();
+                if (c == ']' && !first) {
+                    break;
+                }
+                if (c == '[' || c == ']' || (c == '&' && hasNext() && peek() == '&')) {
+                    // nested classes, intersections
+                    throw new UnsupportedPatternException();
+                }
+                first = false;
+
+                CharMatcher item = c == '\\' ? parseEscape() : CharMatcher.single(c);
+                boolean single = !item.negated && item.ranges.length == 2 && item.ranges[0] == item.ranges[1];
+
+                if (hasNext() && peek() == '-' && this.index + 1 < this.pattern.length() && this.pattern.charAt(this.index + 1) != ']') {
+                    this.index++;
+                    char end = next();
+                    if (!single || end == '[' || end == '\\' || end < item.ranges[0]) {
+                        throw new UnsupportedPatternException();
+                    }
+                    ranges.add(item.ranges[0]);
+                    ranges.add((int) end);
+
+                    if (hasNext() && peek() == '-' && this.index + 1 < this.pattern.length() && this.pattern.charAt(this.index + 1) != ']') {
+                        throw new UnsupportedPatternException();
+                    }
+                    continue;
+                }
+
+                for (int bound : item.toRanges()) {
+                    ranges.add(bound);
+                }
+            }
+
+            return new CharMatcher(ranges.stream().mapToInt(Integer::intValue).toArray(), negated);
+        }
+    }
+
+    private static final class UnsupportedPatternException extends Exception {
+        UnsupportedPatternException() {
+            super(null, null, false, false);
+        }
+    }
+
+}
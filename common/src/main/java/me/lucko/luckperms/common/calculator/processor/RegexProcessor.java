@@ -34,16 +34,58 @@ import net.luckperms.api.node.Node;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class RegexProcessor extends AbstractSourceBasedProcessor implements PermissionProcessor {
     private static final TristateResult.Factory RESULT_FACTORY = new TristateResult.Factory(RegexProcessor.class);
 
-    private List<Map.Entry<Pattern, TristateResult>> regexPermissions = Collections.emptyList();
+    /**
+     * The number of regex permissions at which point they are compiled into a {@link RegexAutomaton}.
+     *
+     * <p>Below this, evaluating each pattern in turn is faster. (see RegexProcessorBenchmark)</p>
+     */
+    public static final int DEFAULT_AUTOMATON_THRESHOLD = 8;
+
+    /** The number of regex permissions at which point they are compiled into a {@link RegexAutomaton} */
+    private final int automatonThreshold;
+
+    private RegexPermissions regexPermissions = RegexPermissions.EMPTY;
+
+    public RegexProcessor() {
+        this(DEFAULT_AUTOMATON_THRESHOLD);
+    }
+
+    public RegexProcessor(int automatonThreshold) {
+        this.automatonThreshold = automatonThreshold;
+    }
 
     @Override
     public TristateResult hasPermission(String permission) {
-        for (Map.Entry<Pattern, TristateResult> e : this.regexPermissions) {
+        RegexPermissions regexPermissions = this.regexPermissions;
+        List<Map.Entry<Pattern, TristateResult>> patterns = regexPermissions.patterns;
+        RegexAutomaton automaton = regexPermissions.automaton;
+
+        if (automaton != null) {
+            int match = automaton.match(permission);
+            if (match != RegexAutomaton.UNSUPPORTED_INPUT) {
+                // check any patterns the automaton couldn't handle, in order, up to the one it matched
+                for (int i : regexPermissions.unsupportedPatterns) {
+                    if (match != RegexAutomaton.NO_MATCH && i > match) {
+                        break;
+                    }
+                    Map.Entry<Pattern, TristateResult> e = patterns.get(i);
+                    if (e.getKey().matcher(permission).matches()) {
+                        return e.getValue();
+                    }
+                }
+                return match == RegexAutomaton.NO_MATCH ? TristateResult.UNDEFINED : patterns.get(match).getValue();
+            }
+        }
+
+        for (Map.Entry<Pattern, TristateResult> e : patterns) {
             if (e.getKey().matcher(permission).matches()) {
                 return e.getValue();
             }
@@ -68,6 +110,43 @@ public class RegexProcessor extends AbstractSourceBasedProcessor implements Perm
             TristateResult value = RESULT_FACTORY.result(e.getValue());
             builder.add(Maps.immutableEntry(pattern, value));
         }
-        this.regexPermissions = builder.build();
+        List<Map.Entry<Pattern, TristateResult>> patterns = builder.build();
+
+        if (patterns.isEmpty() || patterns.size() < this.automatonThreshold) {
+            this.regexPermissions = new RegexPermissions(patterns, null, new int[0]);
+            return;
+        }
+
+        RegexAutomaton automaton = RegexAutomaton.compile(patterns.stream().map(e -> e.getKey().pattern()).collect(Collectors.toList()));
+        int[] unsupportedPatterns = IntStream.range(0, patterns.size()).filter(i -> !automaton.isSupported(i)).toArray();
+        this.regexPermissions = new RegexPermissions(patterns, automaton, unsupportedPatterns);
+    }
+
+    @Override
+    public boolean refresh(Set<String> changedKeys) {
+        for (String key : changedKeys) {
+            if (RegexPermission.parse(key) != null) {
+                refresh();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class RegexPermissions {
+        static final RegexPermissions EMPTY = new RegexPermissions(Collections.emptyList(), null, new int[0]);
+
+        /** The patterns, in the order they should be checked */
+        private final List<Map.Entry<Pattern, TristateResult>> patterns;
+        /** The automaton, or null if the patterns should be evaluated individually */
+        private final RegexAutomaton automaton;
+        /** The indexes of the patterns which are not supported by the automaton */
+        private final int[] unsupportedPatterns;
+
+        RegexPermissions(List<Map.Entry<Pattern, TristateResult>> patterns, RegexAutomaton automaton, int[] unsupportedPatterns) {
+            this.patterns = patterns;
+            this.automaton = automaton;
+            this.unsupportedPatterns = unsupportedPatterns;
+        }
     }
 }
@@ -25,14 +25,19 @@
 
 package me.lucko.luckperms.common.calculator.processor;
 
+import com.github.benmanes.caffeine.cache.Cache;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import me.lucko.luckperms.common.cacheddata.result.TristateResult;
 import me.lucko.luckperms.common.node.AbstractNode;
+import me.lucko.luckperms.common.util.CaffeineFactory;
 import net.luckperms.api.node.Node;
 import net.luckperms.api.util.Tristate;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 public class WildcardProcessor extends AbstractSourceBasedProcessor implements PermissionProcessor {
     private static final TristateResult.Factory RESULT_FACTORY = new TristateResult.Factory(WildcardProcessor.class);
@@ -49,11 +54,36 @@ public class WildcardProcessor extends AbstractSourceBasedProcessor implements P
         return isRootWildcard(permission) || permission.endsWith(WILDCARD_SUFFIX) && permission.length() > 2;
     }
 
+    /**
+     * Compiled tries, shared between processors with identical wildcard nodes.
+     *
+     * <p>Holders which inherit the same wildcards from the same groups will have identical
+     * node instances in their source maps, so can safely share the compiled results.</p>
+     */
+    private static final Cache<CompiledTrieKey, WildcardTrie> COMPILED_TRIES = CaffeineFactory.newBuilder().weakValues().build();
+
+    /** If wildcards should be compiled into a {@link WildcardTrie} */
+    private final boolean compiled;
+
     private Map<String, TristateResult> wildcardPermissions = Collections.emptyMap();
+    private WildcardTrie wildcardTrie = WildcardTrie.EMPTY;
     private TristateResult rootWildcardState = TristateResult.UNDEFINED;
 
+    public WildcardProcessor() {
+        this(false);
+    }
+
+    public WildcardProcessor(boolean compiled) {
+        this.compiled = compiled;
+    }
+
     @Override
     public TristateResult hasPermission(String permission) {
+        if (this.compiled) {
+            TristateResult match = this.wildcardTrie.lookup(permission);
+            return match != null ? match : this.rootWildcardState;
+        }
+
         String node = permission;
 
         while (true) {
@@ -76,23 +106,96 @@ public class WildcardProcessor extends AbstractSourceBasedProcessor implements P
 
     @Override
     public void refresh() {
-        ImmutableMap.Builder<String, TristateResult> builder = ImmutableMap.builder();
+        if (this.compiled) {
+            refreshCompiled();
+        } else {
+            ImmutableMap.Builder<String, TristateResult> builder = ImmutableMap.builder();
+            for (Map.Entry<String, Node> e : this.sourceMap.entrySet()) {
+                String key = e.getKey();
+                if (!key.endsWith(WILDCARD_SUFFIX) || key.length() <= 2) {
+                    continue;
+                }
+                key = key.substring(0, key.length() - 2);
+
+                TristateResult value = RESULT_FACTORY.result(e.getValue());
+                builder.put(key, value);
+            }
+            this.wildcardPermissions = builder.build();
+        }
+
+        Node rootWildcard = this.sourceMap.get(ROOT_WILDCARD);
+        if (rootWildcard == null) {
+            rootWildcard = this.sourceMap.get(ROOT_WILDCARD_WITH_QUOTES);
+        }
+        this.rootWildcardState = rootWildcard == null ? TristateResult.UNDEFINED : RESULT_FACTORY.result(rootWildcard);
+    }
+
+    @Override
+    public boolean refresh(Set<String> changedKeys) {
+        for (String key : changedKeys) {
+            if (isWildcardPermission(key)) {
+                refresh();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void refreshCompiled() {
+        Map<String, Node> wildcardNodes = new HashMap<>();
         for (Map.Entry<String, Node> e : this.sourceMap.entrySet()) {
             String key = e.getKey();
             if (!key.endsWith(WILDCARD_SUFFIX) || key.length() <= 2) {
                 continue;
             }
-            key = key.substring(0, key.length() - 2);
+            wildcardNodes.put(key.substring(0, key.length() - 2), e.getValue());
+        }
 
-            TristateResult value = RESULT_FACTORY.result(e.getValue());
-            builder.put(key, value);
+        if (wildcardNodes.isEmpty()) {
+            this.wildcardTrie = WildcardTrie.EMPTY;
+        } else {
+            this.wildcardTrie = COMPILED_TRIES.get(new CompiledTrieKey(wildcardNodes), k -> WildcardTrie.compile(Maps.transformValues(k.nodes, RESULT_FACTORY::result)));
         }
-        this.wildcardPermissions = builder.build();
+    }
 
-        Node rootWildcard = this.sourceMap.get(ROOT_WILDCARD);
-        if (rootWildcard == null) {
-            rootWildcard = this.sourceMap.get(ROOT_WILDCARD_WITH_QUOTES);
+    /**
+     * Key for {@link #COMPILED_TRIES}. Nodes are compared by identity, so that the results
+     * returned by a shared trie always refer to the exact node (including its metadata) that
+     * each holder would otherwise have seen.
+     */
+    private static final class CompiledTrieKey {
+        private final Map<String, Node> nodes;
+        private final int hashCode;
+
+        CompiledTrieKey(Map<String, Node> nodes) {
+            this.nodes = nodes;
+
+            int hashCode = 0;
+            for (Map.Entry<String, Node> e : nodes.entrySet()) {
+                hashCode += e.getKey().hashCode() ^ System.identityHashCode(e.getValue());
+            }
+            this.hashCode = hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            if (!(o instanceof CompiledTrieKey)) return false;
+            CompiledTrieKey other = (CompiledTrieKey) o;
+            if (this.hashCode != other.hashCode || this.nodes.size() != other.nodes.size()) {
+                return false;
+            }
+            for (Map.Entry<String, Node> e : this.nodes.entrySet()) {
+                if (other.nodes.get(e.getKey()) != e.getValue()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
         }
-        this.rootWildcardState = rootWildcard == null ? TristateResult.UNDEFINED : RESULT_FACTORY.result(rootWildcard);
     }
 }
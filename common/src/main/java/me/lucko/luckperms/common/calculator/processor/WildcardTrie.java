@@ -0,0 +1,183 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.calculator.processor;
+
+import me.lucko.luckperms.common.cacheddata.result.TristateResult;
+import me.lucko.luckperms.common.node.AbstractNode;
+import net.luckperms.api.util.Tristate;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable trie of wildcard permissions, split into segments at each
+ * {@link AbstractNode#NODE_SEPARATOR node separator}.
+ *
+ * <p>The trie is keyed by the wildcard "prefix" - e.g. {@code luckperms.user} for the
+ * {@code luckperms.user.*} wildcard. Lookups are performed in a single pass over the
+ * characters of the permission being checked, without allocating any substrings.</p>
+ */
+public final class WildcardTrie {
+
+    /** An empty trie */
+    public static final WildcardTrie EMPTY = new WildcardTrie(new TrieNode(null, new HashMap<>()));
+
+    /**
+     * Compiles a trie from a map of wildcard prefixes to results.
+     *
+     * @param wildcardPermissions the wildcard permissions, keyed by prefix
+     * @return the compiled trie
+     */
+    public static WildcardTrie compile(Map<String, TristateResult> wildcardPermissions) {
+        if (wildcardPermissions.isEmpty()) {
+            return EMPTY;
+        }
+
+        Builder root = new Builder();
+        for (Map.Entry<String, TristateResult> e : wildcardPermissions.entrySet()) {
+            String prefix = e.getKey();
+
+            Builder node = root;
+            int start = 0;
+            while (true) {
+                int end = prefix.indexOf(AbstractNode.NODE_SEPARATOR, start);
+                if (end == -1) {
+                    node = node.children.computeIfAbsent(prefix.substring(start), k -> new Builder());
+                    break;
+                }
+                node = node.children.computeIfAbsent(prefix.substring(start, end), k -> new Builder());
+                start = end + 1;
+            }
+            node.value = e.getValue();
+        }
+        return new WildcardTrie(root.build());
+    }
+
+    private final TrieNode root;
+
+    private WildcardTrie(TrieNode root) {
+        this.root = root;
+    }
+
+    /**
+     * Finds the most specific wildcard which matches the given permission.
+     *
+     * <p>This is equivalent to repeatedly removing the last segment from the permission
+     * and checking for a wildcard with the resultant prefix.</p>
+     *
+     * @param permission the permission to check
+     * @return the result, or null if no wildcard matched
+     */
+    public @Nullable TristateResult lookup(String permission) {
+        TristateResult match = null;
+
+        TrieNode node = this.root;
+        int start = 0;
+        while (true) {
+            // the permission itself (the final segment) is never matched - only the prefixes
+            int end = permission.indexOf(AbstractNode.NODE_SEPARATOR, start);
+            if (end == -1) {
+                break;
+            }
+
+            node = node.child(permission, start, end);
+            if (node == null) {
+                break;
+            }
+
+            // ignore the empty prefix, and keep going - the deepest match takes priority
+            if (end != 0 && node.value != null && node.value.result() != Tristate.UNDEFINED) {
+                match = node.value;
+            }
+            start = end + 1;
+        }
+
+        return match;
+    }
+
+    private static final class TrieNode {
+        private final @Nullable TristateResult value;
+
+        // open addressing hash table of child segments
+        private final String[] childKeys;
+        private final TrieNode[] children;
+        private final int mask;
+
+        TrieNode(@Nullable TristateResult value, Map<String, TrieNode> children) {
+            this.value = value;
+
+            int capacity = Integer.highestOneBit(Math.max(1, children.size() * 2 - 1)) << 1;
+            this.childKeys = new String[capacity];
+            this.children = new TrieNode[capacity];
+            this.mask = capacity - 1;
+
+            for (Map.Entry<String, TrieNode> e : children.entrySet()) {
+                int slot = spread(e.getKey().hashCode()) & this.mask;
+                while (this.childKeys[slot] != null) {
+                    slot = (slot + 1) & this.mask;
+                }
+                this.childKeys[slot] = e.getKey();
+                this.children[slot] = e.getValue();
+            }
+        }
+
+        @Nullable TrieNode child(String permission, int start, int end) {
+            // compute the hash of the segment the same way String#hashCode does
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + permission.charAt(i);
+            }
+
+            int length = end - start;
+            int slot = spread(hash) & this.mask;
+            for (String key; (key = this.childKeys[slot]) != null; slot = (slot + 1) & this.mask) {
+                if (key.length() == length && key.hashCode() == hash && permission.regionMatches(start, key, 0, length)) {
+                    return this.children[slot];
+                }
+            }
+            return null;
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    private static final class Builder {
+        private final Map<String, Builder> children = new HashMap<>();
+        private TristateResult value = null;
+
+        TrieNode build() {
+            Map<String, TrieNode> builtChildren = new HashMap<>(this.children.size());
+            for (Map.Entry<String, Builder> e : this.children.entrySet()) {
+                builtChildren.put(e.getKey(), e.getValue().build());
+            }
+            return new TrieNode(this.value, builtChildren);
+        }
+    }
+
+}
@@ -46,6 +46,8 @@ public enum CommandPermission {
     APPLY_EDITS("applyedits", Type.NONE),
     TRUST_EDITOR("trusteditor", Type.NONE),
     TRANSLATIONS("translations", Type.NONE),
+    CONTEXTS("contexts", Type.NONE),
+    MEMORY("memory", Type.NONE),
 
     CREATE_GROUP("creategroup", Type.NONE),
     DELETE_GROUP("deletegroup", Type.NONE),
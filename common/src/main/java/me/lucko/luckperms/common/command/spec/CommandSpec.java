@@ -92,6 +92,13 @@ public enum CommandSpec {
     TRUST_EDITOR("/%s trusteditor <id>",
             arg("id", true)
     ),
+    CONTEXTS("/%s contexts profile",
+            arg("action", "profile", true),
+            arg("reset", "--reset", false)
+    ),
+    MEMORY("/%s memory [count]",
+            arg("count", false)
+    ),
 
     CREATE_GROUP("/%s creategroup <group>",
             arg("name", true),
@@ -75,30 +75,30 @@ public final class StorageAssistant {
     }
 
     public static void save(User user, Sender sender, LuckPermsPlugin plugin) {
-        try {
-            plugin.getStorage().saveUser(user).get();
-        } catch (Exception e) {
-            plugin.getLogger().warn("Error whilst saving user", e);
-            Message.USER_SAVE_ERROR.send(sender, user);
-            return;
-        }
-
-        Optional<InternalMessagingService> messagingService = plugin.getMessagingService();
-        if (messagingService.isPresent() && plugin.getConfiguration().get(ConfigKeys.AUTO_PUSH_UPDATES)) {
-            messagingService.get().pushUserUpdate(user);
-        }
+        awaitSave(plugin, plugin.getStorage().saveUser(user)).whenComplete((v, e) -> {
+            if (e != null) {
+                plugin.getLogger().warn("Error whilst saving user", e);
+                Message.USER_SAVE_ERROR.send(sender, user);
+                return;
+            }
+
+            Optional<InternalMessagingService> messagingService = plugin.getMessagingService();
+            if (messagingService.isPresent() && plugin.getConfiguration().get(ConfigKeys.AUTO_PUSH_UPDATES)) {
+                messagingService.get().pushUserUpdate(user);
+            }
+        });
     }
 
     public static CompletableFuture<Void> save(Group group, Sender sender, LuckPermsPlugin plugin) {
-        try {
-            plugin.getStorage().saveGroup(group).get();
-        } catch (Exception e) {
-            plugin.getLogger().warn("Error whilst saving group", e);
-            Message.GROUP_SAVE_ERROR.send(sender, group);
-            return failedFuture(e);
-        }
-
-        return invalidateCachesAndPushUpdates(plugin);
+        return awaitSave(plugin, plugin.getStorage().saveGroup(group)).handle((v, e) -> {
+            if (e != null) {
+                plugin.getLogger().warn("Error whilst saving group", e);
+                Message.GROUP_SAVE_ERROR.send(sender, group);
+                return StorageAssistant.<Void>failedFuture(e);
+            }
+
+            return invalidateCachesAndPushUpdates(plugin);
+        }).thenCompose(future -> future);
     }
 
     public static CompletableFuture<Void> save(Track track, Sender sender, LuckPermsPlugin plugin) {
@@ -137,6 +137,31 @@ public final class StorageAssistant {
         }
     }
 
+    /**
+     * Waits for a user or group save to complete, unless saves are being queued.
+     *
+     * <p>Queued saves are delayed so that they can be combined with others. Commands
+     * hold a lock on their target while they run, so waiting for the queue would stop
+     * further changes to the target from being combined with this one - instead, the
+     * result is handled once the save has been written.</p>
+     *
+     * @param plugin the plugin
+     * @param future the save future
+     * @return a future which completes with the result of the save
+     */
+    private static CompletableFuture<Void> awaitSave(LuckPermsPlugin plugin, CompletableFuture<Void> future) {
+        if (plugin.getStorage().getSaveQueue().isPresent()) {
+            return future;
+        }
+
+        try {
+            future.get();
+            return CompletableFuture.completedFuture(null);
+        } catch (Exception e) {
+            return failedFuture(e);
+        }
+    }
+
     private static <T> CompletableFuture<T> failedFuture(Throwable ex) {
         CompletableFuture<T> future = new CompletableFuture<>();
         future.completeExceptionally(ex);
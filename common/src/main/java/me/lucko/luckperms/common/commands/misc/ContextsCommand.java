@@ -0,0 +1,96 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.commands.misc;
+
+import me.lucko.luckperms.common.command.abstraction.SingleCommand;
+import me.lucko.luckperms.common.command.access.CommandPermission;
+import me.lucko.luckperms.common.command.spec.CommandSpec;
+import me.lucko.luckperms.common.command.utils.ArgumentList;
+import me.lucko.luckperms.common.context.manager.ContextCalculatorTimings;
+import me.lucko.luckperms.common.locale.Message;
+import me.lucko.luckperms.common.plugin.LuckPermsPlugin;
+import me.lucko.luckperms.common.sender.Sender;
+import me.lucko.luckperms.common.util.Predicates;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+public class ContextsCommand extends SingleCommand {
+    public ContextsCommand() {
+        super(CommandSpec.CONTEXTS, "Contexts", CommandPermission.CONTEXTS, Predicates.notInRange(1, 2));
+    }
+
+    @Override
+    public void execute(LuckPermsPlugin plugin, Sender sender, ArgumentList args, String label) {
+        boolean reset = args.remove("--reset");
+        if (args.size() != 1 || !args.get(0).equalsIgnoreCase("profile")) {
+            sendDetailedUsage(sender, label);
+            return;
+        }
+
+        List<ContextCalculatorTimings> timings = plugin.getContextManager().getCalculatorTimings();
+        if (timings.isEmpty()) {
+            Message.CONTEXTS_PROFILE_NONE.send(sender);
+            return;
+        }
+
+        // most expensive first
+        timings.sort(Comparator.comparingDouble(ContextsCommand::nanosPerSecond).reversed());
+
+        long seconds = (long) timings.get(0).getSeconds();
+        Message.CONTEXTS_PROFILE_HEADER.send(sender, Duration.ofSeconds(seconds));
+
+        for (ContextCalculatorTimings t : timings) {
+            double secs = t.getSeconds();
+            Message.CONTEXTS_PROFILE_ENTRY.send(sender,
+                    t.getCalculatorClass(),
+                    formatMillis(t.getNanos() / secs),
+                    format(t.getCalls() / secs),
+                    formatMillis(t.getPercentileMicros(0.95) * 1000d),
+                    t.getAsyncCalls() == 0 ? null : formatMillis(t.getAsyncNanos() / secs)
+            );
+        }
+
+        if (reset) {
+            timings.forEach(ContextCalculatorTimings::reset);
+            Message.CONTEXTS_PROFILE_RESET.send(sender);
+        }
+    }
+
+    private static double nanosPerSecond(ContextCalculatorTimings timings) {
+        return (timings.getNanos() + timings.getAsyncNanos()) / timings.getSeconds();
+    }
+
+    private static String formatMillis(double nanos) {
+        return format(nanos / 1e6d);
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.commands.misc;
+
+import me.lucko.luckperms.common.command.abstraction.SingleCommand;
+import me.lucko.luckperms.common.command.access.CommandPermission;
+import me.lucko.luckperms.common.command.spec.CommandSpec;
+import me.lucko.luckperms.common.command.utils.ArgumentList;
+import me.lucko.luckperms.common.locale.Message;
+import me.lucko.luckperms.common.memory.MemoryCategory;
+import me.lucko.luckperms.common.memory.MemoryEstimator;
+import me.lucko.luckperms.common.memory.MemoryReport;
+import me.lucko.luckperms.common.plugin.LuckPermsPlugin;
+import me.lucko.luckperms.common.sender.Sender;
+import me.lucko.luckperms.common.util.Predicates;
+
+import java.util.List;
+import java.util.Locale;
+
+public class MemoryCommand extends SingleCommand {
+    private static final int DEFAULT_HOLDERS = 10;
+
+    public MemoryCommand() {
+        super(CommandSpec.MEMORY, "Memory", CommandPermission.MEMORY, Predicates.notInRange(0, 1));
+    }
+
+    @Override
+    public void execute(LuckPermsPlugin plugin, Sender sender, ArgumentList args, String label) {
+        int count = Math.max(0, args.getIntOrDefault(0, DEFAULT_HOLDERS));
+        MemoryReport report = MemoryEstimator.estimate(plugin, count);
+
+        Message.MEMORY_HEADER.send(sender, formatBytes(report.getTotalBytes()));
+        for (MemoryCategory category : MemoryCategory.values()) {
+            Message.MEMORY_TYPE_ENTRY.send(sender, category.getName(), formatBytes(report.getBytes(category)));
+        }
+
+        List<MemoryReport.Holder> holders = report.getHeaviestHolderReports();
+        if (holders.isEmpty()) {
+            return;
+        }
+
+        Message.MEMORY_HOLDERS_HEADER.send(sender, holders.size());
+        for (MemoryReport.Holder holder : holders) {
+            Message.MEMORY_HOLDER_ENTRY.send(sender, holder.getIdentifier().getType(), holder.getDisplayName(), formatBytes(holder.getTotalBytes()));
+        }
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format(Locale.ROOT, "%.1f KB", bytes / 1024d);
+        }
+        return String.format(Locale.ROOT, "%.1f MB", bytes / (1024d * 1024d));
+    }
+}
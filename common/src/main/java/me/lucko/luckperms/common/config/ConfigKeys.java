@@ -44,6 +44,7 @@ import me.lucko.luckperms.common.storage.implementation.split.SplitStorageType;
 import me.lucko.luckperms.common.storage.misc.StorageCredentials;
 import me.lucko.luckperms.common.util.ImmutableCollectors;
 import me.lucko.luckperms.common.util.Predicates;
+import me.lucko.luckperms.common.verbose.VerboseHandler;
 import net.luckperms.api.context.ContextSatisfyMode;
 import net.luckperms.api.metastacking.DuplicateRemovalFunction;
 import net.luckperms.api.metastacking.MetaStackDefinition;
@@ -100,6 +101,16 @@ public final class ConfigKeys {
         return val;
     }));
 
+    /**
+     * How many users to load from storage in each batch during a sync. Batches are loaded in parallel.
+     */
+    public static final ConfigKey<Integer> SYNC_USER_BATCH_SIZE = notReloadable(key(c -> Math.max(1, c.getInteger("sync-user-batch-size", 250))));
+
+    /**
+     * How many milliseconds to wait before writing user and group saves to storage, so that repeated saves can be combined. A value <= 0 will save immediately.
+     */
+    public static final ConfigKey<Integer> SAVE_COALESCE_MILLIS = notReloadable(key(c -> Math.max(0, c.getInteger("save-coalesce-millis", 0))));
+
     /**
      * The default global contexts instance
      */
@@ -251,6 +262,67 @@ public final class ConfigKeys {
      */
     public static final ConfigKey<Boolean> APPLYING_WILDCARDS = notReloadable(booleanKey("apply-wildcards", true));
 
+    /**
+     * If wildcard permissions should be compiled into a (shared) lookup trie, instead of being
+     * resolved by walking the permission one segment at a time
+     */
+    public static final ConfigKey<Boolean> COMPILE_WILDCARDS = notReloadable(booleanKey("compile-wildcard-permissions", false));
+
+    /**
+     * The maximum number of permission lookup results cached by each calculator, or 0 for no limit
+     */
+    public static final ConfigKey<Integer> PERMISSION_LOOKUP_CACHE_SIZE = notReloadable(key(c -> Math.max(0, c.getInteger("permission-lookup-cache.max-size", 0))));
+
+    /**
+     * The maximum number of permission lookup results cached across all calculators, or 0 for no limit
+     */
+    public static final ConfigKey<Integer> PERMISSION_LOOKUP_CACHE_GLOBAL_SIZE = notReloadable(key(c -> Math.max(0, c.getInteger("permission-lookup-cache.global-max-size", 0))));
+
+    /**
+     * If permission calculators should be shared between holders which resolve exactly the same permissions
+     */
+    public static final ConfigKey<Boolean> SHARE_PERMISSION_CALCULATORS = notReloadable(booleanKey("share-permission-calculators", false));
+
+    /**
+     * If permission and meta data should be calculated ahead of time for the contexts players are likely to move into next
+     */
+    public static final ConfigKey<Boolean> CACHE_WARMUP = notReloadable(booleanKey("cache-warmup.enabled", false));
+
+    /**
+     * The maximum number of likely next contexts to warm up after each context change
+     */
+    public static final ConfigKey<Integer> CACHE_WARMUP_PREDICTIONS = notReloadable(key(c -> Math.max(1, c.getInteger("cache-warmup.predictions", 2))));
+
+    /**
+     * The maximum number of caches which can be warmed up within the time an unused cache stays loaded
+     */
+    public static final ConfigKey<Integer> CACHE_WARMUP_BUDGET = notReloadable(key(c -> Math.max(0, c.getInteger("cache-warmup.budget", 500))));
+
+    /**
+     * If holder nodes should be stored in copy-on-write maps, which use less memory but are slower to modify
+     */
+    public static final ConfigKey<Boolean> COPY_ON_WRITE_NODE_MAPS = notReloadable(booleanKey("copy-on-write-node-maps", false));
+
+    /**
+     * The maximum number of users to keep loaded before evicting the least recently used offline users, or 0 for no limit
+     */
+    public static final ConfigKey<Integer> USER_CACHE_MAX_SIZE = notReloadable(key(c -> Math.max(0, c.getInteger("user-cache.max-size", 0))));
+
+    /**
+     * The amount of memory, in megabytes, to use for snapshots of evicted users, or 0 to disable snapshots
+     */
+    public static final ConfigKey<Integer> USER_CACHE_SNAPSHOT_MEMORY = notReloadable(key(c -> Math.max(0, c.getInteger("user-cache.snapshot-memory", 0))));
+
+    /**
+     * Verbose captures a stack trace for 1 in every n checks
+     */
+    public static final ConfigKey<Integer> VERBOSE_TRACE_SAMPLE_RATE = notReloadable(key(c -> Math.max(1, c.getInteger("verbose.trace-sample-rate", VerboseHandler.DEFAULT_TRACE_SAMPLE_RATE))));
+
+    /**
+     * The maximum number of verbose events which can be waiting to be handled
+     */
+    public static final ConfigKey<Integer> VERBOSE_BUFFER_SIZE = notReloadable(key(c -> Math.max(1, c.getInteger("verbose.buffer-size", VerboseHandler.DEFAULT_BUFFER_SIZE))));
+
     /**
      * If Sponge's implicit permission inheritance system should be applied
      */
@@ -528,6 +600,26 @@ public final class ConfigKeys {
                 .collect(ImmutableCollectors.toSet());
     });
 
+    /**
+     * The context calculators which should be called off-thread, serving the last calculated result
+     */
+    public static final ConfigKey<Set<Predicate<String>>> ASYNC_CONTEXT_CALCULATORS = key(c -> {
+        return c.getStringList("context-cache.async-calculators", ImmutableList.of())
+                .stream()
+                .map(Predicates::startsWithIgnoreCase)
+                .collect(ImmutableCollectors.toSet());
+    });
+
+    /**
+     * If the contexts of calculators which signal changes should be cached until they are signalled
+     */
+    public static final ConfigKey<Boolean> EVENT_DRIVEN_CONTEXTS = notReloadable(booleanKey("context-cache.event-driven", false));
+
+    /**
+     * How long calculated contexts are cached for, in milliseconds
+     */
+    public static final ConfigKey<Integer> CONTEXT_CACHE_EXPIRY = notReloadable(key(c -> Math.max(1, c.getInteger("context-cache.expiry", 50))));
+
     /**
      * The world rewrites map
      */
@@ -571,6 +663,11 @@ public final class ConfigKeys {
         return c.getString("data.table-prefix", c.getString("data.table_prefix", "luckperms_"));
     }));
 
+    /**
+     * If changes to holders should be recorded in a change log table, so that syncs only reload the holders which changed
+     */
+    public static final ConfigKey<Boolean> SQL_CHANGE_LOG = notReloadable(booleanKey("data.change-log", false));
+
     /**
      * The prefix for any MongoDB collections
      */
@@ -50,6 +50,10 @@ public class LuckPermsConfiguration extends KeyedConfiguration {
     @Override
     public void reload() {
         super.reload();
+        if (getPlugin().getContextManager() != null) {
+            // cached contexts may depend on the configuration
+            getPlugin().getContextManager().invalidateCaches();
+        }
         getPlugin().getEventDispatcher().dispatchConfigReload();
     }
 
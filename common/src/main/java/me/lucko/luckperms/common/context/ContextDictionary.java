@@ -0,0 +1,135 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.context;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Assigns small integer ids to context keys and values, so that a
+ * {@link net.luckperms.api.context.Context} can be encoded as a single {@code long}.
+ *
+ * <p>The key id occupies the high 32 bits and the value id the low 32 bits, so
+ * encoded contexts sort by key and then by value. Ids are never reused.</p>
+ *
+ * <p>The dictionary is bounded - once it is full, {@link #encode(String, String)}
+ * returns {@link #UNKNOWN} for strings it has not seen before, and callers
+ * fall back to comparing the strings directly.</p>
+ */
+final class ContextDictionary {
+    private ContextDictionary() {}
+
+    /** Returned when a context cannot be (or has not been) encoded */
+    static final long UNKNOWN = -1L;
+
+    /** The maximum number of distinct keys, and separately values, to assign ids to */
+    private static final int MAX_ENTRIES = 1 << 16;
+
+    private static final Table KEYS = new Table();
+    private static final Table VALUES = new Table();
+
+    /**
+     * Encodes the given context, assigning ids to the key and value if necessary.
+     *
+     * @param key the key
+     * @param value the value
+     * @return the encoded context, or {@link #UNKNOWN} if the dictionary is full
+     */
+    static long encode(String key, String value) {
+        int keyId = KEYS.assign(key);
+        if (keyId < 0) {
+            return UNKNOWN;
+        }
+        int valueId = VALUES.assign(value);
+        if (valueId < 0) {
+            return UNKNOWN;
+        }
+        return encode(keyId, valueId);
+    }
+
+    /**
+     * Looks up the encoded form of the given context, without assigning new ids.
+     *
+     * @param key the key
+     * @param value the value
+     * @return the encoded context, or {@link #UNKNOWN} if either string has no id
+     */
+    static long lookup(String key, String value) {
+        int keyId = KEYS.get(key);
+        if (keyId < 0) {
+            return UNKNOWN;
+        }
+        int valueId = VALUES.get(value);
+        if (valueId < 0) {
+            return UNKNOWN;
+        }
+        return encode(keyId, valueId);
+    }
+
+    /**
+     * Looks up the id of the given key, without assigning a new one.
+     *
+     * @param key the key
+     * @return the id, or -1 if the key has no id
+     */
+    static int lookupKey(String key) {
+        return KEYS.get(key);
+    }
+
+    static int keyId(long encoded) {
+        return (int) (encoded >>> 32);
+    }
+
+    static long minForKey(int keyId) {
+        return encode(keyId, 0);
+    }
+
+    private static long encode(int keyId, int valueId) {
+        return ((long) keyId << 32) | (valueId & 0xFFFFFFFFL);
+    }
+
+    private static final class Table {
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        private final AtomicInteger nextId = new AtomicInteger();
+
+        int get(String string) {
+            Integer id = this.ids.get(string);
+            return id == null ? -1 : id;
+        }
+
+        int assign(String string) {
+            Integer id = this.ids.get(string);
+            if (id != null) {
+                return id;
+            }
+            if (this.ids.size() >= MAX_ENTRIES) {
+                return -1;
+            }
+            return this.ids.computeIfAbsent(string, s -> this.nextId.getAndIncrement());
+        }
+    }
+}
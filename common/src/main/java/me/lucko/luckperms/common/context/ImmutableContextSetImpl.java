@@ -28,6 +28,8 @@ package me.lucko.luckperms.common.context;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Multimaps;
 import me.lucko.luckperms.common.context.comparator.ContextComparator;
@@ -49,6 +51,25 @@ import java.util.Spliterator;
 public final class ImmutableContextSetImpl extends AbstractContextSet implements ImmutableContextSet, ContextSet {
     public static final ImmutableContextSetImpl EMPTY = new ImmutableContextSetImpl(new Context[0]);
 
+    /** Pool of canonical instances - most subjects share a handful of distinct context sets */
+    private static final Interner<ImmutableContextSet> INTERNER = Interners.newWeakInterner();
+
+    /**
+     * Gets the canonical instance of the given context set.
+     *
+     * <p>Interned instances can be compared (and used as map keys) more cheaply,
+     * since equal sets are usually the same instance.</p>
+     *
+     * @param contextSet the context set
+     * @return the canonical instance
+     */
+    public static ImmutableContextSet intern(ImmutableContextSet contextSet) {
+        if (contextSet.isEmpty()) {
+            return EMPTY;
+        }
+        return INTERNER.intern(contextSet);
+    }
+
     public static ImmutableContextSet of(String key, String value) {
         key = sanitizeKey(key);
         value = sanitizeValue(value);
@@ -65,12 +86,32 @@ public final class ImmutableContextSetImpl extends AbstractContextSet implements
     private final int size;
     private final int hashCode;
 
+    /**
+     * The contexts in this set, {@link ContextDictionary dictionary-encoded}
+     * and sorted - or null if the dictionary was full.
+     */
+    private final long[] ids;
+
     private ImmutableSetMultimap<String, String> cachedMap;
 
     ImmutableContextSetImpl(Context[] contexts) {
         this.array = contexts; // always sorted
         this.size = this.array.length;
         this.hashCode = Arrays.hashCode(this.array);
+        this.ids = encode(this.array);
+    }
+
+    private static long[] encode(Context[] contexts) {
+        long[] ids = new long[contexts.length];
+        for (int i = 0; i < contexts.length; i++) {
+            long id = ContextDictionary.encode(contexts[i].getKey(), contexts[i].getValue());
+            if (id == ContextDictionary.UNKNOWN) {
+                return null;
+            }
+            ids[i] = id;
+        }
+        Arrays.sort(ids);
+        return ids;
     }
 
     @Override
@@ -126,6 +167,13 @@ public final class ImmutableContextSetImpl extends AbstractContextSet implements
 
     @Override
     protected boolean otherContainsAll(ContextSet other, ContextSatisfyMode mode) {
+        if (this.ids != null && other instanceof ImmutableContextSetImpl) {
+            long[] otherIds = ((ImmutableContextSetImpl) other).ids;
+            if (otherIds != null) {
+                return otherContainsAll(this.ids, otherIds, mode);
+            }
+        }
+
         switch (mode) {
             // Use other.contains
             case ALL_VALUES_PER_KEY: {
@@ -166,6 +214,52 @@ public final class ImmutableContextSetImpl extends AbstractContextSet implements
         }
     }
 
+    private static boolean otherContainsAll(long[] ids, long[] otherIds, ContextSatisfyMode mode) {
+        switch (mode) {
+            // every id must be present in other
+            case ALL_VALUES_PER_KEY: {
+                int j = 0;
+                for (long id : ids) {
+                    while (j < otherIds.length && otherIds[j] < id) {
+                        j++;
+                    }
+                    if (j == otherIds.length || otherIds[j] != id) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            // at least one id for each key must be present in other
+            case AT_LEAST_ONE_VALUE_PER_KEY: {
+                int j = 0;
+                for (int i = 0, len = ids.length; i < len; i++) {
+                    long id = ids[i];
+                    while (j < otherIds.length && otherIds[j] < id) {
+                        j++;
+                    }
+
+                    int key = ContextDictionary.keyId(id);
+                    if (j < otherIds.length && otherIds[j] == id) {
+                        // skip forward past any other entries with the same key
+                        while (i + 1 < len && ContextDictionary.keyId(ids[i + 1]) == key) {
+                            i++;
+                        }
+                    } else {
+                        // if this is the last one of the key, return false
+                        int next = i + 1;
+                        if (next >= len || ContextDictionary.keyId(ids[next]) != key) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (o == this) return true;
@@ -176,6 +270,9 @@ public final class ImmutableContextSetImpl extends AbstractContextSet implements
         if (that instanceof ImmutableContextSetImpl) {
             ImmutableContextSetImpl immutableThat = (ImmutableContextSetImpl) that;
             if (this.hashCode != immutableThat.hashCode) return false;
+            if (this.ids != null && immutableThat.ids != null) {
+                return Arrays.equals(this.ids, immutableThat.ids);
+            }
             return Arrays.equals(this.array, immutableThat.array);
         }
 
@@ -195,6 +292,18 @@ public final class ImmutableContextSetImpl extends AbstractContextSet implements
     @Override
     public boolean containsKey(@NonNull String key) {
         Objects.requireNonNull(key, "key");
+        if (this.ids != null) {
+            int keyId = ContextDictionary.lookupKey(key);
+            if (keyId < 0) {
+                return false;
+            }
+            // ids are sorted by key then value, so find where the key would start
+            int pos = Arrays.binarySearch(this.ids, ContextDictionary.minForKey(keyId));
+            if (pos < 0) {
+                pos = -pos - 1;
+            }
+            return pos < this.ids.length && ContextDictionary.keyId(this.ids[pos]) == keyId;
+        }
         return Arrays.binarySearch(this.array, new ContextImpl(key, null), ContextComparator.ONLY_KEY) >= 0;
     }
 
@@ -207,14 +316,18 @@ public final class ImmutableContextSetImpl extends AbstractContextSet implements
     @Override
     public boolean contains(@NonNull Context entry) {
         Objects.requireNonNull(entry, "entry");
-        return Arrays.binarySearch(this.array, entry) >= 0;
+        return contains(entry.getKey(), entry.getValue());
     }
 
     @Override
     public boolean contains(@NonNull String key, @NonNull String value) {
         Objects.requireNonNull(key, "key");
         Objects.requireNonNull(value, "value");
-        return contains(new ContextImpl(key, value));
+        if (this.ids != null) {
+            long id = ContextDictionary.lookup(key, value);
+            return id != ContextDictionary.UNKNOWN && Arrays.binarySearch(this.ids, id) >= 0;
+        }
+        return Arrays.binarySearch(this.array, new ContextImpl(key, value)) >= 0;
     }
 
     @Override
@@ -242,6 +355,10 @@ public final class ImmutableContextSetImpl extends AbstractContextSet implements
         private Context[] builder = EMPTY.array;
         private int size = 0;
 
+        // the set this builder was populated from, if it hasn't been modified since -
+        // build() can return it instead of an equal copy
+        private ImmutableContextSetImpl source = null;
+
         public BuilderImpl() {
 
         }
@@ -256,6 +373,9 @@ public final class ImmutableContextSetImpl extends AbstractContextSet implements
 
             int insertPos = -pos - 1;
 
+            // the source set's array is always full, so it's copied (not modified) below
+            this.source = null;
+
             Context[] dest;
             if (this.builder.length == this.size) {
                 // grow
@@ -289,12 +409,22 @@ public final class ImmutableContextSetImpl extends AbstractContextSet implements
         @Override
         public @NonNull BuilderImpl addAll(@NonNull ContextSet contextSet) {
             Objects.requireNonNull(contextSet, "contextSet");
+            if (this.size == 0 && contextSet instanceof ImmutableContextSetImpl) {
+                ImmutableContextSetImpl set = (ImmutableContextSetImpl) contextSet;
+                this.builder = set.array;
+                this.size = set.size;
+                this.source = set;
+                return this;
+            }
             addAll(contextSet.toSet());
             return this;
         }
 
         @Override
         public @NonNull ImmutableContextSet build() {
+            if (this.source != null) {
+                return this.source;
+            }
             if (this.builder.length == 0) {
                 return EMPTY;
             } else {
@@ -32,10 +32,11 @@ import net.luckperms.api.context.ContextConsumer;
 import net.luckperms.api.context.ContextSet;
 import net.luckperms.api.context.DefaultContextKeys;
 import net.luckperms.api.context.ImmutableContextSet;
+import net.luckperms.api.context.SignallingContextCalculator;
 import net.luckperms.api.context.StaticContextCalculator;
 import org.checkerframework.checker.nullness.qual.NonNull;
 
-public class ConfigurationContextCalculator implements StaticContextCalculator {
+public class ConfigurationContextCalculator implements StaticContextCalculator, SignallingContextCalculator<Object> {
     private final LuckPermsConfiguration config;
 
     public ConfigurationContextCalculator(LuckPermsConfiguration config) {
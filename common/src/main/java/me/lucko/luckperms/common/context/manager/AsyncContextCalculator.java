@@ -0,0 +1,119 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.context.manager;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import me.lucko.luckperms.common.context.ImmutableContextSetImpl;
+import me.lucko.luckperms.common.context.calculator.ForwardingContextCalculator;
+import me.lucko.luckperms.common.util.CaffeineFactory;
+import net.luckperms.api.context.ContextCalculator;
+import net.luckperms.api.context.ContextConsumer;
+import net.luckperms.api.context.ContextSet;
+import net.luckperms.api.context.ImmutableContextSet;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Wraps a (slow) {@link ContextCalculator} so that it is called off-thread.
+ *
+ * <p>The last result calculated for a subject is served straight away, and a
+ * refresh is scheduled in the background. If the refreshed result differs,
+ * the subject is {@link ContextManager#signalContextUpdate(Object) signalled}.
+ * Only the first lookup for a subject calls the delegate on the caller thread.</p>
+ *
+ * @param <S> the subject type
+ */
+final class AsyncContextCalculator<S> implements ForwardingContextCalculator<S> {
+    private final ContextManager<S, ?> contextManager;
+    private final ContextCalculator<? super S> delegate;
+    private final ContextCalculatorTimings timings;
+
+    /** The last result calculated for each subject */
+    private final Cache<S, Result> results = CaffeineFactory.newBuilder()
+            .weakKeys()
+            .build();
+
+    AsyncContextCalculator(ContextManager<S, ?> contextManager, ContextCalculator<? super S> delegate, ContextCalculatorTimings timings) {
+        this.contextManager = contextManager;
+        this.delegate = delegate;
+        this.timings = timings;
+    }
+
+    @Override
+    public ContextCalculator<? super S> delegate() {
+        return this.delegate;
+    }
+
+    @Override
+    public void calculate(@NonNull S target, @NonNull ContextConsumer consumer) {
+        Result result = this.results.get(target, k -> new Result());
+        ImmutableContextSet contexts = result.contexts;
+
+        if (contexts == null) {
+            ImmutableContextSet.Builder builder = new ImmutableContextSetImpl.BuilderImpl();
+            this.delegate.calculate(target, builder::add);
+            contexts = builder.build();
+            result.contexts = contexts;
+        } else if (result.refreshing.compareAndSet(false, true)) {
+            this.contextManager.plugin.getBootstrap().getScheduler().executeAsync(() -> refresh(target, result));
+        }
+
+        consumer.accept(contexts);
+    }
+
+    private void refresh(S target, Result result) {
+        try {
+            ImmutableContextSet.Builder builder = new ImmutableContextSetImpl.BuilderImpl();
+            long start = System.nanoTime();
+            try {
+                this.delegate.calculate(target, builder::add);
+            } finally {
+                this.timings.recordAsync(System.nanoTime() - start);
+            }
+
+            ImmutableContextSet contexts = builder.build();
+            if (!contexts.equals(result.contexts)) {
+                result.contexts = contexts;
+                this.contextManager.signalContextUpdate(target);
+            }
+        } catch (Throwable e) {
+            this.contextManager.plugin.getLogger().warn("An exception was thrown by " + this.delegate.getClass().getName() + " whilst calculating the context of subject " + target, e);
+        } finally {
+            result.refreshing.set(false);
+        }
+    }
+
+    @Override
+    public @NonNull ContextSet estimatePotentialContexts() {
+        return this.delegate.estimatePotentialContexts();
+    }
+
+    private static final class Result {
+        private volatile ImmutableContextSet contexts;
+        private final AtomicBoolean refreshing = new AtomicBoolean(false);
+    }
+}
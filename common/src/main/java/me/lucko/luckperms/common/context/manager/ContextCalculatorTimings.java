@@ -0,0 +1,142 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.context.manager;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records how long calls to a context calculator take.
+ *
+ * <p>Call durations are recorded in a histogram with power-of-two buckets
+ * (in microseconds), which is cheap to update and accurate enough to tell
+ * fast calculators from slow ones.</p>
+ */
+public final class ContextCalculatorTimings {
+    private static final int BUCKETS = 32;
+
+    private final String calculatorClass;
+
+    // calls made on the thread requesting the contexts
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+    // calls made off-thread, see AsyncContextCalculator
+    private final LongAdder asyncCalls = new LongAdder();
+    private final LongAdder asyncNanos = new LongAdder();
+
+    private volatile long since = System.nanoTime();
+
+    ContextCalculatorTimings(String calculatorClass) {
+        this.calculatorClass = calculatorClass;
+    }
+
+    void record(long duration) {
+        this.calls.increment();
+        this.nanos.add(duration);
+        this.histogram.incrementAndGet(bucket(duration));
+    }
+
+    void recordAsync(long duration) {
+        this.asyncCalls.increment();
+        this.asyncNanos.add(duration);
+    }
+
+    private static int bucket(long duration) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(duration);
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    public String getCalculatorClass() {
+        return this.calculatorClass;
+    }
+
+    /**
+     * Gets the number of seconds since the timings were last reset.
+     *
+     * @return the number of seconds
+     */
+    public double getSeconds() {
+        return Math.max(1, System.nanoTime() - this.since) / 1e9d;
+    }
+
+    public long getCalls() {
+        return this.calls.sum();
+    }
+
+    public long getNanos() {
+        return this.nanos.sum();
+    }
+
+    public long getAsyncCalls() {
+        return this.asyncCalls.sum();
+    }
+
+    public long getAsyncNanos() {
+        return this.asyncNanos.sum();
+    }
+
+    /**
+     * Gets the approximate duration (in microseconds) which the given proportion of calls completed within.
+     *
+     * @param percentile the percentile, between 0 and 1
+     * @return the upper bound of the histogram bucket containing the percentile
+     */
+    public long getPercentileMicros(double percentile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = this.histogram.get(i);
+            total += counts[i];
+        }
+
+        long target = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target && seen > 0) {
+                return 1L << i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Resets the timings.
+     */
+    public void reset() {
+        this.since = System.nanoTime();
+        this.calls.reset();
+        this.nanos.reset();
+        this.asyncCalls.reset();
+        this.asyncNanos.reset();
+        for (int i = 0; i < BUCKETS; i++) {
+            this.histogram.set(i, 0);
+        }
+    }
+}
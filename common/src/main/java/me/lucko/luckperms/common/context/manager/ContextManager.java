@@ -25,24 +25,30 @@
 
 package me.lucko.luckperms.common.context.manager;
 
-import me.lucko.luckperms.common.cache.ExpiringCache;
+import me.lucko.luckperms.common.cacheddata.CacheWarmer;
 import me.lucko.luckperms.common.config.ConfigKeys;
 import me.lucko.luckperms.common.context.ImmutableContextSetImpl;
 import me.lucko.luckperms.common.context.calculator.ForwardingContextCalculator;
 import me.lucko.luckperms.common.plugin.LuckPermsPlugin;
+import me.lucko.luckperms.common.query.QueryOptionsImpl;
 import net.luckperms.api.context.ContextCalculator;
 import net.luckperms.api.context.ContextConsumer;
 import net.luckperms.api.context.ContextSet;
 import net.luckperms.api.context.ImmutableContextSet;
+import net.luckperms.api.context.SignallingContextCalculator;
 import net.luckperms.api.context.StaticContextCalculator;
 import net.luckperms.api.query.QueryOptions;
-import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.IntFunction;
 import java.util.function.Predicate;
 
 /**
@@ -62,10 +68,19 @@ public abstract class ContextManager<S, P extends S> {
     // caches static context lookups
     private final StaticLookupCache staticLookupCache = new StaticLookupCache();
 
+    /** If the results of signalling calculators are cached until the subject is signalled */
+    private final boolean eventDriven;
+    /** How long the results of other calculators are cached for */
+    private final long expiryNanos;
+    /** Incremented to invalidate all cached context lookups */
+    private final AtomicInteger generation = new AtomicInteger(0);
+
     protected ContextManager(LuckPermsPlugin plugin, Class<S> subjectClass, Class<P> playerClass) {
         this.plugin = plugin;
         this.subjectClass = subjectClass;
         this.playerClass = playerClass;
+        this.eventDriven = plugin.getConfiguration().get(ConfigKeys.EVENT_DRIVEN_CONTEXTS);
+        this.expiryNanos = TimeUnit.MILLISECONDS.toNanos(plugin.getConfiguration().get(ConfigKeys.CONTEXT_CACHE_EXPIRY));
     }
 
     public Class<S> getSubjectClass() {
@@ -116,6 +131,13 @@ public abstract class ContextManager<S, P extends S> {
 
     protected abstract void invalidateCache(S subject);
 
+    /**
+     * Invalidates all cached context lookups, e.g. following a configuration reload.
+     */
+    public void invalidateCaches() {
+        this.generation.incrementAndGet();
+    }
+
     public void registerCalculator(ContextCalculator<? super S> calculator) {
         String calculatorClass = calculator.getClass().getName();
 
@@ -127,13 +149,37 @@ public abstract class ContextManager<S, P extends S> {
             }
         }
 
-        this.calculators.add(calculator);
+        ContextCalculatorTimings timings = new ContextCalculatorTimings(getCalculatorClass(calculator));
+        ContextCalculator<? super S> registered = calculator;
+
+        // calculators which are known to be slow can be called off-thread - but static calculators
+        // and forwarding calculators (which may be special-cased by the platform) can't be wrapped
+        if (!(calculator instanceof StaticContextCalculator) && !(calculator instanceof ForwardingContextCalculator)) {
+            Set<Predicate<String>> asyncCalculators = this.plugin.getConfiguration().get(ConfigKeys.ASYNC_CONTEXT_CALCULATORS);
+            for (Predicate<String> asyncPattern : asyncCalculators) {
+                if (asyncPattern.test(calculatorClass)) {
+                    registered = new AsyncContextCalculator<>(this, calculator, timings);
+                    break;
+                }
+            }
+        }
+
+        this.calculators.add(calculator, registered, timings);
     }
 
     public void unregisterCalculator(ContextCalculator<? super S> calculator) {
         this.calculators.remove(calculator);
     }
 
+    /**
+     * Gets the timings of each of the registered calculators.
+     *
+     * @return the timings
+     */
+    public List<ContextCalculatorTimings> getCalculatorTimings() {
+        return this.calculators.timings();
+    }
+
     protected void callContextCalculator(ContextCalculator<? super S> calculator, S subject, ContextConsumer consumer) {
         try {
             calculator.calculate(subject, consumer);
@@ -150,26 +196,133 @@ public abstract class ContextManager<S, P extends S> {
         }
     }
 
-    protected QueryOptions calculate(S subject) {
-        ImmutableContextSet.Builder accumulator = new ImmutableContextSetImpl.BuilderImpl();
-        ContextConsumer consumer = accumulator::add;
+    /**
+     * Calculates the query options for the given subject, reusing the results of
+     * calculators from the previous snapshot which are still valid.
+     *
+     * @param subject the subject
+     * @param previous the previous snapshot, or null
+     * @param signals the number of times the subject has been signalled
+     * @param settling if the subject was signalled recently - results calculated now may not reflect the change yet
+     * @return the new snapshot
+     */
+    ContextSnapshot calculate(S subject, @Nullable ContextSnapshot previous, int signals, boolean settling) {
+        CalculatorList.Baked baked = this.calculators.baked();
+        ContextCalculator<? super S>[] calculators = baked.calculators;
+        ContextCalculatorTimings[] timings = baked.timings;
+        ContextSnapshot snapshot = calculate(calculators, previous, signals, settling, i -> {
+            ImmutableContextSet.Builder accumulator = new ImmutableContextSetImpl.BuilderImpl();
+            long start = System.nanoTime();
+            callContextCalculator(calculators[i], subject, accumulator::add);
+            timings[i].record(System.nanoTime() - start);
+            return accumulator.build();
+        }, contextSet -> formQueryOptions(subject, contextSet));
+
+        QueryOptions previousOptions = previous == null ? null : previous.queryOptions;
+        if (previousOptions == null || !previousOptions.equals(snapshot.queryOptions)) {
+            onQueryOptionsChange(subject, previousOptions, snapshot.queryOptions);
+        }
+        return snapshot;
+    }
 
-        for (ContextCalculator<? super S> calculator : this.calculators.calculators()) {
-            callContextCalculator(calculator, subject, consumer);
+    private void onQueryOptionsChange(S subject, @Nullable QueryOptions previous, QueryOptions current) {
+        CacheWarmer cacheWarmer = this.plugin.getCacheWarmer();
+        // the warmer may not have been set up yet during startup
+        if (cacheWarmer != null && cacheWarmer.isEnabled() && this.playerClass.isInstance(subject)) {
+            cacheWarmer.onTransition(getUniqueId(this.playerClass.cast(subject)), previous, current);
         }
+    }
 
-        return formQueryOptions(subject, accumulator.build());
+    private ContextSnapshot calculateStatic(@Nullable ContextSnapshot previous) {
+        CalculatorList.Baked baked = this.calculators.baked();
+        StaticContextCalculator[] calculators = baked.staticCalculators;
+        ContextCalculatorTimings[] timings = baked.staticTimings;
+        return calculate(calculators, previous, 0, false, i -> {
+            ImmutableContextSet.Builder accumulator = new ImmutableContextSetImpl.BuilderImpl();
+            long start = System.nanoTime();
+            callStaticContextCalculator(calculators[i], accumulator::add);
+            timings[i].record(System.nanoTime() - start);
+            return accumulator.build();
+        }, this::formQueryOptions);
     }
 
-    private QueryOptions calculateStatic() {
-        ImmutableContextSet.Builder accumulator = new ImmutableContextSetImpl.BuilderImpl();
-        ContextConsumer consumer = accumulator::add;
+    private ContextSnapshot calculate(Object[] calculators, @Nullable ContextSnapshot previous, int signals, boolean settling, IntFunction<ImmutableContextSet> calculator, Function<ImmutableContextSet, QueryOptions> queryOptionsFunction) {
+        long now = System.nanoTime();
+        int generation = this.generation.get();
+
+        // results from the previous snapshot can only be reused if nothing has been invalidated since
+        boolean reuse = previous != null &&
+                previous.calculators == calculators &&
+                previous.generation == generation &&
+                previous.signals == signals;
 
-        for (StaticContextCalculator calculator : this.calculators.staticCalculators()) {
-            callStaticContextCalculator(calculator, consumer);
+        ImmutableContextSet[] results = new ImmutableContextSet[calculators.length];
+        long[] expiries = new long[calculators.length];
+        boolean changed = !reuse;
+
+        for (int i = 0; i < calculators.length; i++) {
+            if (reuse && !previous.isExpired(i, now)) {
+                results[i] = previous.results[i];
+                expiries[i] = previous.expiries[i];
+                continue;
+            }
+
+            results[i] = calculator.apply(i);
+            expiries[i] = expiry(calculators[i], now, settling);
+            if (reuse && !results[i].equals(previous.results[i])) {
+                changed = true;
+            }
+        }
+
+        QueryOptions queryOptions;
+        if (changed) {
+            ImmutableContextSet.Builder accumulator = new ImmutableContextSetImpl.BuilderImpl();
+            for (ImmutableContextSet result : results) {
+                accumulator.addAll(result);
+            }
+            ImmutableContextSet contextSet = ImmutableContextSetImpl.intern(accumulator.build());
+            queryOptions = QueryOptionsImpl.intern(queryOptionsFunction.apply(contextSet));
+        } else {
+            queryOptions = previous.queryOptions;
         }
 
-        return formQueryOptions(accumulator.build());
+        return new ContextSnapshot(calculators, results, expiries, generation, signals, queryOptions);
+    }
+
+    private long expiry(Object calculator, long now, boolean settling) {
+        if (this.eventDriven && !settling && calculator instanceof SignallingContextCalculator) {
+            return ContextSnapshot.NEVER;
+        }
+        return now + this.expiryNanos;
+    }
+
+    /**
+     * Gets if the given snapshot of a subject's contexts is still valid.
+     *
+     * @param snapshot the snapshot
+     * @param signals the number of times the subject has been signalled
+     * @return if the snapshot is valid
+     */
+    boolean isValid(ContextSnapshot snapshot, int signals) {
+        return isValid(snapshot, this.calculators.calculators(), signals);
+    }
+
+    private boolean isValid(ContextSnapshot snapshot, Object[] calculators, int signals) {
+        return snapshot.signals == signals &&
+                snapshot.calculators == calculators &&
+                snapshot.generation == this.generation.get() &&
+                !snapshot.isExpired(System.nanoTime());
+    }
+
+    /**
+     * Gets if a subject signalled at the given time (in nanos) is still settling,
+     * see {@link #calculate(Object, ContextSnapshot, int, boolean)}.
+     *
+     * @param signalTime the time of the last signal
+     * @return if the subject is settling
+     */
+    boolean isSettling(long signalTime) {
+        return System.nanoTime() - signalTime < this.expiryNanos;
     }
 
     public ImmutableContextSet getPotentialContexts() {
@@ -189,14 +342,21 @@ public abstract class ContextManager<S, P extends S> {
         return builder.build();
     }
 
-    private final class StaticLookupCache extends ExpiringCache<QueryOptions> {
-        StaticLookupCache() {
-            super(50L, TimeUnit.MILLISECONDS);
-        }
-
-        @Override
-        public @NonNull QueryOptions supply() {
-            return calculateStatic();
+    private final class StaticLookupCache {
+        private volatile ContextSnapshot snapshot;
+
+        QueryOptions get() {
+            ContextSnapshot snapshot = this.snapshot;
+            if (snapshot == null || !isValid(snapshot, ContextManager.this.calculators.staticCalculators(), 0)) {
+                synchronized (this) {
+                    snapshot = this.snapshot;
+                    if (snapshot == null || !isValid(snapshot, ContextManager.this.calculators.staticCalculators(), 0)) {
+                        snapshot = calculateStatic(snapshot);
+                        this.snapshot = snapshot;
+                    }
+                }
+            }
+            return snapshot.queryOptions;
         }
     }
 
@@ -211,55 +371,94 @@ public abstract class ContextManager<S, P extends S> {
     }
 
     private final class CalculatorList {
-        private final List<ContextCalculator<? super S>> calculators;
-        private final List<StaticContextCalculator> staticCalculators;
+        private final List<Registration> registrations;
 
-        private volatile ContextCalculator<? super S>[] calculatorsArray;
-        private volatile StaticContextCalculator[] staticCalculatorsArray;
+        private volatile Baked baked;
 
         CalculatorList() {
-            this.calculators = new ArrayList<>();
-            this.staticCalculators = new ArrayList<>();
+            this.registrations = new ArrayList<>();
             bake();
         }
 
         @SuppressWarnings("unchecked")
         private void bake() {
-            this.calculatorsArray = this.calculators.toArray(new ContextCalculator[0]);
-            this.staticCalculatorsArray = this.staticCalculators.toArray(new StaticContextCalculator[0]);
+            List<ContextCalculator<? super S>> calculators = new ArrayList<>();
+            List<ContextCalculatorTimings> timings = new ArrayList<>();
+            List<StaticContextCalculator> staticCalculators = new ArrayList<>();
+            List<ContextCalculatorTimings> staticTimings = new ArrayList<>();
+
+            for (Registration registration : this.registrations) {
+                calculators.add(registration.registered);
+                timings.add(registration.timings);
+                if (registration.registered instanceof StaticContextCalculator) {
+                    staticCalculators.add((StaticContextCalculator) registration.registered);
+                    staticTimings.add(registration.timings);
+                }
+            }
+
+            this.baked = new Baked(
+                    calculators.toArray(new ContextCalculator[0]),
+                    timings.toArray(new ContextCalculatorTimings[0]),
+                    staticCalculators.toArray(new StaticContextCalculator[0]),
+                    staticTimings.toArray(new ContextCalculatorTimings[0])
+            );
         }
 
-        public void add(ContextCalculator<? super S> calculator) {
+        public void add(ContextCalculator<? super S> calculator, ContextCalculator<? super S> registered, ContextCalculatorTimings timings) {
             synchronized (this) {
                 // calculators registered first should have priority (and be checked last.)
-                this.calculators.add(0, calculator);
-
-                if (calculator instanceof StaticContextCalculator) {
-                    StaticContextCalculator staticCalculator = (StaticContextCalculator) calculator;
-                    this.staticCalculators.add(0, staticCalculator);
-                }
-
+                this.registrations.add(0, new Registration(calculator, registered, timings));
                 bake();
             }
         }
 
         public void remove(ContextCalculator<? super S> calculator) {
             synchronized (this) {
-                this.calculators.remove(calculator);
-                if (calculator instanceof StaticContextCalculator) {
-                    this.staticCalculators.remove(calculator);
-                }
-
+                this.registrations.removeIf(registration -> registration.calculator.equals(calculator));
                 bake();
             }
         }
 
+        public Baked baked() {
+            return this.baked;
+        }
+
         public ContextCalculator<? super S>[] calculators() {
-            return this.calculatorsArray;
+            return this.baked.calculators;
         }
 
         public StaticContextCalculator[] staticCalculators() {
-            return this.staticCalculatorsArray;
+            return this.baked.staticCalculators;
+        }
+
+        public List<ContextCalculatorTimings> timings() {
+            return Arrays.asList(this.baked.timings.clone());
+        }
+
+        private final class Registration {
+            private final ContextCalculator<? super S> calculator;
+            private final ContextCalculator<? super S> registered;
+            private final ContextCalculatorTimings timings;
+
+            Registration(ContextCalculator<? super S> calculator, ContextCalculator<? super S> registered, ContextCalculatorTimings timings) {
+                this.calculator = calculator;
+                this.registered = registered;
+                this.timings = timings;
+            }
+        }
+
+        private final class Baked {
+            private final ContextCalculator<? super S>[] calculators;
+            private final ContextCalculatorTimings[] timings;
+            private final StaticContextCalculator[] staticCalculators;
+            private final ContextCalculatorTimings[] staticTimings;
+
+            Baked(ContextCalculator<? super S>[] calculators, ContextCalculatorTimings[] timings, StaticContextCalculator[] staticCalculators, ContextCalculatorTimings[] staticTimings) {
+                this.calculators = calculators;
+                this.timings = timings;
+                this.staticCalculators = staticCalculators;
+                this.staticTimings = staticTimings;
+            }
         }
     }
 
@@ -0,0 +1,89 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.context.manager;
+
+import net.luckperms.api.context.ImmutableContextSet;
+import net.luckperms.api.query.QueryOptions;
+
+/**
+ * The result of a context calculation, along with the results of each of the
+ * calculators which contributed to it.
+ *
+ * <p>The results of each calculator expire independently - so only the calculators
+ * which have expired need to be called again when the snapshot is refreshed.</p>
+ */
+final class ContextSnapshot {
+
+    /** Expiry value for results which are valid until the subject is signalled */
+    static final long NEVER = Long.MAX_VALUE;
+
+    /** The calculators which were called, used to detect (un)registrations */
+    final Object[] calculators;
+
+    /** The results of each calculator */
+    final ImmutableContextSet[] results;
+
+    /** When each result expires, in nanos, or {@link #NEVER} */
+    final long[] expiries;
+
+    /** When the first result expires, in nanos, or {@link #NEVER} */
+    final long expiry;
+
+    /** The generation of the context manager when the snapshot was calculated */
+    final int generation;
+
+    /** The number of times the subject had been signalled when the snapshot was calculated */
+    final int signals;
+
+    /** The resultant query options */
+    final QueryOptions queryOptions;
+
+    ContextSnapshot(Object[] calculators, ImmutableContextSet[] results, long[] expiries, int generation, int signals, QueryOptions queryOptions) {
+        this.calculators = calculators;
+        this.results = results;
+        this.expiries = expiries;
+        this.generation = generation;
+        this.signals = signals;
+        this.queryOptions = queryOptions;
+
+        long expiry = NEVER;
+        for (long e : expiries) {
+            if (e != NEVER && (expiry == NEVER || e - expiry < 0)) {
+                expiry = e;
+            }
+        }
+        this.expiry = expiry;
+    }
+
+    boolean isExpired(long now) {
+        return this.expiry != NEVER && now - this.expiry >= 0;
+    }
+
+    boolean isExpired(int index, long now) {
+        long expiry = this.expiries[index];
+        return expiry != NEVER && now - expiry >= 0;
+    }
+}
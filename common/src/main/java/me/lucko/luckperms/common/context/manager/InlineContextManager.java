@@ -31,13 +31,11 @@ import me.lucko.luckperms.common.util.CaffeineFactory;
 import net.luckperms.api.context.ImmutableContextSet;
 import net.luckperms.api.query.QueryOptions;
 
-import java.util.concurrent.TimeUnit;
-
 public abstract class InlineContextManager<S, P extends S> extends ContextManager<S, P> {
 
-    private final LoadingCache<S, QueryOptions> contextsCache = CaffeineFactory.newBuilder()
-            .expireAfterWrite(50, TimeUnit.MILLISECONDS)
-            .build(this::calculate);
+    private final LoadingCache<S, QueryOptionsCache<S>> contextsCache = CaffeineFactory.newBuilder()
+            .weakKeys()
+            .build(subject -> new QueryOptionsCache<>(subject, this));
 
     protected InlineContextManager(LuckPermsPlugin plugin, Class<S> subjectClass, Class<P> playerClass) {
         super(plugin, subjectClass, playerClass);
@@ -49,10 +47,10 @@ public abstract class InlineContextManager<S, P extends S> extends ContextManage
             throw new NullPointerException("subject");
         }
 
-        return new InlineQueryOptionsSupplier<>(subject, this.contextsCache);
+        return this.contextsCache.get(subject);
     }
 
-    // override getContext, getQueryOptions and invalidateCache to skip the QueryOptionsSupplier
+    // override getContext, getQueryOptions and invalidateCache to skip the getCacheFor null check
     @Override
     public final ImmutableContextSet getContext(S subject) {
         return getQueryOptions(subject).context();
@@ -60,31 +58,19 @@ public abstract class InlineContextManager<S, P extends S> extends ContextManage
 
     @Override
     public final QueryOptions getQueryOptions(S subject) {
-        return this.contextsCache.get(subject);
+        return this.contextsCache.get(subject).getQueryOptions();
     }
 
     @Override
     protected final void invalidateCache(S subject) {
-        this.contextsCache.invalidate(subject);
+        QueryOptionsCache<S> cache = this.contextsCache.getIfPresent(subject);
+        if (cache != null) {
+            cache.invalidate();
+        }
     }
 
     @Override
     public QueryOptions formQueryOptions(S subject, ImmutableContextSet contextSet) {
         return formQueryOptions(contextSet);
     }
-
-    private static final class InlineQueryOptionsSupplier<T> implements QueryOptionsSupplier {
-        private final T key;
-        private final LoadingCache<T, QueryOptions> cache;
-
-        InlineQueryOptionsSupplier(T key, LoadingCache<T, QueryOptions> cache) {
-            this.key = key;
-            this.cache = cache;
-        }
-
-        @Override
-        public QueryOptions getQueryOptions() {
-            return this.cache.get(this.key);
-        }
-    }
 }
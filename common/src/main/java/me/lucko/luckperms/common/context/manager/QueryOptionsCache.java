@@ -25,40 +25,82 @@
 
 package me.lucko.luckperms.common.context.manager;
 
-import me.lucko.luckperms.common.cache.ExpiringCache;
 import net.luckperms.api.context.ImmutableContextSet;
 import net.luckperms.api.query.QueryOptions;
-import org.checkerframework.checker.nullness.qual.NonNull;
 
-import java.util.concurrent.TimeUnit;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Implementation of {@link QueryOptionsSupplier} that caches results.
  *
+ * <p>The results of each calculator are cached until they expire, or (for
+ * calculators which signal changes) until the subject is next signalled.</p>
+ *
+ * <p>The subject is only weakly referenced, so that caches can be held in
+ * maps which are weakly keyed by the subject.</p>
+ *
  * @param <T> the player type
  */
-public final class QueryOptionsCache<T> extends ExpiringCache<QueryOptions> implements QueryOptionsSupplier {
-    private final T subject;
+public final class QueryOptionsCache<T> implements QueryOptionsSupplier {
+    private final WeakReference<T> subject;
     private final ContextManager<T, ?> contextManager;
 
+    /** The number of times the subject has been signalled */
+    private final AtomicInteger signals = new AtomicInteger(0);
+    /** The time of the most recent signal, in nanos */
+    private volatile long signalTime;
+
+    private volatile ContextSnapshot snapshot = null;
+
     public QueryOptionsCache(T subject, ContextManager<T, ?> contextManager) {
-        super(50L, TimeUnit.MILLISECONDS); // expire roughly every tick
-        this.subject = subject;
+        this.subject = new WeakReference<>(subject);
         this.contextManager = contextManager;
-    }
-
-    @Override
-    protected @NonNull QueryOptions supply() {
-        return this.contextManager.calculate(this.subject);
+        // treat creation as a signal - the subject may still be being set up
+        this.signalTime = System.nanoTime();
     }
 
     @Override
     public QueryOptions getQueryOptions() {
-        return get();
+        ContextSnapshot snapshot = this.snapshot;
+        if (snapshot != null && this.contextManager.isValid(snapshot, this.signals.get())) {
+            return snapshot.queryOptions;
+        }
+
+        synchronized (this) {
+            int signals = this.signals.get();
+            snapshot = this.snapshot;
+            if (snapshot != null && this.contextManager.isValid(snapshot, signals)) {
+                return snapshot.queryOptions;
+            }
+
+            T subject = this.subject.get();
+            if (subject == null) {
+                // the subject has been unloaded, so nothing can signal it anymore
+                return snapshot != null ? snapshot.queryOptions : this.contextManager.getStaticQueryOptions();
+            }
+
+            // signals are sometimes fired before the change has actually been applied,
+            // so don't keep the results of signalling calculators indefinitely just yet
+            boolean settling = this.contextManager.isSettling(this.signalTime);
+
+            snapshot = this.contextManager.calculate(subject, snapshot, signals, settling);
+            this.snapshot = snapshot;
+            return snapshot.queryOptions;
+        }
     }
 
     @Override
     public ImmutableContextSet getContextSet() {
-        return get().context();
+        return getQueryOptions().context();
+    }
+
+    /**
+     * Invalidates the cached query options, following a signal that the
+     * subject's contexts have changed.
+     */
+    public void invalidate() {
+        this.signalTime = System.nanoTime();
+        this.signals.incrementAndGet();
     }
 }
@@ -25,22 +25,36 @@
 
 package me.lucko.luckperms.common.inheritance;
 
+import com.github.benmanes.caffeine.cache.Cache;
 import me.lucko.luckperms.common.config.ConfigKeys;
 import me.lucko.luckperms.common.graph.Graph;
 import me.lucko.luckperms.common.graph.TraversalAlgorithm;
 import me.lucko.luckperms.common.model.Group;
 import me.lucko.luckperms.common.model.PermissionHolder;
+import me.lucko.luckperms.common.model.User;
 import me.lucko.luckperms.common.plugin.LuckPermsPlugin;
+import me.lucko.luckperms.common.util.CaffeineFactory;
 import net.luckperms.api.node.types.InheritanceNode;
 import net.luckperms.api.query.QueryOptions;
 
+import java.lang.ref.WeakReference;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A {@link Graph} which represents an "inheritance tree".
+ *
+ * <p>The successors of each holder, and the traversal order from each start node,
+ * are memoised. Each memoised value records the {@link PermissionHolder#getDataVersion() data version}
+ * of the holders it was computed from, and is only recomputed once one of them
+ * changes (or a group is loaded/unloaded).</p>
  */
 public class InheritanceGraph implements Graph<PermissionHolder> {
     private final LuckPermsPlugin plugin;
@@ -50,24 +64,49 @@ public class InheritanceGraph implements Graph<PermissionHolder> {
      */
     private final QueryOptions queryOptions;
 
+    /**
+     * The memoised successors of each holder.
+     *
+     * <p>Holders are weakly referenced (by both the keys and values of the memoised
+     * data), so memoised data doesn't keep unloaded holders in memory.</p>
+     */
+    private final Cache<PermissionHolder, Successors> successors = CaffeineFactory.newBuilder()
+            .weakKeys()
+            .expireAfterAccess(5, TimeUnit.MINUTES)
+            .build();
+
+    /**
+     * The memoised traversals from each start node
+     */
+    private final Cache<PermissionHolder, Traversal> traversals = CaffeineFactory.newBuilder()
+            .weakKeys()
+            .expireAfterAccess(5, TimeUnit.MINUTES)
+            .build();
+
     public InheritanceGraph(LuckPermsPlugin plugin, QueryOptions queryOptions) {
         this.plugin = plugin;
         this.queryOptions = queryOptions;
     }
 
     @Override
-    public Iterable<? extends PermissionHolder> successors(PermissionHolder holder) {
-        Set<Group> successors = new LinkedHashSet<>();
-        for (InheritanceNode n : holder.getOwnInheritanceNodes(this.queryOptions)) {
-            Group g = this.plugin.getGroupManager().getIfLoaded(n.getGroupName());
-            if (g != null) {
-                successors.add(g);
-            }
+    public List<Group> successors(PermissionHolder holder) {
+        return getSuccessors(holder).sorted;
+    }
+
+    private Successors getSuccessors(PermissionHolder holder) {
+        int loadedGroupsVersion = this.plugin.getGroupManager().getLoadedGroupsVersion();
+
+        Successors successors = this.successors.getIfPresent(holder);
+        if (successors == null || !successors.isValid(holder, loadedGroupsVersion)) {
+            successors = new Successors(holder, loadedGroupsVersion);
+            this.successors.put(holder, successors);
         }
+        return successors;
+    }
 
-        List<Group> successorsSorted = new ArrayList<>(successors);
-        successorsSorted.sort(holder.getInheritanceComparator());
-        return successorsSorted;
+    @Override
+    public Iterable<PermissionHolder> traverse(TraversalAlgorithm algorithm, PermissionHolder startNode) {
+        return traverse(algorithm, false, startNode);
     }
 
     /**
@@ -81,20 +120,36 @@ public class InheritanceGraph implements Graph<PermissionHolder> {
      * @return an iterable
      */
     public Iterable<PermissionHolder> traverse(TraversalAlgorithm algorithm, boolean postTraversalSort, PermissionHolder startNode) {
-        Iterable<PermissionHolder> traversal = traverse(algorithm, startNode);
+        int loadedGroupsVersion = this.plugin.getGroupManager().getLoadedGroupsVersion();
+
+        Traversal traversal = this.traversals.getIfPresent(startNode);
+        if (traversal == null || !traversal.isValid(algorithm, postTraversalSort, loadedGroupsVersion)) {
+            traversal = computeTraversal(algorithm, postTraversalSort, startNode, loadedGroupsVersion);
+            this.traversals.put(startNode, traversal);
+        }
+        return traversal.getOrder(startNode);
+    }
+
+    private Traversal computeTraversal(TraversalAlgorithm algorithm, boolean postTraversalSort, PermissionHolder startNode, int loadedGroupsVersion) {
+        // record the successors used during the traversal, so the result can be validated later
+        List<Successors> dependencies = new ArrayList<>();
+        Graph<PermissionHolder> recordingGraph = holder -> {
+            Successors successors = getSuccessors(holder);
+            dependencies.add(successors);
+            return successors.sorted;
+        };
+
+        List<PermissionHolder> order = new ArrayList<>();
+        for (PermissionHolder holder : algorithm.traverse(recordingGraph, startNode)) {
+            order.add(holder);
+        }
 
         // perform post traversal sort if needed
         if (postTraversalSort) {
-            List<PermissionHolder> resolvedTraversal = new ArrayList<>();
-            for (PermissionHolder node : traversal) {
-                resolvedTraversal.add(node);
-            }
-
-            resolvedTraversal.sort(startNode.getInheritanceComparator());
-            traversal = resolvedTraversal;
+            order.sort(startNode.getInheritanceComparator());
         }
 
-        return traversal;
+        return new Traversal(startNode, algorithm, postTraversalSort, loadedGroupsVersion, dependencies.toArray(new Successors[0]), order);
     }
 
     /**
@@ -111,4 +166,118 @@ public class InheritanceGraph implements Graph<PermissionHolder> {
         );
     }
 
+    private static String storedPrimaryGroup(PermissionHolder holder) {
+        // the primary group of a user affects the order of its successors
+        return holder instanceof User ? ((User) holder).getPrimaryGroup().getStoredValue().orElse(null) : null;
+    }
+
+    /**
+     * The successors of a holder, sorted into inheritance order.
+     */
+    private final class Successors {
+        private final WeakReference<PermissionHolder> holder;
+        private final int holderVersion;
+        private final String primaryGroup;
+        private final int loadedGroupsVersion;
+
+        private final Group[] groups;
+        private final int[] groupVersions;
+        private final List<Group> sorted;
+
+        Successors(PermissionHolder holder, int loadedGroupsVersion) {
+            // read the versions before the data, see PermissionHolder#getDataVersion
+            this.holder = new WeakReference<>(holder);
+            this.holderVersion = holder.getDataVersion();
+            this.primaryGroup = storedPrimaryGroup(holder);
+            this.loadedGroupsVersion = loadedGroupsVersion;
+
+            Set<Group> successors = new LinkedHashSet<>();
+            for (InheritanceNode n : holder.getOwnInheritanceNodes(InheritanceGraph.this.queryOptions)) {
+                Group g = InheritanceGraph.this.plugin.getGroupManager().getIfLoaded(n.getGroupName());
+                if (g != null) {
+                    successors.add(g);
+                }
+            }
+
+            // the group weights are used to sort the successors
+            this.groups = successors.toArray(new Group[0]);
+            this.groupVersions = new int[this.groups.length];
+            for (int i = 0; i < this.groups.length; i++) {
+                this.groupVersions[i] = this.groups[i].getDataVersion();
+            }
+
+            Group[] sorted = this.groups.clone();
+            Arrays.sort(sorted, holder.getInheritanceComparator());
+            this.sorted = Collections.unmodifiableList(Arrays.asList(sorted));
+        }
+
+        boolean isValid(PermissionHolder holder, int loadedGroupsVersion) {
+            if (this.holder.get() != holder || this.holderVersion != holder.getDataVersion() || this.loadedGroupsVersion != loadedGroupsVersion) {
+                return false;
+            }
+            for (int i = 0; i < this.groups.length; i++) {
+                if (this.groupVersions[i] != this.groups[i].getDataVersion()) {
+                    return false;
+                }
+            }
+            return Objects.equals(this.primaryGroup, storedPrimaryGroup(holder));
+        }
+    }
+
+    /**
+     * The full traversal order from a start node.
+     *
+     * <p>The start node isn't held by the traversal, and is filled back in by
+     * {@link #getOrder(PermissionHolder)}.</p>
+     */
+    private static final class Traversal {
+        private final TraversalAlgorithm algorithm;
+        private final boolean postTraversalSort;
+        private final int loadedGroupsVersion;
+
+        private final Successors[] dependencies;
+        /** The traversal order, with null in place of the start node */
+        private final PermissionHolder[] order;
+        private final int startIndex;
+
+        Traversal(PermissionHolder startNode, TraversalAlgorithm algorithm, boolean postTraversalSort, int loadedGroupsVersion, Successors[] dependencies, List<PermissionHolder> order) {
+            this.algorithm = algorithm;
+            this.postTraversalSort = postTraversalSort;
+            this.loadedGroupsVersion = loadedGroupsVersion;
+            this.dependencies = dependencies;
+            this.order = order.toArray(new PermissionHolder[0]);
+            this.startIndex = order.indexOf(startNode);
+            if (this.startIndex != -1) {
+                this.order[this.startIndex] = null;
+            }
+        }
+
+        List<PermissionHolder> getOrder(PermissionHolder startNode) {
+            return new AbstractList<PermissionHolder>() {
+                @Override
+                public PermissionHolder get(int index) {
+                    return index == Traversal.this.startIndex ? startNode : Traversal.this.order[index];
+                }
+
+                @Override
+                public int size() {
+                    return Traversal.this.order.length;
+                }
+            };
+        }
+
+        boolean isValid(TraversalAlgorithm algorithm, boolean postTraversalSort, int loadedGroupsVersion) {
+            if (this.algorithm != algorithm || this.postTraversalSort != postTraversalSort || this.loadedGroupsVersion != loadedGroupsVersion) {
+                return false;
+            }
+            for (Successors successors : this.dependencies) {
+                PermissionHolder holder = successors.holder.get();
+                if (holder == null || !successors.isValid(holder, loadedGroupsVersion)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
 }
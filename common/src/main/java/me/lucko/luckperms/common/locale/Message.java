@@ -27,6 +27,7 @@ package me.lucko.luckperms.common.locale;
 
 import com.google.common.collect.Maps;
 import me.lucko.luckperms.common.actionlog.LoggedAction;
+import me.lucko.luckperms.common.calculator.LookupCacheBudget;
 import me.lucko.luckperms.common.model.Group;
 import me.lucko.luckperms.common.model.HolderType;
 import me.lucko.luckperms.common.model.PermissionHolder;
@@ -36,6 +37,7 @@ import me.lucko.luckperms.common.plugin.AbstractLuckPermsPlugin;
 import me.lucko.luckperms.common.plugin.LuckPermsPlugin;
 import me.lucko.luckperms.common.plugin.bootstrap.LuckPermsBootstrap;
 import me.lucko.luckperms.common.sender.Sender;
+import me.lucko.luckperms.common.storage.HolderSaveQueue;
 import me.lucko.luckperms.common.storage.StorageMetadata;
 import me.lucko.luckperms.common.util.DurationFormatter;
 import net.kyori.adventure.text.Component;
@@ -67,6 +69,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.OptionalInt;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static net.kyori.adventure.text.Component.empty;
@@ -1553,7 +1556,8 @@ public interface Message {
             // "     &3Static contexts: &f{}"
             // "     &3Online Players: &a{} &7(&a{}&7 unique)"
             // "     &3Uptime: &7{}"
-            // "     &3Local Data: &a{} &7users, &a{} &7groups, &a{} &7tracks",
+            // "     &3Local Data: &a{} &7users, &a{} &7groups, &a{} &7tracks"
+            // "     &3Lookup Cache: &a{} &7hits, &a{} &7misses, &a{} &7evictions (max &a{} &7per calculator)",
             prefixed(translatable()
                     .key("luckperms.command.info.running-plugin")
                     .color(DARK_GREEN)
@@ -1699,7 +1703,51 @@ public interface Message {
                                     text(plugin.getGroupManager().getAll().size(), GREEN),
                                     text(plugin.getTrackManager().getAll().size(), GREEN)
                             )
-                    ))
+                    )),
+            prefixed(text()
+                    .color(DARK_AQUA)
+                    .append(text("     "))
+                    .append(translatable("luckperms.command.info.lookup-cache-key"))
+                    .append(text(": "))
+                    .apply(builder -> {
+                        LookupCacheBudget budget = plugin.getLookupCacheBudget();
+                        if (budget.isBounded()) {
+                            builder.append(translatable()
+                                    .key("luckperms.command.info.lookup-cache")
+                                    .color(GRAY)
+                                    .args(
+                                            text(budget.getHitCount(), GREEN),
+                                            text(budget.getMissCount(), GREEN),
+                                            text(budget.getEvictionCount(), GREEN),
+                                            text(budget.getCurrentSize(), GREEN)
+                                    )
+                            );
+                        } else {
+                            builder.append(translatable("luckperms.command.info.lookup-cache-unbounded", GRAY));
+                        }
+                    })),
+            prefixed(text()
+                    .color(DARK_AQUA)
+                    .append(text("     "))
+                    .append(translatable("luckperms.command.info.save-queue-key"))
+                    .append(text(": "))
+                    .apply(builder -> {
+                        HolderSaveQueue saveQueue = plugin.getStorage().getSaveQueue().orElse(null);
+                        if (saveQueue != null) {
+                            builder.append(translatable()
+                                    .key("luckperms.command.info.save-queue")
+                                    .color(GRAY)
+                                    .args(
+                                            text(saveQueue.getQueueDepth(), GREEN),
+                                            text(saveQueue.getFlushCount(), GREEN),
+                                            text(saveQueue.getAverageFlushLatency(TimeUnit.MILLISECONDS) + "ms", GREEN),
+                                            text(saveQueue.getLastFlushLatency(TimeUnit.MILLISECONDS) + "ms", GREEN)
+                                    )
+                            );
+                        } else {
+                            builder.append(translatable("luckperms.command.info.save-queue-disabled", GRAY));
+                        }
+                    }))
     );
 
     Args1<Component> CREATE_ERROR = name -> prefixed(translatable()
@@ -3142,6 +3190,85 @@ public interface Message {
             .append(FULL_STOP)
     );
 
+    Args0 CONTEXTS_PROFILE_NONE = () -> prefixed(translatable()
+            // "&cNo context calculators are registered."
+            .key("luckperms.command.contexts.profile.none")
+            .color(RED)
+            .append(FULL_STOP)
+    );
+
+    Args1<Duration> CONTEXTS_PROFILE_HEADER = duration -> prefixed(translatable()
+            // "&aContext calculator timings over the last &b{}&a:"
+            .key("luckperms.command.contexts.profile.header")
+            .color(GREEN)
+            .args(text().color(AQUA).append(DurationFormatter.CONCISE.format(duration)))
+            .append(text(':'))
+    );
+
+    Args5<String, String, String, String, String> CONTEXTS_PROFILE_ENTRY = (calculator, millisPerSecond, callsPerSecond, p95Millis, asyncMillisPerSecond) -> prefixed(text()
+            // "&7- &b{} &7- &f{} &7ms/s, &f{} &7calls/s, p95 &f{} &7ms (off-thread &f{} &7ms/s)"
+            .color(GRAY)
+            .append(text('-'))
+            .append(space())
+            .append(text(calculator, AQUA))
+            .append(text(" - "))
+            .append(translatable("luckperms.command.contexts.profile.entry", text(millisPerSecond, WHITE), text(callsPerSecond, WHITE), text(p95Millis, WHITE)))
+            .apply(builder -> {
+                if (asyncMillisPerSecond != null) {
+                    builder.append(space());
+                    builder.append(OPEN_BRACKET);
+                    builder.append(translatable("luckperms.command.contexts.profile.async", text(asyncMillisPerSecond, WHITE)));
+                    builder.append(CLOSE_BRACKET);
+                }
+            })
+    );
+
+    Args0 CONTEXTS_PROFILE_RESET = () -> prefixed(translatable()
+            // "&bContext calculator timings have been reset."
+            .key("luckperms.command.contexts.profile.reset")
+            .color(AQUA)
+            .append(FULL_STOP)
+    );
+
+    Args1<String> MEMORY_HEADER = total -> prefixed(translatable()
+            // "&aEstimated memory usage: &b{}"
+            .key("luckperms.command.memory.header")
+            .color(GREEN)
+            .args(text(total, AQUA))
+    );
+
+    Args2<String, String> MEMORY_TYPE_ENTRY = (type, size) -> prefixed(text()
+            // "&7- &3{}&7: &f{}"
+            .color(GRAY)
+            .append(text('-'))
+            .append(space())
+            .append(text(type, DARK_AQUA))
+            .append(text(": "))
+            .append(text(size, WHITE))
+    );
+
+    Args1<Integer> MEMORY_HOLDERS_HEADER = count -> prefixed(translatable()
+            // "&aHeaviest &b{}&a holders:"
+            .key("luckperms.command.memory.holders-header")
+            .color(GREEN)
+            .args(text(count, AQUA))
+            .append(text(':'))
+    );
+
+    Args3<String, String, String> MEMORY_HOLDER_ENTRY = (type, name, size) -> prefixed(text()
+            // "&7- &b{} &7({}) - &f{}"
+            .color(GRAY)
+            .append(text('-'))
+            .append(space())
+            .append(text(name, AQUA))
+            .append(space())
+            .append(OPEN_BRACKET)
+            .append(text(type))
+            .append(CLOSE_BRACKET)
+            .append(text(" - "))
+            .append(text(size, WHITE))
+    );
+
     Args4<String, String, Component, Boolean> USER_INFO_GENERAL = (username, uuid, uuidType, online) -> joinNewline(
             // "&b&l> &bUser Info: &f{}"
             // "&f- &3UUID: &f{}"
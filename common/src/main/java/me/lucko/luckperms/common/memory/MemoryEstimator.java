@@ -0,0 +1,191 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.memory;
+
+import me.lucko.luckperms.common.cacheddata.AbstractCachedDataManager;
+import me.lucko.luckperms.common.cacheddata.type.MetaCache;
+import me.lucko.luckperms.common.cacheddata.type.PermissionCache;
+import me.lucko.luckperms.common.calculator.PermissionCalculator;
+import me.lucko.luckperms.common.model.PermissionHolder;
+import me.lucko.luckperms.common.model.nodemap.NodeMap;
+import me.lucko.luckperms.common.model.nodemap.NodeMapCopyOnWrite;
+import me.lucko.luckperms.common.plugin.LuckPermsPlugin;
+import me.lucko.luckperms.common.treeview.TreeNode;
+import net.luckperms.api.context.ImmutableContextSet;
+import net.luckperms.api.node.Node;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Estimates the heap memory used by the data LuckPerms holds.
+ *
+ * <p>There's no way to measure the retained size of an object without an
+ * instrumentation agent, so instead the estimator counts the objects held and
+ * multiplies by approximate per-object sizes. The sizes assume a 64-bit JVM with
+ * compressed oops, and are intended to give a sense of scale (and of which
+ * holders are heaviest) rather than to be exact.</p>
+ */
+public final class MemoryEstimator {
+    private MemoryEstimator() {}
+
+    // strings: object header, hash, coder and array reference + the array header
+    private static final int STRING = 24 + 16;
+    // a node, its metadata map and resolved shorthand list
+    private static final int NODE = 96;
+    // a context set: the object, its multimap and encoded id array
+    private static final int CONTEXT_SET = 96;
+    private static final int CONTEXT = 48 + 8;
+
+    // node map buckets: the mutable map holds a tree map entry and a concurrent skip list
+    // set per context, whereas the copy-on-write map holds immutable sorted arrays
+    private static final int MUTABLE_BUCKET = 160;
+    private static final int MUTABLE_ENTRY = 48;
+    private static final int COPY_ON_WRITE_BUCKET = 80;
+    private static final int COPY_ON_WRITE_ENTRY = 4;
+
+    // the cache object, its calculator and processors
+    private static final int PERMISSION_CACHE = 512;
+    private static final int PERMISSION_ENTRY = 48;
+    private static final int LOOKUP_ENTRY = 56 + STRING + 32;
+    private static final int META_CACHE = 384;
+    private static final int META_ENTRY = 80;
+
+    private static final int TREE_NODE = 24 + 64;
+    private static final int TREE_ENTRY = 56;
+
+    private static final Comparator<MemoryReport.Holder> BY_SIZE = Comparator.comparingLong(MemoryReport.Holder::getTotalBytes);
+
+    /**
+     * Estimates the memory used by the plugin.
+     *
+     * @param plugin the plugin
+     * @param limit the number of holders to include in the report
+     * @return the report
+     */
+    public static MemoryReport estimate(LuckPermsPlugin plugin, int limit) {
+        long[] total = new long[MemoryCategory.values().length];
+        PriorityQueue<MemoryReport.Holder> heaviest = new PriorityQueue<>(BY_SIZE);
+
+        // calculators may be shared between caches, so only count each once
+        Set<PermissionCalculator> calculators = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        List<PermissionHolder> holders = new ArrayList<>();
+        holders.addAll(plugin.getUserManager().getAll().values());
+        holders.addAll(plugin.getGroupManager().getAll().values());
+
+        for (PermissionHolder holder : holders) {
+            MemoryReport.Holder report = estimateHolder(holder, calculators);
+            for (MemoryCategory category : MemoryCategory.values()) {
+                total[category.ordinal()] += report.getBytes(category);
+            }
+
+            if (limit > 0) {
+                heaviest.offer(report);
+                if (heaviest.size() > limit) {
+                    heaviest.poll();
+                }
+            }
+        }
+
+        total[MemoryCategory.PERMISSION_REGISTRY.ordinal()] = estimateTree(plugin.getPermissionRegistry().getRootNode());
+
+        List<MemoryReport.Holder> sorted = new ArrayList<>(heaviest);
+        sorted.sort(BY_SIZE.reversed());
+        return new MemoryReport(total, sorted);
+    }
+
+    private static MemoryReport.Holder estimateHolder(PermissionHolder holder, Set<PermissionCalculator> calculators) {
+        long[] bytes = new long[MemoryCategory.values().length];
+        bytes[MemoryCategory.NODES.ordinal()] = estimateNodeMap(holder.normalData().bypass()) + estimateNodeMap(holder.transientData());
+
+        AbstractCachedDataManager cachedData = holder.getCachedData();
+        for (PermissionCache cache : cachedData.getLoadedPermissionData()) {
+            bytes[MemoryCategory.PERMISSION_CACHES.ordinal()] += PERMISSION_CACHE + (long) cache.getPermissionMap().size() * PERMISSION_ENTRY;
+
+            PermissionCalculator calculator = cache.getCalculator();
+            if (calculators.add(calculator)) {
+                bytes[MemoryCategory.LOOKUP_CACHES.ordinal()] += (long) calculator.getLookupCacheSize() * LOOKUP_ENTRY;
+            }
+        }
+        for (MetaCache cache : cachedData.getLoadedMetaData()) {
+            bytes[MemoryCategory.META_CACHES.ordinal()] += META_CACHE + (long) cache.getEntryCount() * META_ENTRY;
+        }
+
+        return new MemoryReport.Holder(holder.getIdentifier(), holder.getPlainDisplayName(), bytes);
+    }
+
+    static long estimateNodeMap(NodeMap map) {
+        boolean copyOnWrite = map instanceof NodeMapCopyOnWrite;
+        int bucket = copyOnWrite ? COPY_ON_WRITE_BUCKET : MUTABLE_BUCKET;
+        int entry = copyOnWrite ? COPY_ON_WRITE_ENTRY : MUTABLE_ENTRY;
+
+        long bytes = 0;
+        for (Map.Entry<ImmutableContextSet, Collection<Node>> e : map.asMap().entrySet()) {
+            bytes += bucket + estimateContextSet(e.getKey());
+            for (Node node : e.getValue()) {
+                bytes += entry + NODE + estimateString(node.getKey());
+            }
+        }
+
+        // inheritance nodes are indexed a second time, but the node objects are shared
+        for (Collection<?> nodes : map.inheritanceAsMap().values()) {
+            bytes += bucket + (long) nodes.size() * entry;
+        }
+        return bytes;
+    }
+
+    static long estimateContextSet(ImmutableContextSet set) {
+        return set.isEmpty() ? 0 : CONTEXT_SET + (long) set.size() * CONTEXT;
+    }
+
+    static long estimateString(String string) {
+        return STRING + align(string.length());
+    }
+
+    static long estimateTree(TreeNode node) {
+        long bytes = TREE_NODE;
+        Map<String, TreeNode> children = node.getChildren().orElse(null);
+        if (children != null) {
+            for (Map.Entry<String, TreeNode> e : children.entrySet()) {
+                bytes += TREE_ENTRY + estimateString(e.getKey()) + estimateTree(e.getValue());
+            }
+        }
+        return bytes;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+}
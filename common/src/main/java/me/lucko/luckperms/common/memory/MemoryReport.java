@@ -0,0 +1,128 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.memory;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import net.luckperms.api.model.PermissionHolder;
+import net.luckperms.api.platform.MemoryUsage;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The result of a {@link MemoryEstimator} run.
+ */
+public class MemoryReport implements MemoryUsage {
+    private final long[] bytes;
+    private final List<Holder> heaviestHolders;
+
+    MemoryReport(long[] bytes, List<Holder> heaviestHolders) {
+        this.bytes = bytes;
+        this.heaviestHolders = ImmutableList.copyOf(heaviestHolders);
+    }
+
+    public long getBytes(MemoryCategory category) {
+        return this.bytes[category.ordinal()];
+    }
+
+    @Override
+    public long getTotalBytes() {
+        return sum(this.bytes);
+    }
+
+    @Override
+    public @NonNull Map<String, Long> getBytesByType() {
+        return toNamedMap(this.bytes);
+    }
+
+    @Override
+    public @NonNull List<MemoryUsage.Holder> getHeaviestHolders() {
+        return ImmutableList.copyOf(this.heaviestHolders);
+    }
+
+    public List<Holder> getHeaviestHolderReports() {
+        return this.heaviestHolders;
+    }
+
+    private static long sum(long[] bytes) {
+        long total = 0;
+        for (long b : bytes) {
+            total += b;
+        }
+        return total;
+    }
+
+    private static Map<String, Long> toNamedMap(long[] bytes) {
+        ImmutableMap.Builder<String, Long> map = ImmutableMap.builder();
+        for (MemoryCategory category : MemoryCategory.values()) {
+            map.put(category.getName(), bytes[category.ordinal()]);
+        }
+        return map.build();
+    }
+
+    /**
+     * The memory used by a single holder.
+     */
+    public static final class Holder implements MemoryUsage.Holder {
+        private final PermissionHolder.Identifier identifier;
+        private final String displayName;
+        private final long[] bytes;
+        private final long totalBytes;
+
+        Holder(PermissionHolder.Identifier identifier, String displayName, long[] bytes) {
+            this.identifier = identifier;
+            this.displayName = displayName;
+            this.bytes = bytes;
+            this.totalBytes = sum(bytes);
+        }
+
+        public String getDisplayName() {
+            return this.displayName;
+        }
+
+        public long getBytes(MemoryCategory category) {
+            return this.bytes[category.ordinal()];
+        }
+
+        @Override
+        public PermissionHolder.@NonNull Identifier getIdentifier() {
+            return this.identifier;
+        }
+
+        @Override
+        public long getTotalBytes() {
+            return this.totalBytes;
+        }
+
+        @Override
+        public @NonNull Map<String, Long> getBytesByType() {
+            return toNamedMap(this.bytes);
+        }
+    }
+
+}
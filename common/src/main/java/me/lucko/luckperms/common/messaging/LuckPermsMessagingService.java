@@ -275,6 +275,8 @@ public class LuckPermsMessagingService extends AsyncInterface implements Interna
 
             User user = this.plugin.getUserManager().getIfLoaded(userUniqueId);
             if (user == null) {
+                // if we have a snapshot of the user, it's now out of date
+                this.plugin.getUserManager().getSnapshotCache().invalidate(userUniqueId);
                 this.plugin.getEventDispatcher().dispatchNetworkPostSync(msgId, SyncType.SPECIFIC_USER, false, userUniqueId);
                 return;
             }
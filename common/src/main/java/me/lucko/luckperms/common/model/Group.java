@@ -25,13 +25,17 @@
 
 package me.lucko.luckperms.common.model;
 
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
 import me.lucko.luckperms.common.api.implementation.ApiGroup;
 import me.lucko.luckperms.common.cache.Cache;
 import me.lucko.luckperms.common.cacheddata.GroupCachedDataManager;
+import me.lucko.luckperms.common.cacheddata.HolderCachedDataManager;
 import me.lucko.luckperms.common.cacheddata.result.IntegerResult;
 import me.lucko.luckperms.common.config.ConfigKeys;
 import me.lucko.luckperms.common.locale.Message;
 import me.lucko.luckperms.common.plugin.LuckPermsPlugin;
+import me.lucko.luckperms.common.util.CaffeineFactory;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
 import net.luckperms.api.node.NodeType;
@@ -40,10 +44,23 @@ import net.luckperms.api.node.types.WeightNode;
 import net.luckperms.api.query.QueryOptions;
 import org.checkerframework.checker.nullness.qual.NonNull;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Group extends PermissionHolder {
+
+    /**
+     * The maximum number of dependent caches which a permission change is applied to in
+     * place - past this, invalidating them is cheaper than resolving the change for each
+     */
+    public static final int MAX_DEPENDENT_PERMISSION_CHANGES = 32;
+
     private final ApiGroup apiProxy = new ApiGroup(this);
 
     /**
@@ -66,6 +83,12 @@ public class Group extends PermissionHolder {
      */
     private final GroupCachedDataManager cachedData;
 
+    /**
+     * The cached data of holders which inherit from this group, and the query options
+     * the inheriting caches were calculated in
+     */
+    private final Map<HolderCachedDataManager<?>, Set<QueryOptions>> dependents = new MapMaker().weakKeys().makeMap();
+
     public Group(String name, LuckPermsPlugin plugin) {
         super(plugin, name.toLowerCase(Locale.ROOT));
         this.name = getIdentifier().getName();
@@ -76,11 +99,89 @@ public class Group extends PermissionHolder {
 
     @Override
     protected void invalidateCache() {
-        super.invalidateCache();
-
-        // invalidate our caches
+        // invalidate our caches - before the data version is incremented
         this.weightCache.invalidate();
         this.displayNameCache.invalidate();
+
+        super.invalidateCache();
+
+        // invalidate the caches of holders which inherit from us
+        invalidateDependentCaches();
+    }
+
+    @Override
+    protected void applyPermissionChanges(Set<String> changedKeys) {
+        super.applyPermissionChanges(changedKeys);
+
+        // apply the change to the caches of holders which inherit from us
+        applyDependentPermissionChanges(changedKeys);
+    }
+
+    /**
+     * Records that the given cached data resolved this group as part of its
+     * inheritance tree, for the given query options.
+     *
+     * @param cachedData the cached data of the inheriting holder
+     * @param queryOptions the query options
+     */
+    public void registerDependent(HolderCachedDataManager<?> cachedData, QueryOptions queryOptions) {
+        this.dependents.computeIfAbsent(cachedData, x -> ConcurrentHashMap.newKeySet()).add(queryOptions);
+    }
+
+    /**
+     * Invalidates the cached data of holders which inherit from this group, in
+     * only the query options where this group was part of their inheritance tree.
+     *
+     * <p>The edges are kept once invalidated. A dependent may be recalculating its
+     * cache at the same time, having already registered itself - removing the edge
+     * would mean the result of that calculation is never invalidated by this group
+     * again. Edges which no longer apply only cause an unnecessary invalidation, and
+     * are released along with the dependent's cached data.</p>
+     */
+    public void invalidateDependentCaches() {
+        for (Map.Entry<HolderCachedDataManager<?>, Set<QueryOptions>> entry : this.dependents.entrySet()) {
+            HolderCachedDataManager<?> cachedData = entry.getKey();
+            for (QueryOptions queryOptions : entry.getValue()) {
+                cachedData.invalidate(queryOptions);
+            }
+        }
+    }
+
+    /**
+     * Applies a change to the given permission keys to the cached data of holders
+     * which inherit from this group, in only the query options where this group
+     * was part of their inheritance tree.
+     *
+     * <p>The changes are applied asynchronously, so the thread which changed the group
+     * isn't held up resolving the keys for every dependent - they see the change shortly
+     * after. If there are more than {@link #MAX_DEPENDENT_PERMISSION_CHANGES} dependent
+     * caches, they are invalidated instead, and recalculated when next used.</p>
+     *
+     * @param changedKeys the (lowercase) permission keys which have changed
+     * @return a future which completes once the changes have been applied
+     */
+    public CompletableFuture<Void> applyDependentPermissionChanges(Set<String> changedKeys) {
+        List<Map.Entry<HolderCachedDataManager<?>, QueryOptions>> targets = new ArrayList<>();
+        for (Map.Entry<HolderCachedDataManager<?>, Set<QueryOptions>> entry : this.dependents.entrySet()) {
+            for (QueryOptions queryOptions : entry.getValue()) {
+                if (targets.size() == MAX_DEPENDENT_PERMISSION_CHANGES) {
+                    invalidateDependentCaches();
+                    return CompletableFuture.completedFuture(null);
+                }
+                targets.add(Maps.immutableEntry(entry.getKey(), queryOptions));
+            }
+        }
+
+        if (targets.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return CompletableFuture.runAsync(() -> {
+            for (Map.Entry<HolderCachedDataManager<?>, QueryOptions> target : targets) {
+                // the inheritance tree is unchanged, so the edge remains valid
+                target.getKey().applyPermissionChanges(changedKeys, target.getValue());
+            }
+        }, CaffeineFactory.executor());
     }
 
     // name getters
@@ -29,9 +29,11 @@ import com.google.common.collect.Iterables;
 import me.lucko.luckperms.common.cacheddata.HolderCachedDataManager;
 import me.lucko.luckperms.common.cacheddata.result.IntegerResult;
 import me.lucko.luckperms.common.cacheddata.type.MetaAccumulator;
+import me.lucko.luckperms.common.config.ConfigKeys;
 import me.lucko.luckperms.common.inheritance.InheritanceComparator;
 import me.lucko.luckperms.common.inheritance.InheritanceGraph;
 import me.lucko.luckperms.common.model.nodemap.NodeMap;
+import me.lucko.luckperms.common.model.nodemap.NodeMapCopyOnWrite;
 import me.lucko.luckperms.common.model.nodemap.NodeMapMutable;
 import me.lucko.luckperms.common.model.nodemap.RecordedNodeMap;
 import me.lucko.luckperms.common.node.NodeEquality;
@@ -59,13 +61,19 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.OptionalInt;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.function.IntFunction;
 import java.util.function.Predicate;
 
@@ -128,6 +136,13 @@ public abstract class PermissionHolder {
      */
     private final Comparator<? super PermissionHolder> inheritanceComparator;
 
+    /**
+     * Incremented each time the holders data changes
+     *
+     * @see #getDataVersion()
+     */
+    private final AtomicInteger dataVersion = new AtomicInteger();
+
     /**
      * Creates a new instance
      *
@@ -136,11 +151,18 @@ public abstract class PermissionHolder {
     protected PermissionHolder(LuckPermsPlugin plugin, String objectName) {
         this.plugin = plugin;
         this.identifier = new PermissionHolderIdentifier(getType(), objectName);
-        this.normalNodes = new RecordedNodeMap(new NodeMapMutable(this, DataType.NORMAL));
-        this.transientNodes = new NodeMapMutable(this, DataType.TRANSIENT);
+        this.normalNodes = new RecordedNodeMap(createNodeMap(DataType.NORMAL));
+        this.transientNodes = createNodeMap(DataType.TRANSIENT);
         this.inheritanceComparator = InheritanceComparator.getFor(this);
     }
 
+    private NodeMap createNodeMap(DataType type) {
+        if (this.plugin.getConfiguration().get(ConfigKeys.COPY_ON_WRITE_NODE_MAPS)) {
+            return new NodeMapCopyOnWrite(this, type);
+        }
+        return new NodeMapMutable(this, type);
+    }
+
     // getters
 
     public LuckPermsPlugin getPlugin() {
@@ -210,21 +232,94 @@ public abstract class PermissionHolder {
      */
     public abstract HolderType getType();
 
+    /**
+     * Gets a stamp which changes each time the holders data changes.
+     *
+     * <p>Changes which only affect plain permissions are applied to the existing
+     * caches in place, and do not change the stamp.</p>
+     *
+     * <p>The stamp should be read <b>before</b> any data derived from the holder
+     * is computed - so that a concurrent change results in a stale stamp rather
+     * than stale data.</p>
+     *
+     * @return the data version
+     */
+    public int getDataVersion() {
+        return this.dataVersion.get();
+    }
+
     protected void invalidateCache() {
+        this.dataVersion.incrementAndGet();
         getCachedData().invalidate();
         getPlugin().getEventDispatcher().dispatchDataRecalculate(this);
     }
 
-    public void loadNodesFromStorage(Iterable<? extends Node> set) {
+    /**
+     * Invalidates the holders caches following the given change to its nodes.
+     *
+     * <p>Changes which only add or remove plain permissions are applied to the
+     * existing caches in place, anything else falls back to {@link #invalidateCache()}.</p>
+     *
+     * @param changes the changes made to the holders nodes
+     */
+    protected void invalidateCache(Difference<Node> changes) {
+        Set<String> changedKeys = changedPermissionKeys(changes);
+        if (changedKeys == null) {
+            invalidateCache();
+        } else if (!changedKeys.isEmpty()) {
+            applyPermissionChanges(changedKeys);
+        }
+    }
+
+    /**
+     * Applies a change to the given permission keys to the holders caches.
+     *
+     * @param changedKeys the (lowercase) permission keys which have changed
+     */
+    protected void applyPermissionChanges(Set<String> changedKeys) {
+        getCachedData().applyPermissionChanges(changedKeys);
+        getPlugin().getEventDispatcher().dispatchDataRecalculate(this);
+    }
+
+    /**
+     * Gets the permission keys affected by the given changes, or null if the changes
+     * affect more than just the resolved permissions (e.g. inheritance or meta).
+     *
+     * @param changes the changes
+     * @return the affected keys
+     */
+    private static @Nullable Set<String> changedPermissionKeys(Difference<Node> changes) {
+        Set<String> keys = new HashSet<>();
+        for (Difference.Change<Node> change : changes.getChanges()) {
+            Node node = change.value();
+            if (!NodeType.PERMISSION.matches(node) && !NodeType.REGEX_PERMISSION.matches(node)) {
+                return null;
+            }
+
+            // include the shorthand forms even if shorthand isn't applied - they're just resolved again
+            keys.add(node.getKey().toLowerCase(Locale.ROOT));
+            for (String s : node.resolveShorthand()) {
+                keys.add(s.toLowerCase(Locale.ROOT));
+            }
+        }
+        return keys;
+    }
+
+    public Difference<Node> loadNodesFromStorage(Iterable<? extends Node> set) {
         // TODO: should we attempt to "replay" existing changes on top of the new data?
         normalData().discardChanges();
-        normalData().bypass().setContent(set);
-        invalidateCache();
+        Difference<Node> changes = normalData().bypass().setContent(set);
+
+        // if nothing changed, the existing caches are still valid
+        if (!changes.isEmpty()) {
+            invalidateCache(changes);
+        }
+        return changes;
     }
 
     public Difference<Node> setNodes(DataType type, Iterable<? extends Node> set, boolean callEvent) {
         Difference<Node> res = getData(type).setContent(set);
-        invalidateCache();
+        invalidateCache(res);
         if (callEvent) {
             getPlugin().getEventDispatcher().dispatchNodeChanges(this, type, res);
         }
@@ -233,7 +328,7 @@ public abstract class PermissionHolder {
 
     public Difference<Node> setNodes(DataType type, Difference<Node> changes, boolean callEvent) {
         Difference<Node> res = getData(type).applyChanges(changes);
-        invalidateCache();
+        invalidateCache(res);
         if (callEvent) {
             getPlugin().getEventDispatcher().dispatchNodeChanges(this, type, res);
         }
@@ -241,8 +336,8 @@ public abstract class PermissionHolder {
     }
 
     public void mergeNodes(DataType type, Iterable<? extends Node> set) {
-        getData(type).addAll(set);
-        invalidateCache();
+        Difference<Node> changes = getData(type).addAll(set);
+        invalidateCache(changes);
     }
 
     private DataType[] queryOrder(QueryOptions queryOptions) {
@@ -282,6 +377,18 @@ public abstract class PermissionHolder {
     }
 
     public List<Node> resolveInheritedNodes(QueryOptions queryOptions) {
+        return resolveInheritedNodes(queryOptions, null);
+    }
+
+    /**
+     * Resolves the nodes inherited by this holder, passing each inherited group to
+     * the given consumer before its nodes are read.
+     *
+     * @param queryOptions the query options
+     * @param inheritedGroups a consumer for each inherited group, or null
+     * @return the resolved nodes
+     */
+    public List<Node> resolveInheritedNodes(QueryOptions queryOptions, @Nullable Consumer<? super Group> inheritedGroups) {
         if (!queryOptions.flag(Flag.RESOLVE_INHERITANCE)) {
             return getOwnNodes(queryOptions);
         }
@@ -289,6 +396,7 @@ public abstract class PermissionHolder {
         List<Node> nodes = new ArrayList<>();
         InheritanceGraph graph = this.plugin.getInheritanceGraphFactory().getGraph(queryOptions);
         for (PermissionHolder holder : graph.traverse(this)) {
+            visitInheritedGroup(holder, inheritedGroups);
             for (DataType dataType : holder.queryOrder(queryOptions)) {
                 holder.getData(dataType).copyTo(nodes, queryOptions);
             }
@@ -352,13 +460,81 @@ public abstract class PermissionHolder {
         return (List) inheritanceTree;
     }
 
+    private void visitInheritedGroup(PermissionHolder holder, @Nullable Consumer<? super Group> inheritedGroups) {
+        if (inheritedGroups != null && holder != this && holder instanceof Group) {
+            inheritedGroups.accept((Group) holder);
+        }
+    }
+
     public <M extends Map<String, Node>> M exportPermissions(IntFunction<M> mapFactory, QueryOptions queryOptions, boolean convertToLowercase, boolean resolveShorthand) {
-        List<Node> entries = resolveInheritedNodes(queryOptions);
+        return exportPermissions(mapFactory, queryOptions, convertToLowercase, resolveShorthand, null);
+    }
+
+    public <M extends Map<String, Node>> M exportPermissions(IntFunction<M> mapFactory, QueryOptions queryOptions, boolean convertToLowercase, boolean resolveShorthand, @Nullable Consumer<? super Group> inheritedGroups) {
+        List<Node> entries = resolveInheritedNodes(queryOptions, inheritedGroups);
         M map = mapFactory.apply(entries.size());
         processExportedPermissions(map, entries, convertToLowercase, resolveShorthand);
         return map;
     }
 
+    /**
+     * Exports the holders resolved permissions for only the given keys.
+     *
+     * <p>The result is equivalent to filtering a (lowercase) map returned by
+     * {@link #exportPermissions(IntFunction, QueryOptions, boolean, boolean)}, but
+     * the inherited nodes are visited in place rather than copied, and the walk
+     * stops once every key has been resolved.</p>
+     *
+     * @param keys the (lowercase) keys to export
+     * @param queryOptions the query options
+     * @param resolveShorthand if shorthand should be resolved
+     * @return the resolved permissions
+     */
+    public Map<String, Node> exportPermissions(Set<String> keys, QueryOptions queryOptions, boolean resolveShorthand) {
+        Map<String, Node> map = new HashMap<>();
+        Consumer<Node> exactKeys = node -> {
+            String key = node.getKey().toLowerCase(Locale.ROOT);
+            if (keys.contains(key)) {
+                map.putIfAbsent(key, node);
+            }
+        };
+
+        // visit the holders in the same order as resolveInheritedNodes
+        List<PermissionHolder> visited = new ArrayList<>();
+        Iterable<PermissionHolder> holders = queryOptions.flag(Flag.RESOLVE_INHERITANCE)
+                ? this.plugin.getInheritanceGraphFactory().getGraph(queryOptions).traverse(this)
+                : Collections.singleton(this);
+
+        for (PermissionHolder holder : holders) {
+            for (DataType dataType : holder.queryOrder(queryOptions)) {
+                holder.getData(dataType).forEach(queryOptions, exactKeys);
+            }
+
+            // exact keys take priority over shorthand, so once every key is found there's nothing left to resolve
+            if (map.size() == keys.size()) {
+                return map;
+            }
+            visited.add(holder);
+        }
+
+        if (resolveShorthand) {
+            Consumer<Node> shorthandKeys = node -> {
+                for (String s : node.resolveShorthand()) {
+                    String key = s.toLowerCase(Locale.ROOT);
+                    if (keys.contains(key)) {
+                        map.putIfAbsent(key, node);
+                    }
+                }
+            };
+            for (PermissionHolder holder : visited) {
+                for (DataType dataType : holder.queryOrder(queryOptions)) {
+                    holder.getData(dataType).forEach(queryOptions, shorthandKeys);
+                }
+            }
+        }
+        return map;
+    }
+
     private static void processExportedPermissions(Map<String, Node> accumulator, List<Node> entries, boolean convertToLowercase, boolean resolveShorthand) {
         for (Node node : entries) {
             if (convertToLowercase) {
@@ -387,8 +563,14 @@ public abstract class PermissionHolder {
     }
 
     public MetaAccumulator accumulateMeta(MetaAccumulator accumulator, QueryOptions queryOptions) {
+        return accumulateMeta(accumulator, queryOptions, null);
+    }
+
+    public MetaAccumulator accumulateMeta(MetaAccumulator accumulator, QueryOptions queryOptions, @Nullable Consumer<? super Group> inheritedGroups) {
         InheritanceGraph graph = this.plugin.getInheritanceGraphFactory().getGraph(queryOptions);
         for (PermissionHolder holder : graph.traverse(this)) {
+            visitInheritedGroup(holder, inheritedGroups);
+
             // accumulate nodes
             for (DataType dataType : holder.queryOrder(queryOptions)) {
                 holder.getData(dataType).forEach(queryOptions, node -> {
@@ -430,7 +612,7 @@ public abstract class PermissionHolder {
     private boolean auditTemporaryNodes(DataType dataType) {
         Difference<Node> result = getData(dataType).removeIf(Node::hasExpired);
         if (!result.isEmpty()) {
-            invalidateCache();
+            invalidateCache(result);
         }
         this.plugin.getEventDispatcher().dispatchNodeChanges(this, dataType, result);
         return !result.isEmpty();
@@ -463,7 +645,7 @@ public abstract class PermissionHolder {
         }
 
         Difference<Node> changes = getData(dataType).add(node);
-        invalidateCache();
+        invalidateCache(changes);
         if (callEvent) {
             this.plugin.getEventDispatcher().dispatchNodeChanges(this, dataType, changes);
         }
@@ -500,7 +682,7 @@ public abstract class PermissionHolder {
                 if (newNode != null) {
                     // Remove the old Node & add the new one.
                     Difference<Node> changes = data.removeThenAdd(otherMatch, newNode);
-                    invalidateCache();
+                    invalidateCache(changes);
                     this.plugin.getEventDispatcher().dispatchNodeChanges(this, dataType, changes);
 
                     return new MergedNodeResult(DataMutateResult.SUCCESS, newNode);
@@ -518,7 +700,7 @@ public abstract class PermissionHolder {
         }
 
         Difference<Node> changes = getData(dataType).remove(node);
-        invalidateCache();
+        invalidateCache(changes);
         this.plugin.getEventDispatcher().dispatchNodeChanges(this, dataType, changes);
 
         return DataMutateResult.SUCCESS;
@@ -540,7 +722,7 @@ public abstract class PermissionHolder {
 
                     // Remove the old Node & add the new one.
                     Difference<Node> changes = data.removeThenAdd(otherMatch, newNode);
-                    invalidateCache();
+                    invalidateCache(changes);
                     this.plugin.getEventDispatcher().dispatchNodeChanges(this, dataType, changes);
 
                     return new MergedNodeResult(DataMutateResult.SUCCESS, newNode);
@@ -568,7 +750,7 @@ public abstract class PermissionHolder {
             getPlugin().getUserManager().giveDefaultIfNeeded((User) this);
         }
 
-        invalidateCache();
+        invalidateCache(changes);
         this.plugin.getEventDispatcher().dispatchNodeClear(this, dataType, changes);
         return true;
     }
@@ -585,7 +767,7 @@ public abstract class PermissionHolder {
             getPlugin().getUserManager().giveDefaultIfNeeded((User) this);
         }
 
-        invalidateCache();
+        invalidateCache(changes);
         this.plugin.getEventDispatcher().dispatchNodeClear(this, dataType, changes);
         return true;
     }
@@ -29,7 +29,9 @@ import me.lucko.luckperms.common.api.implementation.ApiUser;
 import me.lucko.luckperms.common.cacheddata.UserCachedDataManager;
 import me.lucko.luckperms.common.config.ConfigKeys;
 import me.lucko.luckperms.common.plugin.LuckPermsPlugin;
+import me.lucko.luckperms.common.util.Difference;
 import net.kyori.adventure.text.Component;
+import net.luckperms.api.node.Node;
 import net.luckperms.api.query.QueryOptions;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
@@ -59,6 +61,11 @@ public class User extends PermissionHolder {
      */
     private final UserCachedDataManager cachedData;
 
+    /**
+     * The time the user was last retrieved from the user manager, used to decide which users to evict
+     */
+    private volatile long lastAccessTime = System.nanoTime();
+
     public User(UUID uniqueId, LuckPermsPlugin plugin) {
         super(plugin, uniqueId.toString());
         this.uniqueId = uniqueId;
@@ -108,6 +115,24 @@ public class User extends PermissionHolder {
         return this.primaryGroup;
     }
 
+    @Override
+    public Difference<Node> loadNodesFromStorage(Iterable<? extends Node> set) {
+        Difference<Node> changes = super.loadNodesFromStorage(set);
+        if (changes.isEmpty()) {
+            // the stored primary group is loaded along with the nodes, and is part of the cached meta
+            this.cachedData.metaData().invalidate();
+        }
+        return changes;
+    }
+
+    public long getLastAccessTime() {
+        return this.lastAccessTime;
+    }
+
+    public void recordAccess() {
+        this.lastAccessTime = System.nanoTime();
+    }
+
     /**
      * Sets the users name
      *
@@ -76,6 +76,15 @@ public abstract class AbstractManager<I, C, T extends C> implements Manager<I, C
                 .forEach(this::unload);
     }
 
+    /**
+     * Gets the number of objects currently loaded.
+     *
+     * @return the number of loaded objects
+     */
+    protected int size() {
+        return this.objects.size();
+    }
+
     protected I sanitizeIdentifier(I i) {
         return i;
     }
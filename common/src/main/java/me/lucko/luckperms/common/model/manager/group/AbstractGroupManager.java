@@ -30,8 +30,38 @@ import me.lucko.luckperms.common.model.manager.AbstractManager;
 
 import java.util.Locale;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class AbstractGroupManager<T extends Group> extends AbstractManager<String, Group, T> implements GroupManager<T> {
+    private final AtomicInteger loadedGroupsVersion = new AtomicInteger();
+
+    @Override
+    public T getOrMake(String id) {
+        T group = getIfLoaded(id);
+        if (group == null) {
+            group = super.getOrMake(id);
+            // only increment once the group is visible to other threads
+            this.loadedGroupsVersion.incrementAndGet();
+        }
+        return group;
+    }
+
+    @Override
+    public void unload(String id) {
+        T group = getIfLoaded(id);
+        super.unload(id);
+        this.loadedGroupsVersion.incrementAndGet();
+
+        // holders which inherited from the group need to be recalculated without it
+        if (group != null) {
+            group.invalidateDependentCaches();
+        }
+    }
+
+    @Override
+    public int getLoadedGroupsVersion() {
+        return this.loadedGroupsVersion.get();
+    }
 
     @Override
     public T getByDisplayName(String name) {
@@ -44,6 +44,13 @@ public interface GroupManager<T extends Group> extends Manager<String, Group, T>
      */
     T getByDisplayName(String name);
 
+    /**
+     * Gets a stamp which changes each time a group is loaded or unloaded.
+     *
+     * @return the loaded groups version
+     */
+    int getLoadedGroupsVersion();
+
     /**
      * Invalidates the cached data for *loaded* groups.
      */
@@ -25,6 +25,7 @@
 
 package me.lucko.luckperms.common.model.manager.user;
 
+import com.google.common.collect.Iterables;
 import me.lucko.luckperms.common.config.ConfigKeys;
 import me.lucko.luckperms.common.context.ImmutableContextSetImpl;
 import me.lucko.luckperms.common.model.User;
@@ -38,7 +39,9 @@ import net.luckperms.api.model.data.DataType;
 import net.luckperms.api.node.Node;
 import net.luckperms.api.node.types.InheritanceNode;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
@@ -46,18 +49,79 @@ import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public abstract class AbstractUserManager<T extends User> extends AbstractManager<UUID, User, T> implements UserManager<T> {
 
     private final LuckPermsPlugin plugin;
     private final UserHousekeeper housekeeper;
+    private final UserSnapshotCache snapshotCache;
+
+    // the maximum number of users to keep loaded, or 0 for no limit
+    private final int maxSize;
+    private final AtomicBoolean evictionScheduled = new AtomicBoolean(false);
 
     public AbstractUserManager(LuckPermsPlugin plugin, UserHousekeeper.TimeoutSettings timeoutSettings) {
         this.plugin = plugin;
         this.housekeeper = new UserHousekeeper(plugin, this, timeoutSettings);
+        this.snapshotCache = new UserSnapshotCache(plugin.getConfiguration().get(ConfigKeys.USER_CACHE_SNAPSHOT_MEMORY) * 1024L * 1024L);
+        this.maxSize = plugin.getConfiguration().get(ConfigKeys.USER_CACHE_MAX_SIZE);
         this.plugin.getBootstrap().getScheduler().asyncRepeating(this.housekeeper, 30, TimeUnit.SECONDS);
     }
 
+    @Override
+    public T getOrMake(UUID id) {
+        T user = super.getOrMake(id);
+        if (this.maxSize != 0) {
+            user.recordAccess();
+            if (size() > this.maxSize) {
+                scheduleEviction();
+            }
+        }
+        return user;
+    }
+
+    @Override
+    public T getIfLoaded(UUID id) {
+        T user = super.getIfLoaded(id);
+        if (user != null && this.maxSize != 0) {
+            user.recordAccess();
+        }
+        return user;
+    }
+
+    private void scheduleEviction() {
+        if (!this.evictionScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        this.plugin.getBootstrap().getScheduler().executeAsync(() -> {
+            try {
+                evictExcess();
+            } finally {
+                this.evictionScheduled.set(false);
+            }
+        });
+    }
+
+    /**
+     * Unloads the least recently used users until the number of loaded users is
+     * back within the limit.
+     */
+    private void evictExcess() {
+        // evict a few more than necessary, so this doesn't run again for every user loaded from here on
+        int target = this.maxSize - this.maxSize / 10;
+
+        List<T> users = new ArrayList<>(getAll().values());
+        int excess = users.size() - target;
+        if (excess <= 0) {
+            return;
+        }
+
+        users.sort(Comparator.comparingLong(User::getLastAccessTime));
+        this.housekeeper.evict(users, excess);
+    }
+
     @Override
     public T getOrMake(UUID id, String username) {
         T user = getOrMake(id);
@@ -160,14 +224,63 @@ public abstract class AbstractUserManager<T extends User> extends AbstractManage
         return this.housekeeper;
     }
 
+    @Override
+    public UserSnapshotCache getSnapshotCache() {
+        return this.snapshotCache;
+    }
+
+    @Override
+    public T loadFromSnapshot(UUID uniqueId, String username) {
+        // if the user is already loaded, they're being reloaded on purpose - go to storage
+        if (isLoaded(uniqueId)) {
+            this.snapshotCache.invalidate(uniqueId);
+            return null;
+        }
+
+        // without a messaging service we aren't told when the user is modified on another
+        // server, so the snapshot may be out of date - go to storage
+        if (!this.plugin.getMessagingService().isPresent()) {
+            this.snapshotCache.invalidate(uniqueId);
+            return null;
+        }
+
+        UserSnapshotCache.Snapshot snapshot = this.snapshotCache.take(uniqueId);
+        if (snapshot == null) {
+            return null;
+        }
+
+        T user = getOrMake(uniqueId, username);
+        user.getPrimaryGroup().setStoredValue(snapshot.getPrimaryGroup() != null ? snapshot.getPrimaryGroup() : GroupManager.DEFAULT_GROUP_NAME);
+        user.setUsername(snapshot.getUsername(), true);
+        user.loadNodesFromStorage(snapshot.getNodes());
+        giveDefaultIfNeeded(user);
+        return user;
+    }
+
     @Override
     public CompletableFuture<Void> loadAllUsers() {
         Set<UUID> ids = new HashSet<>(getAll().keySet());
         ids.addAll(this.plugin.getBootstrap().getOnlinePlayers());
 
-        return ids.stream()
-                .map(id -> this.plugin.getStorage().loadUser(id, null))
-                .collect(CompletableFutures.collector());
+        // load in batches rather than one at a time, with each batch running in parallel.
+        // existing user instances are updated in place, so caches survive if nothing changed
+        int batchSize = this.plugin.getConfiguration().get(ConfigKeys.SYNC_USER_BATCH_SIZE);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (List<UUID> batch : Iterables.partition(ids, batchSize)) {
+            futures.add(loadUsers(new HashSet<>(batch)));
+        }
+        return CompletableFutures.allOf(futures);
+    }
+
+    private CompletableFuture<Void> loadUsers(Set<UUID> uniqueIds) {
+        return this.plugin.getStorage().loadUsers(uniqueIds).handle((users, ex) -> {
+            if (ex == null) {
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+
+            // retry the batch one user at a time, so one failure doesn't stop the others from loading
+            return CompletableFutures.allOf(uniqueIds.stream().map(uniqueId -> this.plugin.getStorage().loadUser(uniqueId, null)));
+        }).thenCompose(future -> future);
     }
 
     @Override
@@ -72,11 +72,12 @@ public class UserHousekeeper implements Runnable {
         for (UUID entry : this.userManager.getAll().keySet()) {
             cleanup(entry);
         }
+        this.userManager.getSnapshotCache().cleanup();
     }
 
     public void cleanup(UUID uuid) {
         // unload users which aren't online and who haven't been online (or tried to login) recently
-        if (this.recentlyUsed.contains(uuid) || this.recentlyUsedApi.contains(uuid) || this.plugin.getBootstrap().isPlayerOnline(uuid)) {
+        if (this.recentlyUsedApi.contains(uuid) || !canUnload(uuid)) {
             return;
         }
 
@@ -85,15 +86,51 @@ public class UserHousekeeper implements Runnable {
             return;
         }
 
+        unload(user);
+    }
+
+    /**
+     * Unloads up to {@code count} of the given users, skipping any which are online
+     * or have been online (or tried to login) recently.
+     *
+     * <p>Unlike {@link #cleanup(UUID)}, users recently retrieved from the API may be
+     * unloaded - this is used to keep the number of loaded users within a limit.</p>
+     *
+     * @param users the users to consider, in the order they should be unloaded
+     * @param count the number of users to unload
+     * @return the number of users unloaded
+     */
+    public int evict(Iterable<? extends User> users, int count) {
+        int evicted = 0;
+        for (User user : users) {
+            if (evicted >= count) {
+                break;
+            }
+            if (canUnload(user.getUniqueId()) && unload(user)) {
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    private boolean canUnload(UUID uuid) {
+        return !this.recentlyUsed.contains(uuid) && !this.plugin.getBootstrap().isPlayerOnline(uuid);
+    }
+
+    private boolean unload(User user) {
         if (this.plugin.getEventDispatcher().dispatchUserUnload(user)) {
-            return;
+            return false;
         }
 
         // unload them
         if (this.plugin.getConfiguration().get(ConfigKeys.DEBUG_LOGINS)) {
-            this.plugin.getLogger().info("User Housekeeper: unloading user data for " + uuid);
+            this.plugin.getLogger().info("User Housekeeper: unloading user data for " + user.getUniqueId());
+        }
+        if (this.plugin.getMessagingService().isPresent()) {
+            this.userManager.getSnapshotCache().store(user);
         }
-        this.userManager.unload(uuid);
+        this.userManager.unload(user.getUniqueId());
+        return true;
     }
 
     public static TimeoutSettings timeoutSettings(long duration, TimeUnit unit) {
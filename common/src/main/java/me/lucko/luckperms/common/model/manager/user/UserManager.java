@@ -75,6 +75,26 @@ public interface UserManager<T extends User> extends Manager<UUID, User, T> {
      */
     UserHousekeeper getHouseKeeper();
 
+    /**
+     * Gets the snapshots of users which have been unloaded.
+     *
+     * @return the snapshot cache
+     */
+    UserSnapshotCache getSnapshotCache();
+
+    /**
+     * Loads a user from the snapshot taken when they were last unloaded, if
+     * there is one, instead of from storage.
+     *
+     * <p>Snapshots are only used when a messaging service is active, as otherwise
+     * we aren't told when the user is modified on another server.</p>
+     *
+     * @param uniqueId the unique id of the user
+     * @param username the username, if known
+     * @return the loaded user, or null if there was no snapshot
+     */
+    T loadFromSnapshot(UUID uniqueId, String username);
+
     /**
      * Reloads the data of all *online* users
      */
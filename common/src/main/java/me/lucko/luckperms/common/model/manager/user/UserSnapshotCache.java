@@ -0,0 +1,326 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.model.manager.user;
+
+import me.lucko.luckperms.common.context.ImmutableContextSetImpl;
+import me.lucko.luckperms.common.model.User;
+import me.lucko.luckperms.common.node.NodeInterner;
+import me.lucko.luckperms.common.node.factory.NodeBuilders;
+import net.luckperms.api.context.Context;
+import net.luckperms.api.context.ImmutableContextSet;
+import net.luckperms.api.node.Node;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds compact, serialised snapshots of users which have been evicted from the
+ * {@link UserManager}, so they can be loaded again without a round trip to storage.
+ *
+ * <p>Each snapshot is held as a single byte array, which is much smaller than the
+ * loaded user and contains no references for the GC to trace. Once the memory
+ * budget is used up, the oldest snapshots are discarded first.</p>
+ *
+ * <p>Snapshots are only as fresh as the user was when they were evicted, so they
+ * are discarded whenever the user may have been modified elsewhere (see
+ * {@link #invalidate(UUID)} and {@link #clear()}), and after a short time in case
+ * we weren't told. They are only used at all when a messaging service is active,
+ * as without one we are never told about changes made on other servers.</p>
+ */
+public class UserSnapshotCache {
+    private final long maxBytes;
+    private final long expiryNanos;
+
+    // in insertion order, so the oldest snapshots are evicted first
+    private final LinkedHashMap<UUID, Entry> snapshots = new LinkedHashMap<>();
+    private long bytes = 0;
+
+    public UserSnapshotCache(long maxBytes) {
+        this(maxBytes, 15, TimeUnit.MINUTES);
+    }
+
+    public UserSnapshotCache(long maxBytes, long expiry, TimeUnit unit) {
+        this.maxBytes = maxBytes;
+        this.expiryNanos = unit.toNanos(expiry);
+    }
+
+    public boolean isEnabled() {
+        return this.maxBytes > 0;
+    }
+
+    /**
+     * Takes a snapshot of the given user.
+     *
+     * <p>Users with changes which haven't been saved yet are skipped - their data
+     * is not yet the same as the data in storage. So are users with strings which
+     * are too long to encode.</p>
+     *
+     * @param user the user
+     */
+    public void store(User user) {
+        if (!isEnabled() || user.normalData().hasChanges()) {
+            return;
+        }
+
+        byte[] encoded;
+        try {
+            encoded = encode(user);
+        } catch (UTFDataFormatException e) {
+            // a string is too long to encode (over 64KB) - don't snapshot this user
+            return;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        if (encoded.length > this.maxBytes) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        synchronized (this) {
+            remove(user.getUniqueId());
+            this.snapshots.put(user.getUniqueId(), new Entry(encoded, now));
+            this.bytes += encoded.length;
+
+            Iterator<Entry> it = this.snapshots.values().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (this.bytes <= this.maxBytes && !isExpired(entry, now)) {
+                    break;
+                }
+                this.bytes -= entry.data.length;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Discards any snapshots which have expired.
+     */
+    public void cleanup() {
+        if (!isEnabled()) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        synchronized (this) {
+            // snapshots are in the order they were taken, so stop at the first which hasn't expired
+            Iterator<Entry> it = this.snapshots.values().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (!isExpired(entry, now)) {
+                    break;
+                }
+                this.bytes -= entry.data.length;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes and returns the snapshot for the given user, if there is one.
+     *
+     * @param uniqueId the unique id of the user
+     * @return the snapshot, or null
+     */
+    public @Nullable Snapshot take(UUID uniqueId) {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        Entry entry;
+        synchronized (this) {
+            entry = remove(uniqueId);
+        }
+
+        if (entry == null || isExpired(entry, System.nanoTime())) {
+            return null;
+        }
+
+        try {
+            return decode(entry.data);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Discards the snapshot for the given user.
+     *
+     * @param uniqueId the unique id of the user
+     */
+    public void invalidate(UUID uniqueId) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        synchronized (this) {
+            remove(uniqueId);
+        }
+    }
+
+    /**
+     * Discards all snapshots.
+     */
+    public void clear() {
+        if (!isEnabled()) {
+            return;
+        }
+
+        synchronized (this) {
+            this.snapshots.clear();
+            this.bytes = 0;
+        }
+    }
+
+    public synchronized int size() {
+        return this.snapshots.size();
+    }
+
+    public synchronized long getBytes() {
+        return this.bytes;
+    }
+
+    private Entry remove(UUID uniqueId) {
+        Entry entry = this.snapshots.remove(uniqueId);
+        if (entry != null) {
+            this.bytes -= entry.data.length;
+        }
+        return entry;
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return now - entry.time > this.expiryNanos;
+    }
+
+    private static byte[] encode(User user) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeUTF(user.getUsername().orElse(""));
+        out.writeUTF(user.getPrimaryGroup().getStoredValue().orElse(""));
+
+        List<Node> nodes = user.normalData().asList();
+        out.writeInt(nodes.size());
+        for (Node node : nodes) {
+            out.writeUTF(node.getKey());
+            out.writeBoolean(node.getValue());
+            out.writeLong(node.hasExpiry() ? node.getExpiry().getEpochSecond() : 0L);
+
+            ImmutableContextSet contexts = node.getContexts();
+            out.writeInt(contexts.size());
+            for (Context context : contexts) {
+                out.writeUTF(context.getKey());
+                out.writeUTF(context.getValue());
+            }
+        }
+
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Snapshot decode(byte[] encoded) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded));
+
+        String username = in.readUTF();
+        String primaryGroup = in.readUTF();
+
+        int size = in.readInt();
+        List<Node> nodes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String key = in.readUTF();
+            boolean value = in.readBoolean();
+            long expiry = in.readLong();
+
+            int contextsSize = in.readInt();
+            ImmutableContextSet.Builder contexts = new ImmutableContextSetImpl.BuilderImpl();
+            for (int j = 0; j < contextsSize; j++) {
+                contexts.add(in.readUTF(), in.readUTF());
+            }
+
+            nodes.add(NodeInterner.intern(NodeBuilders.determineMostApplicable(key)
+                    .value(value)
+                    .expiry(expiry)
+                    .context(contexts.build())
+                    .build()));
+        }
+
+        return new Snapshot(
+                username.isEmpty() ? null : username,
+                primaryGroup.isEmpty() ? null : primaryGroup,
+                nodes
+        );
+    }
+
+    private static final class Entry {
+        private final byte[] data;
+        private final long time;
+
+        Entry(byte[] data, long time) {
+            this.data = data;
+            this.time = time;
+        }
+    }
+
+    /**
+     * The data held in a snapshot.
+     */
+    public static final class Snapshot {
+        private final @Nullable String username;
+        private final @Nullable String primaryGroup;
+        private final List<Node> nodes;
+
+        Snapshot(@Nullable String username, @Nullable String primaryGroup, List<Node> nodes) {
+            this.username = username;
+            this.primaryGroup = primaryGroup;
+            this.nodes = nodes;
+        }
+
+        public @Nullable String getUsername() {
+            return this.username;
+        }
+
+        public @Nullable String getPrimaryGroup() {
+            return this.primaryGroup;
+        }
+
+        public List<Node> getNodes() {
+            return this.nodes;
+        }
+    }
+
+}
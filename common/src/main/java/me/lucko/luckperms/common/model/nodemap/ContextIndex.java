@@ -0,0 +1,227 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.model.nodemap;
+
+import me.lucko.luckperms.common.context.ImmutableContextSetImpl;
+import net.luckperms.api.context.Context;
+import net.luckperms.api.context.ContextSatisfyMode;
+import net.luckperms.api.context.ImmutableContextSet;
+import net.luckperms.api.node.Node;
+import net.luckperms.api.node.types.InheritanceNode;
+import net.luckperms.api.query.QueryMode;
+import net.luckperms.api.query.QueryOptions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+
+/**
+ * An index of the context buckets in a {@link NodeMapBase}, which allows the buckets
+ * satisfied by a query to be found without testing every bucket in turn.
+ *
+ * <p>Each context (key/value pair) maps to the buckets which mention it. The buckets
+ * satisfied by a query are found by counting, for each bucket, how many of its
+ * contexts (or keys, depending on the {@link ContextSatisfyMode}) the query contains.</p>
+ *
+ * <p>The index is immutable - it is rebuilt when buckets are added or removed,
+ * which is much rarer than nodes being added to or removed from existing buckets.</p>
+ */
+final class ContextIndex {
+
+    /** Below this many buckets, a linear scan is cheaper than using the index */
+    private static final int LINEAR_SCAN_THRESHOLD = 16;
+
+    private static final int[] EMPTY = new int[0];
+
+    /** The version of the node map the index was built from */
+    final int version;
+
+    // the buckets, in the same order as the node map
+    private final ImmutableContextSet[] contexts;
+    private final SortedSet<Node>[] nodes;
+    private final SortedSet<InheritanceNode>[] inheritanceNodes;
+
+    /** The number of contexts in each bucket */
+    private final int[] sizes;
+    /** The number of distinct context keys in each bucket */
+    private final int[] keyCounts;
+    /** The buckets which mention each context */
+    private final Map<Context, int[]> buckets;
+    /** The buckets with no contexts, which are satisfied by every query */
+    private final int[] global;
+
+    @SuppressWarnings("unchecked")
+    ContextIndex(int version, SortedMap<ImmutableContextSet, SortedSet<Node>> map, SortedMap<ImmutableContextSet, SortedSet<InheritanceNode>> inheritanceMap) {
+        this.version = version;
+
+        List<ImmutableContextSet> contexts = new ArrayList<>();
+        List<SortedSet<Node>> nodes = new ArrayList<>();
+        for (Map.Entry<ImmutableContextSet, SortedSet<Node>> e : map.entrySet()) {
+            contexts.add(e.getKey());
+            nodes.add(e.getValue());
+        }
+
+        int size = contexts.size();
+        this.contexts = contexts.toArray(new ImmutableContextSet[0]);
+        this.nodes = nodes.toArray(new SortedSet[0]);
+        this.inheritanceNodes = new SortedSet[size];
+        this.sizes = new int[size];
+        this.keyCounts = new int[size];
+
+        Map<Context, List<Integer>> buckets = new HashMap<>();
+        List<Integer> global = new ArrayList<>();
+
+        for (int i = 0; i < size; i++) {
+            ImmutableContextSet context = this.contexts[i];
+            this.inheritanceNodes[i] = inheritanceMap.get(context);
+            this.sizes[i] = context.size();
+            this.keyCounts[i] = context.toMap().size();
+
+            if (context.isEmpty()) {
+                global.add(i);
+            }
+            for (Context entry : context) {
+                buckets.computeIfAbsent(entry, k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        this.buckets = new HashMap<>(buckets.size());
+        for (Map.Entry<Context, List<Integer>> e : buckets.entrySet()) {
+            this.buckets.put(e.getKey(), toArray(e.getValue()));
+        }
+        this.global = toArray(global);
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    ImmutableContextSet context(int bucket) {
+        return this.contexts[bucket];
+    }
+
+    SortedSet<Node> nodes(int bucket) {
+        return this.nodes[bucket];
+    }
+
+    SortedSet<InheritanceNode> inheritanceNodes(int bucket) {
+        return this.inheritanceNodes[bucket];
+    }
+
+    /**
+     * Gets the buckets which satisfy the given query options, in node map order.
+     *
+     * @param filter the query options
+     * @param defaultSatisfyMode the default satisfy mode
+     * @return the indexes of the satisfied buckets
+     */
+    int[] satisfying(QueryOptions filter, ContextSatisfyMode defaultSatisfyMode) {
+        int size = this.contexts.length;
+        if (size < LINEAR_SCAN_THRESHOLD || filter.mode() != QueryMode.CONTEXTUAL || !(filter.context() instanceof ImmutableContextSetImpl)) {
+            return scan(filter, defaultSatisfyMode);
+        }
+
+        ContextSatisfyMode mode = filter.option(ContextSatisfyMode.KEY).orElse(defaultSatisfyMode);
+        boolean perKey = mode == ContextSatisfyMode.AT_LEAST_ONE_VALUE_PER_KEY;
+
+        // the contexts are sorted by key, so each key's values are adjacent
+        Context[] query = ((ImmutableContextSetImpl) filter.context()).toArray();
+
+        int[] hits = new int[size];
+        int[] lastKey = perKey ? new int[size] : null;
+        int[] touched = new int[size];
+        int touchedCount = 0;
+
+        String currentKey = null;
+        int keyStamp = 0;
+
+        for (Context context : query) {
+            if (!context.getKey().equals(currentKey)) {
+                currentKey = context.getKey();
+                keyStamp++;
+            }
+
+            int[] buckets = this.buckets.get(context);
+            if (buckets == null) {
+                continue;
+            }
+
+            for (int bucket : buckets) {
+                if (perKey) {
+                    // only count each key once
+                    if (lastKey[bucket] == keyStamp) {
+                        continue;
+                    }
+                    lastKey[bucket] = keyStamp;
+                }
+                if (hits[bucket]++ == 0) {
+                    touched[touchedCount++] = bucket;
+                }
+            }
+        }
+
+        int[] result = new int[touchedCount + this.global.length];
+        int resultCount = 0;
+        for (int i = 0; i < touchedCount; i++) {
+            int bucket = touched[i];
+            int required = perKey ? this.keyCounts[bucket] : this.sizes[bucket];
+            if (hits[bucket] == required) {
+                result[resultCount++] = bucket;
+            }
+        }
+        for (int bucket : this.global) {
+            result[resultCount++] = bucket;
+        }
+
+        result = Arrays.copyOf(result, resultCount);
+        Arrays.sort(result);
+        return result;
+    }
+
+    private int[] scan(QueryOptions filter, ContextSatisfyMode defaultSatisfyMode) {
+        int size = this.contexts.length;
+        if (size == 0) {
+            return EMPTY;
+        }
+
+        int[] result = new int[size];
+        int resultCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (filter.satisfies(this.contexts[i], defaultSatisfyMode)) {
+                result[resultCount++] = i;
+            }
+        }
+        return resultCount == size ? result : Arrays.copyOf(result, resultCount);
+    }
+}
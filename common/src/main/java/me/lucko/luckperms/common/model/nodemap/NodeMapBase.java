@@ -49,6 +49,10 @@ import java.util.function.Consumer;
  * Base implementation of {@link NodeMap} query methods.
  */
 abstract class NodeMapBase implements NodeMap {
+
+    /** Incremented whenever a context bucket is added to or removed from the maps */
+    private volatile int contextIndexVersion = 0;
+    private volatile ContextIndex contextIndex = null;
    
     NodeMapBase() {
 
@@ -60,6 +64,32 @@ abstract class NodeMapBase implements NodeMap {
 
     protected abstract ContextSatisfyMode defaultSatisfyMode();
 
+    /**
+     * Marks the context index as out of date. Must be called (whilst holding
+     * the write lock) after a context bucket is added to or removed from either map.
+     */
+    protected void invalidateContextIndex() {
+        //noinspection NonAtomicOperationOnVolatileField - writes are guarded by the lock
+        this.contextIndexVersion++;
+    }
+
+    /**
+     * Gets an up to date context index for the maps.
+     *
+     * @return the context index
+     */
+    protected ContextIndex contextIndex() {
+        int version = this.contextIndexVersion;
+        ContextIndex index = this.contextIndex;
+        if (index == null || index.version != version) {
+            // if the maps are changed whilst the index is being built, the version
+            // will be out of date & the index will be built again next time
+            index = new ContextIndex(version, map(), inheritanceMap());
+            this.contextIndex = index;
+        }
+        return index;
+    }
+
     @Override
     public boolean isEmpty() {
         return map().isEmpty();
@@ -101,20 +131,19 @@ abstract class NodeMapBase implements NodeMap {
 
     @Override
     public void forEach(QueryOptions filter, Consumer<? super Node> consumer) {
-        for (Map.Entry<ImmutableContextSet, SortedSet<Node>> e : map().entrySet()) {
-            if (!filter.satisfies(e.getKey(), defaultSatisfyMode())) {
-                continue;
-            }
+        ContextIndex index = contextIndex();
+        for (int bucket : index.satisfying(filter, defaultSatisfyMode())) {
+            ImmutableContextSet context = index.context(bucket);
 
-            if (normalNodesExcludeTest(filter, e.getKey())) {
-                if (inheritanceNodesIncludeTest(filter, e.getKey())) {
-                    SortedSet<InheritanceNode> inheritanceNodes = inheritanceMap().get(e.getKey());
+            if (normalNodesExcludeTest(filter, context)) {
+                if (inheritanceNodesIncludeTest(filter, context)) {
+                    SortedSet<InheritanceNode> inheritanceNodes = index.inheritanceNodes(bucket);
                     if (inheritanceNodes != null) {
                         inheritanceNodes.forEach(consumer);
                     }
                 }
             } else {
-                e.getValue().forEach(consumer);
+                index.nodes(bucket).forEach(consumer);
             }
         }
     }
@@ -135,20 +164,19 @@ abstract class NodeMapBase implements NodeMap {
 
     @Override
     public void copyTo(Collection<? super Node> collection, QueryOptions filter) {
-        for (Map.Entry<ImmutableContextSet, SortedSet<Node>> e : map().entrySet()) {
-            if (!filter.satisfies(e.getKey(), defaultSatisfyMode())) {
-                continue;
-            }
+        ContextIndex index = contextIndex();
+        for (int bucket : index.satisfying(filter, defaultSatisfyMode())) {
+            ImmutableContextSet context = index.context(bucket);
 
-            if (normalNodesExcludeTest(filter, e.getKey())) {
-                if (inheritanceNodesIncludeTest(filter, e.getKey())) {
-                    SortedSet<InheritanceNode> inheritanceNodes = inheritanceMap().get(e.getKey());
+            if (normalNodesExcludeTest(filter, context)) {
+                if (inheritanceNodesIncludeTest(filter, context)) {
+                    SortedSet<InheritanceNode> inheritanceNodes = index.inheritanceNodes(bucket);
                     if (inheritanceNodes != null) {
                         collection.addAll(inheritanceNodes);
                     }
                 }
             } else {
-                collection.addAll(e.getValue());
+                collection.addAll(index.nodes(bucket));
             }
         }
     }
@@ -160,17 +188,14 @@ abstract class NodeMapBase implements NodeMap {
             copyInheritanceNodesTo((Collection<? super InheritanceNode>) collection, filter);
             return;
         }
-        
-        for (Map.Entry<ImmutableContextSet, SortedSet<Node>> e : map().entrySet()) {
-            if (!filter.satisfies(e.getKey(), defaultSatisfyMode())) {
-                continue;
-            }
 
-            if (normalNodesExcludeTest(filter, e.getKey())) {
+        ContextIndex index = contextIndex();
+        for (int bucket : index.satisfying(filter, defaultSatisfyMode())) {
+            if (normalNodesExcludeTest(filter, index.context(bucket))) {
                 continue;
             }
 
-            for (Node node : e.getValue()) {
+            for (Node node : index.nodes(bucket)) {
                 if (type.matches(node)) {
                     collection.add(type.cast(node));
                 }
@@ -194,13 +219,11 @@ abstract class NodeMapBase implements NodeMap {
 
     @Override
     public void copyInheritanceNodesTo(Collection<? super InheritanceNode> collection, QueryOptions filter) {
-        for (Map.Entry<ImmutableContextSet, SortedSet<InheritanceNode>> e : inheritanceMap().entrySet()) {
-            if (!filter.satisfies(e.getKey(), defaultSatisfyMode())) {
-                continue;
-            }
-
-            if (inheritanceNodesIncludeTest(filter, e.getKey())) {
-                collection.addAll(e.getValue());
+        ContextIndex index = contextIndex();
+        for (int bucket : index.satisfying(filter, defaultSatisfyMode())) {
+            SortedSet<InheritanceNode> inheritanceNodes = index.inheritanceNodes(bucket);
+            if (inheritanceNodes != null && inheritanceNodesIncludeTest(filter, index.context(bucket))) {
+                collection.addAll(inheritanceNodes);
             }
         }
     }
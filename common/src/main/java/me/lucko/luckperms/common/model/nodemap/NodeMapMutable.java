@@ -29,6 +29,7 @@ import me.lucko.luckperms.common.config.ConfigKeys;
 import me.lucko.luckperms.common.context.comparator.ContextSetComparator;
 import me.lucko.luckperms.common.model.InheritanceOrigin;
 import me.lucko.luckperms.common.model.PermissionHolder;
+import me.lucko.luckperms.common.node.NodeInterner;
 import me.lucko.luckperms.common.node.comparator.NodeComparator;
 import me.lucko.luckperms.common.util.Difference;
 import me.lucko.luckperms.common.util.Difference.ChangeType;
@@ -55,7 +56,7 @@ import java.util.stream.Stream;
 
 public class NodeMapMutable extends NodeMapBase {
 
-    // Used in calls to Map#computeIfAbsent to make them behave like a LoadingMap/Cache
+    // Used in calls to #bucket to make them behave like a LoadingMap/Cache
     // The key (ImmutableContextSet) isn't actually used - these are more like suppliers than functions
     private static final Function<ImmutableContextSet, SortedSet<Node>> VALUE_SET_SUPPLIER = k -> new ConcurrentSkipListSet<>(NodeComparator.reverse());
     private static final Function<ImmutableContextSet, SortedSet<InheritanceNode>> INHERITANCE_VALUE_SET_SUPPLIER = k -> new ConcurrentSkipListSet<>(NodeComparator.reverse());
@@ -118,7 +119,7 @@ public class NodeMapMutable extends NodeMapBase {
             return node;
         }
 
-        return node.toBuilder().withMetadata(InheritanceOriginMetadata.KEY, this.inheritanceOrigin).build();
+        return NodeInterner.withMetadata(node, InheritanceOriginMetadata.KEY, this.inheritanceOrigin);
     }
 
     @Override
@@ -130,7 +131,7 @@ public class NodeMapMutable extends NodeMapBase {
 
         this.lock.lock();
         try {
-            SortedSet<Node> nodes = this.map.computeIfAbsent(context, VALUE_SET_SUPPLIER);
+            SortedSet<Node> nodes = bucket(this.map, context, VALUE_SET_SUPPLIER);
 
             // add the new node to the set - if it was already there, return
             if (!nodes.add(node)) {
@@ -145,7 +146,7 @@ public class NodeMapMutable extends NodeMapBase {
 
             // update the inheritanceMap too if necessary
             if (node instanceof InheritanceNode) {
-                SortedSet<InheritanceNode> inhNodes = this.inheritanceMap.computeIfAbsent(context, INHERITANCE_VALUE_SET_SUPPLIER);
+                SortedSet<InheritanceNode> inhNodes = bucket(this.inheritanceMap, context, INHERITANCE_VALUE_SET_SUPPLIER);
                 // remove existing..
                 inhNodes.removeIf(el -> node.equals(el, NodeEqualityPredicate.IGNORE_EXPIRY_TIME_AND_VALUE));
                 // .. & add
@@ -161,6 +162,17 @@ public class NodeMapMutable extends NodeMapBase {
         return result;
     }
 
+    // like Map#computeIfAbsent, but also invalidates the context index if a new bucket is created
+    private <N extends Node> SortedSet<N> bucket(SortedMap<ImmutableContextSet, SortedSet<N>> map, ImmutableContextSet context, Function<ImmutableContextSet, SortedSet<N>> supplier) {
+        SortedSet<N> nodes = map.get(context);
+        if (nodes == null) {
+            nodes = supplier.apply(context);
+            map.put(context, nodes);
+            invalidateContextIndex();
+        }
+        return nodes;
+    }
+
     @Override
     public Difference<Node> remove(Node node) {
         ImmutableContextSet context = node.getContexts();
@@ -328,6 +340,7 @@ public class NodeMapMutable extends NodeMapBase {
             // by any race conditions between this call to clear and any subsequent call to setContent
             this.map = createMap();
             this.inheritanceMap = createMap();
+            invalidateContextIndex();
         } finally {
             this.lock.unlock();
         }
@@ -346,6 +359,7 @@ public class NodeMapMutable extends NodeMapBase {
             if (removed != null) {
                 result.recordChanges(ChangeType.REMOVE, removed);
                 this.inheritanceMap.remove(context);
+                invalidateContextIndex();
             }
         } finally {
             this.lock.unlock();
@@ -74,6 +74,15 @@ public class RecordedNodeMap implements NodeMap {
         }
     }
 
+    public boolean hasChanges() {
+        this.lock.lock();
+        try {
+            return !this.changes.isEmpty();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
     public Difference<Node> exportChanges(Predicate<Difference<Node>> onlyIf) {
         this.lock.lock();
         try {
@@ -88,6 +97,21 @@ public class RecordedNodeMap implements NodeMap {
         }
     }
 
+    /**
+     * Records changes which were exported, but couldn't be saved, so that they are
+     * exported again by the next save. Any changes recorded since are kept after them.
+     *
+     * @param exported the exported changes
+     */
+    public void restoreChanges(Difference<Node> exported) {
+        this.lock.lock();
+        try {
+            this.changes = new Difference<Node>().mergeFrom(exported).mergeFrom(this.changes);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
     public Difference<Node> addDefaultNodeToChangeSet() {
         Difference<Node> diff = new Difference<>();
         diff.recordChange(Difference.ChangeType.ADD, Inheritance.builder(GroupManager.DEFAULT_GROUP_NAME).build());
@@ -63,6 +63,10 @@ public abstract class AbstractNode<N extends ScopedNode<N, B>, B extends NodeBui
 
     private final List<String> resolvedShorthand;
 
+    // the node this was copied from, if any - kept so that an interned instance stays
+    // canonical (and is shared with further copies) for as long as its copies are in use
+    private final @Nullable AbstractNode<N, B> copiedFrom;
+
     // this class is immutable, so we can cache the hashcode calculation
     private final int hashCode;
 
@@ -74,10 +78,45 @@ public abstract class AbstractNode<N extends ScopedNode<N, B>, B extends NodeBui
         this.metadata = ImmutableMap.copyOf(metadata);
 
         this.resolvedShorthand = this instanceof PermissionNode ? ImmutableList.copyOf(ShorthandParser.expandShorthand(this.key)) : ImmutableList.of();
+        this.copiedFrom = null;
 
         this.hashCode = calculateHashCode();
     }
 
+    /**
+     * Creates a copy of another node with different metadata.
+     *
+     * <p>The (immutable) attributes of the other node are shared with the copy,
+     * rather than being copied or derived again. The copy also holds a reference
+     * to the other node, so that it isn't dropped by {@link NodeInterner}.</p>
+     *
+     * @param other the node to copy
+     * @param metadata the metadata for the copy
+     */
+    protected AbstractNode(AbstractNode<N, B> other, Map<NodeMetadataKey<?>, Object> metadata) {
+        this.key = other.key;
+        this.value = other.value;
+        this.expireAt = other.expireAt;
+        this.contexts = other.contexts;
+        this.metadata = ImmutableMap.copyOf(metadata);
+        this.resolvedShorthand = other.resolvedShorthand;
+        this.copiedFrom = other.copiedFrom != null ? other.copiedFrom : other;
+        this.hashCode = other.hashCode;
+    }
+
+    /**
+     * Creates a copy of this node with the given metadata.
+     *
+     * @param metadata the metadata
+     * @return the copy
+     * @see NodeInterner#withMetadata(Node, NodeMetadataKey, Object)
+     */
+    protected abstract @NonNull N copyWithMetadata(Map<NodeMetadataKey<?>, Object> metadata);
+
+    boolean hasMetadata() {
+        return !this.metadata.isEmpty();
+    }
+
     @Override
     public @NonNull String getKey() {
         return this.key;
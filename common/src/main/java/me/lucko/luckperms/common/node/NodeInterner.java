@@ -0,0 +1,98 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.node;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import net.luckperms.api.node.Node;
+import net.luckperms.api.node.metadata.NodeMetadataKey;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Deduplicates equal {@link Node} instances.
+ *
+ * <p>Many holders tend to have the same nodes (e.g. {@code group.default}), so
+ * rather than each holder retaining its own copy of the node, its key, contexts
+ * and derived attributes, they can share a single canonical instance.</p>
+ *
+ * <p>Node metadata is not considered by {@link Node#equals(Object)}, so only nodes
+ * without metadata are interned. Nodes which need metadata attached (e.g. the
+ * inheritance origin of the holder they belong to) should be created using
+ * {@link #withMetadata(Node, NodeMetadataKey, Object)}, which keeps the metadata
+ * separate but shares the rest of the node with the canonical instance.</p>
+ */
+public final class NodeInterner {
+    private NodeInterner() {}
+
+    private static final Interner<Node> INTERNER = Interners.newWeakInterner();
+
+    /**
+     * Returns the canonical instance of the given node.
+     *
+     * <p>Nodes with metadata are returned unchanged.</p>
+     *
+     * @param node the node
+     * @param <N> the node type
+     * @return the canonical instance
+     */
+    @SuppressWarnings("unchecked")
+    public static <N extends Node> N intern(N node) {
+        if (!(node instanceof AbstractNode) || ((AbstractNode<?, ?>) node).hasMetadata()) {
+            return node;
+        }
+
+        Node interned = INTERNER.intern(node);
+
+        // keys determine the node type, so this should always be true, but it's cheap to check
+        return interned.getClass() == node.getClass() ? (N) interned : node;
+    }
+
+    /**
+     * Returns a copy of the given node with an additional metadata entry, sharing
+     * everything else with the canonical instance of the node.
+     *
+     * @param node the node
+     * @param key the metadata key
+     * @param value the metadata value
+     * @param <N> the node type
+     * @param <T> the metadata type
+     * @return a node with the metadata
+     */
+    @SuppressWarnings("unchecked")
+    public static <N extends Node, T> N withMetadata(N node, NodeMetadataKey<T> key, T value) {
+        if (!(node instanceof AbstractNode)) {
+            return (N) node.toBuilder().withMetadata(key, value).build();
+        }
+
+        AbstractNode<?, ?> source = (AbstractNode<?, ?>) intern(node);
+        Map<NodeMetadataKey<?>, Object> metadata = new HashMap<>(source.metadata);
+        metadata.put(key, value);
+        return (N) source.copyWithMetadata(metadata);
+    }
+
+}
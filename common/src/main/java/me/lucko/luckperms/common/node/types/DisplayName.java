@@ -60,11 +60,21 @@ public class DisplayName extends AbstractNode<DisplayNameNode, DisplayNameNode.B
         this.displayName = displayName;
     }
 
+    private DisplayName(DisplayName other, Map<NodeMetadataKey<?>, Object> metadata) {
+        super(other, metadata);
+        this.displayName = other.displayName;
+    }
+
     @Override
     public @NonNull String getDisplayName() {
         return this.displayName;
     }
 
+    @Override
+    protected @NonNull DisplayName copyWithMetadata(Map<NodeMetadataKey<?>, Object> metadata) {
+        return new DisplayName(this, metadata);
+    }
+
     @Override
     public @NonNull Builder toBuilder() {
         return new Builder(this.displayName, this.value, this.expireAt, this.contexts, this.metadata);
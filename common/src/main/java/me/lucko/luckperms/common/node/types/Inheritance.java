@@ -62,11 +62,21 @@ public class Inheritance extends AbstractNode<InheritanceNode, InheritanceNode.B
         this.groupName = groupName.toLowerCase(Locale.ROOT);
     }
 
+    private Inheritance(Inheritance other, Map<NodeMetadataKey<?>, Object> metadata) {
+        super(other, metadata);
+        this.groupName = other.groupName;
+    }
+
     @Override
     public @NonNull String getGroupName() {
         return this.groupName;
     }
 
+    @Override
+    protected @NonNull Inheritance copyWithMetadata(Map<NodeMetadataKey<?>, Object> metadata) {
+        return new Inheritance(this, metadata);
+    }
+
     @Override
     public @NonNull Builder toBuilder() {
         return new Builder(this.groupName, this.value, this.expireAt, this.contexts, this.metadata);
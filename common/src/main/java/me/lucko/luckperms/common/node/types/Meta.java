@@ -64,6 +64,12 @@ public class Meta extends AbstractNode<MetaNode, MetaNode.Builder> implements Me
         this.metaValue = metaValue;
     }
 
+    private Meta(Meta other, Map<NodeMetadataKey<?>, Object> metadata) {
+        super(other, metadata);
+        this.metaKey = other.metaKey;
+        this.metaValue = other.metaValue;
+    }
+
     @Override
     public @NonNull String getMetaKey() {
         return this.metaKey;
@@ -74,6 +80,11 @@ public class Meta extends AbstractNode<MetaNode, MetaNode.Builder> implements Me
         return this.metaValue;
     }
 
+    @Override
+    protected @NonNull Meta copyWithMetadata(Map<NodeMetadataKey<?>, Object> metadata) {
+        return new Meta(this, metadata);
+    }
+
     @Override
     public @NonNull Builder toBuilder() {
         return new Builder(this.metaKey, this.metaValue, this.value, this.expireAt, this.contexts, this.metadata);
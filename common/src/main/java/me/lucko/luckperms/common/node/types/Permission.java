@@ -51,6 +51,11 @@ public class Permission extends AbstractNode<PermissionNode, PermissionNode.Buil
         this.wildcardLevel = WildcardProcessor.isWildcardPermission(permission) ? permission.chars().filter(num -> num == NODE_SEPARATOR).sum() : -1;
     }
 
+    private Permission(Permission other, Map<NodeMetadataKey<?>, Object> metadata) {
+        super(other, metadata);
+        this.wildcardLevel = other.wildcardLevel;
+    }
+
     @Override
     public @NonNull String getPermission() {
         return getKey();
@@ -66,6 +71,11 @@ public class Permission extends AbstractNode<PermissionNode, PermissionNode.Buil
         return isWildcard() ? OptionalInt.of(this.wildcardLevel) : OptionalInt.empty();
     }
 
+    @Override
+    protected @NonNull Permission copyWithMetadata(Map<NodeMetadataKey<?>, Object> metadata) {
+        return new Permission(this, metadata);
+    }
+
     @Override
     public PermissionNode.@NonNull Builder toBuilder() {
         return new Builder(this.key, this.value, this.expireAt, this.contexts, this.metadata);
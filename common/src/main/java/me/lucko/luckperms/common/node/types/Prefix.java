@@ -65,6 +65,12 @@ public class Prefix extends AbstractNode<PrefixNode, PrefixNode.Builder> impleme
         this.priority = priority;
     }
 
+    private Prefix(Prefix other, Map<NodeMetadataKey<?>, Object> metadata) {
+        super(other, metadata);
+        this.prefix = other.prefix;
+        this.priority = other.priority;
+    }
+
     @Override
     public int getPriority() {
         return this.priority;
@@ -80,6 +86,11 @@ public class Prefix extends AbstractNode<PrefixNode, PrefixNode.Builder> impleme
         return ChatMetaType.PREFIX;
     }
 
+    @Override
+    protected @NonNull Prefix copyWithMetadata(Map<NodeMetadataKey<?>, Object> metadata) {
+        return new Prefix(this, metadata);
+    }
+
     @Override
     public @NonNull Builder toBuilder() {
         return new Builder(this.prefix, this.priority, this.value, this.expireAt, this.contexts, this.metadata);
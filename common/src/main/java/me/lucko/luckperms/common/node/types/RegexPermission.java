@@ -66,6 +66,11 @@ public class RegexPermission extends AbstractNode<RegexPermissionNode, RegexPerm
         this.pattern = pattern;
     }
 
+    private RegexPermission(RegexPermission other, Map<NodeMetadataKey<?>, Object> metadata) {
+        super(other, metadata);
+        this.pattern = other.pattern;
+    }
+
     @Override
     public @NonNull String getPatternString() {
         return this.pattern;
@@ -76,6 +81,11 @@ public class RegexPermission extends AbstractNode<RegexPermissionNode, RegexPerm
         return Optional.ofNullable(this.cache.get().getPattern());
     }
 
+    @Override
+    protected @NonNull RegexPermission copyWithMetadata(Map<NodeMetadataKey<?>, Object> metadata) {
+        return new RegexPermission(this, metadata);
+    }
+
     @Override
     public @NonNull Builder toBuilder() {
         return new Builder(this.pattern, this.value, this.expireAt, this.contexts, this.metadata);
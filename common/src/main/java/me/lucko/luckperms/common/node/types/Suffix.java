@@ -65,6 +65,12 @@ public class Suffix extends AbstractNode<SuffixNode, SuffixNode.Builder> impleme
         this.priority = priority;
     }
 
+    private Suffix(Suffix other, Map<NodeMetadataKey<?>, Object> metadata) {
+        super(other, metadata);
+        this.suffix = other.suffix;
+        this.priority = other.priority;
+    }
+
     @Override
     public int getPriority() {
         return this.priority;
@@ -80,6 +86,11 @@ public class Suffix extends AbstractNode<SuffixNode, SuffixNode.Builder> impleme
         return ChatMetaType.SUFFIX;
     }
 
+    @Override
+    protected @NonNull Suffix copyWithMetadata(Map<NodeMetadataKey<?>, Object> metadata) {
+        return new Suffix(this, metadata);
+    }
+
     @Override
     public @NonNull Builder toBuilder() {
         return new Builder(this.suffix, this.priority, this.value, this.expireAt, this.contexts, this.metadata);
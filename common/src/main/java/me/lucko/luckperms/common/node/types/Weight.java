@@ -59,11 +59,21 @@ public class Weight extends AbstractNode<WeightNode, WeightNode.Builder> impleme
         this.weight = weight;
     }
 
+    private Weight(Weight other, Map<NodeMetadataKey<?>, Object> metadata) {
+        super(other, metadata);
+        this.weight = other.weight;
+    }
+
     @Override
     public int getWeight() {
         return this.weight;
     }
 
+    @Override
+    protected @NonNull Weight copyWithMetadata(Map<NodeMetadataKey<?>, Object> metadata) {
+        return new Weight(this, metadata);
+    }
+
     @Override
     public @NonNull Builder toBuilder() {
         return new Builder(this.weight, this.value, this.expireAt, this.contexts, this.metadata);
@@ -28,7 +28,9 @@ package me.lucko.luckperms.common.plugin;
 import me.lucko.luckperms.common.actionlog.LogDispatcher;
 import me.lucko.luckperms.common.api.ApiRegistrationUtil;
 import me.lucko.luckperms.common.api.LuckPermsApiProvider;
+import me.lucko.luckperms.common.cacheddata.CacheWarmer;
 import me.lucko.luckperms.common.calculator.CalculatorFactory;
+import me.lucko.luckperms.common.calculator.LookupCacheBudget;
 import me.lucko.luckperms.common.config.ConfigKeys;
 import me.lucko.luckperms.common.config.LuckPermsConfiguration;
 import me.lucko.luckperms.common.config.generic.adapter.ConfigurationAdapter;
@@ -111,6 +113,8 @@ public abstract class AbstractLuckPermsPlugin implements LuckPermsPlugin {
     private SyncTask.Buffer syncTaskBuffer;
     private InheritanceGraphFactory inheritanceGraphFactory;
     private CalculatorFactory calculatorFactory;
+    private LookupCacheBudget lookupCacheBudget;
+    private CacheWarmer cacheWarmer;
     private LuckPermsApiProvider apiProvider;
     private EventDispatcher eventDispatcher;
     private SimpleExtensionManager extensionManager;
@@ -154,6 +158,12 @@ public abstract class AbstractLuckPermsPlugin implements LuckPermsPlugin {
                 configFileAdapter
         ));
 
+        // now the configuration is loaded, apply the verbose settings
+        this.verboseHandler.configure(
+                getConfiguration().get(ConfigKeys.VERBOSE_TRACE_SAMPLE_RATE),
+                getConfiguration().get(ConfigKeys.VERBOSE_BUFFER_SIZE)
+        );
+
         // setup a bytebin instance
         this.httpClient = new OkHttpClient.Builder()
                 .callTimeout(15, TimeUnit.SECONDS)
@@ -213,6 +223,8 @@ public abstract class AbstractLuckPermsPlugin implements LuckPermsPlugin {
         // load internal managers
         getLogger().info("Loading internal permission managers...");
         this.inheritanceGraphFactory = new InheritanceGraphFactory(this);
+        this.lookupCacheBudget = LookupCacheBudget.fromConfig(getConfiguration());
+        this.cacheWarmer = CacheWarmer.fromConfig(this);
 
         // setup user/group/track manager
         setupManagers();
@@ -556,6 +568,16 @@ public abstract class AbstractLuckPermsPlugin implements LuckPermsPlugin {
         return this.calculatorFactory;
     }
 
+    @Override
+    public LookupCacheBudget getLookupCacheBudget() {
+        return this.lookupCacheBudget;
+    }
+
+    @Override
+    public CacheWarmer getCacheWarmer() {
+        return this.cacheWarmer;
+    }
+
     @Override
     public LuckPermsApiProvider getApiProvider() {
         return this.apiProvider;
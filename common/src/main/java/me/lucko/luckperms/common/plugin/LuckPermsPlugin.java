@@ -27,7 +27,9 @@ package me.lucko.luckperms.common.plugin;
 
 import me.lucko.luckperms.common.actionlog.LogDispatcher;
 import me.lucko.luckperms.common.api.LuckPermsApiProvider;
+import me.lucko.luckperms.common.cacheddata.CacheWarmer;
 import me.lucko.luckperms.common.calculator.CalculatorFactory;
+import me.lucko.luckperms.common.calculator.LookupCacheBudget;
 import me.lucko.luckperms.common.command.CommandManager;
 import me.lucko.luckperms.common.command.abstraction.Command;
 import me.lucko.luckperms.common.config.LuckPermsConfiguration;
@@ -215,6 +217,21 @@ public interface LuckPermsPlugin {
      */
     CalculatorFactory getCalculatorFactory();
 
+    /**
+     * Gets the budget which controls the size of permission calculator lookup caches.
+     *
+     * @return the lookup cache budget
+     */
+    LookupCacheBudget getLookupCacheBudget();
+
+    /**
+     * Gets the cache warmer, which calculates caches ahead of time for the
+     * contexts players are likely to move into next.
+     *
+     * @return the cache warmer
+     */
+    CacheWarmer getCacheWarmer();
+
     /**
      * Gets the verbose debug handler instance.
      *
@@ -0,0 +1,198 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.storage;
+
+import me.lucko.luckperms.common.model.Group;
+import me.lucko.luckperms.common.model.User;
+import me.lucko.luckperms.common.plugin.scheduler.SchedulerAdapter;
+import me.lucko.luckperms.common.storage.implementation.StorageImplementation;
+import me.lucko.luckperms.common.util.Throwing;
+
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Delays user and group saves for a short window, so that repeated saves of the
+ * same holder are combined into one, and saves of different holders are written
+ * to storage together.
+ *
+ * <p>Holders record the changes made to them until they are next saved, so the
+ * changes from each save of a holder are written together when the queue is
+ * flushed. However, loading a holder from storage discards the changes it has
+ * recorded, so {@link Storage} flushes the queue before loading any data.</p>
+ *
+ * <p>If a batch of saves fails, each holder in it is saved again on its own, so
+ * that only the holders which really can't be saved are failed.</p>
+ */
+public class HolderSaveQueue {
+    private final SchedulerAdapter scheduler;
+    private final StorageImplementation implementation;
+
+    /** How long to wait before writing saves, in milliseconds */
+    private final long window;
+
+    /** Guards the pending saves and the flush flag */
+    private final Object lock = new Object();
+
+    // keyed by instance, in case a holder is unloaded and loaded again before a flush
+    private Map<User, CompletableFuture<Void>> pendingUsers = new IdentityHashMap<>();
+    private Map<Group, CompletableFuture<Void>> pendingGroups = new IdentityHashMap<>();
+    private boolean flushScheduled = false;
+
+    /** Held while saves are written, so that saves for the same holder aren't written out of order */
+    private final Object flushLock = new Object();
+
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushNanos = new LongAdder();
+    private volatile long lastFlushNanos = 0;
+
+    public HolderSaveQueue(SchedulerAdapter scheduler, StorageImplementation implementation, long window) {
+        this.scheduler = scheduler;
+        this.implementation = implementation;
+        this.window = window;
+    }
+
+    /**
+     * Queues a save for the given user.
+     *
+     * @param user the user
+     * @return a future which completes once the user has been saved
+     */
+    public CompletableFuture<Void> saveUser(User user) {
+        synchronized (this.lock) {
+            CompletableFuture<Void> future = this.pendingUsers.computeIfAbsent(user, u -> new CompletableFuture<>());
+            scheduleFlush();
+            return future;
+        }
+    }
+
+    /**
+     * Queues a save for the given group.
+     *
+     * @param group the group
+     * @return a future which completes once the group has been saved
+     */
+    public CompletableFuture<Void> saveGroup(Group group) {
+        synchronized (this.lock) {
+            CompletableFuture<Void> future = this.pendingGroups.computeIfAbsent(group, g -> new CompletableFuture<>());
+            scheduleFlush();
+            return future;
+        }
+    }
+
+    private void scheduleFlush() {
+        if (!this.flushScheduled) {
+            this.flushScheduled = true;
+            this.scheduler.asyncLater(this::flush, this.window, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes all pending saves to storage.
+     */
+    public void flush() {
+        synchronized (this.flushLock) {
+            Map<User, CompletableFuture<Void>> users;
+            Map<Group, CompletableFuture<Void>> groups;
+            synchronized (this.lock) {
+                users = this.pendingUsers;
+                groups = this.pendingGroups;
+                this.pendingUsers = new IdentityHashMap<>();
+                this.pendingGroups = new IdentityHashMap<>();
+                this.flushScheduled = false;
+            }
+
+            if (users.isEmpty() && groups.isEmpty()) {
+                return;
+            }
+
+            long start = System.nanoTime();
+            save(users, this.implementation::saveUsers, this.implementation::saveUser);
+            save(groups, this.implementation::saveGroups, this.implementation::saveGroup);
+
+            long duration = System.nanoTime() - start;
+            this.lastFlushNanos = duration;
+            this.flushNanos.add(duration);
+            this.flushes.increment();
+        }
+    }
+
+    private static <T> void save(Map<T, CompletableFuture<Void>> pending, Throwing.Consumer<Collection<T>> saveAll, Throwing.Consumer<T> saveOne) {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        try {
+            saveAll.accept(pending.keySet());
+            pending.values().forEach(future -> future.complete(null));
+            return;
+        } catch (Throwable e) {
+            if (pending.size() == 1) {
+                pending.values().forEach(future -> future.completeExceptionally(e));
+                return;
+            }
+        }
+
+        // the data of a single holder can fail the whole batch, so save each on its own
+        for (Map.Entry<T, CompletableFuture<Void>> entry : pending.entrySet()) {
+            try {
+                saveOne.accept(entry.getKey());
+                entry.getValue().complete(null);
+            } catch (Throwable e) {
+                entry.getValue().completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of holders waiting to be saved.
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        synchronized (this.lock) {
+            return this.pendingUsers.size() + this.pendingGroups.size();
+        }
+    }
+
+    public long getFlushCount() {
+        return this.flushes.sum();
+    }
+
+    public long getLastFlushLatency(TimeUnit unit) {
+        return unit.convert(this.lastFlushNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public long getAverageFlushLatency(TimeUnit unit) {
+        long count = this.flushes.sum();
+        return count == 0 ? 0 : unit.convert(this.flushNanos.sum() / count, TimeUnit.NANOSECONDS);
+    }
+
+}
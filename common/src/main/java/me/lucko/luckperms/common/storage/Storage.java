@@ -28,6 +28,7 @@ package me.lucko.luckperms.common.storage;
 import com.google.common.collect.ImmutableList;
 import me.lucko.luckperms.common.actionlog.LogPage;
 import me.lucko.luckperms.common.bulkupdate.BulkUpdate;
+import me.lucko.luckperms.common.config.ConfigKeys;
 import me.lucko.luckperms.common.filter.FilterList;
 import me.lucko.luckperms.common.filter.PageParameters;
 import me.lucko.luckperms.common.model.Group;
@@ -38,6 +39,7 @@ import me.lucko.luckperms.common.plugin.LuckPermsPlugin;
 import me.lucko.luckperms.common.storage.implementation.StorageImplementation;
 import me.lucko.luckperms.common.storage.implementation.split.SplitStorage;
 import me.lucko.luckperms.common.storage.misc.NodeEntry;
+import me.lucko.luckperms.common.storage.misc.StorageChanges;
 import me.lucko.luckperms.common.util.AsyncInterface;
 import net.luckperms.api.actionlog.Action;
 import net.luckperms.api.event.cause.CreationCause;
@@ -62,11 +64,15 @@ import java.util.concurrent.CompletableFuture;
 public class Storage extends AsyncInterface {
     private final LuckPermsPlugin plugin;
     private final StorageImplementation implementation;
+    private final @Nullable HolderSaveQueue saveQueue;
 
     public Storage(LuckPermsPlugin plugin, StorageImplementation implementation) {
         super(plugin);
         this.plugin = plugin;
         this.implementation = implementation;
+
+        int saveWindow = plugin.getConfiguration().get(ConfigKeys.SAVE_COALESCE_MILLIS);
+        this.saveQueue = saveWindow > 0 ? new HolderSaveQueue(plugin.getBootstrap().getScheduler(), implementation, saveWindow) : null;
     }
 
     public StorageImplementation getImplementation() {
@@ -94,6 +100,11 @@ public class Storage extends AsyncInterface {
     }
 
     public void shutdown() {
+        if (this.saveQueue != null) {
+            // the scheduler has already been shut down, so write any pending saves now
+            this.saveQueue.flush();
+        }
+
         try {
             this.implementation.shutdown();
         } catch (Exception e) {
@@ -105,6 +116,27 @@ public class Storage extends AsyncInterface {
         return this.implementation.getMeta();
     }
 
+    /**
+     * Gets the queue used to combine user and group saves, if enabled.
+     *
+     * @return the save queue, or empty if saves are written immediately
+     */
+    public Optional<HolderSaveQueue> getSaveQueue() {
+        return Optional.ofNullable(this.saveQueue);
+    }
+
+    /**
+     * Writes any queued saves to storage.
+     *
+     * <p>This must be called before loading data, as loading a holder discards
+     * any changes it has recorded but not yet saved.</p>
+     */
+    private void flushQueuedSaves() {
+        if (this.saveQueue != null) {
+            this.saveQueue.flush();
+        }
+    }
+
     public CompletableFuture<Void> logAction(Action entry) {
         return future(() -> this.implementation.logAction(entry));
     }
@@ -114,12 +146,20 @@ public class Storage extends AsyncInterface {
     }
 
     public CompletableFuture<Void> applyBulkUpdate(BulkUpdate bulkUpdate) {
-        return future(() -> this.implementation.applyBulkUpdate(bulkUpdate));
+        return future(() -> {
+            flushQueuedSaves();
+            this.implementation.applyBulkUpdate(bulkUpdate);
+            this.plugin.getUserManager().getSnapshotCache().clear();
+        });
     }
 
     public CompletableFuture<User> loadUser(UUID uniqueId, String username) {
         return future(() -> {
-            User user = this.implementation.loadUser(uniqueId, username);
+            flushQueuedSaves();
+            User user = this.plugin.getUserManager().loadFromSnapshot(uniqueId, username);
+            if (user == null) {
+                user = this.implementation.loadUser(uniqueId, username);
+            }
             if (user != null) {
                 this.plugin.getEventDispatcher().dispatchUserLoad(user);
             }
@@ -129,6 +169,7 @@ public class Storage extends AsyncInterface {
 
     public CompletableFuture<Map<UUID, User>> loadUsers(Set<UUID> uniqueIds) {
         return future(() -> {
+            flushQueuedSaves();
             Map<UUID, User> users = this.implementation.loadUsers(uniqueIds);
             for (User user : users.values()) {
                 this.plugin.getEventDispatcher().dispatchUserLoad(user);
@@ -138,7 +179,15 @@ public class Storage extends AsyncInterface {
     }
 
     public CompletableFuture<Void> saveUser(User user) {
-        return future(() -> this.implementation.saveUser(user));
+        if (this.saveQueue != null) {
+            this.plugin.getUserManager().getSnapshotCache().invalidate(user.getUniqueId());
+            return this.saveQueue.saveUser(user);
+        }
+
+        return future(() -> {
+            this.plugin.getUserManager().getSnapshotCache().invalidate(user.getUniqueId());
+            this.implementation.saveUser(user);
+        });
     }
 
     public CompletableFuture<Set<UUID>> getUniqueUsers() {
@@ -155,7 +204,10 @@ public class Storage extends AsyncInterface {
 
     public CompletableFuture<Group> createAndLoadGroup(String name, CreationCause cause) {
         return future(() -> {
+            flushQueuedSaves();
+            Set<String> loadedGroups = this.plugin.getGroupManager().getAll().keySet();
             Group group = this.implementation.createAndLoadGroup(name.toLowerCase(Locale.ROOT));
+            invalidateCachesIfGroupsLoaded(loadedGroups);
             if (group != null) {
                 this.plugin.getEventDispatcher().dispatchGroupCreate(group, cause);
             }
@@ -165,7 +217,10 @@ public class Storage extends AsyncInterface {
 
     public CompletableFuture<Optional<Group>> loadGroup(String name) {
         return future(() -> {
+            flushQueuedSaves();
+            Set<String> loadedGroups = this.plugin.getGroupManager().getAll().keySet();
             Optional<Group> group = this.implementation.loadGroup(name.toLowerCase(Locale.ROOT));
+            invalidateCachesIfGroupsLoaded(loadedGroups);
             if (group.isPresent()) {
                 this.plugin.getEventDispatcher().dispatchGroupLoad(group.get());
             }
@@ -175,17 +230,34 @@ public class Storage extends AsyncInterface {
 
     public CompletableFuture<Void> loadAllGroups() {
         return future(() -> {
+            flushQueuedSaves();
+            Set<String> loadedGroups = this.plugin.getGroupManager().getAll().keySet();
             this.implementation.loadAllGroups();
+            invalidateCachesIfGroupsLoaded(loadedGroups);
             this.plugin.getEventDispatcher().dispatchGroupLoadAll();
         });
     }
 
+    private void invalidateCachesIfGroupsLoaded(Set<String> previouslyLoaded) {
+        // holders which inherit from a group that isn't loaded aren't tracked as dependents
+        // of it, so their caches need to be recalculated if any new groups were loaded
+        if (!previouslyLoaded.containsAll(this.plugin.getGroupManager().getAll().keySet())) {
+            this.plugin.getGroupManager().invalidateAllGroupCaches();
+            this.plugin.getUserManager().invalidateAllUserCaches();
+        }
+    }
+
     public CompletableFuture<Void> saveGroup(Group group) {
+        if (this.saveQueue != null) {
+            return this.saveQueue.saveGroup(group);
+        }
+
         return future(() -> this.implementation.saveGroup(group));
     }
 
     public CompletableFuture<Void> deleteGroup(Group group, DeletionCause cause) {
         return future(() -> {
+            flushQueuedSaves();
             this.implementation.deleteGroup(group);
             this.plugin.getEventDispatcher().dispatchGroupDelete(group, cause);
         });
@@ -239,6 +311,7 @@ public class Storage extends AsyncInterface {
 
     public CompletableFuture<PlayerSaveResult> savePlayerData(UUID uniqueId, String username) {
         return future(() -> {
+            this.plugin.getUserManager().getSnapshotCache().invalidate(uniqueId);
             PlayerSaveResult result = this.implementation.savePlayerData(uniqueId, username);
             if (result != null) {
                 this.plugin.getEventDispatcher().dispatchPlayerDataSave(uniqueId, username, result);
@@ -248,7 +321,10 @@ public class Storage extends AsyncInterface {
     }
 
     public CompletableFuture<Void> deletePlayerData(UUID uniqueId) {
-        return future(() -> this.implementation.deletePlayerData(uniqueId));
+        return future(() -> {
+            this.plugin.getUserManager().getSnapshotCache().invalidate(uniqueId);
+            this.implementation.deletePlayerData(uniqueId);
+        });
     }
 
     public CompletableFuture<UUID> getPlayerUniqueId(String username) {
@@ -258,4 +334,8 @@ public class Storage extends AsyncInterface {
     public CompletableFuture<String> getPlayerName(UUID uniqueId) {
         return future(() -> this.implementation.getPlayerName(uniqueId));
     }
+
+    public CompletableFuture<StorageChanges> pollChanges() {
+        return future(this.implementation::pollChanges);
+    }
 }
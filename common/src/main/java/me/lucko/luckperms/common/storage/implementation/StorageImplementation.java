@@ -36,11 +36,13 @@ import me.lucko.luckperms.common.node.matcher.ConstraintNodeMatcher;
 import me.lucko.luckperms.common.plugin.LuckPermsPlugin;
 import me.lucko.luckperms.common.storage.StorageMetadata;
 import me.lucko.luckperms.common.storage.misc.NodeEntry;
+import me.lucko.luckperms.common.storage.misc.StorageChanges;
 import net.luckperms.api.actionlog.Action;
 import net.luckperms.api.model.PlayerSaveResult;
 import net.luckperms.api.node.Node;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -70,6 +72,20 @@ public interface StorageImplementation {
 
     void saveUser(User user) throws Exception;
 
+    /**
+     * Saves a number of users at once.
+     *
+     * <p>Implementations can override this to save the users in fewer round trips.</p>
+     *
+     * @param users the users to save
+     * @throws Exception if an error occurs
+     */
+    default void saveUsers(Collection<? extends User> users) throws Exception {
+        for (User user : users) {
+            saveUser(user);
+        }
+    }
+
     Set<UUID> getUniqueUsers() throws Exception;
 
     <N extends Node> List<NodeEntry<UUID, N>> searchUserNodes(ConstraintNodeMatcher<N> constraint) throws Exception;
@@ -82,6 +98,20 @@ public interface StorageImplementation {
 
     void saveGroup(Group group) throws Exception;
 
+    /**
+     * Saves a number of groups at once.
+     *
+     * <p>Implementations can override this to save the groups in fewer round trips.</p>
+     *
+     * @param groups the groups to save
+     * @throws Exception if an error occurs
+     */
+    default void saveGroups(Collection<? extends Group> groups) throws Exception {
+        for (Group group : groups) {
+            saveGroup(group);
+        }
+    }
+
     void deleteGroup(Group group) throws Exception;
 
     <N extends Node> List<NodeEntry<String, N>> searchGroupNodes(ConstraintNodeMatcher<N> constraint) throws Exception;
@@ -103,4 +133,15 @@ public interface StorageImplementation {
     @Nullable UUID getPlayerUniqueId(String username) throws Exception;
 
     @Nullable String getPlayerName(UUID uniqueId) throws Exception;
+
+    /**
+     * Gets the holders which have been changed in the storage (by this or any other
+     * instance) since the last call, if the implementation keeps track of them.
+     *
+     * @return the changes, or null if they aren't tracked and everything should be reloaded
+     * @throws Exception if an error occurs
+     */
+    default @Nullable StorageChanges pollChanges() throws Exception {
+        return null;
+    }
 }
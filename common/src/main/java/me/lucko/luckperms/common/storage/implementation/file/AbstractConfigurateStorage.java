@@ -37,6 +37,7 @@ import me.lucko.luckperms.common.model.HolderType;
 import me.lucko.luckperms.common.model.Track;
 import me.lucko.luckperms.common.model.User;
 import me.lucko.luckperms.common.model.manager.group.GroupManager;
+import me.lucko.luckperms.common.node.NodeInterner;
 import me.lucko.luckperms.common.node.factory.NodeBuilders;
 import me.lucko.luckperms.common.node.types.Inheritance;
 import me.lucko.luckperms.common.node.types.Meta;
@@ -422,7 +423,7 @@ public abstract class AbstractConfigurateStorage implements StorageImplementatio
         Instant expiry = expiryVal == 0L ? null : Instant.ofEpochSecond(expiryVal);
         ImmutableContextSet context = readContexts(attributes);
 
-        return builder.expiry(expiry).context(context).build();
+        return NodeInterner.intern(builder.expiry(expiry).context(context).build());
     }
 
     private static final class NodeEntry {
@@ -471,7 +472,7 @@ public abstract class AbstractConfigurateStorage implements StorageImplementatio
         for (ConfigurationNode appended : data.getNode("permissions").getChildrenList()) {
             String plainValue = appended.getValue(Types::strictAsString);
             if (plainValue != null && !plainValue.isEmpty()) {
-                nodes.add(NodeBuilders.determineMostApplicable(plainValue).build());
+                nodes.add(NodeInterner.intern(NodeBuilders.determineMostApplicable(plainValue).build()));
                 continue;
             }
 
@@ -489,7 +490,7 @@ public abstract class AbstractConfigurateStorage implements StorageImplementatio
         for (ConfigurationNode appended : data.getNode("parents").getChildrenList()) {
             String plainValue = appended.getValue(Types::strictAsString);
             if (plainValue != null) {
-                nodes.add(Inheritance.builder(plainValue).build());
+                nodes.add(NodeInterner.intern(Inheritance.builder(plainValue).build()));
                 continue;
             }
 
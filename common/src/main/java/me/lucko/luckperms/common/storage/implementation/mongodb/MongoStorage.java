@@ -51,6 +51,7 @@ import me.lucko.luckperms.common.model.HolderType;
 import me.lucko.luckperms.common.model.Track;
 import me.lucko.luckperms.common.model.User;
 import me.lucko.luckperms.common.model.manager.group.GroupManager;
+import me.lucko.luckperms.common.node.NodeInterner;
 import me.lucko.luckperms.common.node.factory.NodeBuilders;
 import me.lucko.luckperms.common.node.matcher.ConstraintNodeMatcher;
 import me.lucko.luckperms.common.plugin.LuckPermsPlugin;
@@ -634,7 +635,7 @@ public class MongoStorage implements StorageImplementation {
             builder.withContext(docsToContextSet(contexts));
         }
 
-        return builder.build();
+        return NodeInterner.intern(builder.build());
     }
 
     private static List<Document> contextSetToDocs(ContextSet contextSet) {
@@ -27,6 +27,7 @@ package me.lucko.luckperms.common.storage.implementation.sql;
 
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
 import com.google.gson.reflect.TypeToken;
 import me.lucko.luckperms.common.actionlog.LogPage;
 import me.lucko.luckperms.common.actionlog.LoggedAction;
@@ -34,6 +35,8 @@ import me.lucko.luckperms.common.actionlog.filter.ActionFilterSqlBuilder;
 import me.lucko.luckperms.common.bulkupdate.BulkUpdate;
 import me.lucko.luckperms.common.bulkupdate.BulkUpdateSqlBuilder;
 import me.lucko.luckperms.common.bulkupdate.BulkUpdateStatistics;
+import me.lucko.luckperms.common.config.ConfigKeys;
+import me.lucko.luckperms.common.context.ImmutableContextSetImpl;
 import me.lucko.luckperms.common.context.serializer.ContextSetJsonSerializer;
 import me.lucko.luckperms.common.filter.FilterList;
 import me.lucko.luckperms.common.filter.PageParameters;
@@ -42,6 +45,7 @@ import me.lucko.luckperms.common.model.Group;
 import me.lucko.luckperms.common.model.Track;
 import me.lucko.luckperms.common.model.User;
 import me.lucko.luckperms.common.model.manager.group.GroupManager;
+import me.lucko.luckperms.common.node.NodeInterner;
 import me.lucko.luckperms.common.node.factory.NodeBuilders;
 import me.lucko.luckperms.common.node.matcher.ConstraintNodeMatcher;
 import me.lucko.luckperms.common.plugin.LuckPermsPlugin;
@@ -50,11 +54,13 @@ import me.lucko.luckperms.common.storage.implementation.StorageImplementation;
 import me.lucko.luckperms.common.storage.implementation.sql.connection.ConnectionFactory;
 import me.lucko.luckperms.common.storage.misc.NodeEntry;
 import me.lucko.luckperms.common.storage.misc.PlayerSaveResultImpl;
+import me.lucko.luckperms.common.storage.misc.StorageChanges;
 import me.lucko.luckperms.common.util.Difference;
 import me.lucko.luckperms.common.util.Uuids;
 import me.lucko.luckperms.common.util.gson.GsonProvider;
 import net.luckperms.api.actionlog.Action;
 import net.luckperms.api.context.DefaultContextKeys;
+import net.luckperms.api.context.ImmutableContextSet;
 import net.luckperms.api.context.MutableContextSet;
 import net.luckperms.api.model.PlayerSaveResult;
 import net.luckperms.api.node.Node;
@@ -71,15 +77,21 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 public class SqlStorage implements StorageImplementation {
@@ -106,6 +118,13 @@ public class SqlStorage implements StorageImplementation {
     private static final String PLAYER_SELECT_PRIMARY_GROUP_BY_UUID = "SELECT primary_group FROM '{prefix}players' WHERE uuid=? LIMIT 1";
     private static final String PLAYER_UPDATE_PRIMARY_GROUP_BY_UUID = "UPDATE '{prefix}players' SET primary_group=? WHERE uuid=?";
 
+    // the parameter counts used when selecting multiple users - larger sets are split into chunks
+    private static final int[] USER_SELECT_BUCKET_SIZES = {16, 64, 256};
+    private static final int USER_SELECT_MAX_BUCKET_SIZE = USER_SELECT_BUCKET_SIZES[USER_SELECT_BUCKET_SIZES.length - 1];
+
+    // the number of rows to fetch at a time when selecting the data of multiple holders
+    private static final int SELECT_FETCH_SIZE = 1000;
+
     private static final String GROUP_PERMISSIONS_SELECT = "SELECT id, permission, value, server, world, expiry, contexts FROM '{prefix}group_permissions' WHERE name=?";
     private static final String GROUP_PERMISSIONS_SELECT_ALL = "SELECT name, id, permission, value, server, world, expiry, contexts FROM '{prefix}group_permissions'";
     private static final String GROUP_PERMISSIONS_DELETE_SPECIFIC = "DELETE FROM '{prefix}group_permissions' WHERE id=?";
@@ -133,11 +152,39 @@ public class SqlStorage implements StorageImplementation {
     private static final String ACTION_SELECT_ALL = "SELECT * FROM '{prefix}actions'";
     private static final String ACTION_COUNT = "SELECT COUNT(*) FROM '{prefix}actions'";
 
+    private static final String CHANGELOG_INSERT = "INSERT INTO '{prefix}changelog' (time, type, name) VALUES(?, ?, ?)";
+    private static final String CHANGELOG_SELECT_SINCE = "SELECT id, type, name FROM '{prefix}changelog' WHERE id > ? ORDER BY id";
+    private static final String CHANGELOG_SELECT_LATEST = "SELECT MAX(id) FROM '{prefix}changelog'";
+    private static final String CHANGELOG_DELETE_OLD = "DELETE FROM '{prefix}changelog' WHERE id < ? AND time < ?";
+
+    private static final char CHANGELOG_TYPE_USER = 'U';
+    private static final char CHANGELOG_TYPE_GROUP = 'G';
+    private static final char CHANGELOG_TYPE_TRACK = 'T';
+    private static final char CHANGELOG_TYPE_EVERYTHING = '*';
+
+    // entries older than this are pruned, so instances which haven't polled for over half
+    // of this time reload everything instead, in case they missed something
+    private static final long CHANGELOG_RETENTION = TimeUnit.DAYS.toMillis(1);
+    private static final long CHANGELOG_PRUNE_INTERVAL = TimeUnit.HOURS.toMillis(1);
+
+    // ids are allocated when a transaction inserts its entry, but only become visible when it
+    // commits, so a gap before an id which has been read may still be filled in later. the
+    // revision is held back behind gaps for this long, in case they are
+    private static final long CHANGELOG_GAP_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+
     private final LuckPermsPlugin plugin;
     
     private final ConnectionFactory connectionFactory;
     private final StatementProcessor statementProcessor;
 
+    private boolean changeLog;
+    private long changeLogRevision;
+    // entries after the revision which have already been read (mapped to the time they
+    // were first read), as an earlier id is still missing
+    private final SortedMap<Long, Long> changeLogPending = new TreeMap<>();
+    private long lastChangeLogPoll;
+    private long lastChangeLogPrune;
+
     public SqlStorage(LuckPermsPlugin plugin, ConnectionFactory connectionFactory, String tablePrefix) {
         this.plugin = plugin;
         this.connectionFactory = connectionFactory;
@@ -171,6 +218,17 @@ public class SqlStorage implements StorageImplementation {
             tables = listTables(c);
         }
         applySchema(tables);
+
+        this.changeLog = this.plugin.getConfiguration().get(ConfigKeys.SQL_CHANGE_LOG);
+        if (this.changeLog) {
+            // the first poll returns everything (for the initial data load),
+            // so only changes made after this point are of interest
+            try (Connection c = this.connectionFactory.getConnection()) {
+                this.changeLogRevision = selectLatestChangeLogRevision(c);
+            }
+            this.changeLogPending.clear();
+            this.lastChangeLogPoll = 0;
+        }
     }
 
     private void applySchema(List<String> existingTables) throws IOException, SQLException {
@@ -349,6 +407,9 @@ public class SqlStorage implements StorageImplementation {
                     }
                 }
             }
+
+            // a bulk update can affect any number of holders, so record that everything should be reloaded
+            logChange(c, CHANGELOG_TYPE_EVERYTHING, "");
         }
     }
 
@@ -362,7 +423,11 @@ public class SqlStorage implements StorageImplementation {
             playerData = selectPlayerData(c, uniqueId);
         }
 
-        return createUser(uniqueId, username, playerData, nodes, true);
+        User user = createUser(uniqueId, username, playerData, nodes);
+        if (user.auditTemporaryNodes()) {
+            saveUser(user);
+        }
+        return user;
     }
 
     @Override
@@ -376,15 +441,23 @@ public class SqlStorage implements StorageImplementation {
         }
 
         Map<UUID, User> users = new HashMap<>();
+        List<User> audited = new ArrayList<>();
         for (UUID uniqueId : uniqueIds) {
             SqlPlayerData playerData = playerDataMap.get(uniqueId);
             List<Node> nodes = nodesMap.get(uniqueId);
-            users.put(uniqueId, createUser(uniqueId, null, playerData, nodes, false));
+            User user = createUser(uniqueId, null, playerData, nodes);
+            if (user.auditTemporaryNodes()) {
+                audited.add(user);
+            }
+            users.put(uniqueId, user);
         }
+
+        // save the users which had expired nodes removed together, rather than one at a time
+        saveUsers(audited);
         return users;
     }
 
-    private User createUser(UUID uniqueId, String username, SqlPlayerData playerData, List<Node> nodes, boolean saveAfterAudit) throws SQLException {
+    private User createUser(UUID uniqueId, String username, SqlPlayerData playerData, List<Node> nodes) {
         User user = this.plugin.getUserManager().getOrMake(uniqueId, username);
         if (playerData != null) {
             if (playerData.primaryGroup != null) {
@@ -398,16 +471,68 @@ public class SqlStorage implements StorageImplementation {
 
         user.loadNodesFromStorage(nodes);
         this.plugin.getUserManager().giveDefaultIfNeeded(user);
-
-        if (user.auditTemporaryNodes() && saveAfterAudit) {
-            saveUser(user);
-        }
-
         return user;
     }
 
     @Override
     public void saveUser(User user) throws SQLException {
+        saveUsers(Collections.singleton(user));
+    }
+
+    @Override
+    public void saveUsers(Collection<? extends User> users) throws SQLException {
+        if (users.isEmpty()) {
+            return;
+        }
+
+        Map<User, Difference<Node>> changes = new LinkedHashMap<>();
+        List<User> deleted = new ArrayList<>();
+        for (User user : users) {
+            Difference<Node> userChanges = exportUserChanges(user);
+            if (userChanges == null) {
+                deleted.add(user);
+            } else {
+                changes.put(user, userChanges);
+            }
+        }
+
+        Map<String, Difference<Node>> permissionChanges = new LinkedHashMap<>(changes.size());
+        for (Map.Entry<User, Difference<Node>> entry : changes.entrySet()) {
+            permissionChanges.merge(entry.getKey().getUniqueId().toString(), entry.getValue(), SqlStorage::mergeChanges);
+        }
+
+        try (Connection c = this.connectionFactory.getConnection()) {
+            for (User user : deleted) {
+                deleteUser(c, user.getUniqueId());
+            }
+
+            updatePermissions(c, permissionChanges, USER_PERMISSIONS_DELETE_SPECIFIC, USER_PERMISSIONS_DELETE_SPECIFIC_PROPS, USER_PERMISSIONS_INSERT);
+            for (User user : changes.keySet()) {
+                insertPlayerData(c, user.getUniqueId(), new SqlPlayerData(
+                        user.getPrimaryGroup().getStoredValue().orElse(GroupManager.DEFAULT_GROUP_NAME),
+                        user.getUsername().orElse("null").toLowerCase(Locale.ROOT)
+                ));
+            }
+
+            List<String> names = new ArrayList<>(users.size());
+            for (User user : users) {
+                names.add(user.getUniqueId().toString());
+            }
+            logChanges(c, CHANGELOG_TYPE_USER, names);
+        } catch (SQLException | RuntimeException e) {
+            // the changes may not have been written, so keep them to be written by the next save
+            changes.forEach((user, userChanges) -> user.normalData().restoreChanges(userChanges));
+            throw e;
+        }
+    }
+
+    /**
+     * Exports the changes made to the users nodes since they were last saved.
+     *
+     * @param user the user
+     * @return the changes, or null if the users data should be deleted
+     */
+    private @Nullable Difference<Node> exportUserChanges(User user) {
         Difference<Node> changes = user.normalData().exportChanges(results -> {
             if (this.plugin.getUserManager().isNonDefaultUser(user)) {
                 return true;
@@ -428,21 +553,7 @@ public class SqlStorage implements StorageImplementation {
             user.normalData().addDefaultNodeToChangeSet();
             changes = null;
         }
-
-        if (changes == null) {
-            try (Connection c = this.connectionFactory.getConnection()) {
-                deleteUser(c, user.getUniqueId());
-            }
-            return;
-        }
-
-        try (Connection c = this.connectionFactory.getConnection()) {
-            updateUserPermissions(c, user.getUniqueId(), changes.getAdded(), changes.getRemoved());
-            insertPlayerData(c, user.getUniqueId(), new SqlPlayerData(
-                    user.getPrimaryGroup().getStoredValue().orElse(GroupManager.DEFAULT_GROUP_NAME),
-                    user.getUsername().orElse("null").toLowerCase(Locale.ROOT)
-            ));
-        }
+        return changes;
     }
 
     @Override
@@ -501,6 +612,7 @@ public class SqlStorage implements StorageImplementation {
                 ps.setString(1, name);
                 ps.execute();
             }
+            logChange(c, CHANGELOG_TYPE_GROUP, name);
         }
 
         return loadGroup(name).get();
@@ -529,32 +641,91 @@ public class SqlStorage implements StorageImplementation {
 
     @Override
     public void loadAllGroups() throws SQLException {
-        Map<String, Collection<Node>> groups = new HashMap<>();
+        Map<String, List<SqlNodeRow>> groups = new HashMap<>();
         try (Connection c = this.connectionFactory.getConnection()) {
             selectGroups(c).forEach(name -> groups.put(name, new ArrayList<>()));
             selectAllGroupPermissions(groups, c);
         }
 
-        for (Map.Entry<String, Collection<Node>> entry : groups.entrySet()) {
+        // usually most groups haven't changed since they were last loaded - only build
+        // nodes for those that have, so the rest aren't reset and keep their caches
+        SqlNodeParser parser = new SqlNodeParser();
+        for (Map.Entry<String, List<SqlNodeRow>> entry : groups.entrySet()) {
             Group group = this.plugin.getGroupManager().getOrMake(entry.getKey());
-            Collection<Node> nodes = entry.getValue();
+            List<SqlNodeRow> rows = entry.getValue();
+            if (isLoadedFrom(group, rows, parser)) {
+                continue;
+            }
+
+            List<Node> nodes = new ArrayList<>(rows.size());
+            for (SqlNodeRow row : rows) {
+                nodes.add(parser.parse(row));
+            }
             group.loadNodesFromStorage(nodes);
         }
 
         this.plugin.getGroupManager().retainAll(groups.keySet());
     }
 
+    private static boolean isLoadedFrom(Group group, List<SqlNodeRow> rows, SqlNodeParser parser) {
+        if (group.normalData().hasChanges() || group.normalData().size() != rows.size()) {
+            return false;
+        }
+
+        // the group must hold a node for each row id - and as bulk updates change rows
+        // in place (keeping their ids), each node must also still match its row
+        Map<Long, SqlNodeRow> rowsById = new HashMap<>(rows.size());
+        for (SqlNodeRow row : rows) {
+            rowsById.put(row.id, row);
+        }
+        for (Node node : group.normalData().asList()) {
+            SqlRowId rowId = node.getMetadata(SqlRowId.KEY).orElse(null);
+            if (rowId == null) {
+                return false;
+            }
+
+            SqlNodeRow row = rowsById.remove(rowId.getRowId());
+            if (row == null || !parser.matches(row, node)) {
+                return false;
+            }
+        }
+        return rowsById.isEmpty();
+    }
+
     @Override
     public void saveGroup(Group group) throws SQLException {
-        Difference<Node> changes = group.normalData().exportChanges(c -> true);
+        saveGroups(Collections.singleton(group));
+    }
+
+    @Override
+    public void saveGroups(Collection<? extends Group> groups) throws SQLException {
+        Map<Group, Difference<Node>> exported = new LinkedHashMap<>();
+        Map<String, Difference<Node>> changes = new LinkedHashMap<>();
+        for (Group group : groups) {
+            Difference<Node> groupChanges = group.normalData().exportChanges(c -> true);
+            if (!groupChanges.isEmpty()) {
+                exported.put(group, groupChanges);
+                changes.merge(group.getName(), groupChanges, SqlStorage::mergeChanges);
+            }
+        }
 
         if (!changes.isEmpty()) {
             try (Connection c = this.connectionFactory.getConnection()) {
-                updateGroupPermissions(c, group.getName(), changes.getAdded(), changes.getRemoved());
+                updatePermissions(c, changes, GROUP_PERMISSIONS_DELETE_SPECIFIC, GROUP_PERMISSIONS_DELETE_SPECIFIC_PROPS, GROUP_PERMISSIONS_INSERT);
+                logChanges(c, CHANGELOG_TYPE_GROUP, changes.keySet());
+            } catch (SQLException | RuntimeException e) {
+                // the changes may not have been written, so keep them to be written by the next save
+                exported.forEach((group, groupChanges) -> group.normalData().restoreChanges(groupChanges));
+                throw e;
             }
         }
     }
 
+    private static Difference<Node> mergeChanges(Difference<Node> a, Difference<Node> b) {
+        // don't modify the exported changes, they may need to be restored
+        return new Difference<Node>().mergeFrom(a).mergeFrom(b);
+    }
+
     @Override
     public void deleteGroup(Group group) throws SQLException {
         try (Connection c = this.connectionFactory.getConnection()) {
@@ -564,6 +735,7 @@ public class SqlStorage implements StorageImplementation {
                 ps.setString(1, group.getName());
                 ps.execute();
             }
+            logChange(c, CHANGELOG_TYPE_GROUP, group.getName());
         }
 
         this.plugin.getGroupManager().unload(group.getName());
@@ -611,6 +783,7 @@ public class SqlStorage implements StorageImplementation {
         } else {
             try (Connection c = this.connectionFactory.getConnection()) {
                 insertTrack(c, track.getName(), track.getGroups());
+                logChange(c, CHANGELOG_TYPE_TRACK, track.getName());
             }
         }
         return track;
@@ -657,6 +830,7 @@ public class SqlStorage implements StorageImplementation {
     public void saveTrack(Track track) throws SQLException {
         try (Connection c = this.connectionFactory.getConnection()) {
             updateTrack(c, track.getName(), track.getGroups());
+            logChange(c, CHANGELOG_TYPE_TRACK, track.getName());
         }
     }
 
@@ -667,6 +841,7 @@ public class SqlStorage implements StorageImplementation {
                 ps.setString(1, track.getName());
                 ps.execute();
             }
+            logChange(c, CHANGELOG_TYPE_TRACK, track.getName());
         }
 
         this.plugin.getTrackManager().unload(track.getName());
@@ -772,6 +947,83 @@ public class SqlStorage implements StorageImplementation {
         return null;
     }
 
+    @Override
+    public synchronized StorageChanges pollChanges() throws SQLException {
+        if (!this.changeLog) {
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        boolean everything = now - this.lastChangeLogPoll > CHANGELOG_RETENTION / 2;
+        this.lastChangeLogPoll = now;
+
+        long revision = this.changeLogRevision;
+        SortedMap<Long, Long> pending = new TreeMap<>(this.changeLogPending);
+        Set<UUID> users = new HashSet<>();
+        Set<String> groups = new HashSet<>();
+        Set<String> tracks = new HashSet<>();
+
+        try (Connection c = this.connectionFactory.getConnection()) {
+            try (PreparedStatement ps = c.prepareStatement(this.statementProcessor.process(CHANGELOG_SELECT_SINCE))) {
+                ps.setLong(1, revision);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        long id = rs.getLong("id");
+                        if (pending.putIfAbsent(id, now) != null) {
+                            continue; // already read by an earlier poll
+                        }
+
+                        String name = rs.getString("name");
+                        switch (rs.getString("type").charAt(0)) {
+                            case CHANGELOG_TYPE_USER:
+                                UUID uuid = Uuids.fromString(name);
+                                if (uuid != null) {
+                                    users.add(uuid);
+                                }
+                                break;
+                            case CHANGELOG_TYPE_GROUP:
+                                groups.add(name);
+                                break;
+                            case CHANGELOG_TYPE_TRACK:
+                                tracks.add(name);
+                                break;
+                            default:
+                                everything = true;
+                                break;
+                        }
+                    }
+                }
+            }
+
+            // move the revision past the entries which have been read, stopping at the first
+            // gap unless the entry after it was read long enough ago
+            while (!pending.isEmpty()) {
+                long id = pending.firstKey();
+                if (id != revision + 1 && now - pending.get(id) < CHANGELOG_GAP_TIMEOUT) {
+                    break;
+                }
+                pending.remove(id);
+                revision = id;
+            }
+
+            // entries at or after the revision seen by this instance are never pruned, which
+            // also ensures the auto increment id isn't reset if the table is emptied
+            if (now - this.lastChangeLogPrune > CHANGELOG_PRUNE_INTERVAL) {
+                try (PreparedStatement ps = c.prepareStatement(this.statementProcessor.process(CHANGELOG_DELETE_OLD))) {
+                    ps.setLong(1, revision);
+                    ps.setLong(2, now - CHANGELOG_RETENTION);
+                    ps.execute();
+                }
+                this.lastChangeLogPrune = now;
+            }
+        }
+
+        this.changeLogRevision = revision;
+        this.changeLogPending.clear();
+        this.changeLogPending.putAll(pending);
+        return everything ? StorageChanges.everything() : StorageChanges.of(users, groups, tracks);
+    }
+
     private static void writeAction(Action action, PreparedStatement ps) throws SQLException {
         ps.setLong(1, action.getTimestamp().getEpochSecond());
         ps.setString(2, action.getSource().getUniqueId().toString());
@@ -796,34 +1048,8 @@ public class SqlStorage implements StorageImplementation {
     }
 
     private static Node readNode(ResultSet rs) throws SQLException {
-        long id = rs.getLong("id");
-        String permission = rs.getString("permission");
-
-        if (permission == null || permission.isEmpty()) {
-            return null;
-        }
-
-        boolean value = rs.getBoolean("value");
-        String server = rs.getString("server");
-        String world = rs.getString("world");
-        long expiry = rs.getLong("expiry");
-        String contexts = rs.getString("contexts");
-
-        if (Strings.isNullOrEmpty(server)) {
-            server = "global";
-        }
-        if (Strings.isNullOrEmpty(world)) {
-            world = "global";
-        }
-
-        return NodeBuilders.determineMostApplicable(permission)
-                .value(value)
-                .withContext(DefaultContextKeys.SERVER_KEY, server)
-                .withContext(DefaultContextKeys.WORLD_KEY, world)
-                .expiry(expiry)
-                .withContext(ContextSetJsonSerializer.deserialize(GsonProvider.normal(), contexts).immutableCopy())
-                .withMetadata(SqlRowId.KEY, new SqlRowId(id))
-                .build();
+        SqlNodeRow row = SqlNodeRow.read(rs);
+        return row == null ? null : row.toNode(row.parseContexts());
     }
 
     private static String getFirstContextValue(MutableContextSet set, String key) {
@@ -851,54 +1077,56 @@ public class SqlStorage implements StorageImplementation {
         ps.setString(7, GsonProvider.normal().toJson(ContextSetJsonSerializer.serialize(contexts)));
     }
 
-    private void updateUserPermissions(Connection c, UUID user, Set<Node> add, Set<Node> delete) throws SQLException {
-        updatePermissions(c, user.toString(), add, delete, USER_PERMISSIONS_DELETE_SPECIFIC, USER_PERMISSIONS_DELETE_SPECIFIC_PROPS, USER_PERMISSIONS_INSERT);
-    }
-
-    private void updateGroupPermissions(Connection c, String group, Set<Node> add, Set<Node> delete) throws SQLException {
-        updatePermissions(c, group, add, delete, GROUP_PERMISSIONS_DELETE_SPECIFIC, GROUP_PERMISSIONS_DELETE_SPECIFIC_PROPS, GROUP_PERMISSIONS_INSERT);
-    }
-
-    private void updatePermissions(Connection c, String holder, Set<Node> add, Set<Node> delete, String deleteSpecificQuery, String deleteQuery, String insertQuery) throws SQLException {
-        if (!delete.isEmpty()) {
-            List<Long> deleteRows = new ArrayList<>(delete.size());
-            List<Node> deleteNodes = new ArrayList<>(delete.size());
-            for (Node node : delete) {
+    private void updatePermissions(Connection c, Map<String, Difference<Node>> changes, String deleteSpecificQuery, String deleteQuery, String insertQuery) throws SQLException {
+        // changes for every holder are sent in the same batches, so saving many
+        // holders at once doesn't need a round trip for each of them
+        List<Long> deleteRows = new ArrayList<>();
+        boolean deleteNodes = false;
+        boolean insertNodes = false;
+        for (Difference<Node> difference : changes.values()) {
+            for (Node node : difference.getRemoved()) {
                 SqlRowId rowId = node.getMetadata(SqlRowId.KEY).orElse(null);
                 if (rowId != null) {
                     deleteRows.add(rowId.getRowId());
                 } else {
-                    deleteNodes.add(node);
+                    deleteNodes = true;
                 }
             }
+            insertNodes |= !difference.getAdded().isEmpty();
+        }
 
-            if (!deleteRows.isEmpty()) {
-                try (PreparedStatement ps = c.prepareStatement(this.statementProcessor.process(deleteSpecificQuery))) {
-                    for (Long id : deleteRows) {
-                        ps.setLong(1, id);
-                        ps.addBatch();
-                    }
-                    ps.executeBatch();
+        if (!deleteRows.isEmpty()) {
+            try (PreparedStatement ps = c.prepareStatement(this.statementProcessor.process(deleteSpecificQuery))) {
+                for (Long id : deleteRows) {
+                    ps.setLong(1, id);
+                    ps.addBatch();
                 }
+                ps.executeBatch();
             }
-            if (!deleteNodes.isEmpty()) {
-                try (PreparedStatement ps = c.prepareStatement(this.statementProcessor.process(deleteQuery))) {
-                    for (Node node : deleteNodes) {
-                        ps.setString(1, holder);
-                        writeNode(node, ps);
-                        ps.addBatch();
+        }
+        if (deleteNodes) {
+            try (PreparedStatement ps = c.prepareStatement(this.statementProcessor.process(deleteQuery))) {
+                for (Map.Entry<String, Difference<Node>> entry : changes.entrySet()) {
+                    for (Node node : entry.getValue().getRemoved()) {
+                        if (!node.getMetadata(SqlRowId.KEY).isPresent()) {
+                            ps.setString(1, entry.getKey());
+                            writeNode(node, ps);
+                            ps.addBatch();
+                        }
                     }
-                    ps.executeBatch();
                 }
+                ps.executeBatch();
             }
         }
 
-        if (!add.isEmpty()) {
+        if (insertNodes) {
             try (PreparedStatement ps = c.prepareStatement(this.statementProcessor.process(insertQuery))) {
-                for (Node node : add) {
-                    ps.setString(1, holder);
-                    writeNode(node, ps);
-                    ps.addBatch();
+                for (Map.Entry<String, Difference<Node>> entry : changes.entrySet()) {
+                    for (Node node : entry.getValue().getAdded()) {
+                        ps.setString(1, entry.getKey());
+                        writeNode(node, ps);
+                        ps.addBatch();
+                    }
                 }
                 ps.executeBatch();
             }
@@ -940,14 +1168,15 @@ public class SqlStorage implements StorageImplementation {
             map.put(uuid, new ArrayList<>());
         }
 
-        try (Statement s = c.createStatement()) {
-            String sql = createUserSelectWhereClause(USER_PERMISSIONS_SELECT_MULTIPLE, users);
-            try (ResultSet rs = s.executeQuery(sql)) {
-                while (rs.next()) {
-                    UUID uuid = UUID.fromString(rs.getString("uuid"));
-                    Node node = readNode(rs);
-                    if (node != null) {
-                        map.get(uuid).add(readNode(rs));
+        for (List<UUID> batch : Iterables.partition(users, USER_SELECT_MAX_BUCKET_SIZE)) {
+            try (PreparedStatement ps = prepareUserSelect(c, USER_PERMISSIONS_SELECT_MULTIPLE, batch)) {
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        UUID uuid = UUID.fromString(rs.getString("uuid"));
+                        Node node = readNode(rs);
+                        if (node != null) {
+                            map.get(uuid).add(node);
+                        }
                     }
                 }
             }
@@ -959,16 +1188,17 @@ public class SqlStorage implements StorageImplementation {
     private Map<UUID, SqlPlayerData> selectPlayerData(Connection c, Set<UUID> users) throws SQLException {
         Map<UUID, SqlPlayerData> map = new HashMap<>();
 
-        try (Statement s = c.createStatement()) {
-            String sql = createUserSelectWhereClause(PLAYER_SELECT_BY_UUID_MULTIPLE, users);
-            try (ResultSet rs = s.executeQuery(sql)) {
-                while (rs.next()) {
-                    UUID uuid = UUID.fromString(rs.getString("uuid"));
-                    SqlPlayerData data = new SqlPlayerData(
-                            rs.getString("primary_group"),
-                            rs.getString("username")
-                    );
-                    map.put(uuid, data);
+        for (List<UUID> batch : Iterables.partition(users, USER_SELECT_MAX_BUCKET_SIZE)) {
+            try (PreparedStatement ps = prepareUserSelect(c, PLAYER_SELECT_BY_UUID_MULTIPLE, batch)) {
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        UUID uuid = UUID.fromString(rs.getString("uuid"));
+                        SqlPlayerData data = new SqlPlayerData(
+                                rs.getString("primary_group"),
+                                rs.getString("username")
+                        );
+                        map.put(uuid, data);
+                    }
                 }
             }
         }
@@ -976,14 +1206,41 @@ public class SqlStorage implements StorageImplementation {
         return map;
     }
 
-    private String createUserSelectWhereClause(String baseQuery, Set<UUID> users) {
-        String param = users.stream()
-                .map(uuid -> "'" + uuid + "'")
-                .collect(Collectors.joining(",", "uuid IN (", ")"));
+    private PreparedStatement prepareUserSelect(Connection c, String baseQuery, List<UUID> users) throws SQLException {
+        // pad the number of parameters up to a fixed bucket size, so that only a handful of
+        // distinct statements are ever sent, and their plans can be cached by the driver/server
+        int bucketSize = USER_SELECT_MAX_BUCKET_SIZE;
+        for (int size : USER_SELECT_BUCKET_SIZES) {
+            if (users.size() <= size) {
+                bucketSize = size;
+                break;
+            }
+        }
+
+        PreparedStatement ps = c.prepareStatement(createUserSelectWhereClause(baseQuery, bucketSize));
+        try {
+            ps.setFetchSize(SELECT_FETCH_SIZE);
+            for (int i = 0; i < bucketSize; i++) {
+                // the padding parameters repeat the last uuid, which doesn't affect the result
+                UUID uuid = users.get(Math.min(i, users.size() - 1));
+                ps.setString(i + 1, uuid.toString());
+            }
+        } catch (SQLException e) {
+            ps.close();
+            throw e;
+        }
+        return ps;
+    }
 
-        // we don't want to use preparedstatements because the parameter length is variable
-        // safe to do string concat/replacement because the UUID.toString value isn't injectable
-        return this.statementProcessor.process(baseQuery) + param;
+    private String createUserSelectWhereClause(String baseQuery, int parameters) {
+        StringBuilder sb = new StringBuilder(this.statementProcessor.process(baseQuery)).append("uuid IN (");
+        for (int i = 0; i < parameters; i++) {
+            if (i != 0) {
+                sb.append(',');
+            }
+            sb.append('?');
+        }
+        return sb.append(')').toString();
     }
 
     private void deleteUser(Connection c, UUID user) throws SQLException {
@@ -1053,16 +1310,17 @@ public class SqlStorage implements StorageImplementation {
         return nodes;
     }
 
-    private void selectAllGroupPermissions(Map<String, Collection<Node>> nodes, Connection c) throws SQLException {
+    private void selectAllGroupPermissions(Map<String, List<SqlNodeRow>> rows, Connection c) throws SQLException {
         try (PreparedStatement ps = c.prepareStatement(this.statementProcessor.process(GROUP_PERMISSIONS_SELECT_ALL))) {
+            ps.setFetchSize(SELECT_FETCH_SIZE);
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
                     String holder = rs.getString("name");
-                    Collection<Node> list = nodes.get(holder);
+                    List<SqlNodeRow> list = rows.get(holder);
                     if (list != null) {
-                        Node node = readNode(rs);
-                        if (node != null) {
-                            list.add(readNode(rs));
+                        SqlNodeRow row = SqlNodeRow.read(rs);
+                        if (row != null) {
+                            list.add(row);
                         }
                     }
                 }
@@ -1122,6 +1380,36 @@ public class SqlStorage implements StorageImplementation {
         return tracks;
     }
 
+    private void logChange(Connection c, char type, String name) throws SQLException {
+        logChanges(c, type, Collections.singleton(name));
+    }
+
+    private void logChanges(Connection c, char type, Collection<String> names) throws SQLException {
+        if (!this.changeLog || names.isEmpty()) {
+            return;
+        }
+
+        long time = System.currentTimeMillis();
+        try (PreparedStatement ps = c.prepareStatement(this.statementProcessor.process(CHANGELOG_INSERT))) {
+            for (String name : names) {
+                ps.setLong(1, time);
+                ps.setString(2, String.valueOf(type));
+                ps.setString(3, name);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private long selectLatestChangeLogRevision(Connection c) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(this.statementProcessor.process(CHANGELOG_SELECT_LATEST))) {
+            try (ResultSet rs = ps.executeQuery()) {
+                // MAX(id) is null (read as 0) if the table is empty
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
     private static List<String> listTables(Connection connection) throws SQLException {
         List<String> tables = new ArrayList<>();
         try (ResultSet rs = connection.getMetaData().getTables(connection.getCatalog(), null, "%", null)) {
@@ -1132,6 +1420,99 @@ public class SqlStorage implements StorageImplementation {
         return tables;
     }
 
+    /**
+     * The raw data of a node read from a user_permissions or group_permissions row.
+     */
+    private static final class SqlNodeRow {
+        private final long id;
+        private final String permission;
+        private final boolean value;
+        private final String server;
+        private final String world;
+        private final long expiry;
+        private final String contexts;
+
+        private SqlNodeRow(long id, String permission, boolean value, String server, String world, long expiry, String contexts) {
+            this.id = id;
+            this.permission = permission;
+            this.value = value;
+            this.server = server;
+            this.world = world;
+            this.expiry = expiry;
+            this.contexts = contexts;
+        }
+
+        static @Nullable SqlNodeRow read(ResultSet rs) throws SQLException {
+            String permission = rs.getString("permission");
+            if (permission == null || permission.isEmpty()) {
+                return null;
+            }
+
+            String server = rs.getString("server");
+            String world = rs.getString("world");
+            if (Strings.isNullOrEmpty(server)) {
+                server = "global";
+            }
+            if (Strings.isNullOrEmpty(world)) {
+                world = "global";
+            }
+
+            return new SqlNodeRow(rs.getLong("id"), permission, rs.getBoolean("value"), server, world, rs.getLong("expiry"), rs.getString("contexts"));
+        }
+
+        ImmutableContextSet parseContexts() {
+            return new ImmutableContextSetImpl.BuilderImpl()
+                    .add(DefaultContextKeys.SERVER_KEY, this.server)
+                    .add(DefaultContextKeys.WORLD_KEY, this.world)
+                    .addAll(ContextSetJsonSerializer.deserialize(GsonProvider.normal(), this.contexts))
+                    .build();
+        }
+
+        Node toNode(ImmutableContextSet contexts) {
+            // the row id is unique to each row, so keep it separate from the shared node
+            return NodeInterner.withMetadata(toNodeWithoutId(contexts), SqlRowId.KEY, new SqlRowId(this.id));
+        }
+
+        Node toNodeWithoutId(ImmutableContextSet contexts) {
+            return NodeBuilders.determineMostApplicable(this.permission)
+                    .value(this.value)
+                    .expiry(this.expiry)
+                    .context(contexts)
+                    .build();
+        }
+    }
+
+    /**
+     * Builds nodes from {@link SqlNodeRow}s, parsing each distinct combination of contexts
+     * only once, and sharing the resulting context set between all the nodes that have it.
+     */
+    private static final class SqlNodeParser {
+        private final Map<List<String>, ImmutableContextSet> contexts = new HashMap<>();
+
+        Node parse(SqlNodeRow row) {
+            return row.toNode(parseContexts(row));
+        }
+
+        /**
+         * Gets if the given node is equal to the node the row would be parsed to.
+         *
+         * @param row the row
+         * @param node the node
+         * @return if they match
+         */
+        boolean matches(SqlNodeRow row, Node node) {
+            // node equality doesn't consider metadata, so there's no need to attach the row id
+            return node.equals(row.toNodeWithoutId(parseContexts(row)));
+        }
+
+        private ImmutableContextSet parseContexts(SqlNodeRow row) {
+            return this.contexts.computeIfAbsent(
+                    Arrays.asList(row.server, row.world, row.contexts),
+                    key -> row.parseContexts()
+            );
+        }
+    }
+
     private static final class SqlPlayerData {
         private final String primaryGroup;
         private final String username;
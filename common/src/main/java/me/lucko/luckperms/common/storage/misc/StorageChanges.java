@@ -0,0 +1,85 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.storage.misc;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The holders which have been changed in the storage since it was last polled.
+ */
+public final class StorageChanges {
+    private static final StorageChanges EVERYTHING = new StorageChanges(true, ImmutableSet.of(), ImmutableSet.of(), ImmutableSet.of());
+
+    /**
+     * Gets an instance which indicates that all data should be reloaded,
+     * e.g. after a bulk update.
+     *
+     * @return the instance
+     */
+    public static StorageChanges everything() {
+        return EVERYTHING;
+    }
+
+    public static StorageChanges of(Set<UUID> users, Set<String> groups, Set<String> tracks) {
+        return new StorageChanges(false, ImmutableSet.copyOf(users), ImmutableSet.copyOf(groups), ImmutableSet.copyOf(tracks));
+    }
+
+    private final boolean everything;
+    private final Set<UUID> users;
+    private final Set<String> groups;
+    private final Set<String> tracks;
+
+    private StorageChanges(boolean everything, Set<UUID> users, Set<String> groups, Set<String> tracks) {
+        this.everything = everything;
+        this.users = users;
+        this.groups = groups;
+        this.tracks = tracks;
+    }
+
+    public boolean isEverything() {
+        return this.everything;
+    }
+
+    public Set<UUID> getUsers() {
+        return this.users;
+    }
+
+    public Set<String> getGroups() {
+        return this.groups;
+    }
+
+    public Set<String> getTracks() {
+        return this.tracks;
+    }
+
+    @Override
+    public String toString() {
+        return "StorageChanges(everything=" + this.everything + ", users=" + this.users + ", groups=" + this.groups + ", tracks=" + this.tracks + ')';
+    }
+}
@@ -44,5 +44,6 @@ public class CacheHousekeepingTask implements Runnable {
         for (Group group : this.plugin.getGroupManager().getAll().values()) {
             group.getCachedData().performCacheCleanup();
         }
+        this.plugin.getLookupCacheBudget().rebalance();
     }
 }
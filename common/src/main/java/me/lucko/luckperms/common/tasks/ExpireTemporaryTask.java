@@ -38,11 +38,10 @@ public class ExpireTemporaryTask implements Runnable {
 
     @Override
     public void run() {
-        boolean groupChanges = false;
+        // holders which inherit from a group are invalidated by the group when it changes
         for (Group group : this.plugin.getGroupManager().getAll().values()) {
             if (group.auditTemporaryNodes()) {
                 this.plugin.getStorage().saveGroup(group);
-                groupChanges = true;
             }
         }
 
@@ -51,11 +50,6 @@ public class ExpireTemporaryTask implements Runnable {
                 this.plugin.getStorage().saveUser(user);
             }
         }
-
-        if (groupChanges) {
-            this.plugin.getGroupManager().invalidateAllGroupCaches();
-            this.plugin.getUserManager().invalidateAllUserCaches();
-        }
     }
 
 }
\ No newline at end of file
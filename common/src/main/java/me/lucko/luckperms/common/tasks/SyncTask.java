@@ -26,10 +26,18 @@
 package me.lucko.luckperms.common.tasks;
 
 import me.lucko.luckperms.common.cache.BufferedRequest;
+import me.lucko.luckperms.common.model.Track;
 import me.lucko.luckperms.common.model.manager.group.GroupManager;
 import me.lucko.luckperms.common.plugin.LuckPermsPlugin;
+import me.lucko.luckperms.common.storage.misc.StorageChanges;
 import net.luckperms.api.event.cause.CreationCause;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -55,25 +63,92 @@ public class SyncTask implements Runnable {
             return;
         }
 
+        // Reload the holders which changed, if the storage keeps track of them, or otherwise everything
+        StorageChanges changes = this.plugin.getStorage().pollChanges().join();
+        boolean tracksChanged;
+        if (changes == null || changes.isEverything()) {
+            tracksChanged = syncAll();
+        } else {
+            tracksChanged = syncChanges(changes);
+        }
+
+        this.plugin.performPlatformDataSync();
+
+        // Holders whose data changed have already been invalidated, along with the holders
+        // which inherit from them - but tracks can affect meta stacks, so if any of them
+        // changed, invalidate everything.
+        if (tracksChanged) {
+            this.plugin.getGroupManager().invalidateAllGroupCaches();
+            this.plugin.getUserManager().invalidateAllUserCaches();
+        }
+
+        this.plugin.getEventDispatcher().dispatchPostSync();
+    }
+
+    private boolean syncAll() {
         // Reload all groups
         this.plugin.getStorage().loadAllGroups().join();
-        if (!this.plugin.getGroupManager().isLoaded(GroupManager.DEFAULT_GROUP_NAME)) {
-            this.plugin.getStorage().createAndLoadGroup(GroupManager.DEFAULT_GROUP_NAME, CreationCause.INTERNAL).join();
-        }
+        ensureDefaultGroupLoaded();
 
         // Reload all tracks
+        Map<String, List<String>> tracks = snapshotTracks();
         this.plugin.getStorage().loadAllTracks().join();
+        boolean tracksChanged = !tracks.equals(snapshotTracks());
 
-        // Reload all online users.
+        // Reload all online users, and discard snapshots of unloaded users which may now be out of date.
+        this.plugin.getUserManager().getSnapshotCache().clear();
         this.plugin.getUserManager().loadAllUsers().join();
 
-        this.plugin.performPlatformDataSync();
+        return tracksChanged;
+    }
 
-        // Just to be sure...
-        this.plugin.getGroupManager().invalidateAllGroupCaches();
-        this.plugin.getUserManager().invalidateAllUserCaches();
+    private boolean syncChanges(StorageChanges changes) {
+        // Reload the changed groups, and unload any which have been deleted
+        boolean groupsDeleted = false;
+        for (String name : changes.getGroups()) {
+            if (!this.plugin.getStorage().loadGroup(name).join().isPresent() && this.plugin.getGroupManager().isLoaded(name)) {
+                this.plugin.getGroupManager().unload(name);
+                groupsDeleted = true;
+            }
+        }
+        ensureDefaultGroupLoaded();
 
-        this.plugin.getEventDispatcher().dispatchPostSync();
+        // Reload the changed tracks, and unload any which have been deleted
+        for (String name : changes.getTracks()) {
+            if (!this.plugin.getStorage().loadTrack(name).join().isPresent()) {
+                this.plugin.getTrackManager().unload(name);
+            }
+        }
+
+        // Reload the changed users which are loaded - the rest will be loaded from storage when they're next needed.
+        Set<UUID> users = new HashSet<>();
+        for (UUID uniqueId : changes.getUsers()) {
+            this.plugin.getUserManager().getSnapshotCache().invalidate(uniqueId);
+            if (this.plugin.getUserManager().isLoaded(uniqueId)) {
+                users.add(uniqueId);
+            }
+        }
+        if (!users.isEmpty()) {
+            this.plugin.getStorage().loadUsers(users).join();
+        }
+
+        // holders which inherited from a deleted group aren't tracked as its dependents
+        // any more, so treat it in the same way as a track change
+        return groupsDeleted || !changes.getTracks().isEmpty();
+    }
+
+    private void ensureDefaultGroupLoaded() {
+        if (!this.plugin.getGroupManager().isLoaded(GroupManager.DEFAULT_GROUP_NAME)) {
+            this.plugin.getStorage().createAndLoadGroup(GroupManager.DEFAULT_GROUP_NAME, CreationCause.INTERNAL).join();
+        }
+    }
+
+    private Map<String, List<String>> snapshotTracks() {
+        Map<String, List<String>> tracks = new HashMap<>();
+        for (Track track : this.plugin.getTrackManager().getAll().values()) {
+            tracks.put(track.getName(), track.getGroups());
+        }
+        return tracks;
     }
 
     public static class Buffer extends BufferedRequest<Void> {
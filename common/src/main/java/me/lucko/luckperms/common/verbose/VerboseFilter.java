@@ -30,6 +30,7 @@ import me.lucko.luckperms.common.verbose.expression.BooleanExpressionCompiler;
 import me.lucko.luckperms.common.verbose.expression.BooleanExpressionCompiler.AST;
 import me.lucko.luckperms.common.verbose.expression.BooleanExpressionCompiler.LexerException;
 import me.lucko.luckperms.common.verbose.expression.BooleanExpressionCompiler.ParserException;
+import me.lucko.luckperms.common.verbose.expression.BooleanExpressionCompiler.VariableEvaluator;
 
 /**
  * Represents a verbose filter expression.
@@ -65,10 +66,14 @@ public final class VerboseFilter {
     /**
      * Evaluates whether the check data passes the filter
      *
+     * <p>The data is usually a {@link VerboseEvent}, but can be any
+     * {@link VariableEvaluator} - allowing checks to be filtered before an
+     * event has been constructed.</p>
+     *
      * @param data the check data
      * @return if the check data passes the filter
      */
-    public boolean evaluate(VerboseEvent data) {
+    public boolean evaluate(VariableEvaluator data) {
         try {
             return this.ast.eval(data);
         } catch (Exception e) {
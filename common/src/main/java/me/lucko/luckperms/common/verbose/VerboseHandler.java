@@ -34,24 +34,50 @@ import me.lucko.luckperms.common.verbose.event.CheckOrigin;
 import me.lucko.luckperms.common.verbose.event.MetaCheckEvent;
 import me.lucko.luckperms.common.verbose.event.PermissionCheckEvent;
 import me.lucko.luckperms.common.verbose.event.VerboseEvent;
+import me.lucko.luckperms.common.verbose.expression.BooleanExpressionCompiler.VariableEvaluator;
 import net.luckperms.api.query.QueryOptions;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
+import java.util.Arrays;
 import java.util.Map;
-import java.util.Queue;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Accepts {@link VerboseEvent}s and passes them onto registered {@link VerboseListener}s.
+ *
+ * <p>Checks are filtered against the listeners' {@link VerboseFilter}s before an event
+ * is created (and the result is queued with the event, so the filters aren't evaluated
+ * again), stack traces are only captured for a sample of checks, and pending events
+ * are held in a bounded buffer - so that having verbose enabled on a busy server doesn't
+ * cost more than it has to.</p>
  */
 public class VerboseHandler implements AutoCloseable {
 
+    /** The default sample rate for capturing stack traces - every check */
+    public static final int DEFAULT_TRACE_SAMPLE_RATE = 1;
+    /** The default number of events which can be waiting to be handled */
+    public static final int DEFAULT_BUFFER_SIZE = 16384;
+
+    private static final VerboseListener[] NO_LISTENERS = new VerboseListener[0];
+
+    /** The filter result used when there are too many listeners to record which of them matched */
+    private static final long UNKNOWN_MATCHES = -1L;
+
     /** A map of currently registered listeners */
     private final Map<UUID, VerboseListener> listeners;
-    /** A queue of verbose events to be handled */
-    private final Queue<VerboseEvent> queue;
+    /** A snapshot of the registered listeners, used to filter checks */
+    private volatile VerboseListener[] listenerSnapshot = NO_LISTENERS;
+    /** A bounded buffer of queued checks (or batches of checks, as arrays) to be handled */
+    private volatile ArrayBlockingQueue<Object> queue;
+    /** The number of events discarded since the last flush because the buffer was full */
+    private final AtomicInteger dropped = new AtomicInteger(0);
+    /** A stack trace is captured for 1 in every n checks */
+    private volatile int traceSampleRate = DEFAULT_TRACE_SAMPLE_RATE;
     /** If there are any listeners registered */
     private boolean listening = false;
     /** The tick task */
@@ -59,10 +85,34 @@ public class VerboseHandler implements AutoCloseable {
 
     public VerboseHandler(SchedulerAdapter scheduler) {
         this.listeners = new ConcurrentHashMap<>();
-        this.queue = new ConcurrentLinkedQueue<>();
+        this.queue = new ArrayBlockingQueue<>(DEFAULT_BUFFER_SIZE);
         this.task = scheduler.asyncRepeating(this::tick, 100, TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * Configures the handler.
+     *
+     * <p>This should be called before any listeners are registered - events offered
+     * concurrently with a change to the buffer size may be lost.</p>
+     *
+     * @param traceSampleRate capture a stack trace for 1 in every n checks
+     * @param bufferSize the maximum number of events waiting to be handled
+     */
+    public synchronized void configure(int traceSampleRate, int bufferSize) {
+        if (traceSampleRate < 1) {
+            throw new IllegalArgumentException("traceSampleRate must be at least 1");
+        }
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("bufferSize must be at least 1");
+        }
+
+        flush();
+        this.traceSampleRate = traceSampleRate;
+        if (this.queue.remainingCapacity() + this.queue.size() != bufferSize) {
+            this.queue = new ArrayBlockingQueue<>(bufferSize);
+        }
+    }
+
     /**
      * Offers permission check data to the handler, to be eventually passed onto listeners.
      *
@@ -80,13 +130,75 @@ public class VerboseHandler implements AutoCloseable {
         if (!this.listening) {
             return;
         }
+        VerboseListener[] listeners = this.listenerSnapshot;
+        if (listeners.length == 0) {
+            return;
+        }
+
+        // or if none of the listeners are interested in it
+        long matches = filter(listeners, variable -> PermissionCheckEvent.eval(checkTarget, permission, result, variable));
+        if (matches == 0) {
+            return;
+        }
 
         long time = System.currentTimeMillis();
-        Throwable trace = new Throwable();
+        Throwable trace = sampleTrace();
         String thread = Thread.currentThread().getName();
 
         // add the check data to a queue to be processed later.
-        this.queue.offer(new PermissionCheckEvent(origin, checkTarget, checkQueryOptions, time, trace, thread, permission, result));
+        offer(new QueuedCheck(new PermissionCheckEvent(origin, checkTarget, checkQueryOptions, time, trace, thread, permission, result), listeners, matches));
+    }
+
+    /**
+     * Offers the data from a batch of permission checks to the handler, to be eventually
+     * passed onto listeners.
+     *
+     * <p>The checks which are accepted by a listener are added to the queue as a single
+     * batch, sharing the same time, thread and (sampled) stack trace.</p>
+     *
+     * @param origin the origin of the checks
+     * @param checkTarget the target of the permission checks
+     * @param checkQueryOptions the query options used for the checks
+     * @param permissions the permissions which were checked for
+     * @param results the results of the permission checks, in the same order
+     */
+    public void offerPermissionCheckEvents(CheckOrigin origin, VerboseCheckTarget checkTarget, QueryOptions checkQueryOptions, String[] permissions, TristateResult[] results) {
+        // don't bother even processing the checks if there are no listeners registered
+        if (!this.listening) {
+            return;
+        }
+        VerboseListener[] listeners = this.listenerSnapshot;
+        if (listeners.length == 0) {
+            return;
+        }
+
+        QueuedCheck[] batch = null;
+        int size = 0;
+        long time = 0;
+        Throwable trace = null;
+        String thread = null;
+
+        for (int i = 0; i < permissions.length; i++) {
+            String permission = permissions[i];
+            TristateResult result = results[i];
+
+            long matches = filter(listeners, variable -> PermissionCheckEvent.eval(checkTarget, permission, result, variable));
+            if (matches == 0) {
+                continue;
+            }
+
+            if (batch == null) {
+                batch = new QueuedCheck[permissions.length - i];
+                time = System.currentTimeMillis();
+                trace = sampleTrace();
+                thread = Thread.currentThread().getName();
+            }
+            batch[size++] = new QueuedCheck(new PermissionCheckEvent(origin, checkTarget, checkQueryOptions, time, trace, thread, permission, result), listeners, matches);
+        }
+
+        if (batch != null) {
+            offer(size == batch.length ? batch : Arrays.copyOf(batch, size), size);
+        }
     }
 
     /**
@@ -106,13 +218,72 @@ public class VerboseHandler implements AutoCloseable {
         if (!this.listening) {
             return;
         }
+        VerboseListener[] listeners = this.listenerSnapshot;
+        if (listeners.length == 0) {
+            return;
+        }
+
+        // or if none of the listeners are interested in it
+        long matches = filter(listeners, variable -> MetaCheckEvent.eval(checkTarget, key, result, variable));
+        if (matches == 0) {
+            return;
+        }
 
         long time = System.currentTimeMillis();
-        Throwable trace = new Throwable();
+        Throwable trace = sampleTrace();
         String thread = Thread.currentThread().getName();
 
         // add the check data to a queue to be processed later.
-        this.queue.offer(new MetaCheckEvent(origin, checkTarget, checkQueryOptions, time, trace, thread, key, result));
+        offer(new QueuedCheck(new MetaCheckEvent(origin, checkTarget, checkQueryOptions, time, trace, thread, key, result), listeners, matches));
+    }
+
+    /**
+     * Evaluates a check against the filters of the given listeners.
+     *
+     * @param listeners the listeners
+     * @param check the check
+     * @return a bit set of the listeners which accepted the check, 0 if none did
+     */
+    private static long filter(VerboseListener[] listeners, VariableEvaluator check) {
+        long matches = 0;
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i].getFilter().evaluate(check)) {
+                if (listeners.length > Long.SIZE) {
+                    // too many listeners to record which of them matched, so
+                    // they are filtered again when the event is handled
+                    return UNKNOWN_MATCHES;
+                }
+                matches |= 1L << i;
+            }
+        }
+
+        if (matches == 0) {
+            // the check is still counted towards each listener's total
+            for (VerboseListener listener : listeners) {
+                listener.recordFiltered();
+            }
+        }
+        return matches;
+    }
+
+    private @Nullable Throwable sampleTrace() {
+        int rate = this.traceSampleRate;
+        if (rate == 1 || ThreadLocalRandom.current().nextInt(rate) == 0) {
+            return new Throwable();
+        }
+        return null;
+    }
+
+    private void offer(QueuedCheck check) {
+        if (!this.queue.offer(check)) {
+            this.dropped.incrementAndGet();
+        }
+    }
+
+    private void offer(QueuedCheck[] batch, int size) {
+        if (!this.queue.offer(batch)) {
+            this.dropped.addAndGet(size);
+        }
     }
 
     /**
@@ -127,6 +298,7 @@ public class VerboseHandler implements AutoCloseable {
         flush();
 
         this.listeners.put(sender.getUniqueId(), new VerboseListener(sender, filter, notify));
+        updateListenerSnapshot();
         this.listening = true;
     }
 
@@ -140,12 +312,20 @@ public class VerboseHandler implements AutoCloseable {
         // immediately flush, so the listener gets all current data
         flush();
 
-        return this.listeners.remove(sender.getUniqueId());
+        VerboseListener listener = this.listeners.remove(sender.getUniqueId());
+        updateListenerSnapshot();
+        return listener;
+    }
+
+    private void updateListenerSnapshot() {
+        this.listenerSnapshot = this.listeners.values().toArray(NO_LISTENERS);
     }
 
     private void tick() {
         // remove listeners where the sender is no longer valid
-        this.listeners.values().removeIf(l -> !l.getNotifiedSender().isValid());
+        if (this.listeners.values().removeIf(l -> !l.getNotifiedSender().isValid())) {
+            updateListenerSnapshot();
+        }
 
         // handle all events in the queue
         flush();
@@ -158,16 +338,64 @@ public class VerboseHandler implements AutoCloseable {
      * Flushes the pending events to listeners.
      */
     public synchronized void flush() {
-        for (VerboseEvent e; (e = this.queue.poll()) != null; ) {
+        for (Object e; (e = this.queue.poll()) != null; ) {
+            if (e instanceof QueuedCheck[]) {
+                for (QueuedCheck check : (QueuedCheck[]) e) {
+                    passToListeners(check);
+                }
+            } else {
+                passToListeners((QueuedCheck) e);
+            }
+        }
+
+        int dropped = this.dropped.getAndSet(0);
+        if (dropped != 0) {
             for (VerboseListener listener : this.listeners.values()) {
-                listener.acceptEvent(e);
+                listener.recordDropped(dropped);
             }
         }
     }
 
+    private void passToListeners(QueuedCheck check) {
+        for (VerboseListener listener : this.listenerSnapshot) {
+            listener.acceptEvent(check.event, check.matchedBy(listener));
+        }
+    }
+
     @Override
     public void close() {
         this.task.cancel();
     }
 
+    /**
+     * A check waiting to be handled, along with the result of filtering it.
+     */
+    private static final class QueuedCheck {
+        private final VerboseEvent event;
+        /** The listeners which the check was filtered against */
+        private final VerboseListener[] listeners;
+        /** A bit set of the listeners which accepted the check */
+        private final long matches;
+
+        QueuedCheck(VerboseEvent event, VerboseListener[] listeners, long matches) {
+            this.event = event;
+            this.listeners = listeners;
+            this.matches = matches;
+        }
+
+        boolean matchedBy(VerboseListener listener) {
+            if (this.matches != UNKNOWN_MATCHES) {
+                for (int i = 0; i < this.listeners.length; i++) {
+                    if (this.listeners[i] == listener) {
+                        return (this.matches & (1L << i)) != 0;
+                    }
+                }
+            }
+
+            // the listener was registered after the check was filtered, or there
+            // were too many listeners to record the result
+            return listener.getFilter().evaluate(this.event);
+        }
+    }
+
 }
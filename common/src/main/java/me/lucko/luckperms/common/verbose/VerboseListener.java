@@ -114,6 +114,8 @@ public class VerboseListener {
     // the number of events we have processed and accepted, based on the filter rules for this
     // listener
     private final AtomicInteger matchedCounter = new AtomicInteger(0);
+    // the number of events which were discarded because the handler's buffer was full
+    private final AtomicInteger droppedCounter = new AtomicInteger(0);
     // the events which passed the filter, up to a max size of #DATA_TRUNCATION
     private final List<VerboseEvent> results = new ArrayList<>(DATA_TRUNCATION / 10);
 
@@ -129,11 +131,21 @@ public class VerboseListener {
      * @param event the event to process
      */
     public void acceptEvent(VerboseEvent event) {
+        acceptEvent(event, this.filter.evaluate(event));
+    }
+
+    /**
+     * Accepts and processes verbose events which have already been filtered.
+     *
+     * @param event the event to process
+     * @param matched if the event passed this listener's filter
+     */
+    public void acceptEvent(VerboseEvent event, boolean matched) {
         // increment handled counter
         this.counter.incrementAndGet();
 
-        // check if the data passes our filter
-        if (!this.filter.evaluate(event)) {
+        // check if the data passed our filter
+        if (!matched) {
             return;
         }
 
@@ -151,6 +163,22 @@ public class VerboseListener {
         }
     }
 
+    /**
+     * Records a check which was rejected by the filter before an event was created.
+     */
+    public void recordFiltered() {
+        this.counter.incrementAndGet();
+    }
+
+    /**
+     * Records checks which were discarded because the handler's buffer was full.
+     *
+     * @param count the number of discarded checks
+     */
+    public void recordDropped(int count) {
+        this.droppedCounter.addAndGet(count);
+    }
+
     private void sendNotification(VerboseEvent event) {
         // form a text component from the check trace
         Component component;
@@ -256,6 +284,7 @@ public class VerboseListener {
                 .add("count", new JObject()
                         .add("matched", this.matchedCounter.get())
                         .add("total", this.counter.get())
+                        .add("dropped", this.droppedCounter.get())
                 )
                 .add("uploader", new JObject()
                         .add("name", this.notifiedSender.getNameWithLocation())
@@ -289,7 +318,19 @@ public class VerboseListener {
         return this.notifiedSender;
     }
 
+    public VerboseFilter getFilter() {
+        return this.filter;
+    }
+
+    public int getTotalCount() {
+        return this.counter.get();
+    }
+
     public int getMatchedCount() {
         return this.matchedCounter.get();
     }
+
+    public int getDroppedCount() {
+        return this.droppedCounter.get();
+    }
 }
@@ -101,10 +101,24 @@ public class MetaCheckEvent extends VerboseEvent {
 
     @Override
     public boolean eval(String variable) {
+        return eval(getCheckTarget(), this.key, this.result, variable);
+    }
+
+    /**
+     * Evaluates a filter variable against the properties of a meta check,
+     * without needing to construct an event.
+     *
+     * @param checkTarget the target of the check
+     * @param key the meta key which was checked for
+     * @param result the result of the check
+     * @param variable the variable
+     * @return the result
+     */
+    public static boolean eval(VerboseCheckTarget checkTarget, String key, StringResult<?> result, String variable) {
         return variable.equals("meta") ||
-                getCheckTarget().describe().equalsIgnoreCase(variable) ||
-                getKey().toLowerCase(Locale.ROOT).startsWith(variable.toLowerCase(Locale.ROOT)) ||
-                String.valueOf(getResult().result()).equalsIgnoreCase(variable);
+                checkTarget.describe().equalsIgnoreCase(variable) ||
+                key.toLowerCase(Locale.ROOT).startsWith(variable.toLowerCase(Locale.ROOT)) ||
+                String.valueOf(result.result()).equalsIgnoreCase(variable);
     }
 
 }
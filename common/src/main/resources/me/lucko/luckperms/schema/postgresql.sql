@@ -50,3 +50,10 @@ CREATE TABLE "{prefix}tracks" (
   "name"   VARCHAR(36) PRIMARY KEY NOT NULL,
   "groups" TEXT                    NOT NULL
 );
+
+CREATE TABLE "{prefix}changelog" (
+  "id"   BIGSERIAL PRIMARY KEY NOT NULL,
+  "time" BIGINT                NOT NULL,
+  "type" CHAR(1)               NOT NULL,
+  "name" VARCHAR(36)           NOT NULL
+);
@@ -53,3 +53,10 @@ CREATE TABLE `{prefix}tracks` (
   `groups` TEXT        NOT NULL,
   PRIMARY KEY (`name`)
 );
+
+CREATE TABLE `{prefix}changelog` (
+  `id`   INTEGER PRIMARY KEY NOT NULL,
+  `time` BIGINT              NOT NULL,
+  `type` CHAR(1)             NOT NULL,
+  `name` VARCHAR(36)         NOT NULL
+);
@@ -0,0 +1,133 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.cacheddata;
+
+import com.google.common.collect.ImmutableList;
+import me.lucko.luckperms.common.context.ImmutableContextSetImpl;
+import me.lucko.luckperms.common.model.User;
+import me.lucko.luckperms.common.plugin.LuckPermsPlugin;
+import me.lucko.luckperms.common.plugin.bootstrap.LuckPermsBootstrap;
+import me.lucko.luckperms.common.plugin.scheduler.SchedulerAdapter;
+import me.lucko.luckperms.common.query.QueryOptionsImpl;
+import net.luckperms.api.context.ImmutableContextSet;
+import net.luckperms.api.query.QueryOptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class CacheWarmerTest {
+
+    private static final ImmutableContextSet OVERWORLD = ImmutableContextSetImpl.of("world", "overworld");
+    private static final ImmutableContextSet NETHER = ImmutableContextSetImpl.of("world", "nether");
+    private static final ImmutableContextSet END = ImmutableContextSetImpl.of("world", "end");
+
+    @Mock private LuckPermsPlugin plugin;
+    @Mock private LuckPermsBootstrap bootstrap;
+    @Mock private SchedulerAdapter scheduler;
+
+    @BeforeEach
+    public void setupMocks() {
+        lenient().when(this.plugin.getBootstrap()).thenReturn(this.bootstrap);
+        lenient().when(this.bootstrap.getScheduler()).thenReturn(this.scheduler);
+    }
+
+    private static QueryOptions queryOptions(ImmutableContextSet contexts) {
+        return QueryOptionsImpl.DEFAULT_CONTEXTUAL.toBuilder().context(contexts).build();
+    }
+
+    @Test
+    public void testPredictsMostFrequentTransitions() {
+        CacheWarmer warmer = new CacheWarmer(this.plugin, true, 1, 10);
+        UUID uniqueId = UUID.randomUUID();
+
+        warmer.onTransition(uniqueId, queryOptions(OVERWORLD), queryOptions(END));
+        warmer.onTransition(uniqueId, queryOptions(OVERWORLD), queryOptions(NETHER));
+        warmer.onTransition(uniqueId, queryOptions(OVERWORLD), queryOptions(NETHER));
+
+        assertEquals(ImmutableList.of(NETHER), warmer.predict(OVERWORLD));
+        assertEquals(ImmutableList.of(), warmer.predict(END));
+    }
+
+    @Test
+    public void testDisabled() {
+        CacheWarmer warmer = new CacheWarmer(this.plugin, false, 1, 10);
+        warmer.onTransition(UUID.randomUUID(), queryOptions(OVERWORLD), queryOptions(NETHER));
+
+        assertEquals(ImmutableList.of(), warmer.predict(OVERWORLD));
+    }
+
+    @Test
+    public void testBudget() {
+        CacheWarmer warmer = new CacheWarmer(this.plugin, true, 1, 2);
+
+        assertTrue(warmer.tryAcquireBudget());
+        assertTrue(warmer.tryAcquireBudget());
+        assertFalse(warmer.tryAcquireBudget());
+    }
+
+    @Test
+    public void testBudgetReleasedWhenWarmingFails() {
+        CacheWarmer warmer = new CacheWarmer(this.plugin, true, 1, 1);
+        User user = mock(User.class);
+        UserCachedDataManager cachedData = mock(UserCachedDataManager.class);
+        when(user.getCachedData()).thenReturn(cachedData);
+        when(cachedData.preload(any())).thenThrow(new RuntimeException("test"));
+
+        assertTrue(warmer.tryAcquireBudget());
+        assertThrows(RuntimeException.class, () -> warmer.warm(user, queryOptions(NETHER)));
+
+        // the space reserved for the failed cache is available again
+        assertTrue(warmer.tryAcquireBudget());
+        assertFalse(warmer.tryAcquireBudget());
+    }
+
+    @Test
+    public void testIsPossible() {
+        ImmutableContextSet potentialContexts = new ImmutableContextSetImpl.BuilderImpl()
+                .add("world", "overworld")
+                .add("world", "nether")
+                .build();
+
+        assertTrue(CacheWarmer.isPossible(NETHER, potentialContexts));
+        assertFalse(CacheWarmer.isPossible(END, potentialContexts));
+        assertTrue(CacheWarmer.isPossible(ImmutableContextSetImpl.of("gamemode", "creative"), potentialContexts));
+    }
+
+}
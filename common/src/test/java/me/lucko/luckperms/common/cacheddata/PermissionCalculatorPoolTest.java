@@ -0,0 +1,136 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.cacheddata;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import me.lucko.luckperms.common.cacheddata.result.TristateResult;
+import me.lucko.luckperms.common.calculator.CalculatorFactory;
+import me.lucko.luckperms.common.calculator.LookupCacheBudget;
+import me.lucko.luckperms.common.calculator.PermissionCalculator;
+import me.lucko.luckperms.common.calculator.processor.DirectProcessor;
+import me.lucko.luckperms.common.model.HolderType;
+import me.lucko.luckperms.common.model.InheritanceOrigin;
+import me.lucko.luckperms.common.model.PermissionHolderIdentifier;
+import me.lucko.luckperms.common.node.types.Inheritance;
+import me.lucko.luckperms.common.node.types.Permission;
+import me.lucko.luckperms.common.plugin.LuckPermsPlugin;
+import me.lucko.luckperms.common.query.QueryOptionsImpl;
+import me.lucko.luckperms.common.treeview.PermissionRegistry;
+import me.lucko.luckperms.common.verbose.VerboseCheckTarget;
+import me.lucko.luckperms.common.verbose.VerboseHandler;
+import me.lucko.luckperms.common.verbose.event.CheckOrigin;
+import net.luckperms.api.model.data.DataType;
+import net.luckperms.api.node.Node;
+import net.luckperms.api.node.metadata.types.InheritanceOriginMetadata;
+import net.luckperms.api.util.Tristate;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+
+@ExtendWith(MockitoExtension.class)
+public class PermissionCalculatorPoolTest {
+
+    @Mock private LuckPermsPlugin plugin;
+
+    private CalculatorFactory calculatorFactory;
+
+    @BeforeEach
+    public void setupMocks() {
+        lenient().when(this.plugin.getVerboseHandler()).thenReturn(mock(VerboseHandler.class));
+        lenient().when(this.plugin.getPermissionRegistry()).thenReturn(mock(PermissionRegistry.class));
+        lenient().when(this.plugin.getLookupCacheBudget()).thenReturn(new LookupCacheBudget(0, 0));
+
+        this.calculatorFactory = (queryOptions, metadata) -> new PermissionCalculator(this.plugin, metadata, ImmutableList.of(new DirectProcessor()));
+    }
+
+    private static CacheMetadata userMetadata(String name) {
+        return new CacheMetadata(HolderType.USER, VerboseCheckTarget.of(VerboseCheckTarget.USER_TYPE, name), QueryOptionsImpl.DEFAULT_CONTEXTUAL);
+    }
+
+    private static InheritanceOrigin origin(HolderType type, String name) {
+        return new InheritanceOrigin(new PermissionHolderIdentifier(type, name), DataType.NORMAL);
+    }
+
+    @Test
+    public void testSharedBetweenEquivalentUsers() {
+        Node groupNode = Permission.builder()
+                .permission("test.node")
+                .withMetadata(InheritanceOriginMetadata.KEY, origin(HolderType.GROUP, "default"))
+                .build();
+        Node userNodeA = Inheritance.builder()
+                .group("default")
+                .withMetadata(InheritanceOriginMetadata.KEY, origin(HolderType.USER, "a"))
+                .build();
+        Node userNodeB = Inheritance.builder()
+                .group("default")
+                .withMetadata(InheritanceOriginMetadata.KEY, origin(HolderType.USER, "b"))
+                .build();
+
+        Map<String, Node> permissionsA = ImmutableMap.of("test.node", groupNode, "group.default", userNodeA);
+        Map<String, Node> permissionsB = ImmutableMap.of("test.node", groupNode, "group.default", userNodeB);
+
+        CacheMetadata metadataB = userMetadata("b");
+        PermissionCalculator calculatorA = PermissionCalculatorPool.get(this.calculatorFactory, userMetadata("a"), permissionsA);
+        PermissionCalculator calculatorB = PermissionCalculatorPool.get(this.calculatorFactory, metadataB, permissionsB);
+        assertSame(calculatorA, calculatorB);
+
+        // results should refer to the holders own node
+        TristateResult result = calculatorB.checkPermission("group.default", CheckOrigin.INTERNAL, metadataB, permissionsB);
+        assertEquals(Tristate.TRUE, result.result());
+        assertSame(userNodeB, result.node());
+
+        result = calculatorB.checkPermission("test.node", CheckOrigin.INTERNAL, metadataB, permissionsB);
+        assertSame(groupNode, result.node());
+    }
+
+    @Test
+    public void testNotSharedBetweenDifferentGroups() {
+        Node nodeA = Permission.builder()
+                .permission("test.node")
+                .withMetadata(InheritanceOriginMetadata.KEY, origin(HolderType.GROUP, "a"))
+                .build();
+        Node nodeB = Permission.builder()
+                .permission("test.node")
+                .withMetadata(InheritanceOriginMetadata.KEY, origin(HolderType.GROUP, "b"))
+                .build();
+
+        PermissionCalculator calculatorA = PermissionCalculatorPool.get(this.calculatorFactory, userMetadata("a"), ImmutableMap.of("test.node", nodeA));
+        PermissionCalculator calculatorB = PermissionCalculatorPool.get(this.calculatorFactory, userMetadata("b"), ImmutableMap.of("test.node", nodeB));
+        assertNotSame(calculatorA, calculatorB);
+    }
+
+}
@@ -27,6 +27,7 @@ package me.lucko.luckperms.common.calculator;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import me.lucko.luckperms.common.cacheddata.CacheMetadata;
 import me.lucko.luckperms.common.cacheddata.result.TristateResult;
 import me.lucko.luckperms.common.calculator.processor.AbstractOverrideWildcardProcessor;
@@ -53,15 +54,24 @@ import org.junit.jupiter.params.provider.CsvSource;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 public class PermissionCalculatorTest {
@@ -106,6 +116,7 @@ public class PermissionCalculatorTest {
     public void setupMocks() {
         lenient().when(this.plugin.getVerboseHandler()).thenReturn(mock(VerboseHandler.class));
         lenient().when(this.plugin.getPermissionRegistry()).thenReturn(mock(PermissionRegistry.class));
+        lenient().when(this.plugin.getLookupCacheBudget()).thenReturn(new LookupCacheBudget(0, 0));
     }
 
     private PermissionCalculator createCalculator(PermissionProcessor... processors) {
@@ -168,6 +179,65 @@ public class PermissionCalculatorTest {
         }
     }
 
+    @ParameterizedTest
+    @CsvSource({
+            "one.two.three.four, true, direct",
+            "one.two.three.test, false, wildcard",
+            "one.two.three.four.five, false, wildcard",
+            "one.two.three.four.five.six, false, wildcard",
+            "one.two.three, true, direct",
+            "one.two.test, false, wildcard",
+            "one.two.test.three, false, wildcard",
+            "one.test, false, wildcard",
+            "one..test, false, wildcard",
+            "test, false, wildcard",
+            "test.one.two, false, wildcard",
+            ".one.test, false, wildcard",
+    })
+    public void testCompiledWildcard(String node, boolean expected, String type) {
+        Map<String, Node> permissions = ImmutableMap.<String, Node>builder()
+                .putAll(EXAMPLE_PERMISSIONS)
+                .put("one.two.three.four.five.*", NodeBuilders.determineMostApplicable("one.two.three.four.five.*").value(false).build())
+                .build();
+
+        PermissionCalculator calculator = createCalculator(new DirectProcessor(), new WildcardProcessor(true));
+        calculator.setSourcePermissions(permissions);
+
+        PermissionCalculator uncompiledCalculator = createCalculator(new DirectProcessor(), new WildcardProcessor(false));
+        uncompiledCalculator.setSourcePermissions(permissions);
+
+        TristateResult result = calculator.checkPermission(node, CheckOrigin.INTERNAL);
+        TristateResult uncompiledResult = uncompiledCalculator.checkPermission(node, CheckOrigin.INTERNAL);
+        assertEquals(Tristate.of(expected), result.result());
+        assertEquals(uncompiledResult.result(), result.result());
+        assertSame(uncompiledResult.node(), result.node());
+
+        if (type.equals("direct")) {
+            assertSame(DirectProcessor.class, result.processorClass());
+        } else if (type.equals("wildcard")) {
+            assertSame(WildcardProcessor.class, result.processorClass());
+        } else {
+            throw new AssertionError();
+        }
+    }
+
+    @Test
+    public void testCompiledWildcardShared() {
+        WildcardProcessor first = new WildcardProcessor(true);
+        first.setSource(EXAMPLE_PERMISSIONS);
+        first.refresh();
+
+        WildcardProcessor second = new WildcardProcessor(true);
+        second.setSource(ImmutableMap.copyOf(EXAMPLE_PERMISSIONS));
+        second.refresh();
+
+        // the same node instances should result in the same (shared) compiled results
+        assertSame(
+                first.hasPermission(TristateResult.UNDEFINED, "one.two.test"),
+                second.hasPermission(TristateResult.UNDEFINED, "one.two.test")
+        );
+    }
+
     @ParameterizedTest
     @CsvSource({
             "one, true, direct",
@@ -221,6 +291,248 @@ public class PermissionCalculatorTest {
         }
     }
 
+    @ParameterizedTest
+    @CsvSource({
+            "hello, UNDEFINED",
+            "hello1, TRUE",
+            "hello123, TRUE",
+            "helloo, UNDEFINED",
+            "regex1, FALSE",
+            "regexps4, FALSE",
+            "regexps6, UNDEFINED",
+            "prefix.test, TRUE",
+            "prefix.test.more, UNDEFINED",
+            "abcabc, FALSE",
+            "x.y.z, TRUE",
+            "x.y, TRUE",
+            "x, UNDEFINED",
+            "aaaa, TRUE",
+            "aaaaaa, UNDEFINED",
+            "digits12, TRUE",
+            "anchored, TRUE",
+    })
+    public void testRegexAutomaton(String node, Tristate expected) {
+        Map<String, Node> permissions = ImmutableMap.<String, Boolean>builder()
+                .put("r=hello\\d+", true)
+                .put("r=rege(x(es)?|xps?)[1-5]", false)
+                .put("r=prefix\\.[^.]+", true)
+                .put("r=(abc)\\1", false) // back reference - not supported by the automaton
+                .put("r=[a-z](?:\\.[a-z])+", true)
+                .put("r=a{2,4}?", true)
+                .put("r=\\w+?\\d{2}", true)
+                .put("r=^anchored$", true) // anchors - not supported by the automaton
+                .build().entrySet().stream()
+                .collect(Collectors.toMap(
+                        Map.Entry::getKey,
+                        e -> NodeBuilders.determineMostApplicable(e.getKey()).value(e.getValue()).build()
+                ));
+
+        RegexProcessor automatonProcessor = new RegexProcessor(0);
+        automatonProcessor.setSource(permissions);
+        automatonProcessor.refresh();
+
+        RegexProcessor patternProcessor = new RegexProcessor(Integer.MAX_VALUE);
+        patternProcessor.setSource(permissions);
+        patternProcessor.refresh();
+
+        TristateResult result = automatonProcessor.hasPermission(TristateResult.UNDEFINED, node);
+        assertEquals(expected, result.result());
+        assertSame(patternProcessor.hasPermission(TristateResult.UNDEFINED, node).node(), result.node());
+    }
+
+    @Test
+    public void testRegexAutomatonFallsBackToPatterns() {
+        Map<String, Node> permissions = ImmutableMap.<String, Boolean>builder()
+                .put("r=[ab]*a[ab]{10}", true) // needs more DFA states than the automaton will build
+                .put("r=h\u00e9llo\\d+", false)
+                .build().entrySet().stream()
+                .collect(Collectors.toMap(
+                        Map.Entry::getKey,
+                        e -> NodeBuilders.determineMostApplicable(e.getKey()).value(e.getValue()).build()
+                ));
+
+        RegexProcessor automatonProcessor = new RegexProcessor(0);
+        automatonProcessor.setSource(permissions);
+        automatonProcessor.refresh();
+
+        RegexProcessor patternProcessor = new RegexProcessor(Integer.MAX_VALUE);
+        patternProcessor.setSource(permissions);
+        patternProcessor.refresh();
+
+        Random random = new Random(0);
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < 30; j++) {
+                sb.append(random.nextBoolean() ? 'a' : 'b');
+            }
+            String node = sb.toString();
+            assertSame(patternProcessor.hasPermission(TristateResult.UNDEFINED, node).node(), automatonProcessor.hasPermission(TristateResult.UNDEFINED, node).node());
+        }
+
+        // non-ASCII characters are matched (and cached) in the same way as ASCII ones
+        for (int i = 0; i < 2; i++) {
+            assertEquals(Tristate.FALSE, automatonProcessor.hasPermission(TristateResult.UNDEFINED, "h\u00e9llo12").result());
+            assertEquals(Tristate.UNDEFINED, automatonProcessor.hasPermission(TristateResult.UNDEFINED, "h\u00e8llo12").result());
+        }
+    }
+
+    @Test
+    public void testBoundedLookupCache() {
+        RecordingLookupCacheBudget budget = new RecordingLookupCacheBudget(100, 0);
+        when(this.plugin.getLookupCacheBudget()).thenReturn(budget);
+
+        PermissionCalculator calculator = createCalculator(new DirectProcessor());
+        calculator.setSourcePermissions(EXAMPLE_PERMISSIONS);
+
+        assertEquals(Tristate.TRUE, calculator.checkPermission("test.node1", CheckOrigin.INTERNAL).result());
+        assertEquals(Tristate.TRUE, calculator.checkPermission("test.node1", CheckOrigin.INTERNAL).result());
+        assertEquals(1, budget.getMissCount());
+        assertEquals(1, budget.getHitCount());
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Tristate.UNDEFINED, calculator.checkPermission("dynamic.node" + i, CheckOrigin.INTERNAL).result());
+        }
+        assertEquals(1001, budget.getMissCount());
+
+        BoundedLookupCache cache = budget.caches.get(0);
+        cache.cleanUp();
+        assertTrue(cache.size() <= 100);
+        assertTrue(budget.getEvictionCount() >= 900);
+    }
+
+    @Test
+    public void testLookupCacheGlobalBudget() {
+        RecordingLookupCacheBudget budget = new RecordingLookupCacheBudget(0, 1000);
+        when(this.plugin.getLookupCacheBudget()).thenReturn(budget);
+
+        List<PermissionCalculator> calculators = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            calculators.add(createCalculator(new DirectProcessor()));
+        }
+
+        budget.rebalance();
+        assertEquals(250, budget.getCurrentSize());
+
+        for (int i = 0; i < calculators.size(); i++) {
+            PermissionCalculator calculator = calculators.get(i);
+            for (int j = 0; j < 1000; j++) {
+                calculator.checkPermission("dynamic.node" + j, CheckOrigin.INTERNAL);
+            }
+            BoundedLookupCache cache = budget.caches.get(i);
+            cache.cleanUp();
+            assertTrue(cache.size() <= 250);
+        }
+    }
+
+    @Test
+    public void testNewLookupCacheGetsShareOfGlobalBudget() {
+        RecordingLookupCacheBudget budget = new RecordingLookupCacheBudget(0, 1000);
+        when(this.plugin.getLookupCacheBudget()).thenReturn(budget);
+
+        List<PermissionCalculator> calculators = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            calculators.add(createCalculator(new DirectProcessor()));
+        }
+
+        // no rebalance has happened, but the last cache should still only get a quarter of the limit
+        PermissionCalculator calculator = calculators.get(3);
+        for (int i = 0; i < 1000; i++) {
+            calculator.checkPermission("dynamic.node" + i, CheckOrigin.INTERNAL);
+        }
+        BoundedLookupCache cache = budget.caches.get(3);
+        cache.cleanUp();
+        assertTrue(cache.size() <= 250);
+    }
+
+    @Test
+    public void testBatch() {
+        PermissionCalculator calculator = createCalculator(new DirectProcessor(), new WildcardProcessor());
+        calculator.setSourcePermissions(EXAMPLE_PERMISSIONS);
+
+        String[] permissions = {"test.node1", "TEST.NODE2", "one.two.test", "one.two.three.four"};
+        TristateResult[] results = calculator.checkPermissions(permissions, CheckOrigin.INTERNAL, MOCK_METADATA, EXAMPLE_PERMISSIONS);
+
+        assertEquals(permissions.length, results.length);
+        for (int i = 0; i < permissions.length; i++) {
+            assertSame(calculator.checkPermission(permissions[i], CheckOrigin.INTERNAL), results[i]);
+        }
+    }
+
+    @Test
+    public void testApplySourceChanges() {
+        when(this.plugin.getLookupCacheBudget()).thenReturn(new LookupCacheBudget(100, 0));
+        Map<String, Node> permissions = new HashMap<>(EXAMPLE_PERMISSIONS);
+
+        PermissionCalculator calculator = createCalculator(new DirectProcessor(), new WildcardProcessor());
+        calculator.setSourcePermissions(permissions);
+
+        assertEquals(Tristate.TRUE, calculator.checkPermission("test.node1", CheckOrigin.INTERNAL).result());
+        assertEquals(Tristate.FALSE, calculator.checkPermission("test.node2", CheckOrigin.INTERNAL).result());
+        assertEquals(Tristate.FALSE, calculator.checkPermission("test.other", CheckOrigin.INTERNAL).result());
+
+        // a direct change only invalidates the changed key
+        permissions = new HashMap<>(permissions);
+        permissions.put("test.node2", NodeBuilders.determineMostApplicable("test.node2").value(true).build());
+        calculator.applySourceChanges(permissions, ImmutableSet.of("test.node2"));
+        assertEquals(2, calculator.getLookupCacheSize());
+        assertEquals(Tristate.TRUE, calculator.checkPermission("test.node2", CheckOrigin.INTERNAL).result());
+
+        // a wildcard change refreshes the wildcard processor and everything which depends on it
+        permissions = new HashMap<>(permissions);
+        permissions.put("test.*", NodeBuilders.determineMostApplicable("test.*").value(true).build());
+        calculator.applySourceChanges(permissions, ImmutableSet.of("test.*"));
+        assertEquals(0, calculator.getLookupCacheSize());
+        assertEquals(Tristate.TRUE, calculator.checkPermission("test.other", CheckOrigin.INTERNAL).result());
+
+        permissions = new HashMap<>(permissions);
+        permissions.remove("test.node1");
+        calculator.applySourceChanges(permissions, ImmutableSet.of("test.node1"));
+        TristateResult result = calculator.checkPermission("test.node1", CheckOrigin.INTERNAL);
+        assertEquals(Tristate.TRUE, result.result());
+        assertSame(WildcardProcessor.class, result.processorClass());
+    }
+
+    @Test
+    public void testApplySourceChangesDuringLookup() throws Exception {
+        when(this.plugin.getLookupCacheBudget()).thenReturn(new LookupCacheBudget(0, 0));
+        Map<String, Node> permissions = new HashMap<>(EXAMPLE_PERMISSIONS);
+
+        CountDownLatch lookupStarted = new CountDownLatch(1);
+        CountDownLatch changeApplied = new CountDownLatch(1);
+        DirectProcessor slowProcessor = new DirectProcessor() {
+            @Override
+            public TristateResult hasPermission(String permission) {
+                TristateResult result = super.hasPermission(permission);
+                if (lookupStarted.getCount() != 0) {
+                    // hold on to the (now stale) result until the change has been applied
+                    lookupStarted.countDown();
+                    try {
+                        changeApplied.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+                return result;
+            }
+        };
+
+        PermissionCalculator calculator = createCalculator(slowProcessor);
+        calculator.setSourcePermissions(permissions);
+
+        Thread lookup = new Thread(() -> calculator.checkPermission("test.node2", CheckOrigin.INTERNAL));
+        lookup.start();
+        assertTrue(lookupStarted.await(10, TimeUnit.SECONDS));
+
+        permissions = new HashMap<>(permissions);
+        permissions.put("test.node2", NodeBuilders.determineMostApplicable("test.node2").value(true).build());
+        calculator.applySourceChanges(permissions, ImmutableSet.of("test.node2"));
+        changeApplied.countDown();
+        lookup.join();
+
+        // the stale result from the lookup which was in progress must not be cached
+        assertEquals(Tristate.TRUE, calculator.checkPermission("test.node2", CheckOrigin.INTERNAL).result());
+    }
+
     @Test
     public void testOverrideWildcard() {
         AbstractOverrideWildcardProcessor overrideProcessor = new AbstractOverrideWildcardProcessor(true) {
@@ -246,4 +558,22 @@ public class PermissionCalculatorTest {
         assertSame(WildcardProcessor.class, overriddenResult.processorClass());
     }
 
+    /**
+     * A budget which keeps hold of the bounded caches it creates, so tests can inspect them.
+     */
+    private static final class RecordingLookupCacheBudget extends LookupCacheBudget {
+        private final List<BoundedLookupCache> caches = new ArrayList<>();
+
+        RecordingLookupCacheBudget(int maximumSize, int globalMaximumSize) {
+            super(maximumSize, globalMaximumSize);
+        }
+
+        @Override
+        public Map<String, TristateResult> createCache(Function<String, TristateResult> loader) {
+            Map<String, TristateResult> cache = super.createCache(loader);
+            this.caches.add((BoundedLookupCache) cache);
+            return cache;
+        }
+    }
+
 }
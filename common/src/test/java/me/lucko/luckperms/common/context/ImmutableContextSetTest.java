@@ -38,6 +38,8 @@ import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class ImmutableContextSetTest {
@@ -170,4 +172,55 @@ public class ImmutableContextSetTest {
         );
     }
 
+    @Test
+    public void testEncodedComparisons() {
+        ImmutableContextSet set = new ImmutableContextSetImpl.BuilderImpl()
+                .add("aaa", "a")
+                .add("bbb", "b")
+                .build();
+
+        ImmutableContextSet superset = new ImmutableContextSetImpl.BuilderImpl()
+                .add("bbb", "b")
+                .add("aaa", "a")
+                .add("aaa", "c")
+                .build();
+
+        MutableContextSetImpl mutableSuperset = new MutableContextSetImpl();
+        mutableSuperset.addAll(superset);
+
+        assertTrue(set.isSatisfiedBy(superset, ContextSatisfyMode.ALL_VALUES_PER_KEY));
+        assertTrue(set.isSatisfiedBy(mutableSuperset, ContextSatisfyMode.ALL_VALUES_PER_KEY));
+        assertFalse(superset.isSatisfiedBy(set, ContextSatisfyMode.ALL_VALUES_PER_KEY));
+        assertTrue(superset.isSatisfiedBy(set, ContextSatisfyMode.AT_LEAST_ONE_VALUE_PER_KEY));
+
+        assertEquals(superset, mutableSuperset.immutableCopy());
+        assertFalse(set.equals(superset));
+
+        assertTrue(superset.containsKey("aaa"));
+        assertFalse(superset.containsKey("aa"));
+        assertFalse(superset.contains("never-seen-before", "a"));
+    }
+
+    @Test
+    public void testBuilderReusesSourceSet() {
+        ImmutableContextSet set = new ImmutableContextSetImpl.BuilderImpl()
+                .add("test", "a")
+                .add("test", "b")
+                .build();
+
+        // populated from another set and not modified - the same instance is returned
+        assertSame(set, new ImmutableContextSetImpl.BuilderImpl().addAll(set).build());
+
+        // modified afterwards - a new set is built, and the original is unchanged
+        ImmutableContextSet modified = new ImmutableContextSetImpl.BuilderImpl()
+                .addAll(set)
+                .add("test", "c")
+                .build();
+
+        assertNotSame(set, modified);
+        assertEquals(3, modified.size());
+        assertEquals(2, set.size());
+        assertFalse(set.contains("test", "c"));
+    }
+
 }
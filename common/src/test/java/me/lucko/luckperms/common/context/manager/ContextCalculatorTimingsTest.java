@@ -0,0 +1,65 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.context.manager;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ContextCalculatorTimingsTest {
+
+    @Test
+    public void testRecord() {
+        ContextCalculatorTimings timings = new ContextCalculatorTimings("test");
+        assertEquals(0, timings.getPercentileMicros(0.95));
+
+        for (int i = 0; i < 95; i++) {
+            timings.record(TimeUnit.MICROSECONDS.toNanos(3));
+        }
+        for (int i = 0; i < 5; i++) {
+            timings.record(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        timings.recordAsync(TimeUnit.MILLISECONDS.toNanos(50));
+
+        assertEquals(100, timings.getCalls());
+        assertEquals(1, timings.getAsyncCalls());
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(95 * 3) + TimeUnit.MILLISECONDS.toNanos(5 * 10), timings.getNanos());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(50), timings.getAsyncNanos());
+
+        // 3us falls in the [2, 4) bucket, 10ms in the [8192, 16384) bucket
+        assertEquals(4, timings.getPercentileMicros(0.5));
+        assertEquals(4, timings.getPercentileMicros(0.95));
+        assertEquals(16384, timings.getPercentileMicros(0.99));
+
+        timings.reset();
+        assertEquals(0, timings.getCalls());
+        assertEquals(0, timings.getAsyncCalls());
+        assertEquals(0, timings.getPercentileMicros(0.95));
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.context.manager;
+
+import me.lucko.luckperms.common.config.ConfigKeys;
+import me.lucko.luckperms.common.config.LuckPermsConfiguration;
+import me.lucko.luckperms.common.event.EventDispatcher;
+import me.lucko.luckperms.common.plugin.LuckPermsPlugin;
+import me.lucko.luckperms.common.query.QueryOptionsImpl;
+import net.luckperms.api.context.ContextCalculator;
+import net.luckperms.api.context.ContextConsumer;
+import net.luckperms.api.context.ImmutableContextSet;
+import net.luckperms.api.context.SignallingContextCalculator;
+import net.luckperms.api.query.QueryOptions;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+
+@ExtendWith(MockitoExtension.class)
+public class QueryOptionsCacheTest {
+
+    @Mock private LuckPermsPlugin plugin;
+    @Mock private LuckPermsConfiguration configuration;
+
+    private TestContextManager contextManager;
+
+    @BeforeEach
+    public void setupMocks() {
+        lenient().when(this.plugin.getConfiguration()).thenReturn(this.configuration);
+        lenient().when(this.plugin.getEventDispatcher()).thenReturn(mock(EventDispatcher.class));
+        lenient().when(this.configuration.get(ConfigKeys.EVENT_DRIVEN_CONTEXTS)).thenReturn(true);
+        lenient().when(this.configuration.get(ConfigKeys.CONTEXT_CACHE_EXPIRY)).thenReturn(1);
+        lenient().when(this.configuration.get(ConfigKeys.GLOBAL_QUERY_OPTIONS)).thenReturn(QueryOptionsImpl.DEFAULT_CONTEXTUAL);
+        lenient().when(this.configuration.get(ConfigKeys.DISABLED_CONTEXT_CALCULATORS)).thenReturn(Collections.emptySet());
+        lenient().when(this.configuration.get(ConfigKeys.ASYNC_CONTEXT_CALCULATORS)).thenReturn(Collections.emptySet());
+
+        this.contextManager = new TestContextManager(this.plugin);
+    }
+
+    @Test
+    public void testSignallingResultsCachedUntilSignalled() throws InterruptedException {
+        CountingCalculator signalling = new CountingSignallingCalculator("signalling");
+        CountingCalculator polling = new CountingCalculator("polling");
+        this.contextManager.registerCalculator(signalling);
+        this.contextManager.registerCalculator(polling);
+
+        Object subject = new Object();
+        QueryOptionsCache<Object> cache = this.contextManager.getCacheFor(subject);
+
+        // wait for the subject to settle after the cache was created
+        Thread.sleep(10);
+        QueryOptions queryOptions = cache.getQueryOptions();
+        int calls = signalling.calls.get();
+
+        Thread.sleep(10);
+        assertSame(queryOptions, cache.getQueryOptions());
+        assertEquals(calls, signalling.calls.get());
+        assertTrue(polling.calls.get() > 1);
+
+        this.contextManager.signalContextUpdate(subject);
+        cache.getQueryOptions();
+        assertEquals(calls + 1, signalling.calls.get());
+    }
+
+    @Test
+    public void testInvalidateCaches() throws InterruptedException {
+        CountingCalculator signalling = new CountingSignallingCalculator("signalling");
+        this.contextManager.registerCalculator(signalling);
+
+        QueryOptionsCache<Object> cache = this.contextManager.getCacheFor(new Object());
+        Thread.sleep(10);
+        cache.getQueryOptions();
+        int calls = signalling.calls.get();
+
+        cache.getQueryOptions();
+        assertEquals(calls, signalling.calls.get());
+
+        this.contextManager.invalidateCaches();
+        cache.getQueryOptions();
+        assertEquals(calls + 1, signalling.calls.get());
+    }
+
+    private static class CountingCalculator implements ContextCalculator<Object> {
+        private final String key;
+        final AtomicInteger calls = new AtomicInteger();
+
+        CountingCalculator(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public void calculate(@NonNull Object target, @NonNull ContextConsumer consumer) {
+            this.calls.incrementAndGet();
+            consumer.accept(this.key, "true");
+        }
+    }
+
+    private static final class CountingSignallingCalculator extends CountingCalculator implements SignallingContextCalculator<Object> {
+        CountingSignallingCalculator(String key) {
+            super(key);
+        }
+    }
+
+    private static final class TestContextManager extends ContextManager<Object, Object> {
+        private final Map<Object, QueryOptionsCache<Object>> caches = new HashMap<>();
+
+        TestContextManager(LuckPermsPlugin plugin) {
+            super(plugin, Object.class, Object.class);
+        }
+
+        @Override
+        public UUID getUniqueId(Object player) {
+            return null;
+        }
+
+        @Override
+        public QueryOptionsCache<Object> getCacheFor(Object subject) {
+            return this.caches.computeIfAbsent(subject, s -> new QueryOptionsCache<>(s, this));
+        }
+
+        @Override
+        public QueryOptions formQueryOptions(Object subject, ImmutableContextSet contextSet) {
+            return formQueryOptions(contextSet);
+        }
+
+        @Override
+        protected void invalidateCache(Object subject) {
+            QueryOptionsCache<Object> cache = this.caches.get(subject);
+            if (cache != null) {
+                cache.invalidate();
+            }
+        }
+    }
+}
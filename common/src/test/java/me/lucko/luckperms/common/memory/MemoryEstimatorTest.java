@@ -0,0 +1,103 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.memory;
+
+import me.lucko.luckperms.common.model.HolderType;
+import me.lucko.luckperms.common.model.PermissionHolder;
+import me.lucko.luckperms.common.model.PermissionHolderIdentifier;
+import me.lucko.luckperms.common.model.nodemap.NodeMap;
+import me.lucko.luckperms.common.model.nodemap.NodeMapCopyOnWrite;
+import me.lucko.luckperms.common.model.nodemap.NodeMapMutable;
+import me.lucko.luckperms.common.node.types.Permission;
+import me.lucko.luckperms.common.treeview.TreeNode;
+import net.luckperms.api.model.data.DataType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.lenient;
+
+@ExtendWith(MockitoExtension.class)
+public class MemoryEstimatorTest {
+
+    @Mock private PermissionHolder mockHolder;
+
+    private void populate(NodeMap map, int count) {
+        lenient().when(this.mockHolder.getIdentifier()).thenReturn(new PermissionHolderIdentifier(HolderType.GROUP, "test"));
+        for (int i = 0; i < count; i++) {
+            map.add(Permission.builder().permission("test.permission." + i).withContext("server", "server" + (i % 4)).build());
+        }
+    }
+
+    @Test
+    public void testNodeMapEstimate() {
+        NodeMap empty = new NodeMapMutable(this.mockHolder, DataType.NORMAL);
+        assertEquals(0, MemoryEstimator.estimateNodeMap(empty));
+
+        NodeMap small = new NodeMapMutable(this.mockHolder, DataType.NORMAL);
+        populate(small, 10);
+        NodeMap large = new NodeMapMutable(this.mockHolder, DataType.NORMAL);
+        populate(large, 100);
+
+        long smallBytes = MemoryEstimator.estimateNodeMap(small);
+        long largeBytes = MemoryEstimator.estimateNodeMap(large);
+        assertTrue(smallBytes > 0);
+        assertTrue(largeBytes > smallBytes * 5);
+    }
+
+    @Test
+    public void testCopyOnWriteNodeMapIsSmaller() {
+        NodeMap mutable = new NodeMapMutable(this.mockHolder, DataType.NORMAL);
+        populate(mutable, 50);
+        NodeMap copyOnWrite = new NodeMapCopyOnWrite(this.mockHolder, DataType.NORMAL);
+        populate(copyOnWrite, 50);
+
+        assertTrue(MemoryEstimator.estimateNodeMap(copyOnWrite) < MemoryEstimator.estimateNodeMap(mutable));
+    }
+
+    @Test
+    public void testTreeEstimate() {
+        TreeNode root = new TreeNode();
+        long emptyBytes = MemoryEstimator.estimateTree(root);
+
+        root.tryInsert("test").tryInsert("permission");
+        root.tryInsert("other");
+
+        long bytes = MemoryEstimator.estimateTree(root);
+        assertEquals(emptyBytes * 4 + 3 * 56 + MemoryEstimator.estimateString("test")
+                + MemoryEstimator.estimateString("permission") + MemoryEstimator.estimateString("other"), bytes);
+    }
+
+    @Test
+    public void testStringEstimate() {
+        assertEquals(MemoryEstimator.estimateString(""), MemoryEstimator.estimateString("a") - 8);
+        assertEquals(MemoryEstimator.estimateString("a"), MemoryEstimator.estimateString("abcdefgh"));
+    }
+
+}
@@ -25,33 +25,59 @@
 
 package me.lucko.luckperms.common.model;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import me.lucko.luckperms.common.cacheddata.HolderCachedDataManager;
 import me.lucko.luckperms.common.config.ConfigKeys;
 import me.lucko.luckperms.common.config.LuckPermsConfiguration;
+import me.lucko.luckperms.common.context.ImmutableContextSetImpl;
 import me.lucko.luckperms.common.event.EventDispatcher;
 import me.lucko.luckperms.common.graph.TraversalAlgorithm;
 import me.lucko.luckperms.common.inheritance.InheritanceGraphFactory;
 import me.lucko.luckperms.common.model.manager.group.GroupManager;
 import me.lucko.luckperms.common.model.manager.group.StandardGroupManager;
 import me.lucko.luckperms.common.node.types.Inheritance;
+import me.lucko.luckperms.common.node.types.Meta;
+import me.lucko.luckperms.common.node.types.Permission;
 import me.lucko.luckperms.common.node.types.Weight;
 import me.lucko.luckperms.common.plugin.LuckPermsPlugin;
 import me.lucko.luckperms.common.query.QueryOptionsImpl;
 import net.luckperms.api.context.ContextSatisfyMode;
+import net.luckperms.api.model.data.DataType;
+import net.luckperms.api.node.Node;
+import net.luckperms.api.query.QueryOptions;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -73,6 +99,7 @@ public class InheritanceTest {
         lenient().when(this.plugin.getEventDispatcher()).thenReturn(mock(EventDispatcher.class));
         lenient().when(this.configuration.get(ConfigKeys.CONTEXT_SATISFY_MODE)).thenReturn(ContextSatisfyMode.AT_LEAST_ONE_VALUE_PER_KEY);
         lenient().when(this.configuration.get(ConfigKeys.GROUP_WEIGHTS)).thenReturn(Collections.emptyMap());
+        lenient().when(this.configuration.get(ConfigKeys.COPY_ON_WRITE_NODE_MAPS)).thenReturn(false);
     }
 
     /*
@@ -126,6 +153,202 @@ public class InheritanceTest {
         assertEquals(expectedList, groups);
     }
 
+    @Test
+    public void testInheritanceTreeRecalculated() {
+        when(this.configuration.get(ConfigKeys.INHERITANCE_TRAVERSAL_ALGORITHM)).thenReturn(TraversalAlgorithm.DEPTH_FIRST_PRE_ORDER);
+        when(this.configuration.get(ConfigKeys.POST_TRAVERSAL_INHERITANCE_SORT)).thenReturn(false);
+
+        Group member = this.groupManager.getOrMake("member");
+        Group helper = createGroup("helper", 10, member);
+        Group vip = createGroup("vip", 5, member);
+
+        PermissionHolder testHolder = this.groupManager.getOrMake("test");
+        testHolder.normalData().add(Inheritance.builder().group(helper.getName()).build());
+        testHolder.normalData().add(Inheritance.builder().group(vip.getName()).build());
+
+        assertEquals(ImmutableList.of("helper", "member", "vip"), resolveInheritanceTree(testHolder));
+        assertEquals(ImmutableList.of("helper", "member", "vip"), resolveInheritanceTree(testHolder));
+
+        // changing the weight of a group in the tree changes the order
+        vip.setNodes(DataType.NORMAL, ImmutableList.of(
+                Inheritance.builder().group(member.getName()).build(),
+                Weight.builder().weight(20).build()
+        ), false);
+        assertEquals(ImmutableList.of("vip", "member", "helper"), resolveInheritanceTree(testHolder));
+
+        // unloading a group removes it from the tree
+        this.groupManager.unload(helper.getName());
+        assertEquals(ImmutableList.of("vip", "member"), resolveInheritanceTree(testHolder));
+    }
+
+    private static List<String> resolveInheritanceTree(PermissionHolder holder) {
+        return holder.resolveInheritanceTree(QueryOptionsImpl.DEFAULT_CONTEXTUAL).stream()
+                .map(Group::getName)
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testDependentCachesInvalidated() {
+        when(this.configuration.get(ConfigKeys.INHERITANCE_TRAVERSAL_ALGORITHM)).thenReturn(TraversalAlgorithm.DEPTH_FIRST_PRE_ORDER);
+        when(this.configuration.get(ConfigKeys.POST_TRAVERSAL_INHERITANCE_SORT)).thenReturn(false);
+
+        Group member = this.groupManager.getOrMake("member");
+        Group vip = createGroup("vip", 5, member);
+        Group unrelated = this.groupManager.getOrMake("unrelated");
+
+        PermissionHolder testHolder = this.groupManager.getOrMake("test");
+        testHolder.normalData().add(Inheritance.builder().group(vip.getName()).build());
+
+        QueryOptions queryOptions = QueryOptionsImpl.DEFAULT_CONTEXTUAL;
+        HolderCachedDataManager<?> cachedData = mock(HolderCachedDataManager.class);
+        testHolder.resolveInheritedNodes(queryOptions, group -> group.registerDependent(cachedData, queryOptions));
+
+        // changes to groups outside of the inheritance tree shouldn't invalidate anything
+        unrelated.setNodes(DataType.NORMAL, ImmutableList.of(Meta.builder("test", "value").build()), false);
+        verify(cachedData, never()).invalidate(any(QueryOptions.class));
+
+        // but changes to any group in the tree should
+        member.setNodes(DataType.NORMAL, ImmutableList.of(Meta.builder("test", "value").build()), false);
+        verify(cachedData, times(1)).invalidate(queryOptions);
+
+        // the edge is kept once invalidated
+        vip.setNodes(DataType.NORMAL, ImmutableList.of(Meta.builder("test", "value").build()), false);
+        verify(cachedData, times(2)).invalidate(queryOptions);
+    }
+
+    @Test
+    public void testDependentRecalculatingWhileInvalidated() throws Exception {
+        when(this.configuration.get(ConfigKeys.INHERITANCE_TRAVERSAL_ALGORITHM)).thenReturn(TraversalAlgorithm.DEPTH_FIRST_PRE_ORDER);
+        when(this.configuration.get(ConfigKeys.POST_TRAVERSAL_INHERITANCE_SORT)).thenReturn(false);
+
+        Group member = this.groupManager.getOrMake("member");
+        PermissionHolder testHolder = this.groupManager.getOrMake("test");
+        testHolder.normalData().add(Inheritance.builder().group(member.getName()).build());
+
+        QueryOptions queryOptions = QueryOptionsImpl.DEFAULT_CONTEXTUAL;
+        HolderCachedDataManager<?> cachedData = mock(HolderCachedDataManager.class);
+
+        // recalculate the dependent's cache on another thread, pausing once it has registered itself
+        CountDownLatch registered = new CountDownLatch(1);
+        CountDownLatch changed = new CountDownLatch(1);
+        Thread recalculation = new Thread(() -> testHolder.resolveInheritedNodes(queryOptions, group -> {
+            group.registerDependent(cachedData, queryOptions);
+            registered.countDown();
+            try {
+                changed.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        recalculation.start();
+
+        // the group is changed while the cache is being calculated
+        assertTrue(registered.await(10, TimeUnit.SECONDS));
+        member.setNodes(DataType.NORMAL, ImmutableList.of(Meta.builder("test", "one").build()), false);
+        changed.countDown();
+        recalculation.join();
+        verify(cachedData, times(1)).invalidate(queryOptions);
+
+        // the calculated result must still be invalidated by later changes
+        member.setNodes(DataType.NORMAL, ImmutableList.of(Meta.builder("test", "two").build()), false);
+        verify(cachedData, times(2)).invalidate(queryOptions);
+    }
+
+    @Test
+    public void testDependentPermissionChangesApplied() {
+        when(this.configuration.get(ConfigKeys.INHERITANCE_TRAVERSAL_ALGORITHM)).thenReturn(TraversalAlgorithm.DEPTH_FIRST_PRE_ORDER);
+        when(this.configuration.get(ConfigKeys.POST_TRAVERSAL_INHERITANCE_SORT)).thenReturn(false);
+
+        Group member = this.groupManager.getOrMake("member");
+        Group vip = createGroup("vip", 5, member);
+
+        PermissionHolder testHolder = this.groupManager.getOrMake("test");
+        testHolder.normalData().add(Inheritance.builder().group(vip.getName()).build());
+
+        QueryOptions queryOptions = QueryOptionsImpl.DEFAULT_CONTEXTUAL;
+        HolderCachedDataManager<?> cachedData = mock(HolderCachedDataManager.class);
+        testHolder.resolveInheritedNodes(queryOptions, group -> group.registerDependent(cachedData, queryOptions));
+
+        // changes to plain permissions are applied to the existing caches (asynchronously), including shorthand forms
+        member.setNode(DataType.NORMAL, Permission.builder().permission("test.(a|b)").build(), false);
+        verify(cachedData, timeout(10000)).applyPermissionChanges(ImmutableSet.of("test.(a|b)", "test.a", "test.b"), queryOptions);
+        verify(cachedData, never()).invalidate(any(QueryOptions.class));
+
+        // the edge remains, as the inheritance tree is unchanged
+        vip.unsetNode(DataType.NORMAL, Inheritance.builder().group(member.getName()).build());
+        verify(cachedData, times(1)).invalidate(queryOptions);
+    }
+
+    @Test
+    public void testDependentPermissionChangesAreBounded() {
+        Group member = this.groupManager.getOrMake("member");
+        Set<String> changedKeys = ImmutableSet.of("test.a");
+
+        List<QueryOptions> queryOptions = new ArrayList<>();
+        HolderCachedDataManager<?> cachedData = mock(HolderCachedDataManager.class);
+        for (int i = 0; i < Group.MAX_DEPENDENT_PERMISSION_CHANGES; i++) {
+            QueryOptions options = QueryOptionsImpl.DEFAULT_CONTEXTUAL.toBuilder().context(ImmutableContextSetImpl.of("server", "s" + i)).build();
+            member.registerDependent(cachedData, options);
+            queryOptions.add(options);
+        }
+
+        // up to the limit, the change is applied to each cache in place, off the calling thread
+        Thread caller = Thread.currentThread();
+        Set<Thread> appliedOn = ConcurrentHashMap.newKeySet();
+        doAnswer(invocation -> appliedOn.add(Thread.currentThread())).when(cachedData).applyPermissionChanges(eq(changedKeys), any(QueryOptions.class));
+
+        member.applyDependentPermissionChanges(changedKeys).join();
+        for (QueryOptions options : queryOptions) {
+            verify(cachedData).applyPermissionChanges(changedKeys, options);
+        }
+        assertFalse(appliedOn.contains(caller));
+        verify(cachedData, never()).invalidate(any(QueryOptions.class));
+
+        // past the limit, the caches are invalidated instead of resolving the change for each
+        QueryOptions extra = QueryOptionsImpl.DEFAULT_CONTEXTUAL.toBuilder().context(ImmutableContextSetImpl.of("server", "extra")).build();
+        member.registerDependent(cachedData, extra);
+        queryOptions.add(extra);
+
+        member.applyDependentPermissionChanges(changedKeys).join();
+        verify(cachedData, times(Group.MAX_DEPENDENT_PERMISSION_CHANGES)).applyPermissionChanges(eq(changedKeys), any(QueryOptions.class));
+        for (QueryOptions options : queryOptions) {
+            verify(cachedData).invalidate(options);
+        }
+    }
+
+    @Test
+    public void testExportPermissionsForKeys() {
+        when(this.configuration.get(ConfigKeys.INHERITANCE_TRAVERSAL_ALGORITHM)).thenReturn(TraversalAlgorithm.DEPTH_FIRST_PRE_ORDER);
+        when(this.configuration.get(ConfigKeys.POST_TRAVERSAL_INHERITANCE_SORT)).thenReturn(false);
+
+        Group member = this.groupManager.getOrMake("member");
+        member.normalData().add(Permission.builder().permission("test.a").value(false).build());
+        member.normalData().add(Permission.builder().permission("test.(b|c)").build());
+        member.normalData().add(Permission.builder().permission("test.d").build());
+        Group vip = createGroup("vip", 5, member);
+        vip.normalData().add(Permission.builder().permission("test.(a|c)").build());
+        vip.normalData().add(Permission.builder().permission("Test.D").value(false).build());
+
+        PermissionHolder testHolder = this.groupManager.getOrMake("test");
+        testHolder.normalData().add(Inheritance.builder().group(vip.getName()).build());
+
+        // the keyed export must match the same keys taken from a full export
+        QueryOptions queryOptions = QueryOptionsImpl.DEFAULT_CONTEXTUAL;
+        List<Set<String>> keySets = ImmutableList.of(
+                ImmutableSet.of("test.a", "test.b", "test.c", "test.d", "test.e"),
+                ImmutableSet.of("test.a"),
+                ImmutableSet.of("test.b"),
+                ImmutableSet.of("test.d")
+        );
+        for (Set<String> keys : keySets) {
+            for (boolean shorthand : new boolean[]{false, true}) {
+                Map<String, Node> full = testHolder.exportPermissions(HashMap::new, queryOptions, true, shorthand);
+                full.keySet().retainAll(keys);
+                assertEquals(full, testHolder.exportPermissions(keys, queryOptions, shorthand));
+            }
+        }
+    }
+
     private Group createGroup(String name, int weight, Group parent) {
         Group group = this.groupManager.getOrMake(name);
         group.normalData().add(Inheritance.builder().group(parent.getName()).build());
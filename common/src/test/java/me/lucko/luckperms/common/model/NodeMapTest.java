@@ -29,6 +29,8 @@ import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import me.lucko.luckperms.common.context.ImmutableContextSetImpl;
+import me.lucko.luckperms.common.model.nodemap.NodeMap;
+import me.lucko.luckperms.common.model.nodemap.NodeMapCopyOnWrite;
 import me.lucko.luckperms.common.model.nodemap.NodeMapMutable;
 import me.lucko.luckperms.common.node.factory.NodeBuilders;
 import me.lucko.luckperms.common.query.QueryOptionsBuilderImpl;
@@ -52,9 +54,11 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
@@ -324,5 +328,134 @@ public class NodeMapTest {
         assertEquals(expectedInheritance, inheritanceOutput.size());
     }
 
+    @ParameterizedTest
+    @CsvSource({
+            "ALL_VALUES_PER_KEY, ''",
+            "ALL_VALUES_PER_KEY, server=s1",
+            "ALL_VALUES_PER_KEY, server=s1|world=w2",
+            "ALL_VALUES_PER_KEY, server=s1|server=s2|world=w2|gamemode=creative",
+            "AT_LEAST_ONE_VALUE_PER_KEY, ''",
+            "AT_LEAST_ONE_VALUE_PER_KEY, server=s1",
+            "AT_LEAST_ONE_VALUE_PER_KEY, server=s1|world=w2",
+            "AT_LEAST_ONE_VALUE_PER_KEY, server=s1|server=s2|world=w2|gamemode=creative",
+    })
+    public void testIndexedContextFiltering(ContextSatisfyMode mode, String context) {
+        NodeMapMutable map = new NodeMapMutable(this.mockHolder, DataType.NORMAL) {
+            @Override
+            protected ContextSatisfyMode defaultSatisfyMode() {
+                return mode;
+            }
+        };
+
+        // enough buckets for the index to be used rather than a linear scan
+        map.add(makeNode("test"));
+        map.add(makeNode("group.test"));
+        for (int server = 0; server < 5; server++) {
+            map.add(makeNode("test.s" + server).toBuilder().withContext("server", "s" + server).build());
+            map.add(makeNode("group.s" + server).toBuilder().withContext("server", "s" + server).build());
+            for (int world = 0; world < 5; world++) {
+                map.add(makeNode("test.s" + server + ".w" + world).toBuilder()
+                        .withContext("server", "s" + server)
+                        .withContext("world", "w" + world)
+                        .build());
+                map.add(makeNode("test.s" + server + ".w" + world + ".creative").toBuilder()
+                        .withContext("server", "s" + server)
+                        .withContext("server", "s" + ((server + 1) % 5))
+                        .withContext("world", "w" + world)
+                        .withContext("gamemode", "creative")
+                        .build());
+            }
+        }
+
+        ImmutableContextSet.Builder builder = new ImmutableContextSetImpl.BuilderImpl();
+        if (!context.isEmpty()) {
+            for (String entry : Splitter.on('|').split(context)) {
+                List<String> parts = Splitter.on('=').splitToList(entry);
+                builder.add(parts.get(0), parts.get(1));
+            }
+        }
+        ImmutableContextSet contextSet = builder.build();
+
+        QueryOptions options = new QueryOptionsBuilderImpl(QueryMode.CONTEXTUAL)
+                .context(contextSet)
+                .flags(EnumSet.allOf(Flag.class))
+                .build();
+
+        List<Node> expected = new ArrayList<>();
+        List<InheritanceNode> expectedInheritance = new ArrayList<>();
+        for (Node node : map.asList()) {
+            if (node.getContexts().isSatisfiedBy(contextSet, mode)) {
+                expected.add(node);
+                if (node instanceof InheritanceNode) {
+                    expectedInheritance.add((InheritanceNode) node);
+                }
+            }
+        }
+
+        List<Node> output = new ArrayList<>();
+        map.copyTo(output, options);
+        assertEquals(expected, output);
+
+        output.clear();
+        map.forEach(options, output::add);
+        assertEquals(expected, output);
+
+        List<InheritanceNode> inheritanceOutput = new ArrayList<>();
+        map.copyInheritanceNodesTo(inheritanceOutput, options);
+        assertEquals(expectedInheritance, inheritanceOutput);
+
+        // buckets added after the index was built should be picked up
+        Node added = makeNode("test.added").toBuilder().withContext("server", "s1").withContext("world", "w9").build();
+        map.add(added);
+        output.clear();
+        map.copyTo(output, options);
+        assertEquals(added.getContexts().isSatisfiedBy(contextSet, mode), output.contains(added));
+    }
+
+    @Test
+    public void testCopyOnWriteMatchesMutable() {
+        NodeMap mutable = new NodeMapMutable(this.mockHolder, DataType.NORMAL);
+        NodeMap copyOnWrite = new NodeMapCopyOnWrite(this.mockHolder, DataType.NORMAL);
+
+        Random random = new Random(0);
+        for (int i = 0; i < 2000; i++) {
+            Node node = makeNode(random.nextInt(3) == 0 ? "group.g" + random.nextInt(4) : "perm" + random.nextInt(8))
+                    .toBuilder()
+                    .value(random.nextInt(4) != 0)
+                    .withContext("server", "s" + random.nextInt(3))
+                    .build();
+
+            Difference<Node> expected;
+            Difference<Node> actual;
+            switch (random.nextInt(6)) {
+                case 0:
+                    expected = mutable.remove(node);
+                    actual = copyOnWrite.remove(node);
+                    break;
+                case 1:
+                    expected = mutable.removeIf(n -> !n.getValue());
+                    actual = copyOnWrite.removeIf(n -> !n.getValue());
+                    break;
+                case 2:
+                    expected = mutable.clear(node.getContexts());
+                    actual = copyOnWrite.clear(node.getContexts());
+                    break;
+                case 3:
+                    List<Node> content = new ArrayList<>(mutable.asList().subList(0, Math.min(2, mutable.size())));
+                    content.add(node);
+                    expected = mutable.setContent(content);
+                    actual = copyOnWrite.setContent(content);
+                    break;
+                default:
+                    expected = mutable.add(node);
+                    actual = copyOnWrite.add(node);
+                    break;
+            }
+
+            assertEquals(expected.getChanges(), actual.getChanges());
+            assertEquals(mutable.asList(), copyOnWrite.asList());
+            assertEquals(mutable.inheritanceAsList(), copyOnWrite.inheritanceAsList());
+        }
+    }
 
 }
@@ -26,6 +26,8 @@
 package me.lucko.luckperms.common.model;
 
 import com.google.common.collect.ImmutableList;
+import me.lucko.luckperms.common.config.ConfigKeys;
+import me.lucko.luckperms.common.config.LuckPermsConfiguration;
 import me.lucko.luckperms.common.event.EventDispatcher;
 import me.lucko.luckperms.common.node.types.Permission;
 import me.lucko.luckperms.common.plugin.LuckPermsPlugin;
@@ -54,10 +56,13 @@ import static org.mockito.Mockito.when;
 public class PermissionHolderTest {
 
     @Mock private LuckPermsPlugin plugin;
+    @Mock private LuckPermsConfiguration configuration;
 
     @BeforeEach
     public void setupMocks() {
         when(this.plugin.getEventDispatcher()).thenReturn(mock(EventDispatcher.class));
+        when(this.plugin.getConfiguration()).thenReturn(this.configuration);
+        when(this.configuration.get(ConfigKeys.COPY_ON_WRITE_NODE_MAPS)).thenReturn(false);
     }
 
     @Test
@@ -25,30 +25,49 @@
 
 package me.lucko.luckperms.common.model;
 
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import me.lucko.luckperms.common.config.ConfigKeys;
 import me.lucko.luckperms.common.config.LuckPermsConfiguration;
 import me.lucko.luckperms.common.event.EventDispatcher;
+import me.lucko.luckperms.common.messaging.InternalMessagingService;
 import me.lucko.luckperms.common.model.manager.user.StandardUserManager;
+import me.lucko.luckperms.common.model.manager.user.UserSnapshotCache;
 import me.lucko.luckperms.common.node.types.Inheritance;
+import me.lucko.luckperms.common.node.types.Meta;
 import me.lucko.luckperms.common.node.types.Permission;
 import me.lucko.luckperms.common.plugin.LuckPermsPlugin;
 import me.lucko.luckperms.common.plugin.bootstrap.LuckPermsBootstrap;
 import me.lucko.luckperms.common.plugin.scheduler.SchedulerAdapter;
+import me.lucko.luckperms.common.storage.Storage;
+import net.luckperms.api.node.Node;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 public class UserManagerTest {
@@ -65,6 +84,9 @@ public class UserManagerTest {
         lenient().when(this.bootstrap.getScheduler()).thenReturn(mock(SchedulerAdapter.class));
         lenient().when(this.configuration.get(ConfigKeys.PRIMARY_GROUP_CALCULATION)).thenReturn(PrimaryGroupHolder.AllParentsByWeight::new);
         lenient().when(this.configuration.get(ConfigKeys.PRIMARY_GROUP_CALCULATION_METHOD)).thenReturn("parents-by-weight");
+        lenient().when(this.configuration.get(ConfigKeys.COPY_ON_WRITE_NODE_MAPS)).thenReturn(false);
+        lenient().when(this.configuration.get(ConfigKeys.USER_CACHE_MAX_SIZE)).thenReturn(0);
+        lenient().when(this.configuration.get(ConfigKeys.USER_CACHE_SNAPSHOT_MEMORY)).thenReturn(0);
     }
 
     @Test
@@ -96,6 +118,122 @@ public class UserManagerTest {
         assertTrue(manager.isNonDefaultUser(user));
     }
 
+    @Test
+    public void testLoadFromSnapshot() {
+        lenient().when(this.configuration.get(ConfigKeys.USER_CACHE_SNAPSHOT_MEMORY)).thenReturn(1);
+        when(this.plugin.getMessagingService()).thenReturn(Optional.of(mock(InternalMessagingService.class)));
+        StandardUserManager manager = new StandardUserManager(this.plugin);
+
+        UUID uniqueId = UUID.randomUUID();
+        List<Node> nodes = ImmutableList.of(
+                Inheritance.builder("admin").build(),
+                Permission.builder().permission("test").value(false).withContext("server", "test").expiry(1, TimeUnit.DAYS).build()
+        );
+
+        User user = manager.getOrMake(uniqueId, "Notch");
+        user.getPrimaryGroup().setStoredValue("admin");
+        user.loadNodesFromStorage(nodes);
+
+        manager.getSnapshotCache().store(user);
+        manager.unload(uniqueId);
+        assertEquals(1, manager.getSnapshotCache().size());
+
+        User loaded = manager.loadFromSnapshot(uniqueId, null);
+        assertNotSame(user, loaded);
+        assertEquals(ImmutableSet.copyOf(nodes), ImmutableSet.copyOf(loaded.normalData().asList()));
+        assertEquals(Optional.of("Notch"), loaded.getUsername());
+        assertEquals(Optional.of("admin"), loaded.getPrimaryGroup().getStoredValue());
+
+        // the snapshot is only used once
+        manager.unload(uniqueId);
+        assertNull(manager.loadFromSnapshot(uniqueId, null));
+        assertEquals(0, manager.getSnapshotCache().getBytes());
+    }
+
+    @Test
+    public void testSnapshotNotUsedWithoutMessaging() {
+        lenient().when(this.configuration.get(ConfigKeys.USER_CACHE_SNAPSHOT_MEMORY)).thenReturn(1);
+        when(this.plugin.getMessagingService()).thenReturn(Optional.empty());
+        StandardUserManager manager = new StandardUserManager(this.plugin);
+
+        UUID uniqueId = UUID.randomUUID();
+        User user = manager.getOrMake(uniqueId);
+        user.loadNodesFromStorage(ImmutableList.of(Permission.builder().permission("test").build()));
+
+        manager.getSnapshotCache().store(user);
+        manager.unload(uniqueId);
+
+        // we wouldn't be told about changes made on other servers, so the user is loaded from storage
+        assertNull(manager.loadFromSnapshot(uniqueId, null));
+        assertEquals(0, manager.getSnapshotCache().size());
+    }
+
+    @Test
+    public void testSnapshotSkipsUnsavedChanges() {
+        lenient().when(this.configuration.get(ConfigKeys.USER_CACHE_SNAPSHOT_MEMORY)).thenReturn(1);
+        StandardUserManager manager = new StandardUserManager(this.plugin);
+
+        User user = manager.getOrMake(UUID.randomUUID());
+        user.normalData().add(Permission.builder().permission("test").build());
+
+        manager.getSnapshotCache().store(user);
+        assertEquals(0, manager.getSnapshotCache().size());
+    }
+
+    @Test
+    public void testSnapshotSkipsLongStrings() {
+        lenient().when(this.configuration.get(ConfigKeys.USER_CACHE_SNAPSHOT_MEMORY)).thenReturn(1);
+        StandardUserManager manager = new StandardUserManager(this.plugin);
+
+        User user = manager.getOrMake(UUID.randomUUID());
+        user.loadNodesFromStorage(ImmutableList.of(Meta.builder("test", Strings.repeat("a", 70000)).build()));
+
+        // the meta value is too long to encode, so the user isn't snapshotted
+        manager.getSnapshotCache().store(user);
+        assertEquals(0, manager.getSnapshotCache().size());
+        assertEquals(0, manager.getSnapshotCache().getBytes());
+    }
+
+    @Test
+    public void testExpiredSnapshotsAreDiscarded() throws InterruptedException {
+        UserSnapshotCache cache = new UserSnapshotCache(1024 * 1024, 0, TimeUnit.NANOSECONDS);
+        StandardUserManager manager = new StandardUserManager(this.plugin);
+
+        User user = manager.getOrMake(UUID.randomUUID());
+        user.loadNodesFromStorage(ImmutableList.of(Permission.builder().permission("test").build()));
+
+        cache.store(user);
+        assertEquals(1, cache.size());
+
+        Thread.sleep(1);
+        cache.cleanup();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    public void testLoadAllUsersRetriesFailedBatchOneByOne() {
+        Storage storage = mock(Storage.class);
+        lenient().when(this.plugin.getStorage()).thenReturn(storage);
+        lenient().when(this.bootstrap.getOnlinePlayers()).thenReturn(Collections.emptyList());
+        lenient().when(this.configuration.get(ConfigKeys.SYNC_USER_BATCH_SIZE)).thenReturn(250);
+
+        CompletableFuture<Map<UUID, User>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new RuntimeException("test"));
+        when(storage.loadUsers(anySet())).thenReturn(failed);
+        when(storage.loadUser(any(UUID.class), isNull())).thenReturn(CompletableFuture.completedFuture(null));
+
+        StandardUserManager manager = new StandardUserManager(this.plugin);
+        UUID first = manager.getOrMake(UUID.randomUUID()).getUniqueId();
+        UUID second = manager.getOrMake(UUID.randomUUID()).getUniqueId();
+
+        manager.loadAllUsers().join();
+
+        verify(storage).loadUsers(anySet());
+        verify(storage).loadUser(first, null);
+        verify(storage).loadUser(second, null);
+    }
+
     @Test
     public void testIsDefaultNode() {
         StandardUserManager manager = new StandardUserManager(this.plugin);
@@ -0,0 +1,131 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.node;
+
+import me.lucko.luckperms.common.model.HolderType;
+import me.lucko.luckperms.common.model.InheritanceOrigin;
+import me.lucko.luckperms.common.model.PermissionHolderIdentifier;
+import me.lucko.luckperms.common.node.factory.NodeBuilders;
+import me.lucko.luckperms.common.node.types.Meta;
+import net.luckperms.api.model.data.DataType;
+import net.luckperms.api.node.Node;
+import net.luckperms.api.node.metadata.types.InheritanceOriginMetadata;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class NodeInternerTest {
+
+    private static final InheritanceOrigin ORIGIN_A = new InheritanceOrigin(new PermissionHolderIdentifier(HolderType.GROUP, "a"), DataType.NORMAL);
+    private static final InheritanceOrigin ORIGIN_B = new InheritanceOrigin(new PermissionHolderIdentifier(HolderType.GROUP, "b"), DataType.NORMAL);
+
+    private static Node build(String key) {
+        return NodeBuilders.determineMostApplicable(key).withContext("server", "test").build();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "luckperms.user.info",
+            "group.default",
+            "meta.key.value",
+            "prefix.100.hello",
+            "suffix.100.hello",
+            "displayname.hello",
+            "weight.10",
+            "r=hello"
+    })
+    public void testIntern(String key) {
+        Node first = NodeInterner.intern(build(key));
+        Node second = NodeInterner.intern(build(key));
+        assertSame(first, second);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "luckperms.user.info",
+            "group.default",
+            "meta.key.value",
+            "prefix.100.hello",
+            "weight.10"
+    })
+    public void testWithMetadata(String key) {
+        Node canonical = NodeInterner.intern(build(key));
+
+        Node a = NodeInterner.withMetadata(build(key), InheritanceOriginMetadata.KEY, ORIGIN_A);
+        Node b = NodeInterner.withMetadata(build(key), InheritanceOriginMetadata.KEY, ORIGIN_B);
+
+        assertNotSame(a, b);
+        assertEquals(canonical, a);
+        assertEquals(canonical.getClass(), a.getClass());
+        assertEquals(ORIGIN_A, a.getMetadata(InheritanceOriginMetadata.KEY).orElse(null));
+        assertEquals(ORIGIN_B, b.getMetadata(InheritanceOriginMetadata.KEY).orElse(null));
+        assertFalse(canonical.getMetadata(InheritanceOriginMetadata.KEY).isPresent());
+
+        // the payload is shared with the canonical instance
+        assertSame(canonical.getKey(), a.getKey());
+        assertSame(canonical.getContexts(), b.getContexts());
+        assertSame(canonical.resolveShorthand(), a.resolveShorthand());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"luckperms.user.info", "meta.key.value"})
+    public void testNodesWithMetadataAreNotInterned(String key) {
+        Node a = NodeInterner.withMetadata(build(key), InheritanceOriginMetadata.KEY, ORIGIN_A);
+        assertSame(a, NodeInterner.intern(a));
+
+        Node b = NodeInterner.withMetadata(a, InheritanceOriginMetadata.KEY, ORIGIN_B);
+        assertEquals(ORIGIN_B, b.getMetadata(InheritanceOriginMetadata.KEY).orElse(null));
+        assertEquals(ORIGIN_A, a.getMetadata(InheritanceOriginMetadata.KEY).orElse(null));
+    }
+
+    @Test
+    public void testCopiesKeepCanonicalInstance() {
+        String key = "luckperms.interner.retained";
+        Node a = NodeInterner.withMetadata(build(key), InheritanceOriginMetadata.KEY, ORIGIN_A);
+
+        // only the copy is reachable now - the canonical instance must outlive a collection
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+
+        Node b = NodeInterner.withMetadata(build(key), InheritanceOriginMetadata.KEY, ORIGIN_B);
+        assertSame(a.getKey(), b.getKey());
+        assertSame(a.getContexts(), b.getContexts());
+    }
+
+    @Test
+    public void testDerivedAttributesAreCopied() {
+        Meta meta = (Meta) NodeInterner.withMetadata(build("meta.key.value"), InheritanceOriginMetadata.KEY, ORIGIN_A);
+        assertEquals("key", meta.getMetaKey());
+        assertEquals("value", meta.getMetaValue());
+    }
+
+}
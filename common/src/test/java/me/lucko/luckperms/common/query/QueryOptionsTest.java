@@ -25,6 +25,8 @@
 
 package me.lucko.luckperms.common.query;
 
+import me.lucko.luckperms.common.context.ImmutableContextSetImpl;
+import net.luckperms.api.context.ImmutableContextSet;
 import net.luckperms.api.query.Flag;
 import net.luckperms.api.query.QueryMode;
 import net.luckperms.api.query.QueryOptions;
@@ -32,6 +34,7 @@ import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -59,4 +62,19 @@ public class QueryOptionsTest {
         }
     }
 
+    @Test
+    public void testIntern() {
+        ImmutableContextSet context = ImmutableContextSetImpl.intern(ImmutableContextSetImpl.of("server", "survival"));
+        QueryOptions first = new QueryOptionsBuilderImpl(QueryMode.CONTEXTUAL).context(context).build();
+        QueryOptions second = new QueryOptionsBuilderImpl(QueryMode.CONTEXTUAL).context(ImmutableContextSetImpl.of("server", "survival")).build();
+        assertNotSame(first, second);
+        assertEquals(first, second);
+
+        QueryOptions interned = QueryOptionsImpl.intern(first);
+        assertSame(interned, QueryOptionsImpl.intern(second));
+        assertSame(context, ImmutableContextSetImpl.intern(ImmutableContextSetImpl.of("server", "survival")));
+        assertSame(QueryOptionsImpl.DEFAULT_CONTEXTUAL, QueryOptionsImpl.intern(QueryOptionsImpl.DEFAULT_CONTEXTUAL));
+        assertSame(ImmutableContextSetImpl.EMPTY, ImmutableContextSetImpl.intern(new ImmutableContextSetImpl.BuilderImpl().build()));
+    }
+
 }
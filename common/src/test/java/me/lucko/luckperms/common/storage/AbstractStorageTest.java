@@ -98,6 +98,10 @@ public abstract class AbstractStorageTest {
         lenient().when(this.bootstrap.getScheduler()).thenReturn(mock(SchedulerAdapter.class));
         lenient().when(this.configuration.get(ConfigKeys.PRIMARY_GROUP_CALCULATION)).thenReturn(PrimaryGroupHolder.AllParentsByWeight::new);
         lenient().when(this.configuration.get(ConfigKeys.PRIMARY_GROUP_CALCULATION_METHOD)).thenReturn("parents-by-weight");
+        lenient().when(this.configuration.get(ConfigKeys.COPY_ON_WRITE_NODE_MAPS)).thenReturn(false);
+        lenient().when(this.configuration.get(ConfigKeys.USER_CACHE_MAX_SIZE)).thenReturn(0);
+        lenient().when(this.configuration.get(ConfigKeys.USER_CACHE_SNAPSHOT_MEMORY)).thenReturn(0);
+        lenient().when(this.configuration.get(ConfigKeys.SQL_CHANGE_LOG)).thenReturn(false);
         lenient().when(this.bootstrap.getResourceStream(anyString()))
                 .then(answer((String path) -> AbstractStorageTest.class.getClassLoader().getResourceAsStream(path)));
         lenient().when(this.plugin.getEventDispatcher()).thenReturn(mock(EventDispatcher.class));
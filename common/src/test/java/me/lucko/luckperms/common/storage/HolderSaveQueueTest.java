@@ -0,0 +1,146 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.storage;
+
+import com.google.common.collect.ImmutableSet;
+import me.lucko.luckperms.common.model.Group;
+import me.lucko.luckperms.common.model.User;
+import me.lucko.luckperms.common.plugin.scheduler.SchedulerAdapter;
+import me.lucko.luckperms.common.plugin.scheduler.SchedulerTask;
+import me.lucko.luckperms.common.storage.implementation.StorageImplementation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+public class HolderSaveQueueTest {
+
+    @Mock private SchedulerAdapter scheduler;
+    @Mock private StorageImplementation implementation;
+
+    private HolderSaveQueue queue;
+
+    @BeforeEach
+    public void setupMocks() {
+        lenient().when(this.scheduler.asyncLater(any(), anyLong(), any())).thenReturn(mock(SchedulerTask.class));
+        this.queue = new HolderSaveQueue(this.scheduler, this.implementation, 50);
+    }
+
+    private Runnable captureFlush() {
+        ArgumentCaptor<Runnable> flush = ArgumentCaptor.forClass(Runnable.class);
+        verify(this.scheduler).asyncLater(flush.capture(), eq(50L), eq(TimeUnit.MILLISECONDS));
+        return flush.getValue();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSavesAreCoalesced() throws Exception {
+        User user1 = mock(User.class);
+        User user2 = mock(User.class);
+        Group group = mock(Group.class);
+
+        CompletableFuture<Void> first = this.queue.saveUser(user1);
+        CompletableFuture<Void> second = this.queue.saveUser(user1);
+        CompletableFuture<Void> third = this.queue.saveUser(user2);
+        CompletableFuture<Void> fourth = this.queue.saveGroup(group);
+
+        // repeated saves of the same holder share a future
+        assertSame(first, second);
+        assertEquals(3, this.queue.getQueueDepth());
+        assertFalse(first.isDone());
+
+        // only one flush is scheduled for all of the saves
+        Runnable flush = captureFlush();
+        flush.run();
+
+        ArgumentCaptor<Collection<User>> users = ArgumentCaptor.forClass(Collection.class);
+        verify(this.implementation).saveUsers(users.capture());
+        assertEquals(ImmutableSet.of(user1, user2), ImmutableSet.copyOf(users.getValue()));
+        verify(this.implementation).saveGroups(any());
+        verify(this.implementation, never()).saveUser(any());
+
+        assertTrue(first.isDone() && third.isDone() && fourth.isDone());
+        assertEquals(0, this.queue.getQueueDepth());
+        assertEquals(1, this.queue.getFlushCount());
+
+        // a save after the flush schedules another one
+        this.queue.saveUser(user1);
+        verify(this.scheduler, times(2)).asyncLater(any(), anyLong(), any());
+    }
+
+    @Test
+    public void testFailedSaveCompletesExceptionally() throws Exception {
+        User user = mock(User.class);
+        doThrow(new RuntimeException("test")).when(this.implementation).saveUsers(any());
+
+        CompletableFuture<Void> future = this.queue.saveUser(user);
+        this.queue.flush();
+
+        assertTrue(future.isCompletedExceptionally());
+        assertEquals(0, this.queue.getQueueDepth());
+    }
+
+    @Test
+    public void testFailedBatchIsRetriedPerHolder() throws Exception {
+        User user1 = mock(User.class);
+        User user2 = mock(User.class);
+        doThrow(new RuntimeException("test")).when(this.implementation).saveUsers(any());
+        doThrow(new RuntimeException("test")).when(this.implementation).saveUser(user2);
+
+        CompletableFuture<Void> first = this.queue.saveUser(user1);
+        CompletableFuture<Void> second = this.queue.saveUser(user2);
+        this.queue.flush();
+
+        // only the user which can't be saved on its own is failed
+        verify(this.implementation).saveUser(user1);
+        verify(this.implementation).saveUser(user2);
+        assertTrue(first.isDone());
+        assertFalse(first.isCompletedExceptionally());
+        assertTrue(second.isCompletedExceptionally());
+    }
+
+}
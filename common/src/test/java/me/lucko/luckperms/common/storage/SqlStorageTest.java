@@ -25,24 +25,57 @@
 
 package me.lucko.luckperms.common.storage;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import me.lucko.luckperms.common.actionlog.LoggedAction;
+import me.lucko.luckperms.common.bulkupdate.BulkUpdate;
+import me.lucko.luckperms.common.bulkupdate.BulkUpdateBuilder;
+import me.lucko.luckperms.common.bulkupdate.BulkUpdateField;
+import me.lucko.luckperms.common.bulkupdate.action.UpdateAction;
+import me.lucko.luckperms.common.config.ConfigKeys;
+import me.lucko.luckperms.common.filter.Comparison;
+import me.lucko.luckperms.common.model.Group;
+import me.lucko.luckperms.common.model.User;
+import me.lucko.luckperms.common.model.manager.group.GroupManager;
+import me.lucko.luckperms.common.model.manager.group.StandardGroupManager;
+import me.lucko.luckperms.common.model.manager.track.StandardTrackManager;
+import me.lucko.luckperms.common.model.manager.track.TrackManager;
+import me.lucko.luckperms.common.model.manager.user.StandardUserManager;
+import me.lucko.luckperms.common.model.manager.user.UserManager;
+import me.lucko.luckperms.common.node.types.Permission;
 import me.lucko.luckperms.common.plugin.LuckPermsPlugin;
 import me.lucko.luckperms.common.storage.implementation.StorageImplementation;
+import me.lucko.luckperms.common.storage.implementation.sql.SqlRowId;
 import me.lucko.luckperms.common.storage.implementation.sql.SqlStorage;
 import me.lucko.luckperms.common.storage.implementation.sql.StatementProcessor;
 import me.lucko.luckperms.common.storage.implementation.sql.connection.ConnectionFactory;
 import me.lucko.luckperms.common.storage.implementation.sql.connection.file.H2ConnectionFactory;
 import me.lucko.luckperms.common.storage.implementation.sql.connection.file.NonClosableConnection;
+import me.lucko.luckperms.common.storage.misc.StorageChanges;
 import net.luckperms.api.actionlog.Action;
+import net.luckperms.api.model.data.DataType;
+import net.luckperms.api.node.Node;
 import org.junit.jupiter.api.Test;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.when;
 
 public class SqlStorageTest extends AbstractStorageTest {
 
@@ -80,6 +113,251 @@ public class SqlStorageTest extends AbstractStorageTest {
         this.storage.logAction(testAction);
     }
 
+    @Test
+    public void testLoadUsersInBuckets() throws Exception {
+        StandardUserManager userManager = new StandardUserManager(this.plugin);
+
+        //noinspection unchecked,rawtypes
+        when(this.plugin.getUserManager()).thenReturn((UserManager) userManager);
+
+        // enough users to need more than one (padded) statement
+        Map<UUID, Node> expected = new HashMap<>();
+        for (int i = 0; i < 300; i++) {
+            UUID uniqueId = UUID.randomUUID();
+            Node node = Permission.builder().permission("test." + i).build();
+
+            User user = userManager.getOrMake(uniqueId);
+            user.setNode(DataType.NORMAL, node, true);
+            this.storage.saveUser(user);
+            expected.put(uniqueId, node);
+        }
+
+        // load them into a fresh user manager
+        StandardUserManager freshUserManager = new StandardUserManager(this.plugin);
+
+        //noinspection unchecked,rawtypes
+        when(this.plugin.getUserManager()).thenReturn((UserManager) freshUserManager);
+
+        Map<UUID, User> users = this.storage.loadUsers(expected.keySet());
+        assertEquals(expected.keySet(), users.keySet());
+        for (Map.Entry<UUID, User> entry : users.entrySet()) {
+            assertTrue(entry.getValue().normalData().asSet().contains(expected.get(entry.getKey())));
+        }
+    }
+
+    @Test
+    public void testLoadUsersSavesAuditedUsers() throws Exception {
+        SqlStorage sql = (SqlStorage) this.storage;
+        StandardUserManager userManager = new StandardUserManager(this.plugin);
+
+        //noinspection unchecked,rawtypes
+        when(this.plugin.getUserManager()).thenReturn((UserManager) userManager);
+
+        Node node = Permission.builder().permission("test").build();
+        Node expired = Permission.builder().permission("test.expired").expiry(Instant.now().minusSeconds(60)).build();
+
+        User user = userManager.getOrMake(UUID.randomUUID());
+        user.setNode(DataType.NORMAL, node, true);
+        user.setNode(DataType.NORMAL, expired, true);
+        this.storage.saveUser(user);
+
+        StandardUserManager freshUserManager = new StandardUserManager(this.plugin);
+
+        //noinspection unchecked,rawtypes
+        when(this.plugin.getUserManager()).thenReturn((UserManager) freshUserManager);
+
+        User loaded = this.storage.loadUsers(ImmutableSet.of(user.getUniqueId())).get(user.getUniqueId());
+        assertTrue(loaded.normalData().asSet().contains(node));
+        assertFalse(loaded.normalData().asSet().contains(expired));
+
+        // the expired node has been removed from storage too
+        try (Connection c = sql.getConnectionFactory().getConnection()) {
+            ResultSet rs = c.createStatement().executeQuery("SELECT COUNT(*) FROM `luckperms_user_permissions` WHERE `permission` = 'test.expired'");
+            assertTrue(rs.next());
+            assertEquals(0, rs.getInt(1));
+        }
+    }
+
+    @Test
+    public void testChangeLog() throws Exception {
+        StandardUserManager userManager = new StandardUserManager(this.plugin);
+        StandardGroupManager groupManager = new StandardGroupManager(this.plugin);
+        StandardTrackManager trackManager = new StandardTrackManager(this.plugin);
+
+        //noinspection unchecked,rawtypes
+        when(this.plugin.getUserManager()).thenReturn((UserManager) userManager);
+        //noinspection unchecked,rawtypes
+        when(this.plugin.getGroupManager()).thenReturn((GroupManager) groupManager);
+        //noinspection unchecked,rawtypes
+        when(this.plugin.getTrackManager()).thenReturn((TrackManager) trackManager);
+
+        // changes aren't tracked unless enabled
+        assertNull(this.storage.pollChanges());
+
+        lenient().when(this.configuration.get(ConfigKeys.SQL_CHANGE_LOG)).thenReturn(true);
+        this.storage.init();
+
+        // the first poll is for the initial data load
+        assertTrue(this.storage.pollChanges().isEverything());
+
+        User user = userManager.getOrMake(UUID.randomUUID());
+        user.setNode(DataType.NORMAL, Permission.builder().permission("test").build(), true);
+        this.storage.saveUser(user);
+        this.storage.createAndLoadGroup("test");
+        this.storage.createAndLoadTrack("test");
+
+        StorageChanges changes = this.storage.pollChanges();
+        assertFalse(changes.isEverything());
+        assertEquals(ImmutableSet.of(user.getUniqueId()), changes.getUsers());
+        assertEquals(ImmutableSet.of("test"), changes.getGroups());
+        assertEquals(ImmutableSet.of("test"), changes.getTracks());
+
+        // nothing has changed since the last poll
+        changes = this.storage.pollChanges();
+        assertTrue(changes.getUsers().isEmpty());
+        assertTrue(changes.getGroups().isEmpty());
+        assertTrue(changes.getTracks().isEmpty());
+    }
+
+    @Test
+    public void testChangeLogEntriesCommittedOutOfOrder() throws Exception {
+        SqlStorage sql = (SqlStorage) this.storage;
+
+        lenient().when(this.configuration.get(ConfigKeys.SQL_CHANGE_LOG)).thenReturn(true);
+        this.storage.init();
+        assertTrue(this.storage.pollChanges().isEverything());
+
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+
+        try (Connection c = sql.getConnectionFactory().getConnection()) {
+            ResultSet rs = c.createStatement().executeQuery("SELECT MAX(`id`) FROM `luckperms_changelog`");
+            long latest = rs.next() ? rs.getLong(1) : 0;
+
+            // the second id is committed before the first
+            insertChangeLogEntry(c, latest + 2, second);
+            assertEquals(ImmutableSet.of(second), this.storage.pollChanges().getUsers());
+
+            insertChangeLogEntry(c, latest + 1, first);
+            assertEquals(ImmutableSet.of(first), this.storage.pollChanges().getUsers());
+        }
+
+        // neither entry is returned again
+        assertTrue(this.storage.pollChanges().getUsers().isEmpty());
+    }
+
+    private static void insertChangeLogEntry(Connection c, long id, UUID uniqueId) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("INSERT INTO `luckperms_changelog` (`id`, `time`, `type`, `name`) VALUES (?, ?, 'U', ?)")) {
+            ps.setLong(1, id);
+            ps.setLong(2, System.currentTimeMillis());
+            ps.setString(3, uniqueId.toString());
+            ps.execute();
+        }
+    }
+
+    @Test
+    public void testLoadAllGroupsSkipsUnchanged() throws Exception {
+        StandardGroupManager groupManager = new StandardGroupManager(this.plugin);
+
+        //noinspection unchecked,rawtypes
+        when(this.plugin.getGroupManager()).thenReturn((GroupManager) groupManager);
+
+        Group group = this.storage.createAndLoadGroup("test");
+        group.normalData().add(Permission.builder().permission("test.1").build());
+        this.storage.saveGroup(group);
+
+        // the group is reloaded, as the node it holds doesn't have a row id yet
+        this.storage.loadAllGroups();
+        List<Node> nodes = group.normalData().asList();
+        assertEquals(1, nodes.size());
+        assertTrue(nodes.get(0).getMetadata(SqlRowId.KEY).isPresent());
+
+        // nothing has changed, so the group keeps the same node instances
+        this.storage.loadAllGroups();
+        assertSame(nodes.get(0), group.normalData().asList().get(0));
+
+        group.normalData().add(Permission.builder().permission("test.2").build());
+        this.storage.saveGroup(group);
+
+        this.storage.loadAllGroups();
+        nodes = group.normalData().asList();
+        assertEquals(2, nodes.size());
+        for (Node node : nodes) {
+            assertTrue(node.getMetadata(SqlRowId.KEY).isPresent());
+        }
+    }
+
+    @Test
+    public void testLoadAllGroupsAfterBulkUpdate() throws Exception {
+        StandardGroupManager groupManager = new StandardGroupManager(this.plugin);
+
+        //noinspection unchecked,rawtypes
+        when(this.plugin.getGroupManager()).thenReturn((GroupManager) groupManager);
+
+        Group group = this.storage.createAndLoadGroup("test");
+        group.normalData().add(Permission.builder().permission("test.1").build());
+        this.storage.saveGroup(group);
+        this.storage.loadAllGroups();
+
+        // the bulk update changes the row in place, so it keeps the same id
+        BulkUpdate update = BulkUpdateBuilder.create()
+                .action(UpdateAction.of(BulkUpdateField.PERMISSION, "test.2"))
+                .filter(BulkUpdateField.PERMISSION, Comparison.EQUAL, "test.1")
+                .build();
+        this.storage.applyBulkUpdate(update);
+
+        this.storage.loadAllGroups();
+        assertEquals(ImmutableSet.of(Permission.builder().permission("test.2").build()), group.normalData().asSet());
+    }
+
+    @Test
+    public void testSaveUsersAndGroupsTogether() throws Exception {
+        StandardUserManager userManager = new StandardUserManager(this.plugin);
+        StandardGroupManager groupManager = new StandardGroupManager(this.plugin);
+
+        //noinspection unchecked,rawtypes
+        when(this.plugin.getUserManager()).thenReturn((UserManager) userManager);
+        //noinspection unchecked,rawtypes
+        when(this.plugin.getGroupManager()).thenReturn((GroupManager) groupManager);
+
+        User user1 = userManager.getOrMake(UUID.randomUUID());
+        User user2 = userManager.getOrMake(UUID.randomUUID());
+        user1.setNode(DataType.NORMAL, Permission.builder().permission("test.1").build(), true);
+        user2.setNode(DataType.NORMAL, Permission.builder().permission("test.2").build(), true);
+        this.storage.saveUsers(ImmutableList.of(user1, user2));
+
+        Group group1 = this.storage.createAndLoadGroup("test1");
+        Group group2 = this.storage.createAndLoadGroup("test2");
+        group1.normalData().add(Permission.builder().permission("test.1").build());
+        group2.normalData().add(Permission.builder().permission("test.2").build());
+        this.storage.saveGroups(ImmutableList.of(group1, group2));
+
+        // remove a node from one user, and clear the other so their data is deleted
+        user1.unsetNode(DataType.NORMAL, Permission.builder().permission("test.1").build());
+        user1.setNode(DataType.NORMAL, Permission.builder().permission("test.3").build(), true);
+        user2.unsetNode(DataType.NORMAL, Permission.builder().permission("test.2").build());
+        this.storage.saveUsers(ImmutableList.of(user1, user2));
+
+        assertTrue(this.storage.getUniqueUsers().contains(user1.getUniqueId()));
+        assertFalse(this.storage.getUniqueUsers().contains(user2.getUniqueId()));
+
+        StandardUserManager freshUserManager = new StandardUserManager(this.plugin);
+        StandardGroupManager freshGroupManager = new StandardGroupManager(this.plugin);
+
+        //noinspection unchecked,rawtypes
+        when(this.plugin.getUserManager()).thenReturn((UserManager) freshUserManager);
+        //noinspection unchecked,rawtypes
+        when(this.plugin.getGroupManager()).thenReturn((GroupManager) freshGroupManager);
+
+        User loaded = this.storage.loadUser(user1.getUniqueId(), "user1");
+        assertTrue(loaded.normalData().asSet().contains(Permission.builder().permission("test.3").build()));
+        assertFalse(loaded.normalData().asSet().contains(Permission.builder().permission("test.1").build()));
+
+        this.storage.loadAllGroups();
+        assertTrue(freshGroupManager.getIfLoaded("test1").normalData().asSet().contains(Permission.builder().permission("test.1").build()));
+        assertTrue(freshGroupManager.getIfLoaded("test2").normalData().asSet().contains(Permission.builder().permission("test.2").build()));
+    }
+
     private static class TestH2ConnectionFactory implements ConnectionFactory {
         private final NonClosableConnection connection;
 
@@ -0,0 +1,120 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.storage;
+
+import me.lucko.luckperms.common.config.ConfigKeys;
+import me.lucko.luckperms.common.config.LuckPermsConfiguration;
+import me.lucko.luckperms.common.event.EventDispatcher;
+import me.lucko.luckperms.common.model.Group;
+import me.lucko.luckperms.common.model.User;
+import me.lucko.luckperms.common.model.manager.group.GroupManager;
+import me.lucko.luckperms.common.plugin.LuckPermsPlugin;
+import me.lucko.luckperms.common.plugin.bootstrap.LuckPermsBootstrap;
+import me.lucko.luckperms.common.plugin.scheduler.SchedulerAdapter;
+import me.lucko.luckperms.common.plugin.scheduler.SchedulerTask;
+import me.lucko.luckperms.common.storage.implementation.StorageImplementation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Collections;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class StorageTest {
+
+    @Mock private LuckPermsPlugin plugin;
+    @Mock private LuckPermsBootstrap bootstrap;
+    @Mock private LuckPermsConfiguration configuration;
+    @Mock private SchedulerAdapter scheduler;
+    @Mock private StorageImplementation implementation;
+
+    private Storage storage;
+
+    @BeforeEach
+    public void setupMocks() {
+        lenient().when(this.plugin.getBootstrap()).thenReturn(this.bootstrap);
+        lenient().when(this.plugin.getConfiguration()).thenReturn(this.configuration);
+        lenient().when(this.plugin.getEventDispatcher()).thenReturn(mock(EventDispatcher.class));
+        lenient().doReturn(mock(GroupManager.class)).when(this.plugin).getGroupManager();
+        lenient().when(this.bootstrap.getScheduler()).thenReturn(this.scheduler);
+        lenient().when(this.scheduler.async()).thenReturn(Runnable::run);
+        // never run the scheduled flush, so the saves stay queued until something else flushes them
+        lenient().when(this.scheduler.asyncLater(any(), anyLong(), any())).thenReturn(mock(SchedulerTask.class));
+        lenient().when(this.configuration.get(ConfigKeys.SAVE_COALESCE_MILLIS)).thenReturn(50);
+
+        this.storage = new Storage(this.plugin, this.implementation);
+    }
+
+    @Test
+    public void testQueuedSavesAreWrittenBeforeGroupsAreLoaded() throws Exception {
+        Group group = mock(Group.class);
+        when(this.implementation.loadGroup("test")).thenReturn(Optional.empty());
+
+        CompletableFuture<Void> save = this.storage.saveGroup(group);
+        assertEquals(1, this.storage.getSaveQueue().get().getQueueDepth());
+
+        // loading discards the changes recorded by the group, so they must be saved first
+        this.storage.loadGroup("test").join();
+
+        InOrder order = inOrder(this.implementation);
+        order.verify(this.implementation).saveGroups(any());
+        order.verify(this.implementation).loadGroup("test");
+        assertTrue(save.isDone());
+        assertEquals(0, this.storage.getSaveQueue().get().getQueueDepth());
+    }
+
+    @Test
+    public void testQueuedSavesAreWrittenBeforeUsersAreLoaded() throws Exception {
+        User user = mock(User.class);
+        UUID uniqueId = UUID.randomUUID();
+        when(this.implementation.loadUsers(any())).thenReturn(Collections.emptyMap());
+
+        CompletableFuture<Void> save = this.storage.saveUser(user);
+        this.storage.loadUsers(Collections.singleton(uniqueId)).join();
+
+        InOrder order = inOrder(this.implementation);
+        order.verify(this.implementation).saveUsers(any());
+        order.verify(this.implementation).loadUsers(any());
+        assertTrue(save.isDone());
+    }
+
+}
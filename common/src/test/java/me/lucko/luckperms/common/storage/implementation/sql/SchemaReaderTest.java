@@ -63,7 +63,8 @@ public class SchemaReaderTest {
                 "CREATE INDEX ON `{prefix}players` (`username`)",
                 "CREATE TABLE `{prefix}groups` ( `name` VARCHAR(36) NOT NULL, PRIMARY KEY (`name`))",
                 "CREATE TABLE `{prefix}actions` ( `id` INT AUTO_INCREMENT NOT NULL, `time` BIGINT NOT NULL, `actor_uuid` VARCHAR(36) NOT NULL, `actor_name` VARCHAR(100) NOT NULL, `type` CHAR(1) NOT NULL, `acted_uuid` VARCHAR(36) NOT NULL, `acted_name` VARCHAR(36) NOT NULL, `action` VARCHAR(300) NOT NULL, PRIMARY KEY (`id`))",
-                "CREATE TABLE `{prefix}tracks` ( `name` VARCHAR(36) NOT NULL, `groups` TEXT NOT NULL, PRIMARY KEY (`name`))"
+                "CREATE TABLE `{prefix}tracks` ( `name` VARCHAR(36) NOT NULL, `groups` TEXT NOT NULL, PRIMARY KEY (`name`))",
+                "CREATE TABLE `{prefix}changelog` ( `id` BIGINT AUTO_INCREMENT NOT NULL, `time` BIGINT NOT NULL, `type` CHAR(1) NOT NULL, `name` VARCHAR(36) NOT NULL, PRIMARY KEY (`id`))"
         ), readStatements("h2"));
     }
 
@@ -78,7 +79,8 @@ public class SchemaReaderTest {
                 "CREATE INDEX `{prefix}players_username` ON `{prefix}players` (`username`)",
                 "CREATE TABLE `{prefix}groups` ( `name` VARCHAR(36) NOT NULL, PRIMARY KEY (`name`))",
                 "CREATE TABLE `{prefix}actions` ( `id` INTEGER PRIMARY KEY NOT NULL, `time` BIGINT NOT NULL, `actor_uuid` VARCHAR(36) NOT NULL, `actor_name` VARCHAR(100) NOT NULL, `type` CHAR(1) NOT NULL, `acted_uuid` VARCHAR(36) NOT NULL, `acted_name` VARCHAR(36) NOT NULL, `action` VARCHAR(300) NOT NULL)",
-                "CREATE TABLE `{prefix}tracks` ( `name` VARCHAR(36) NOT NULL, `groups` TEXT NOT NULL, PRIMARY KEY (`name`))"
+                "CREATE TABLE `{prefix}tracks` ( `name` VARCHAR(36) NOT NULL, `groups` TEXT NOT NULL, PRIMARY KEY (`name`))",
+                "CREATE TABLE `{prefix}changelog` ( `id` INTEGER PRIMARY KEY NOT NULL, `time` BIGINT NOT NULL, `type` CHAR(1) NOT NULL, `name` VARCHAR(36) NOT NULL)"
         ), readStatements("sqlite"));
     }
 
@@ -93,7 +95,8 @@ public class SchemaReaderTest {
                 "CREATE INDEX `{prefix}players_username` ON `{prefix}players` (`username`)",
                 "CREATE TABLE `{prefix}groups` ( `name` VARCHAR(36) NOT NULL, PRIMARY KEY (`name`)) DEFAULT CHARSET = utf8mb4",
                 "CREATE TABLE `{prefix}actions` ( `id` INT AUTO_INCREMENT NOT NULL, `time` BIGINT NOT NULL, `actor_uuid` VARCHAR(36) NOT NULL, `actor_name` VARCHAR(100) NOT NULL, `type` CHAR(1) NOT NULL, `acted_uuid` VARCHAR(36) NOT NULL, `acted_name` VARCHAR(36) NOT NULL, `action` VARCHAR(300) NOT NULL, PRIMARY KEY (`id`)) DEFAULT CHARSET = utf8mb4",
-                "CREATE TABLE `{prefix}tracks` ( `name` VARCHAR(36) NOT NULL, `groups` TEXT NOT NULL, PRIMARY KEY (`name`)) DEFAULT CHARSET = utf8mb4"
+                "CREATE TABLE `{prefix}tracks` ( `name` VARCHAR(36) NOT NULL, `groups` TEXT NOT NULL, PRIMARY KEY (`name`)) DEFAULT CHARSET = utf8mb4",
+                "CREATE TABLE `{prefix}changelog` ( `id` BIGINT AUTO_INCREMENT NOT NULL, `time` BIGINT NOT NULL, `type` CHAR(1) NOT NULL, `name` VARCHAR(36) NOT NULL, PRIMARY KEY (`id`)) DEFAULT CHARSET = utf8mb4"
         );
         assertEquals(expected, readStatements("mysql"));
         assertEquals(expected, readStatements("mariadb"));
@@ -110,7 +113,8 @@ public class SchemaReaderTest {
                 "CREATE INDEX \"{prefix}players_username\" ON \"{prefix}players\" (\"username\")",
                 "CREATE TABLE \"{prefix}groups\" ( \"name\" VARCHAR(36) PRIMARY KEY NOT NULL)",
                 "CREATE TABLE \"{prefix}actions\" ( \"id\" SERIAL PRIMARY KEY NOT NULL, \"time\" BIGINT NOT NULL, \"actor_uuid\" VARCHAR(36) NOT NULL, \"actor_name\" VARCHAR(100) NOT NULL, \"type\" CHAR(1) NOT NULL, \"acted_uuid\" VARCHAR(36) NOT NULL, \"acted_name\" VARCHAR(36) NOT NULL, \"action\" VARCHAR(300) NOT NULL)",
-                "CREATE TABLE \"{prefix}tracks\" ( \"name\" VARCHAR(36) PRIMARY KEY NOT NULL, \"groups\" TEXT NOT NULL)"
+                "CREATE TABLE \"{prefix}tracks\" ( \"name\" VARCHAR(36) PRIMARY KEY NOT NULL, \"groups\" TEXT NOT NULL)",
+                "CREATE TABLE \"{prefix}changelog\" ( \"id\" BIGSERIAL PRIMARY KEY NOT NULL, \"time\" BIGINT NOT NULL, \"type\" CHAR(1) NOT NULL, \"name\" VARCHAR(36) NOT NULL)"
         ), readStatements("postgresql"));
     }
 
@@ -122,7 +126,8 @@ public class SchemaReaderTest {
                 "luckperms_players",
                 "luckperms_groups",
                 "luckperms_actions",
-                "luckperms_tracks"
+                "luckperms_tracks",
+                "luckperms_changelog"
         );
 
         for (String type : new String[]{"h2", "mariadb", "mysql", "postgresql", "sqlite"}) {
@@ -151,7 +156,8 @@ public class SchemaReaderTest {
                 "luckperms_players",
                 "luckperms_groups",
                 "luckperms_actions",
-                "luckperms_tracks"
+                "luckperms_tracks",
+                "luckperms_changelog"
         ));
         assertEquals(ImmutableList.of(), filtered);
 
@@ -161,7 +167,8 @@ public class SchemaReaderTest {
                 "luckperms_players",
                 "luckperms_groups",
                 "luckperms_actions",
-                "luckperms_tracks"
+                "luckperms_tracks",
+                "luckperms_changelog"
         ));
         assertEquals(ImmutableList.of(
                 "CREATE TABLE `luckperms_group_permissions` ( `id` INT AUTO_INCREMENT NOT NULL, `name` VARCHAR(36) NOT NULL, `permission` VARCHAR(200) NOT NULL, `value` BOOL NOT NULL, `server` VARCHAR(36) NOT NULL, `world` VARCHAR(64) NOT NULL, `expiry` BIGINT NOT NULL, `contexts` VARCHAR(200) NOT NULL, PRIMARY KEY (`id`)) DEFAULT CHARSET = utf8mb4",
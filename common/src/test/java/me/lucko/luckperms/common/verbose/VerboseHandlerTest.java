@@ -0,0 +1,149 @@
+/*
+ * This file is part of LuckPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.common.verbose;
+
+import me.lucko.luckperms.common.cacheddata.result.TristateResult;
+import me.lucko.luckperms.common.plugin.scheduler.SchedulerAdapter;
+import me.lucko.luckperms.common.plugin.scheduler.SchedulerTask;
+import me.lucko.luckperms.common.query.QueryOptionsImpl;
+import me.lucko.luckperms.common.sender.Sender;
+import me.lucko.luckperms.common.verbose.event.CheckOrigin;
+import net.luckperms.api.util.Tristate;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+
+@ExtendWith(MockitoExtension.class)
+public class VerboseHandlerTest {
+
+    private static final VerboseCheckTarget TARGET = VerboseCheckTarget.of(VerboseCheckTarget.USER_TYPE, "Player1");
+
+    @Mock private SchedulerAdapter scheduler;
+    @Mock private Sender sender;
+
+    private VerboseHandler handler;
+
+    @BeforeEach
+    public void setupMocks() {
+        lenient().when(this.scheduler.asyncRepeating(any(), anyLong(), any())).thenReturn(mock(SchedulerTask.class));
+        lenient().when(this.sender.getUniqueId()).thenReturn(UUID.randomUUID());
+        this.handler = new VerboseHandler(this.scheduler);
+    }
+
+    @AfterEach
+    public void closeHandler() {
+        this.handler.close();
+    }
+
+    private void check(String permission) {
+        this.handler.offerPermissionCheckEvent(CheckOrigin.INTERNAL, TARGET, QueryOptionsImpl.DEFAULT_CONTEXTUAL, permission, TristateResult.forMonitoredResult(Tristate.TRUE));
+    }
+
+    @Test
+    public void testFilteredBeforeQueueing() throws InvalidFilterException {
+        this.handler.configure(1, 2);
+        this.handler.registerListener(this.sender, VerboseFilter.compile("luckperms"), false);
+
+        // checks rejected by the filter shouldn't take up space in the buffer
+        for (int i = 0; i < 10; i++) {
+            check("essentials.fly");
+        }
+        check("luckperms.user.info");
+        check("luckperms.group.info");
+
+        VerboseListener listener = this.handler.unregisterListener(this.sender);
+        assertEquals(2, listener.getMatchedCount());
+        assertEquals(0, listener.getDroppedCount());
+    }
+
+    @Test
+    public void testBufferOverflow() {
+        this.handler.configure(1000, 3);
+        this.handler.registerListener(this.sender, VerboseFilter.acceptAll(), false);
+
+        for (int i = 0; i < 5; i++) {
+            check("luckperms.user.info");
+        }
+
+        VerboseListener listener = this.handler.unregisterListener(this.sender);
+        assertEquals(3, listener.getMatchedCount());
+        assertEquals(2, listener.getDroppedCount());
+    }
+
+    @Test
+    public void testBatchTakesOneSlot() throws InvalidFilterException {
+        this.handler.configure(1, 2);
+        this.handler.registerListener(this.sender, VerboseFilter.compile("luckperms"), false);
+
+        String[] permissions = {"luckperms.user.info", "essentials.fly", "luckperms.group.info", "luckperms.track.info"};
+        TristateResult[] results = new TristateResult[permissions.length];
+        Arrays.fill(results, TristateResult.forMonitoredResult(Tristate.TRUE));
+
+        // each batch only takes up a single space in the buffer
+        this.handler.offerPermissionCheckEvents(CheckOrigin.INTERNAL, TARGET, QueryOptionsImpl.DEFAULT_CONTEXTUAL, permissions, results);
+        this.handler.offerPermissionCheckEvents(CheckOrigin.INTERNAL, TARGET, QueryOptionsImpl.DEFAULT_CONTEXTUAL, permissions, results);
+        this.handler.offerPermissionCheckEvents(CheckOrigin.INTERNAL, TARGET, QueryOptionsImpl.DEFAULT_CONTEXTUAL, permissions, results);
+
+        VerboseListener listener = this.handler.unregisterListener(this.sender);
+        assertEquals(6, listener.getMatchedCount());
+        assertEquals(3, listener.getDroppedCount());
+    }
+
+    @Test
+    public void testFilterResultsArePassedToEachListener() throws InvalidFilterException {
+        Sender other = mock(Sender.class);
+        lenient().when(other.getUniqueId()).thenReturn(UUID.randomUUID());
+
+        this.handler.registerListener(this.sender, VerboseFilter.compile("luckperms"), false);
+        this.handler.registerListener(other, VerboseFilter.compile("essentials"), false);
+
+        check("luckperms.user.info");
+        check("essentials.fly");
+        check("essentials.fly");
+        check("worldedit.wand");
+
+        // each listener only matches the checks accepted by its own filter, but counts them all
+        VerboseListener first = this.handler.unregisterListener(this.sender);
+        VerboseListener second = this.handler.unregisterListener(other);
+        assertEquals(1, first.getMatchedCount());
+        assertEquals(4, first.getTotalCount());
+        assertEquals(2, second.getMatchedCount());
+        assertEquals(4, second.getTotalCount());
+    }
+
+}
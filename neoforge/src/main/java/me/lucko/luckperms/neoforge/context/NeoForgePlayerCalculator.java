@@ -29,11 +29,11 @@ import me.lucko.luckperms.common.config.ConfigKeys;
 import me.lucko.luckperms.common.context.ImmutableContextSetImpl;
 import me.lucko.luckperms.neoforge.LPNeoForgePlugin;
 import net.luckperms.api.context.Context;
-import net.luckperms.api.context.ContextCalculator;
 import net.luckperms.api.context.ContextConsumer;
 import net.luckperms.api.context.ContextSet;
 import net.luckperms.api.context.DefaultContextKeys;
 import net.luckperms.api.context.ImmutableContextSet;
+import net.luckperms.api.context.SignallingContextCalculator;
 import net.minecraft.core.registries.Registries;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.MinecraftServer;
@@ -47,7 +47,7 @@ import org.checkerframework.checker.nullness.qual.NonNull;
 
 import java.util.Set;
 
-public class NeoForgePlayerCalculator implements ContextCalculator<ServerPlayer> {
+public class NeoForgePlayerCalculator implements SignallingContextCalculator<ServerPlayer> {
     /**
      * GameType.NOT_SET(-1, "") was removed in 1.17
      */
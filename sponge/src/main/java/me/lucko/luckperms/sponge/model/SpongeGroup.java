@@ -29,6 +29,8 @@ import me.lucko.luckperms.common.model.Group;
 import me.lucko.luckperms.sponge.LPSpongePlugin;
 import me.lucko.luckperms.sponge.service.model.permissionholder.GroupSubject;
 
+import java.util.Set;
+
 public class SpongeGroup extends Group implements SpongePermissionHolder {
     private final GroupSubject spongeData;
 
@@ -43,6 +45,12 @@ public class SpongeGroup extends Group implements SpongePermissionHolder {
         this.spongeData.fireUpdateEvent();
     }
 
+    @Override
+    protected void applyPermissionChanges(Set<String> changedKeys) {
+        super.applyPermissionChanges(changedKeys);
+        this.spongeData.fireUpdateEvent();
+    }
+
     @Override
     public GroupSubject sponge() {
         return this.spongeData;
@@ -30,6 +30,7 @@ import me.lucko.luckperms.sponge.LPSpongePlugin;
 import me.lucko.luckperms.sponge.service.model.LPSubject;
 import me.lucko.luckperms.sponge.service.model.permissionholder.UserSubject;
 
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -49,6 +50,12 @@ public class SpongeUser extends User implements SpongePermissionHolder {
         this.spongeData.fireUpdateEvent();
     }
 
+    @Override
+    protected void applyPermissionChanges(Set<String> changedKeys) {
+        super.applyPermissionChanges(changedKeys);
+        this.spongeData.fireUpdateEvent();
+    }
+
     @Override
     public UserSubject sponge() {
         return this.spongeData;
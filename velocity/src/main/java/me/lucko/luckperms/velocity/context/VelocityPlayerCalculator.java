@@ -34,15 +34,15 @@ import com.velocitypowered.api.proxy.server.RegisteredServer;
 import me.lucko.luckperms.common.config.ConfigKeys;
 import me.lucko.luckperms.common.context.ImmutableContextSetImpl;
 import me.lucko.luckperms.velocity.LPVelocityPlugin;
-import net.luckperms.api.context.ContextCalculator;
 import net.luckperms.api.context.ContextConsumer;
 import net.luckperms.api.context.ContextSet;
 import net.luckperms.api.context.DefaultContextKeys;
 import net.luckperms.api.context.ImmutableContextSet;
+import net.luckperms.api.context.SignallingContextCalculator;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.jetbrains.annotations.NotNull;
 
-public class VelocityPlayerCalculator implements ContextCalculator<Player> {
+public class VelocityPlayerCalculator implements SignallingContextCalculator<Player> {
     private final LPVelocityPlugin plugin;
 
     public VelocityPlayerCalculator(LPVelocityPlugin plugin) {